@@ -19,10 +19,10 @@ package org.apache.fontbox.cff;
 
 import java.awt.geom.GeneralPath;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import org.apache.fontbox.type1.Type1CharStringReader;
 
 /**
@@ -38,11 +38,10 @@ public class CFFCIDFont extends CFFFont
     private int supplement;
 
     private List<Map<String, Object>> fontDictionaries = new LinkedList<Map<String,Object>>();
-    private List<Map<String, Object>> privateDictionaries = new LinkedList<Map<String,Object>>();
+    private CFFParser.PrivateDicts privateDictionaries;
     private FDSelect fdSelect;
 
-    private final Map<Integer, CIDKeyedType2CharString> charStringCache =
-            new ConcurrentHashMap<Integer, CIDKeyedType2CharString>();
+    private volatile CharStringCache<CIDKeyedType2CharString> charStringCache;
 
     private final PrivateType1CharStringReader reader = new PrivateType1CharStringReader();
 
@@ -126,23 +125,29 @@ public class CFFCIDFont extends CFFFont
     }
 
     /**
-     * Returns the private dictionary.
+     * Returns the private dictionaries. This parses the private dictionaries of all FDs, which
+     * are otherwise parsed when they're first needed.
      *
      * @return the privDict
      */
     public List<Map<String, Object>> getPrivDicts()
     {
-        return privateDictionaries;
+        List<Map<String, Object>> privDicts = new ArrayList<Map<String, Object>>();
+        for (int i = 0; i < privateDictionaries.size(); i++)
+        {
+            privDicts.add(privateDictionaries.get(i));
+        }
+        return privDicts;
     }
 
     /**
-     * Sets the private dictionary.
+     * Sets the private dictionaries.
      *
-     * @param privDict the privDict to set
+     * @param privDicts the privDicts to set
      */
-    void setPrivDict(List<Map<String, Object>> privDict)
+    void setPrivDicts(CFFParser.PrivateDicts privDicts)
     {
-        this.privateDictionaries = privDict;
+        this.privateDictionaries = privDicts;
     }
 
     /**
@@ -166,50 +171,60 @@ public class CFFCIDFont extends CFFFont
     }
 
     /**
-     * Returns the defaultWidthX for the given GID.
+     * Returns the private dictionary for the given GID.
      *
      * @param gid GID
+     * @return the private dictionary, or null if the GID has no FD
      */
-    private int getDefaultWidthX(int gid)
+    private Map<String, Object> getPrivateDict(int gid)
     {
         int fdArrayIndex = this.fdSelect.getFDIndex(gid);
         if (fdArrayIndex == -1)
+        {
+            return null;
+        }
+        return privateDictionaries.get(fdArrayIndex);
+    }
+
+    /**
+     * Returns the defaultWidthX of the given private dictionary.
+     *
+     * @param privDict the private dictionary, or null
+     */
+    private static int getDefaultWidthX(Map<String, Object> privDict)
+    {
+        if (privDict == null)
         {
             return 1000;
         }
-        Map<String, Object> privDict = this.privateDictionaries.get(fdArrayIndex);
         return privDict.containsKey("defaultWidthX") ? ((Number)privDict.get("defaultWidthX")).intValue() : 1000;
     }
 
     /**
-     * Returns the nominalWidthX for the given GID.
+     * Returns the nominalWidthX of the given private dictionary.
      *
-     * @param gid GID
+     * @param privDict the private dictionary, or null
      */
-    private int getNominalWidthX(int gid)
+    private static int getNominalWidthX(Map<String, Object> privDict)
     {
-        int fdArrayIndex = this.fdSelect.getFDIndex(gid);
-        if (fdArrayIndex == -1)
+        if (privDict == null)
         {
             return 0;
         }
-        Map<String, Object> privDict = this.privateDictionaries.get(fdArrayIndex);
         return privDict.containsKey("nominalWidthX") ? ((Number)privDict.get("nominalWidthX")).intValue() : 0;
     }
 
     /**
-     * Returns the LocalSubrIndex for the given GID.
+     * Returns the LocalSubrIndex of the given private dictionary.
      *
-     * @param gid GID
+     * @param privDict the private dictionary, or null
      */
-    private byte[][] getLocalSubrIndex(int gid)
+    private static byte[][] getLocalSubrIndex(Map<String, Object> privDict)
     {
-        int fdArrayIndex = this.fdSelect.getFDIndex(gid);
-        if (fdArrayIndex == -1)
+        if (privDict == null)
         {
             return null;
         }
-        Map<String, Object> privDict = this.privateDictionaries.get(fdArrayIndex);
         return (byte[][])privDict.get("Subrs");
     }
 
@@ -222,25 +237,54 @@ public class CFFCIDFont extends CFFFont
     @Override
     public CIDKeyedType2CharString getType2CharString(int cid) throws IOException
     {
-        CIDKeyedType2CharString type2 = charStringCache.get(cid);
+        CharStringCache<CIDKeyedType2CharString> cache = getCharStringCache();
+        CIDKeyedType2CharString type2 = cache.get(cid);
         if (type2 == null)
         {
             int gid = charset.getGIDForCID(cid);
 
-            byte[] bytes = charStrings[gid];
-            if (bytes == null)
+            byte[] bytes = getCharStringIndex().get(gid);
+            Map<String, Object> privDict = getPrivateDict(gid);
+            byte[][] localSubrIndex = getLocalSubrIndex(privDict);
+            CompiledCharString compiled = CompiledCharString.compile(bytes, globalSubrIndex,
+                    localSubrIndex);
+            if (compiled.isSupported)
             {
-                bytes = charStrings[0]; // .notdef
+                type2 = new CIDKeyedType2CharString(reader, fontName, cid, gid, bytes,
+                        globalSubrIndex, localSubrIndex, compiled, getDefaultWidthX(privDict),
+                        getNominalWidthX(privDict));
             }
-            Type2CharStringParser parser = new Type2CharStringParser(fontName, cid);
-            List<Object> type2seq = parser.parse(bytes, globalSubrIndex, getLocalSubrIndex(gid));
-            type2 = new CIDKeyedType2CharString(reader, fontName, cid, gid, type2seq,
-                                                getDefaultWidthX(gid), getNominalWidthX(gid));
-            charStringCache.put(cid, type2);
+            else
+            {
+                Type2CharStringParser parser = new Type2CharStringParser(fontName, cid);
+                List<Object> type2seq = parser.parse(bytes, globalSubrIndex, localSubrIndex);
+                type2 = new CIDKeyedType2CharString(reader, fontName, cid, gid, type2seq,
+                        getDefaultWidthX(privDict), getNominalWidthX(privDict));
+            }
+            cache.put(cid, type2);
         }
         return type2;
     }
 
+    private CharStringCache<CIDKeyedType2CharString> getCharStringCache()
+    {
+        CharStringCache<CIDKeyedType2CharString> cache = charStringCache;
+        if (cache == null)
+        {
+            synchronized (this)
+            {
+                cache = charStringCache;
+                if (cache == null)
+                {
+                    cache = new CharStringCache<CIDKeyedType2CharString>(
+                            CharStringCache.DEFAULT_SIZE, getCharStringIndex().getCount());
+                    charStringCache = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
     @Override
     public List<Number> getFontMatrix()
     {
@@ -259,7 +303,15 @@ public class CFFCIDFont extends CFFFont
     public float getWidth(String selector) throws IOException
     {
         int cid = selectorToCID(selector);
-        return getType2CharString(cid).getWidth();
+        int gid = charset.getGIDForCID(cid);
+        CharStringCache<CIDKeyedType2CharString> cache = getCharStringCache();
+        int width = cache.getWidth(gid);
+        if (width == CharStringCache.NO_WIDTH)
+        {
+            width = getType2CharString(cid).getWidth();
+            cache.putWidth(gid, width);
+        }
+        return width;
     }
 
     @Override
@@ -36,7 +36,17 @@ public abstract class CFFFont implements FontBoxFont
     protected String fontName;
     protected final Map<String, Object> topDict = new LinkedHashMap<String, Object>();
     protected CFFCharset charset;
+    /**
+     * The charstrings of a font which is built by a subclass. If set, they are used instead of
+     * those read by the parser.
+     *
+     * @deprecated the parser reads the charstrings on demand and doesn't set this field.
+     */
+    @Deprecated
     protected byte[][] charStrings;
+    private CFFIndex charStringIndex;
+    private byte[][] wrappedCharStrings;
+    private CFFIndex wrappedCharStringIndex;
     protected byte[][] globalSubrIndex;
     private CFFParser.ByteSource source;
 
@@ -128,7 +138,36 @@ public abstract class CFFFont implements FontBoxFont
      */
     public final List<byte[]> getCharStringBytes()
     {
-        return Arrays.asList(charStrings);
+        return getCharStringIndex().asList();
+    }
+
+    /**
+     * Sets the charstrings read by the parser.
+     */
+    final void setCharStringIndex(CFFIndex charStringIndex)
+    {
+        this.charStringIndex = charStringIndex;
+    }
+
+    /**
+     * Returns the charstrings, those set by a subclass in {@link #charStrings} take precedence.
+     */
+    final CFFIndex getCharStringIndex()
+    {
+        byte[][] legacyCharStrings = charStrings;
+        if (legacyCharStrings == null)
+        {
+            return charStringIndex;
+        }
+        synchronized (this)
+        {
+            if (wrappedCharStrings != legacyCharStrings)
+            {
+                wrappedCharStringIndex = CFFIndex.wrap(legacyCharStrings);
+                wrappedCharStrings = legacyCharStrings;
+            }
+            return wrappedCharStringIndex;
+        }
     }
 
     /**
@@ -152,7 +191,7 @@ public abstract class CFFFont implements FontBoxFont
      */
     public int getNumCharStrings()
     {
-        return charStrings.length;
+        return getCharStringIndex().getCount();
     }
 
     /**
@@ -187,7 +226,8 @@ public abstract class CFFFont implements FontBoxFont
     public String toString()
     {
         return getClass().getSimpleName() + "[name=" + fontName + ", topDict=" + topDict
-                + ", charset=" + charset + ", charStrings=" + Arrays.deepToString(charStrings)
+                + ", charset=" + charset + ", charStrings="
+                + Arrays.deepToString(getCharStringIndex().toArray())
                 + "]";
     }
 }
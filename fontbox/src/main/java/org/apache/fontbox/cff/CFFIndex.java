@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.fontbox.cff;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * A CFF INDEX whose entries are read from the font data when they're needed. Only the offsets
+ * are decoded up front, so that large fonts with tens of thousands of charstrings don't have to
+ * copy each of them into its own array when the font is loaded. Thread safe.
+ */
+final class CFFIndex
+{
+    private final ByteBuffer data;
+    private final int[] positions;
+
+    private CFFIndex(ByteBuffer data, int[] positions)
+    {
+        this.data = data;
+        this.positions = positions;
+    }
+
+    /**
+     * Reads the offsets of an INDEX.
+     *
+     * @param data the CFF data, which is shared and must not be modified
+     * @param position the position of the INDEX in the data
+     * @return the INDEX, or null if it is empty
+     * @throws IOException if the offsets are invalid
+     */
+    static CFFIndex read(ByteBuffer data, int position) throws IOException
+    {
+        int length = data.limit();
+        if (position < 0 || position + 2 > length)
+        {
+            throw new EOFException();
+        }
+        int count = data.getShort(position) & 0xffff;
+        if (count == 0)
+        {
+            return null;
+        }
+        if (position + 3 > length)
+        {
+            throw new EOFException();
+        }
+        int offSize = data.get(position + 2) & 0xff;
+        int offsetsPosition = position + 3;
+        long dataPosition = offsetsPosition + (long) (count + 1) * offSize;
+        if (dataPosition > length)
+        {
+            throw new EOFException();
+        }
+
+        // entries are stored one after another, starting with the first offset
+        int[] positions = new int[count + 1];
+        int firstOffset = 0;
+        for (int i = 0; i <= count; i++)
+        {
+            int offset = 0;
+            for (int j = 0; j < offSize; j++)
+            {
+                offset = offset << 8 | data.get(offsetsPosition + i * offSize + j) & 0xff;
+            }
+            if (offset > length)
+            {
+                throw new IOException("illegal offset value " + offset + " in CFF font");
+            }
+            if (i == 0)
+            {
+                firstOffset = offset;
+            }
+            long entryPosition = dataPosition + offset - firstOffset;
+            if (entryPosition > length)
+            {
+                throw new EOFException();
+            }
+            positions[i] = (int) entryPosition;
+            if (i > 0 && positions[i] < positions[i - 1])
+            {
+                throw new IOException("Negative index data length " +
+                        (positions[i] - positions[i - 1]) + " at " + (i - 1) + " in CFF font");
+            }
+        }
+        return new CFFIndex(data, positions);
+    }
+
+    /**
+     * Creates an INDEX with the given entries, which are copied.
+     *
+     * @param entries the entries
+     * @return the INDEX
+     */
+    static CFFIndex wrap(byte[][] entries)
+    {
+        int[] positions = new int[entries.length + 1];
+        for (int i = 0; i < entries.length; i++)
+        {
+            positions[i + 1] = positions[i] + entries[i].length;
+        }
+        ByteBuffer data = ByteBuffer.allocate(positions[entries.length]);
+        for (byte[] entry : entries)
+        {
+            data.put(entry);
+        }
+        return new CFFIndex(data, positions);
+    }
+
+    /**
+     * Returns the number of entries.
+     */
+    int getCount()
+    {
+        return positions.length - 1;
+    }
+
+    /**
+     * Returns a copy of an entry.
+     *
+     * @param index the index of the entry
+     * @return the entry
+     */
+    byte[] get(int index)
+    {
+        int start = positions[index];
+        byte[] bytes = new byte[positions[index + 1] - start];
+        ByteBuffer buffer = data.duplicate();
+        buffer.position(start);
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Returns copies of all entries.
+     */
+    byte[][] toArray()
+    {
+        byte[][] entries = new byte[getCount()][];
+        for (int i = 0; i < entries.length; i++)
+        {
+            entries[i] = get(i);
+        }
+        return entries;
+    }
+
+    /**
+     * Returns a list view of the entries, which are copied when they're accessed.
+     */
+    List<byte[]> asList()
+    {
+        return new AbstractList<byte[]>()
+        {
+            @Override
+            public byte[] get(int index)
+            {
+                if (index < 0 || index >= size())
+                {
+                    throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+                }
+                return CFFIndex.this.get(index);
+            }
+
+            @Override
+            public int size()
+            {
+                return getCount();
+            }
+        };
+    }
+}
@@ -17,13 +17,16 @@
 package org.apache.fontbox.cff;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -84,26 +87,7 @@ public class CFFParser
      */
     public List<CFFFont> parse(byte[] bytes) throws IOException
     {
-        CFFDataInput input = new CFFDataInput(bytes);
-
-        String firstTag = readTagName(input);
-        // try to determine which kind of font we have
-        if (TAG_OTTO.equals(firstTag))
-        {
-            input = createTaggedCFFDataInput(input, bytes);
-        }
-        else if (TAG_TTCF.equals(firstTag))
-        {
-            throw new IOException("True Type Collection fonts are not supported.");
-        }
-        else if (TAG_TTFONLY.equals(firstTag))
-        {
-            throw new IOException("OpenType fonts containing a true type font are not supported.");
-        }
-        else
-        {
-            input.setPosition(0);
-        }
+        CFFDataInput input = createDataInput(bytes);
 
         @SuppressWarnings("unused")
         Header header = readHeader(input);
@@ -127,6 +111,69 @@ public class CFFParser
         return fonts;
     }
 
+    /**
+     * Reads the registry, ordering and supplement of the first font in the CFF data, without
+     * parsing charsets, charstrings or private dictionaries. This is much faster than
+     * {@link #parse(byte[])} for large CID-keyed fonts when only the character collection is
+     * needed.
+     *
+     * @param bytes the CFF data, or an OpenType font with CFF outlines
+     * @return an array with the registry, the ordering and the supplement, or null if the font
+     * isn't CID-keyed
+     * @throws IOException If there is an error reading the data
+     */
+    public String[] parseROS(byte[] bytes) throws IOException
+    {
+        CFFDataInput input = createDataInput(bytes);
+
+        readHeader(input);
+        String[] nameIndex = readStringIndexData(input);
+        byte[][] topDictIndex = readIndexData(input);
+        if (nameIndex == null || topDictIndex == null || topDictIndex.length == 0)
+        {
+            throw new IOException("Name index or top dict index missing in CFF font");
+        }
+        DictData topDict = readDictData(new CFFDataInput(topDictIndex[0]));
+        DictData.Entry rosEntry = topDict.getEntry("ROS");
+        if (rosEntry == null)
+        {
+            return null;
+        }
+        stringIndex = readStringIndexData(input);
+        if (stringIndex == null)
+        {
+            stringIndex = new String[0];
+        }
+        return new String[] { readString(rosEntry.getNumber(0).intValue()),
+                readString(rosEntry.getNumber(1).intValue()),
+                Integer.toString(rosEntry.getNumber(2).intValue()) };
+    }
+
+    private CFFDataInput createDataInput(byte[] bytes) throws IOException
+    {
+        CFFDataInput input = new CFFDataInput(bytes);
+
+        String firstTag = readTagName(input);
+        // try to determine which kind of font we have
+        if (TAG_OTTO.equals(firstTag))
+        {
+            input = createTaggedCFFDataInput(input, bytes);
+        }
+        else if (TAG_TTCF.equals(firstTag))
+        {
+            throw new IOException("True Type Collection fonts are not supported.");
+        }
+        else if (TAG_TTFONLY.equals(firstTag))
+        {
+            throw new IOException("OpenType fonts containing a true type font are not supported.");
+        }
+        else
+        {
+            input.setPosition(0);
+        }
+        return input;
+    }
+
     private CFFDataInput createTaggedCFFDataInput(CFFDataInput input, byte[] bytes) throws IOException
     {
         // this is OpenType font containing CFF data
@@ -477,11 +524,16 @@ public class CFFParser
         font.addValueToTopDict("StrokeWidth", topDict.getNumber("StrokeWidth", 0));
         font.addValueToTopDict("XUID", topDict.getArray("XUID", null));
 
-        // charstrings index
+        // charstrings index, the charstrings are read when they're needed
+        ByteBuffer data = input.getReadOnlyBuffer();
         DictData.Entry charStringsEntry = topDict.getEntry("CharStrings");
         int charStringsOffset = charStringsEntry.getNumber(0).intValue();
-        input.setPosition(charStringsOffset);
-        byte[][] charStringsIndex = readIndexData(input);
+        CFFIndex charStringsIndex = CFFIndex.read(data, charStringsOffset);
+        if (charStringsIndex == null)
+        {
+            throw new IOException("CharStrings INDEX is empty in font " + name);
+        }
+        int numCharStrings = charStringsIndex.getCount();
         
         // charset
         DictData.Entry charsetEntry = topDict.getEntry("charset");
@@ -504,7 +556,7 @@ public class CFFParser
             else
             {
                 input.setPosition(charsetId);
-                charset = readCharset(input, charStringsIndex.length, isCIDFont);
+                charset = readCharset(input, numCharStrings, isCIDFont);
             }
         }
         else
@@ -512,7 +564,7 @@ public class CFFParser
             if (isCIDFont)
             {
                 // a CID font with no charset does not default to any predefined charset
-                charset = new EmptyCharset(charStringsIndex.length);
+                charset = new EmptyCharset(numCharStrings);
             }
             else
             {
@@ -522,12 +574,12 @@ public class CFFParser
         font.setCharset(charset);
 
         // charstrings dict
-        font.charStrings = charStringsIndex;
+        font.setCharStringIndex(charStringsIndex);
 
         // format-specific dictionaries
         if (isCIDFont)
         {
-            parseCIDFontDicts(input, topDict, (CFFCIDFont) font, charStringsIndex.length);
+            parseCIDFontDicts(input, data, topDict, (CFFCIDFont) font, numCharStrings);
 
             List<Number> privMatrix = null;
             List<Map<String, Object>> fontDicts = ((CFFCIDFont) font).getFontDicts();
@@ -597,10 +649,10 @@ public class CFFParser
     }
 
     /**
-     * Parse dictionaries specific to a CIDFont.
+     * Parse dictionaries specific to a CIDFont. The Private DICTs are parsed when they're needed.
      */
-    private void parseCIDFontDicts(CFFDataInput input, DictData topDict, CFFCIDFont font, int nrOfcharStrings)
-            throws IOException
+    private void parseCIDFontDicts(CFFDataInput input, ByteBuffer data, DictData topDict,
+                                   CFFCIDFont font, int nrOfcharStrings) throws IOException
     {
         // In a CIDKeyed Font, the Private dictionary isn't in the Top Dict but in the Font dict
         // which can be accessed by a lookup using FDArray and FDSelect
@@ -615,15 +667,16 @@ public class CFFParser
         input.setPosition(fontDictOffset);
         byte[][] fdIndex = readIndexData(input);
 
-        List<Map<String, Object>> privateDictionaries = new LinkedList<Map<String, Object>>();
         List<Map<String, Object>> fontDictionaries = new LinkedList<Map<String, Object>>();
+        int[] privateOffsets = new int[fdIndex.length];
+        int[] privateSizes = new int[fdIndex.length];
 
-        for (byte[] bytes : fdIndex)
+        for (int i = 0; i < fdIndex.length; i++)
         {
-            CFFDataInput fontDictInput = new CFFDataInput(bytes);
+            CFFDataInput fontDictInput = new CFFDataInput(fdIndex[i]);
             DictData fontDict = readDictData(fontDictInput);
 
-            // read private dict
+            // private dict
             DictData.Entry privateEntry = fontDict.getEntry("Private");
             if (privateEntry == null)
             {
@@ -639,21 +692,13 @@ public class CFFParser
             // TODO OD-4 : Add here other keys
             fontDictionaries.add(fontDictMap);
 
-            int privateOffset = privateEntry.getNumber(1).intValue();
-            input.setPosition(privateOffset);
-            int privateSize = privateEntry.getNumber(0).intValue();
-            DictData privateDict = readDictData(input, privateSize);
-
-            // populate private dict
-            Map<String, Object> privDict = readPrivateDict(privateDict);
-            privateDictionaries.add(privDict);
-
-            // local subrs
-            int localSubrOffset = (Integer) privateDict.getNumber("Subrs", 0);
-            if (localSubrOffset > 0)
+            privateOffsets[i] = privateEntry.getNumber(1).intValue();
+            privateSizes[i] = privateEntry.getNumber(0).intValue();
+            if (privateOffsets[i] < 0 || privateSizes[i] < 0 ||
+                (long) privateOffsets[i] + privateSizes[i] > data.limit())
             {
-                input.setPosition(privateOffset + localSubrOffset);
-                privDict.put("Subrs", readIndexData(input));
+                throw new IOException("Private DICT of FD " + i + " is out of bounds in font " +
+                                      font.getName());
             }
         }
 
@@ -668,11 +713,36 @@ public class CFFParser
         // font.addValueToPrivateDict("nominalWidthX", 0);
 
         font.setFontDict(fontDictionaries);
-        font.setPrivDict(privateDictionaries);
+        font.setPrivDicts(new PrivateDicts(data, privateOffsets, privateSizes, debugFontName));
         font.setFdSelect(fdSelect);
     }
 
-    private Map<String, Object> readPrivateDict(DictData privateDict)
+    /**
+     * Reads a Private DICT and its local subrs.
+     */
+    private static Map<String, Object> readPrivateDict(ByteBuffer data, int privateOffset,
+                                                       int privateSize) throws IOException
+    {
+        byte[] bytes = new byte[privateSize];
+        ByteBuffer buffer = data.duplicate();
+        buffer.position(privateOffset);
+        buffer.get(bytes);
+        DictData privateDict = readDictData(new CFFDataInput(bytes), privateSize);
+
+        // populate private dict
+        Map<String, Object> privDict = readPrivateDict(privateDict);
+
+        // local subrs
+        int localSubrOffset = (Integer) privateDict.getNumber("Subrs", 0);
+        if (localSubrOffset > 0)
+        {
+            CFFIndex localSubrIndex = CFFIndex.read(data, privateOffset + localSubrOffset);
+            privDict.put("Subrs", localSubrIndex != null ? localSubrIndex.toArray() : null);
+        }
+        return privDict;
+    }
+
+    private static Map<String, Object> readPrivateDict(DictData privateDict)
     {
         Map<String, Object> privDict = new LinkedHashMap<String, Object>(17);
         privDict.put("BlueValues", privateDict.getDelta("BlueValues", null));
@@ -1551,6 +1621,67 @@ public class CFFParser
         }
     }
 
+    /**
+     * Inner class representing the Private DICTs of a CIDFont, which are parsed together with
+     * their local subrs when they're first needed. Fonts with dozens of FDs usually only use a
+     * few of them in a document.
+     */
+    static final class PrivateDicts
+    {
+        private final ByteBuffer data;
+        private final int[] offsets;
+        private final int[] sizes;
+        private final AtomicReferenceArray<Map<String, Object>> dicts;
+        private final String fontName;
+
+        PrivateDicts(ByteBuffer data, int[] offsets, int[] sizes, String fontName)
+        {
+            this.data = data;
+            this.offsets = offsets;
+            this.sizes = sizes;
+            this.fontName = fontName;
+            this.dicts = new AtomicReferenceArray<Map<String, Object>>(offsets.length);
+        }
+
+        /**
+         * Returns the number of Private DICTs.
+         */
+        int size()
+        {
+            return offsets.length;
+        }
+
+        /**
+         * Returns a Private DICT, parsing it if it hasn't been used before. An invalid Private
+         * DICT is only detected here, after the font has been loaded, so it is logged and
+         * replaced by an empty one, i.e. the defaults are used.
+         *
+         * @param index the index of the FD
+         * @return the Private DICT
+         */
+        Map<String, Object> get(int index)
+        {
+            Map<String, Object> dict = dicts.get(index);
+            if (dict == null)
+            {
+                Map<String, Object> parsed;
+                try
+                {
+                    parsed = readPrivateDict(data, offsets[index], sizes[index]);
+                }
+                catch (IOException e)
+                {
+                    LOG.warn("Invalid Private DICT of FD " + index + " in font " + fontName
+                            + ", using the defaults", e);
+                    parsed = Collections.<String, Object>emptyMap();
+                }
+                dicts.compareAndSet(index, null, parsed);
+                dict = dicts.get(index);
+            }
+            return dict;
+        }
+    }
+
     @Override
     public String toString()
     {
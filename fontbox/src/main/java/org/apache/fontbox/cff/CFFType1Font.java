@@ -21,7 +21,6 @@ import java.io.IOException;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import org.apache.fontbox.EncodedFont;
 import org.apache.fontbox.type1.Type1CharStringReader;
 
@@ -36,8 +35,7 @@ public class CFFType1Font extends CFFFont implements EncodedFont
     private final Map<String, Object> privateDict = new LinkedHashMap<String, Object>();
     private CFFEncoding encoding;
 
-    private final Map<Integer, Type2CharString> charStringCache =
-            new ConcurrentHashMap<Integer, Type2CharString>();
+    private volatile CharStringCache<Type2CharString> charStringCache;
 
     private final PrivateType1CharStringReader reader = new PrivateType1CharStringReader();
 
@@ -63,7 +61,15 @@ public class CFFType1Font extends CFFFont implements EncodedFont
     @Override
     public float getWidth(String name) throws IOException
     {
-        return getType1CharString(name).getWidth();
+        int gid = nameToGID(name);
+        CharStringCache<Type2CharString> cache = getCharStringCache();
+        int width = cache.getWidth(gid);
+        if (width == CharStringCache.NO_WIDTH)
+        {
+            width = getType2CharString(gid, name).getWidth();
+            cache.putWidth(gid, width);
+        }
+        return width;
     }
 
     @Override
@@ -124,28 +130,59 @@ public class CFFType1Font extends CFFFont implements EncodedFont
     // Returns the Type 2 charstring for the given GID, with name for debugging
     private Type2CharString getType2CharString(int gid, String name) throws IOException
     {
-        Type2CharString type2 = charStringCache.get(gid);
+        CharStringCache<Type2CharString> cache = getCharStringCache();
+        Type2CharString type2 = cache.get(gid);
         if (type2 == null)
         {
-            byte[] bytes = null;
-            if (gid < charStrings.length)
+            byte[] bytes;
+            if (gid < getCharStringIndex().getCount())
             {
-                bytes = charStrings[gid];
+                bytes = getCharStringIndex().get(gid);
             }
-            if (bytes == null)
+            else
             {
                 // .notdef
-                bytes = charStrings[0];
+                bytes = getCharStringIndex().get(0);
+            }
+            byte[][] localSubrIndex = getLocalSubrIndex();
+            CompiledCharString compiled = CompiledCharString.compile(bytes, globalSubrIndex,
+                    localSubrIndex);
+            if (compiled.isSupported)
+            {
+                type2 = new Type2CharString(reader, fontName, name, gid, bytes, globalSubrIndex,
+                        localSubrIndex, compiled, getDefaultWidthX(), getNominalWidthX());
+            }
+            else
+            {
+                Type2CharStringParser parser = new Type2CharStringParser(fontName, name);
+                List<Object> type2seq = parser.parse(bytes, globalSubrIndex, localSubrIndex);
+                type2 = new Type2CharString(reader, fontName, name, gid, type2seq,
+                        getDefaultWidthX(), getNominalWidthX());
             }
-            Type2CharStringParser parser = new Type2CharStringParser(fontName, name);
-            List<Object> type2seq = parser.parse(bytes, globalSubrIndex, getLocalSubrIndex());
-            type2 = new Type2CharString(reader, fontName, name, gid, type2seq, getDefaultWidthX(),
-                    getNominalWidthX());
-            charStringCache.put(gid, type2);
+            cache.put(gid, type2);
         }
         return type2;
     }
 
+    private CharStringCache<Type2CharString> getCharStringCache()
+    {
+        CharStringCache<Type2CharString> cache = charStringCache;
+        if (cache == null)
+        {
+            synchronized (this)
+            {
+                cache = charStringCache;
+                if (cache == null)
+                {
+                    cache = new CharStringCache<Type2CharString>(CharStringCache.DEFAULT_SIZE,
+                            getCharStringIndex().getCount());
+                    charStringCache = cache;
+                }
+            }
+        }
+        return cache;
+    }
+
     /**
      * Returns the private dictionary.
      *
@@ -48,6 +48,30 @@ public class CIDKeyedType2CharString extends Type2CharString
         this.cid = cid;
     }
 
+    /**
+     * Constructor for a compiled charstring.
+     *
+     * @param font Parent CFF font
+     * @param fontName font name
+     * @param cid CID
+     * @param gid GID
+     * @param bytes the charstring
+     * @param globalSubrIndex the global subroutines
+     * @param localSubrIndex the local subroutines
+     * @param compiled the compiled charstring, which must be supported
+     * @param defaultWidthX default width
+     * @param nomWidthX nominal width
+     */
+    CIDKeyedType2CharString(Type1CharStringReader font, String fontName, int cid, int gid,
+                            byte[] bytes, byte[][] globalSubrIndex, byte[][] localSubrIndex,
+                            CompiledCharString compiled, int defaultWidthX, int nomWidthX)
+    {
+        // glyph name is for debugging only
+        super(font, fontName, String.format(Locale.US, "%04x", cid), gid, bytes, globalSubrIndex,
+                localSubrIndex, compiled, defaultWidthX, nomWidthX);
+        this.cid = cid;
+    }
+
     /**
      * Returns the CID (character id) of this charstring.
      */
@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.fontbox.cff;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The decoded charstrings of a CFF font. The most recently used charstrings are kept together
+ * with their outlines, so that large CJK fonts don't keep every glyph which was ever rendered.
+ * The advance widths are small and are kept for all glyphs.
+ *
+ * @param <T> the type of the charstrings
+ */
+final class CharStringCache<T extends Type2CharString>
+{
+    /**
+     * The default number of charstrings which are kept per font.
+     */
+    static final int DEFAULT_SIZE = 1024;
+
+    /**
+     * Returned by {@link #getWidth(int)} for widths which aren't cached.
+     */
+    static final int NO_WIDTH = Integer.MIN_VALUE;
+
+    private final int maxEntries;
+    private final Map<Integer, T> charStrings;
+    private final int[] widths;
+
+    /**
+     * Creates a cache.
+     *
+     * @param maxEntries the maximum number of charstrings to keep
+     * @param numGlyphs the number of glyphs in the font
+     */
+    CharStringCache(final int maxEntries, int numGlyphs)
+    {
+        this.maxEntries = maxEntries;
+        charStrings = new LinkedHashMap<Integer, T>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = -2934751906453871742L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, T> eldest)
+            {
+                return size() > CharStringCache.this.maxEntries;
+            }
+        };
+        widths = new int[numGlyphs];
+        Arrays.fill(widths, NO_WIDTH);
+    }
+
+    /**
+     * Returns a cached charstring.
+     *
+     * @param key the GID or CID of the charstring
+     * @return the charstring, or null if it isn't in the cache
+     */
+    synchronized T get(int key)
+    {
+        return charStrings.get(key);
+    }
+
+    /**
+     * Adds a charstring to the cache.
+     *
+     * @param key the GID or CID of the charstring
+     * @param charString the charstring
+     */
+    synchronized void put(int key, T charString)
+    {
+        charStrings.put(key, charString);
+    }
+
+    /**
+     * Returns the cached advance width of a glyph.
+     *
+     * @param gid the GID
+     * @return the width, or {@link #NO_WIDTH} if it isn't in the cache
+     */
+    int getWidth(int gid)
+    {
+        if (gid < 0 || gid >= widths.length)
+        {
+            return NO_WIDTH;
+        }
+        // int writes are atomic, at worst a width is computed twice
+        return widths[gid];
+    }
+
+    /**
+     * Adds the advance width of a glyph to the cache.
+     *
+     * @param gid the GID
+     * @param width the width
+     */
+    void putWidth(int gid, int width)
+    {
+        if (gid >= 0 && gid < widths.length)
+        {
+            widths[gid] = width;
+        }
+    }
+}
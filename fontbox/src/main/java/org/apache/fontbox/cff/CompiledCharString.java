@@ -0,0 +1,315 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.fontbox.cff;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A Type 2 charstring compiled into primitive arrays. The operands of all operators are kept in
+ * one float array, the operators and their operand counts in an int array, and subroutine calls
+ * are inlined. This allows {@link Type2CharString} to build the outline in a single pass, without
+ * the boxed numbers and command objects of {@link Type2CharStringParser}.
+ *
+ * @see Type2CharString
+ */
+final class CompiledCharString
+{
+    // operators, the two-byte operators are numbered ESCAPE + second byte
+    static final int HSTEM = 1;
+    static final int VSTEM = 3;
+    static final int VMOVETO = 4;
+    static final int RLINETO = 5;
+    static final int HLINETO = 6;
+    static final int VLINETO = 7;
+    static final int RRCURVETO = 8;
+    static final int CALLSUBR = 10;
+    static final int RETURN = 11;
+    static final int ESCAPE = 32;
+    static final int ENDCHAR = 14;
+    static final int HSTEMHM = 18;
+    static final int HINTMASK = 19;
+    static final int CNTRMASK = 20;
+    static final int RMOVETO = 21;
+    static final int HMOVETO = 22;
+    static final int VSTEMHM = 23;
+    static final int RCURVELINE = 24;
+    static final int RLINECURVE = 25;
+    static final int VVCURVETO = 26;
+    static final int HHCURVETO = 27;
+    static final int CALLGSUBR = 29;
+    static final int VHCURVETO = 30;
+    static final int HVCURVETO = 31;
+    static final int HFLEX = ESCAPE + 34;
+    static final int FLEX = ESCAPE + 35;
+    static final int HFLEX1 = ESCAPE + 36;
+    static final int FLEX1 = ESCAPE + 37;
+
+    // the nesting limit of subroutines in the Type 2 charstring format
+    private static final int MAX_SUBR_DEPTH = 10;
+
+    final float[] operands;
+    final int[] operators; // pairs of operator and operand count
+    final boolean isSupported;
+
+    private CompiledCharString(float[] operands, int[] operators, boolean isSupported)
+    {
+        this.operands = operands;
+        this.operators = operators;
+        this.isSupported = isSupported;
+    }
+
+    /**
+     * Compiles a charstring.
+     *
+     * @param bytes the charstring
+     * @param globalSubrIndex the global subroutines, may be null
+     * @param localSubrIndex the local subroutines, may be null
+     * @return the compiled charstring
+     * @throws IOException if the charstring is truncated
+     */
+    static CompiledCharString compile(byte[] bytes, byte[][] globalSubrIndex,
+                                      byte[][] localSubrIndex) throws IOException
+    {
+        Compiler compiler = new Compiler(globalSubrIndex, localSubrIndex);
+        compiler.compile(bytes, 0);
+        for (int i = 0; i < compiler.operatorCount; i += 2)
+        {
+            if (compiler.operators[i] == RETURN)
+            {
+                // only the "return" at the end of a subroutine is removed
+                compiler.isSupported = false;
+            }
+        }
+        return new CompiledCharString(Arrays.copyOf(compiler.operands, compiler.operandCount),
+                Arrays.copyOf(compiler.operators, compiler.operatorCount),
+                compiler.isSupported);
+    }
+
+    private static final class Compiler
+    {
+        private final byte[][] globalSubrIndex;
+        private final byte[][] localSubrIndex;
+        private float[] operands = new float[64];
+        private int operandCount;
+        private int[] operators = new int[32];
+        private int operatorCount;
+        private int firstPendingOperand;
+        private int hstemCount;
+        private int vstemCount;
+        private boolean isSupported = true;
+
+        Compiler(byte[][] globalSubrIndex, byte[][] localSubrIndex)
+        {
+            this.globalSubrIndex = globalSubrIndex;
+            this.localSubrIndex = localSubrIndex;
+        }
+
+        void compile(byte[] bytes, int depth) throws IOException
+        {
+            DataInput input = new DataInput(bytes);
+            boolean localSubroutineIndexProvided = localSubrIndex != null && localSubrIndex.length > 0;
+            boolean globalSubroutineIndexProvided = globalSubrIndex != null && globalSubrIndex.length > 0;
+
+            while (input.hasRemaining())
+            {
+                int b0 = input.readUnsignedByte();
+                if (b0 == CALLSUBR && localSubroutineIndexProvided)
+                {
+                    callSubr(localSubrIndex, depth);
+                }
+                else if (b0 == CALLGSUBR && globalSubroutineIndexProvided)
+                {
+                    callSubr(globalSubrIndex, depth);
+                }
+                else if (b0 <= 27 || b0 >= 29 && b0 <= 31)
+                {
+                    readOperator(b0, input);
+                }
+                else
+                {
+                    addOperand(readNumber(b0, input));
+                }
+            }
+        }
+
+        private void callSubr(byte[][] subrIndex, int depth) throws IOException
+        {
+            if (operandCount == firstPendingOperand || depth >= MAX_SUBR_DEPTH)
+            {
+                // malformed, the parser fails on these
+                isSupported = false;
+                return;
+            }
+            float value = operands[--operandCount];
+            int operand = (int) value;
+            if (operand != value)
+            {
+                isSupported = false;
+                return;
+            }
+            int nSubrs = subrIndex.length;
+            int bias;
+            if (nSubrs < 1240)
+            {
+                bias = 107;
+            }
+            else if (nSubrs < 33900)
+            {
+                bias = 1131;
+            }
+            else
+            {
+                bias = 32768;
+            }
+            int subrNumber = bias + operand;
+            if (subrNumber < 0)
+            {
+                isSupported = false;
+            }
+            else if (subrNumber < nSubrs)
+            {
+                compile(subrIndex[subrNumber], depth + 1);
+                // remove the "return" operator, its operands are used by the next operator
+                if (operatorCount > 0 && operandCount == firstPendingOperand
+                        && operators[operatorCount - 2] == RETURN)
+                {
+                    firstPendingOperand -= operators[operatorCount - 1];
+                    operatorCount -= 2;
+                }
+            }
+        }
+
+        private void readOperator(int b0, DataInput input) throws IOException
+        {
+            int count = operandCount - firstPendingOperand;
+            if (b0 == HSTEM || b0 == HSTEMHM)
+            {
+                hstemCount += count / 2;
+            }
+            else if (b0 == VSTEM || b0 == HINTMASK || b0 == CNTRMASK || b0 == VSTEMHM)
+            {
+                vstemCount += count / 2;
+            }
+
+            int operator = b0;
+            if (b0 == 12)
+            {
+                operator = ESCAPE + input.readUnsignedByte();
+            }
+            else if (b0 == HINTMASK || b0 == CNTRMASK)
+            {
+                // the mask isn't needed for the outline
+                int hintCount = hstemCount + vstemCount;
+                for (int i = (hintCount + 7) / 8; i > 0; i--)
+                {
+                    input.readUnsignedByte();
+                }
+            }
+
+            if (!isSupported(operator, count))
+            {
+                isSupported = false;
+            }
+            if (operatorCount == operators.length)
+            {
+                operators = Arrays.copyOf(operators, operatorCount * 2);
+            }
+            operators[operatorCount++] = operator;
+            operators[operatorCount++] = count;
+            firstPendingOperand = operandCount;
+        }
+
+        private static boolean isSupported(int operator, int count)
+        {
+            switch (operator)
+            {
+                case HSTEM:
+                case VSTEM:
+                case VMOVETO:
+                case RLINETO:
+                case HLINETO:
+                case VLINETO:
+                case RRCURVETO:
+                case ENDCHAR:
+                case HSTEMHM:
+                case HINTMASK:
+                case CNTRMASK:
+                case RMOVETO:
+                case HMOVETO:
+                case VSTEMHM:
+                case RCURVELINE:
+                case RLINECURVE:
+                case VVCURVETO:
+                case HHCURVETO:
+                case VHCURVETO:
+                case HVCURVETO:
+                case RETURN:
+                    return true;
+                case HFLEX:
+                    return count >= 7;
+                case FLEX:
+                    return count >= 12;
+                case HFLEX1:
+                    return count >= 9;
+                case FLEX1:
+                    return count >= 11;
+                default:
+                    // arithmetic and unknown operators are left to the Type 1 conversion
+                    return false;
+            }
+        }
+
+        private void addOperand(float value)
+        {
+            if (operandCount == operands.length)
+            {
+                operands = Arrays.copyOf(operands, operandCount * 2);
+            }
+            operands[operandCount++] = value;
+        }
+
+        private float readNumber(int b0, DataInput input) throws IOException
+        {
+            if (b0 == 28)
+            {
+                return input.readShort();
+            }
+            else if (b0 >= 32 && b0 <= 246)
+            {
+                return b0 - 139;
+            }
+            else if (b0 >= 247 && b0 <= 250)
+            {
+                int b1 = input.readUnsignedByte();
+                return (b0 - 247) * 256 + b1 + 108;
+            }
+            else if (b0 >= 251 && b0 <= 254)
+            {
+                int b1 = input.readUnsignedByte();
+                return -(b0 - 251) * 256 - b1 - 108;
+            }
+            else
+            {
+                short value = input.readShort();
+                // The lower bytes are representing the digits after the decimal point
+                double fraction = input.readUnsignedShort() / 65535d;
+                return (float) (value + fraction);
+            }
+        }
+    }
+}
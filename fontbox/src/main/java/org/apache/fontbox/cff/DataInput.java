@@ -18,6 +18,7 @@ package org.apache.fontbox.cff;
 
 import java.io.EOFException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import org.apache.fontbox.util.Charsets;
 
@@ -68,6 +69,15 @@ public class DataInput
         bufferPosition = position;
     }
 
+    /**
+     * Returns a read-only view of the buffer, which shares its content with this input.
+     * @return the buffer
+     */
+    ByteBuffer getReadOnlyBuffer()
+    {
+        return ByteBuffer.wrap(inputBuffer).asReadOnlyBuffer();
+    }
+
     /** 
      * Returns the buffer as an ISO-8859-1 string.
      * @return the buffer as string
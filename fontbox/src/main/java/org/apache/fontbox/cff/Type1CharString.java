@@ -87,6 +87,22 @@ public class Type1CharString
         return glyphName;
     }
 
+    /**
+     * Returns the font which is used to look up the components of accented characters.
+     */
+    Type1CharStringReader getFontReader()
+    {
+        return font;
+    }
+
+    /**
+     * Returns the name of the font, for debugging only.
+     */
+    String getFontName()
+    {
+        return fontName;
+    }
+
     /**
      * Returns the bounds of the renderer path.
      * @return the bounds as Rectangle2D
@@ -16,27 +16,48 @@
  */
 package org.apache.fontbox.cff;
 
+import java.awt.geom.AffineTransform;
+import java.awt.geom.GeneralPath;
+import java.awt.geom.Rectangle2D;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.fontbox.encoding.StandardEncoding;
 import org.apache.fontbox.type1.Type1CharStringReader;
 
 /**
  * Represents a Type 2 CharString by converting it into an equivalent Type 1 CharString.
+ *
+ * <p>CharStrings which are loaded from a CFF font are compiled into a {@link CompiledCharString}
+ * and rendered from it directly. The Type 2 and Type 1 sequences are then only built on demand.
  * 
  * @author Villu Ruusmann
  * @author John Hewson
  */
 public class Type2CharString extends Type1CharString
 {
+    private static final Log LOG = LogFactory.getLog(Type2CharString.class);
+
     private float defWidthX = 0;
     private float nominalWidthX = 0;
     private int pathCount = 0;
-    private final List<Object> type2sequence;
+    private List<Object> type2sequence;
     private final int gid;
 
+    // the compiled charstring and its source, null if created from a Type 2 sequence
+    private final CompiledCharString compiled;
+    private final byte[] bytes;
+    private final byte[][] globalSubrIndex;
+    private final byte[][] localSubrIndex;
+    private volatile GeneralPath compiledPath;
+    private volatile boolean hasCompiledWidth;
+    private int compiledWidth;
+
     /**
      * Constructor.
      * @param font Parent CFF font
@@ -55,9 +76,40 @@ public class Type2CharString extends Type1CharString
         type2sequence = sequence;
         defWidthX = defaultWidthX;
         nominalWidthX = nomWidthX;
+        compiled = null;
+        bytes = null;
+        globalSubrIndex = null;
+        localSubrIndex = null;
         convertType1ToType2(sequence);
     }
 
+    /**
+     * Constructor for a compiled charstring.
+     * @param font Parent CFF font
+     * @param fontName font name
+     * @param glyphName glyph name (or CID as hex string)
+     * @param gid GID
+     * @param bytes the charstring
+     * @param globalSubrIndex the global subroutines
+     * @param localSubrIndex the local subroutines
+     * @param compiled the compiled charstring, which must be supported
+     * @param defaultWidthX default width
+     * @param nomWidthX nominal width
+     */
+    Type2CharString(Type1CharStringReader font, String fontName, String glyphName, int gid,
+                    byte[] bytes, byte[][] globalSubrIndex, byte[][] localSubrIndex,
+                    CompiledCharString compiled, int defaultWidthX, int nomWidthX)
+    {
+        super(font, fontName, glyphName);
+        this.gid = gid;
+        this.bytes = bytes;
+        this.globalSubrIndex = globalSubrIndex;
+        this.localSubrIndex = localSubrIndex;
+        this.compiled = compiled;
+        defWidthX = defaultWidthX;
+        nominalWidthX = nomWidthX;
+    }
+
     /**
      * Return the GID (glyph id) of this charstring.
      */
@@ -69,11 +121,85 @@ public class Type2CharString extends Type1CharString
     /**
      * Returns the Type 2 charstring sequence.
      */
-    public List<Object> getType2Sequence()
+    public synchronized List<Object> getType2Sequence()
     {
+        if (type2sequence == null)
+        {
+            try
+            {
+                Type2CharStringParser parser = new Type2CharStringParser(getFontName(), getName());
+                type2sequence = parser.parse(bytes, globalSubrIndex, localSubrIndex);
+            }
+            catch (IOException e)
+            {
+                // can't happen, the charstring has already been compiled
+                throw new IllegalStateException(e);
+            }
+        }
         return type2sequence;
     }
 
+    @Override
+    public synchronized List<Object> getType1Sequence()
+    {
+        if (type1Sequence == null)
+        {
+            convertType1ToType2(getType2Sequence());
+        }
+        return type1Sequence;
+    }
+
+    @Override
+    public Rectangle2D getBounds()
+    {
+        if (compiled == null)
+        {
+            return super.getBounds();
+        }
+        return getPath().getBounds2D();
+    }
+
+    @Override
+    public int getWidth()
+    {
+        if (compiled == null)
+        {
+            return super.getWidth();
+        }
+        if (!hasCompiledWidth)
+        {
+            compiledWidth = new Renderer(true).render();
+            hasCompiledWidth = true;
+        }
+        return compiledWidth;
+    }
+
+    @Override
+    public GeneralPath getPath()
+    {
+        if (compiled == null)
+        {
+            return super.getPath();
+        }
+        GeneralPath path = compiledPath;
+        if (path == null)
+        {
+            Renderer renderer = new Renderer(false);
+            compiledWidth = renderer.render();
+            hasCompiledWidth = true;
+            path = renderer.path;
+            compiledPath = path;
+        }
+        return path;
+    }
+
+    @Override
+    public String toString()
+    {
+        getType1Sequence();
+        return super.toString();
+    }
+
     /**
      * Converts a sequence of Type 2 commands into a sequence of Type 1 commands.
      * @param sequence the Type 2 char string sequence
@@ -389,4 +515,394 @@ public class Type2CharString extends Type1CharString
         }
         return result;
     }
+
+    /**
+     * Renders a compiled charstring. This gives the same path and width as converting it into a
+     * Type 1 sequence and rendering that, but works directly on the compiled operands.
+     */
+    private final class Renderer
+    {
+        private final float[] operands = compiled.operands;
+        private final boolean widthOnly;
+        private final GeneralPath path = new GeneralPath();
+        private int width = 0;
+        private float currentX = 0;
+        private float currentY = 0;
+
+        // state of the Type 2 to Type 1 conversion
+        private boolean started = false;
+        private int pathCount = 0;
+        private boolean isClosed = false;
+
+        /**
+         * @param widthOnly stop as soon as the width is known
+         */
+        Renderer(boolean widthOnly)
+        {
+            this.widthOnly = widthOnly;
+        }
+
+        /**
+         * Renders the charstring and returns its width.
+         */
+        int render()
+        {
+            int[] operators = compiled.operators;
+            int offset = 0;
+            for (int i = 0; i < operators.length; i += 2)
+            {
+                int count = operators[i + 1];
+                handleOperator(operators[i], offset, count);
+                offset += count;
+                if (widthOnly && started)
+                {
+                    break;
+                }
+            }
+            return width;
+        }
+
+        private void handleOperator(int operator, int offset, int count)
+        {
+            int n;
+            switch (operator)
+            {
+                case CompiledCharString.HSTEM:
+                case CompiledCharString.VSTEM:
+                case CompiledCharString.HSTEMHM:
+                case CompiledCharString.VSTEMHM:
+                case CompiledCharString.HINTMASK:
+                case CompiledCharString.CNTRMASK:
+                    clearStack(offset, count % 2 != 0);
+                    break;
+                case CompiledCharString.VMOVETO:
+                    n = clearStack(offset, count > 1);
+                    markPath();
+                    emit(false);
+                    if (count > n)
+                    {
+                        moveTo(0, operands[offset + n]);
+                    }
+                    break;
+                case CompiledCharString.RMOVETO:
+                    n = clearStack(offset, count > 2);
+                    markPath();
+                    emit(false);
+                    if (count - n >= 2)
+                    {
+                        moveTo(operands[offset + n], operands[offset + n + 1]);
+                    }
+                    break;
+                case CompiledCharString.HMOVETO:
+                    n = clearStack(offset, count > 1);
+                    markPath();
+                    emit(false);
+                    if (count > n)
+                    {
+                        moveTo(operands[offset + n], 0);
+                    }
+                    break;
+                case CompiledCharString.RLINETO:
+                    drawLines(offset, count / 2);
+                    break;
+                case CompiledCharString.HLINETO:
+                    drawAlternatingLine(offset, count, true);
+                    break;
+                case CompiledCharString.VLINETO:
+                    drawAlternatingLine(offset, count, false);
+                    break;
+                case CompiledCharString.RRCURVETO:
+                    drawCurves(offset, count / 6);
+                    break;
+                case CompiledCharString.ENDCHAR:
+                    n = clearStack(offset, count == 5 || count == 1);
+                    closePath();
+                    emit(false);
+                    if (count - n == 4)
+                    {
+                        // deprecated "seac" operator
+                        seac(operands[offset + n], operands[offset + n + 1],
+                                operands[offset + n + 2], operands[offset + n + 3]);
+                    }
+                    break;
+                case CompiledCharString.VHCURVETO:
+                    drawAlternatingCurve(offset, count, false);
+                    break;
+                case CompiledCharString.HVCURVETO:
+                    drawAlternatingCurve(offset, count, true);
+                    break;
+                case CompiledCharString.HFLEX:
+                    curveTo(operands[offset], 0, operands[offset + 1], operands[offset + 2],
+                            operands[offset + 3], 0);
+                    curveTo(operands[offset + 4], 0, operands[offset + 5], -operands[offset + 2],
+                            operands[offset + 6], 0);
+                    break;
+                case CompiledCharString.FLEX:
+                    drawCurves(offset, 2);
+                    break;
+                case CompiledCharString.HFLEX1:
+                    curveTo(operands[offset], operands[offset + 1], operands[offset + 2],
+                            operands[offset + 3], operands[offset + 4], 0);
+                    curveTo(operands[offset + 5], 0, operands[offset + 6], operands[offset + 7],
+                            operands[offset + 8], 0);
+                    break;
+                case CompiledCharString.FLEX1:
+                    drawFlex1(offset);
+                    break;
+                case CompiledCharString.RCURVELINE:
+                    if (count >= 2)
+                    {
+                        drawCurves(offset, (count - 2) / 6);
+                        drawLines(offset + count - 2, 1);
+                    }
+                    break;
+                case CompiledCharString.RLINECURVE:
+                    if (count >= 6)
+                    {
+                        drawLines(offset, (count - 6) / 2);
+                        drawCurves(offset + count - 6, 1);
+                    }
+                    break;
+                case CompiledCharString.VVCURVETO:
+                    drawCurve(offset, count, false);
+                    break;
+                case CompiledCharString.HHCURVETO:
+                    drawCurve(offset, count, true);
+                    break;
+                default:
+                    // the compiler only accepts the operators above
+                    throw new IllegalStateException("Unexpected operator: " + operator);
+            }
+        }
+
+        // returns the number of operands which were consumed by the width
+        private int clearStack(int offset, boolean hasWidth)
+        {
+            if (!started)
+            {
+                emit(false);
+                width = hasWidth ? (int) (operands[offset] + nominalWidthX) : (int) defWidthX;
+                currentX = 0;
+                currentY = 0;
+                return hasWidth ? 1 : 0;
+            }
+            return 0;
+        }
+
+        private void emit(boolean isClosePath)
+        {
+            started = true;
+            isClosed = isClosePath;
+        }
+
+        private void markPath()
+        {
+            if (pathCount > 0)
+            {
+                closePath();
+            }
+            pathCount++;
+        }
+
+        private void closePath()
+        {
+            if (pathCount > 0 && !isClosed)
+            {
+                emit(true);
+                if (path.getCurrentPoint() == null)
+                {
+                    LOG.warn("closepath without initial moveTo in font " + getFontName() +
+                             ", glyph " + getName());
+                }
+                else
+                {
+                    path.closePath();
+                }
+                path.moveTo(currentX, currentY);
+            }
+        }
+
+        private void drawLines(int offset, int lineCount)
+        {
+            for (int i = 0; i < lineCount; i++)
+            {
+                lineTo(operands[offset + i * 2], operands[offset + i * 2 + 1]);
+            }
+        }
+
+        private void drawCurves(int offset, int curveCount)
+        {
+            for (int i = 0; i < curveCount; i++)
+            {
+                int o = offset + i * 6;
+                curveTo(operands[o], operands[o + 1], operands[o + 2], operands[o + 3],
+                        operands[o + 4], operands[o + 5]);
+            }
+        }
+
+        private void drawAlternatingLine(int offset, int count, boolean horizontal)
+        {
+            for (int i = 0; i < count; i++)
+            {
+                if (horizontal)
+                {
+                    lineTo(operands[offset + i], 0);
+                }
+                else
+                {
+                    lineTo(0, operands[offset + i]);
+                }
+                horizontal = !horizontal;
+            }
+        }
+
+        private void drawAlternatingCurve(int offset, int count, boolean horizontal)
+        {
+            int o = offset;
+            int remaining = count;
+            while (remaining >= 4)
+            {
+                boolean last = remaining == 5;
+                float end = last ? operands[o + 4] : 0;
+                if (horizontal)
+                {
+                    curveTo(operands[o], 0, operands[o + 1], operands[o + 2], end,
+                            operands[o + 3]);
+                }
+                else
+                {
+                    curveTo(0, operands[o], operands[o + 1], operands[o + 2], operands[o + 3],
+                            end);
+                }
+                int consumed = last ? 5 : 4;
+                o += consumed;
+                remaining -= consumed;
+                horizontal = !horizontal;
+            }
+        }
+
+        private void drawCurve(int offset, int count, boolean horizontal)
+        {
+            int o = offset;
+            int remaining = count;
+            while (remaining >= 4)
+            {
+                boolean first = remaining % 4 == 1;
+                int p = first ? o + 1 : o;
+                float start = first ? operands[o] : 0;
+                if (horizontal)
+                {
+                    curveTo(operands[p], start, operands[p + 1], operands[p + 2], operands[p + 3],
+                            0);
+                }
+                else
+                {
+                    curveTo(start, operands[p], operands[p + 1], operands[p + 2], 0,
+                            operands[p + 3]);
+                }
+                int consumed = first ? 5 : 4;
+                o += consumed;
+                remaining -= consumed;
+            }
+        }
+
+        private void drawFlex1(int offset)
+        {
+            int dx = 0;
+            int dy = 0;
+            for (int i = 0; i < 5; i++)
+            {
+                dx += (int) operands[offset + i * 2];
+                dy += (int) operands[offset + i * 2 + 1];
+            }
+            drawCurves(offset, 1);
+            float last = operands[offset + 10];
+            boolean horizontal = Math.abs(dx) > Math.abs(dy);
+            curveTo(operands[offset + 6], operands[offset + 7], operands[offset + 8],
+                    operands[offset + 9], horizontal ? last : -dx, horizontal ? -dy : last);
+        }
+
+        private void moveTo(float dx, float dy)
+        {
+            currentX += dx;
+            currentY += dy;
+            path.moveTo(currentX, currentY);
+        }
+
+        private void lineTo(float dx, float dy)
+        {
+            emit(false);
+            currentX += dx;
+            currentY += dy;
+            if (path.getCurrentPoint() == null)
+            {
+                LOG.warn("rlineTo without initial moveTo in font " + getFontName() + ", glyph " +
+                         getName());
+                path.moveTo(currentX, currentY);
+            }
+            else
+            {
+                path.lineTo(currentX, currentY);
+            }
+        }
+
+        private void curveTo(float dx1, float dy1, float dx2, float dy2, float dx3, float dy3)
+        {
+            emit(false);
+            float x1 = currentX + dx1;
+            float y1 = currentY + dy1;
+            float x2 = x1 + dx2;
+            float y2 = y1 + dy2;
+            currentX = x2 + dx3;
+            currentY = y2 + dy3;
+            if (path.getCurrentPoint() == null)
+            {
+                LOG.warn("rrcurveTo without initial moveTo in font " + getFontName() + ", glyph " +
+                         getName());
+                path.moveTo(currentX, currentY);
+            }
+            else
+            {
+                path.curveTo(x1, y1, x2, y2, currentX, currentY);
+            }
+        }
+
+        /**
+         * Standard Encoding Accented Character, makes an accented character from two other
+         * characters.
+         */
+        private void seac(float adx, float ady, float bchar, float achar)
+        {
+            if (widthOnly)
+            {
+                return;
+            }
+            Type1CharStringReader font = getFontReader();
+            // base character
+            String baseName = StandardEncoding.INSTANCE.getName((int) bchar);
+            try
+            {
+                Type1CharString base = font.getType1CharString(baseName);
+                path.append(base.getPath().getPathIterator(null), false);
+            }
+            catch (IOException e)
+            {
+                LOG.warn("invalid seac character in glyph " + getName() + " of font " +
+                         getFontName());
+            }
+            // accent character
+            String accentName = StandardEncoding.INSTANCE.getName((int) achar);
+            try
+            {
+                Type1CharString accent = font.getType1CharString(accentName);
+                AffineTransform at = AffineTransform.getTranslateInstance(adx, ady);
+                path.append(accent.getPath().getPathIterator(at), false);
+            }
+            catch (IOException e)
+            {
+                LOG.warn("invalid seac character in glyph " + getName() + " of font " +
+                         getFontName());
+            }
+        }
+    }
 }
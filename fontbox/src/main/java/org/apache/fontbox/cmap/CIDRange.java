@@ -36,6 +36,36 @@ class CIDRange
         this.cid = cid;
     }
 
+    /**
+     * Returns the first character code of this range.
+     *
+     * @return the start of the range
+     */
+    char getFrom()
+    {
+        return from;
+    }
+
+    /**
+     * Returns the last character code of this range.
+     *
+     * @return the end of the range
+     */
+    char getTo()
+    {
+        return to;
+    }
+
+    /**
+     * Returns the CID of the first character code of this range.
+     *
+     * @return the start CID
+     */
+    int getCid()
+    {
+        return cid;
+    }
+
     /**
      * Maps the given Unicode character to the corresponding CID in this range.
      *
@@ -19,11 +19,13 @@ package org.apache.fontbox.cmap;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.fontbox.util.IntMap;
 
 /**
  * This class represents a CMap file.
@@ -49,12 +51,17 @@ public class CMap
     // code lengths
     private final List<CodespaceRange> codespaceRanges = new ArrayList<CodespaceRange>();
 
-    // Unicode mappings
-    private final Map<Integer,String> charToUnicode = new HashMap<Integer,String>();
+    // mappings while the CMap is being built, null once it has been compacted; these are guarded
+    // by the lock of the CMap, but codeToCidBuilder is volatile, as getMappings() reads it without
+    // the lock to find out whether the CMap has to be compacted
+    private IntMap.Builder charToUnicodeIndex;
+    private List<String> unicodeStrings;
+    private Map<String, Integer> unicodeStringIndex;
+    private volatile IntMap.Builder codeToCidBuilder;
+    private List<CIDRange> codeToCidRanges;
 
-    // CID mappings
-    private final Map<Integer,Integer> codeToCid = new HashMap<Integer,Integer>();
-    private final List<CIDRange> codeToCidRanges = new ArrayList<CIDRange>();
+    // the compacted mappings which are used for all lookups
+    private volatile Mappings mappings = Mappings.EMPTY;
 
     private static final String SPACE = " ";
     private int spaceMapping = -1;
@@ -73,7 +80,8 @@ public class CMap
      */
     public boolean hasCIDMappings()
     {
-        return !codeToCid.isEmpty() || !codeToCidRanges.isEmpty();
+        Mappings m = getMappings();
+        return !m.codeToCid.isEmpty() || m.rangeFrom.length > 0;
     }
 
     /**
@@ -83,7 +91,7 @@ public class CMap
      */
     public boolean hasUnicodeMappings()
     {
-        return !charToUnicode.isEmpty();
+        return !getMappings().charToUnicode.isEmpty();
     }
 
     /**
@@ -94,7 +102,9 @@ public class CMap
      */
     public String toUnicode(int code)
     {
-        return charToUnicode.get(code);
+        Mappings m = getMappings();
+        int index = m.charToUnicode.get(code);
+        return index == IntMap.MISSING ? null : m.unicodeStrings[index];
     }
 
     /**
@@ -155,17 +165,44 @@ public class CMap
      */
     public int toCID(int code)
     {
-        Integer cid = codeToCid.get(code);
-        if (cid != null)
+        Mappings m = getMappings();
+        int cid = m.codeToCid.get(code);
+        if (cid != IntMap.MISSING)
         {
             return cid;
         }
-        for (CIDRange range : codeToCidRanges)
+        // ranges are limited to two byte codes
+        int ch = code & 0xFFFF;
+        if (m.rangesSorted)
         {
-            int ch = range.map((char)code);
-            if (ch != -1)
+            int low = 0;
+            int high = m.rangeFrom.length - 1;
+            while (low <= high)
             {
-                return ch;
+                int mid = (low + high) >>> 1;
+                if (ch < m.rangeFrom[mid])
+                {
+                    high = mid - 1;
+                }
+                else if (ch > m.rangeTo[mid])
+                {
+                    low = mid + 1;
+                }
+                else
+                {
+                    return m.rangeCid[mid] + ch - m.rangeFrom[mid];
+                }
+            }
+        }
+        else
+        {
+            // overlapping ranges, the first one wins
+            for (int i = 0; i < m.rangeFrom.length; i++)
+            {
+                if (m.rangeFrom[i] <= ch && ch <= m.rangeTo[i])
+                {
+                    return m.rangeCid[i] + ch - m.rangeFrom[i];
+                }
             }
         }
         return 0;
@@ -198,7 +235,16 @@ public class CMap
     void addCharMapping(byte[] codes, String unicode)
     {
         int code = getCodeFromArray(codes, 0, codes.length);
-        charToUnicode.put(code, unicode);
+        ensureBuilders();
+        // the same strings show up many times, e.g. for the various forms of a character
+        Integer index = unicodeStringIndex.get(unicode);
+        if (index == null)
+        {
+            index = unicodeStrings.size();
+            unicodeStrings.add(unicode);
+            unicodeStringIndex.put(unicode, index);
+        }
+        charToUnicodeIndex.put(code, index);
 
         // fixme: ugly little hack
         if (SPACE.equals(unicode))
@@ -215,7 +261,8 @@ public class CMap
      */
     void addCIDMapping(int code, int cid)
     {
-        codeToCid.put(cid, code);
+        ensureBuilders();
+        codeToCidBuilder.put(cid, code);
     }
 
     /**
@@ -228,6 +275,7 @@ public class CMap
      */
     void addCIDRange(char from, char to, int cid)
     {
+        ensureBuilders();
         CIDRange lastRange = null;
         if (!codeToCidRanges.isEmpty())
         {
@@ -263,9 +311,113 @@ public class CMap
         {
             addCodespaceRange(codespaceRange);
         }
-        charToUnicode.putAll(cmap.charToUnicode);
-        codeToCid.putAll(cmap.codeToCid);
-        codeToCidRanges.addAll(cmap.codeToCidRanges);
+        Mappings other = cmap.getMappings();
+        ensureBuilders();
+        for (int code : other.charToUnicode.keys())
+        {
+            String unicode = other.unicodeStrings[other.charToUnicode.get(code)];
+            Integer index = unicodeStringIndex.get(unicode);
+            if (index == null)
+            {
+                index = unicodeStrings.size();
+                unicodeStrings.add(unicode);
+                unicodeStringIndex.put(unicode, index);
+            }
+            charToUnicodeIndex.put(code, index);
+        }
+        codeToCidBuilder.putAll(other.codeToCid);
+        for (int i = 0; i < other.rangeFrom.length; i++)
+        {
+            codeToCidRanges.add(new CIDRange((char) other.rangeFrom[i], (char) other.rangeTo[i],
+                    other.rangeCid[i]));
+        }
+    }
+
+    /**
+     * Converts the mappings into their compact, immutable form and releases the data that was
+     * needed while building them. Mappings may still be added afterwards, but that undoes the
+     * compaction until the next lookup.
+     */
+    synchronized void compact()
+    {
+        if (codeToCidBuilder == null)
+        {
+            return;
+        }
+        mappings = new Mappings(charToUnicodeIndex.build(),
+                unicodeStrings.toArray(new String[unicodeStrings.size()]),
+                codeToCidBuilder.build(), codeToCidRanges);
+        charToUnicodeIndex = null;
+        unicodeStrings = null;
+        unicodeStringIndex = null;
+        codeToCidBuilder = null;
+        codeToCidRanges = null;
+    }
+
+    /**
+     * Returns the compacted mappings. CMaps are compacted by the parser before they are returned,
+     * so shared CMaps, e.g. the cached predefined ones, are only read here.
+     *
+     * @return the mappings
+     */
+    Mappings getMappings()
+    {
+        if (codeToCidBuilder != null)
+        {
+            compact();
+        }
+        return mappings;
+    }
+
+    /**
+     * Replaces all mappings, used when a precompiled CMap is loaded.
+     *
+     * @param newMappings the mappings
+     */
+    synchronized void setMappings(Mappings newMappings)
+    {
+        mappings = newMappings;
+        charToUnicodeIndex = null;
+        unicodeStrings = null;
+        unicodeStringIndex = null;
+        codeToCidBuilder = null;
+        codeToCidRanges = null;
+    }
+
+    /**
+     * Returns the codespace ranges.
+     *
+     * @return the codespace ranges
+     */
+    List<CodespaceRange> getCodespaceRanges()
+    {
+        return codespaceRanges;
+    }
+
+    /**
+     * Moves the compacted mappings back into builders so that more mappings can be added.
+     */
+    private synchronized void ensureBuilders()
+    {
+        if (codeToCidBuilder != null)
+        {
+            return;
+        }
+        Mappings m = mappings;
+        charToUnicodeIndex = new IntMap.Builder().putAll(m.charToUnicode);
+        unicodeStrings = new ArrayList<String>(Arrays.asList(m.unicodeStrings));
+        unicodeStringIndex = new HashMap<String, Integer>();
+        for (int i = 0; i < m.unicodeStrings.length; i++)
+        {
+            unicodeStringIndex.put(m.unicodeStrings[i], i);
+        }
+        codeToCidBuilder = new IntMap.Builder().putAll(m.codeToCid);
+        codeToCidRanges = new ArrayList<CIDRange>();
+        for (int i = 0; i < m.rangeFrom.length; i++)
+        {
+            codeToCidRanges.add(new CIDRange((char) m.rangeFrom[i], (char) m.rangeTo[i],
+                    m.rangeCid[i]));
+        }
     }
 
     /**
@@ -420,9 +572,83 @@ public class CMap
         return spaceMapping;
     }
 
+    /**
+     * Sets the mapping for the space character.
+     *
+     * @param code the mapped code for the space character
+     */
+    void setSpaceMapping(int code)
+    {
+        spaceMapping = code;
+    }
+
     @Override
     public String toString()
     {
         return cmapName;
     }
+
+    /**
+     * The immutable lookup tables of a CMap. Unicode mappings are stored as indexes into an array
+     * of distinct strings, CID ranges as parallel arrays that are sorted by their start code if
+     * they don't overlap.
+     */
+    static final class Mappings
+    {
+        static final Mappings EMPTY = new Mappings(IntMap.EMPTY, new String[0], IntMap.EMPTY,
+                new ArrayList<CIDRange>());
+
+        final IntMap charToUnicode;
+        final String[] unicodeStrings;
+        final IntMap codeToCid;
+        final int[] rangeFrom;
+        final int[] rangeTo;
+        final int[] rangeCid;
+        final boolean rangesSorted;
+
+        Mappings(IntMap charToUnicode, String[] unicodeStrings, IntMap codeToCid,
+                int[] rangeFrom, int[] rangeTo, int[] rangeCid, boolean rangesSorted)
+        {
+            this.charToUnicode = charToUnicode;
+            this.unicodeStrings = unicodeStrings;
+            this.codeToCid = codeToCid;
+            this.rangeFrom = rangeFrom;
+            this.rangeTo = rangeTo;
+            this.rangeCid = rangeCid;
+            this.rangesSorted = rangesSorted;
+        }
+
+        Mappings(IntMap charToUnicode, String[] unicodeStrings, IntMap codeToCid,
+                List<CIDRange> ranges)
+        {
+            this.charToUnicode = charToUnicode;
+            this.unicodeStrings = unicodeStrings;
+            this.codeToCid = codeToCid;
+            int count = ranges.size();
+            long[] order = new long[count];
+            for (int i = 0; i < count; i++)
+            {
+                order[i] = (long) ranges.get(i).getFrom() << 32 | i;
+            }
+            Arrays.sort(order);
+            boolean overlapping = false;
+            for (int i = 1; i < count && !overlapping; i++)
+            {
+                overlapping = ranges.get((int) order[i]).getFrom()
+                        <= ranges.get((int) order[i - 1]).getTo();
+            }
+            rangeFrom = new int[count];
+            rangeTo = new int[count];
+            rangeCid = new int[count];
+            for (int i = 0; i < count; i++)
+            {
+                // keep the original order if the ranges overlap, because the first match wins
+                CIDRange range = ranges.get(overlapping ? i : (int) order[i]);
+                rangeFrom[i] = range.getFrom();
+                rangeTo[i] = range.getTo();
+                rangeCid[i] = range.getCid();
+            }
+            rangesSorted = !overlapping;
+        }
+    }
 }
@@ -0,0 +1,316 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.fontbox.cmap;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+import org.apache.fontbox.util.Charsets;
+import org.apache.fontbox.util.IntMap;
+
+/**
+ * Compiles CMaps into a binary form that can be loaded without parsing. The predefined CMaps are
+ * compiled at build time into resources next to their text form, with the suffix
+ * {@value #SUFFIX}. {@link CMapParser#parsePredefined(String)} uses them when they are available.
+ * <p>
+ * Usage: {@code java org.apache.fontbox.cmap.CMapCompiler <source directory> <target directory>}
+ */
+public final class CMapCompiler
+{
+    /**
+     * The suffix of the resources with compiled CMaps.
+     */
+    public static final String SUFFIX = ".bin";
+
+    private static final int MAGIC = 0x434D4150; // "CMAP"
+    private static final int VERSION = 1;
+
+    private CMapCompiler()
+    {
+    }
+
+    /**
+     * Compiles all CMap files of a directory.
+     *
+     * @param args the source directory and the target directory
+     * @throws IOException if a CMap could not be read or written
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length != 2)
+        {
+            System.err.println("usage: java " + CMapCompiler.class.getName()
+                    + " <source directory> <target directory>");
+            System.exit(1);
+        }
+        File sourceDir = new File(args[0]);
+        File targetDir = new File(args[1]);
+        File[] files = sourceDir.listFiles();
+        if (files == null)
+        {
+            throw new IOException("Not a directory: " + sourceDir);
+        }
+        if (!targetDir.isDirectory() && !targetDir.mkdirs())
+        {
+            throw new IOException("Could not create " + targetDir);
+        }
+        for (File file : files)
+        {
+            if (!file.isFile() || file.getName().endsWith(SUFFIX))
+            {
+                continue;
+            }
+            CMap cmap = new CMapParser().parse(file);
+            OutputStream out = new FileOutputStream(new File(targetDir, file.getName() + SUFFIX));
+            try
+            {
+                write(cmap, out);
+            }
+            finally
+            {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Writes a CMap in compiled form.
+     *
+     * @param cmap the CMap
+     * @param output the stream to write to, it is not closed
+     * @throws IOException if the stream could not be written
+     */
+    static void write(CMap cmap, OutputStream output) throws IOException
+    {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(output));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        writeString(out, cmap.getName());
+        writeString(out, cmap.getVersion());
+        writeString(out, cmap.getRegistry());
+        writeString(out, cmap.getOrdering());
+        out.writeInt(cmap.getSupplement());
+        out.writeInt(cmap.getWMode());
+        out.writeInt(cmap.getType());
+        out.writeInt(cmap.getSpaceMapping());
+
+        List<CodespaceRange> codespaceRanges = cmap.getCodespaceRanges();
+        out.writeInt(codespaceRanges.size());
+        for (CodespaceRange range : codespaceRanges)
+        {
+            writeBytes(out, range.getStart());
+            writeBytes(out, range.getEnd());
+        }
+
+        CMap.Mappings mappings = cmap.getMappings();
+        mappings.charToUnicode.write(out);
+        out.writeInt(mappings.unicodeStrings.length);
+        for (String unicode : mappings.unicodeStrings)
+        {
+            writeString(out, unicode);
+        }
+        mappings.codeToCid.write(out);
+        out.writeBoolean(mappings.rangesSorted);
+        out.writeInt(mappings.rangeFrom.length);
+        for (int i = 0; i < mappings.rangeFrom.length; i++)
+        {
+            out.writeInt(mappings.rangeFrom[i]);
+            out.writeInt(mappings.rangeTo[i]);
+            out.writeInt(mappings.rangeCid[i]);
+        }
+        out.flush();
+    }
+
+    /**
+     * Reads a CMap in compiled form.
+     *
+     * @param buffer the compiled data in big endian byte order
+     * @return the CMap
+     * @throws IOException if the data is not a compiled CMap or is truncated
+     */
+    static CMap read(ByteBuffer buffer) throws IOException
+    {
+        try
+        {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+            {
+                throw new IOException("Not a compiled CMap or unsupported version");
+            }
+            CMap cmap = new CMap();
+            cmap.setName(readString(buffer));
+            cmap.setVersion(readString(buffer));
+            cmap.setRegistry(readString(buffer));
+            cmap.setOrdering(readString(buffer));
+            cmap.setSupplement(buffer.getInt());
+            cmap.setWMode(buffer.getInt());
+            cmap.setType(buffer.getInt());
+            cmap.setSpaceMapping(buffer.getInt());
+
+            int codespaceCount = buffer.getInt();
+            for (int i = 0; i < codespaceCount; i++)
+            {
+                CodespaceRange range = new CodespaceRange();
+                range.setStart(readBytes(buffer));
+                range.setEnd(readBytes(buffer));
+                cmap.addCodespaceRange(range);
+            }
+
+            IntMap charToUnicode = IntMap.read(buffer);
+            String[] unicodeStrings = new String[checkCount(buffer.getInt(), buffer)];
+            for (int i = 0; i < unicodeStrings.length; i++)
+            {
+                unicodeStrings[i] = readString(buffer);
+            }
+            IntMap codeToCid = IntMap.read(buffer);
+            boolean rangesSorted = buffer.get() != 0;
+            int rangeCount = checkCount(buffer.getInt(), buffer);
+            int[] rangeFrom = new int[rangeCount];
+            int[] rangeTo = new int[rangeCount];
+            int[] rangeCid = new int[rangeCount];
+            for (int i = 0; i < rangeCount; i++)
+            {
+                rangeFrom[i] = buffer.getInt();
+                rangeTo[i] = buffer.getInt();
+                rangeCid[i] = buffer.getInt();
+            }
+            cmap.setMappings(new CMap.Mappings(charToUnicode, unicodeStrings, codeToCid,
+                    rangeFrom, rangeTo, rangeCid, rangesSorted));
+            return cmap;
+        }
+        catch (BufferUnderflowException ex)
+        {
+            throw new IOException("Premature end of compiled CMap", ex);
+        }
+    }
+
+    /**
+     * Loads a compiled predefined CMap. Resources that are plain files are memory-mapped.
+     *
+     * @param name the name of the CMap
+     * @return the CMap, or null if there is no compiled version of it
+     * @throws IOException if the compiled CMap could not be read
+     */
+    static CMap loadPredefined(String name) throws IOException
+    {
+        URL url = CMapCompiler.class.getResource(name + SUFFIX);
+        if (url == null)
+        {
+            return null;
+        }
+        ByteBuffer buffer;
+        if ("file".equals(url.getProtocol()))
+        {
+            File file;
+            try
+            {
+                file = new File(url.toURI());
+            }
+            catch (URISyntaxException ex)
+            {
+                throw new IOException(ex);
+            }
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try
+            {
+                buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            }
+            finally
+            {
+                // the mapping stays valid after the channel is closed
+                raf.close();
+            }
+        }
+        else
+        {
+            InputStream input = url.openStream();
+            try
+            {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] bytes = new byte[16384];
+                int count;
+                while ((count = input.read(bytes)) != -1)
+                {
+                    out.write(bytes, 0, count);
+                }
+                buffer = ByteBuffer.wrap(out.toByteArray());
+            }
+            finally
+            {
+                input.close();
+            }
+        }
+        return read(buffer);
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException
+    {
+        if (string == null)
+        {
+            out.writeInt(-1);
+        }
+        else
+        {
+            writeBytes(out, string.getBytes(Charsets.UTF_16BE));
+        }
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException
+    {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) throws IOException
+    {
+        byte[] bytes = readBytes(buffer);
+        return bytes == null ? null : new String(bytes, Charsets.UTF_16BE);
+    }
+
+    private static byte[] readBytes(ByteBuffer buffer) throws IOException
+    {
+        int length = buffer.getInt();
+        if (length == -1)
+        {
+            return null;
+        }
+        byte[] bytes = new byte[checkCount(length, buffer)];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static int checkCount(int count, ByteBuffer buffer) throws IOException
+    {
+        if (count < 0 || count > buffer.remaining())
+        {
+            throw new IOException("Invalid count " + count + " in compiled CMap");
+        }
+        return count;
+    }
+}
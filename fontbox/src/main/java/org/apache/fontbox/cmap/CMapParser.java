@@ -72,7 +72,8 @@ public class CMapParser
     }
 
     /**
-     * Parses a predefined CMap.
+     * Parses a predefined CMap. If a compiled version of the CMap is available, see
+     * {@link CMapCompiler}, it is loaded instead.
      *
      * @param name CMap name.
      * @return The parsed predefined CMap as a java object, never null.
@@ -80,6 +81,11 @@ public class CMapParser
      */
     public CMap parsePredefined(String name) throws IOException
     {
+        CMap compiled = CMapCompiler.loadPredefined(name);
+        if (compiled != null)
+        {
+            return compiled;
+        }
         InputStream input = null;
         try
         {
@@ -153,6 +159,7 @@ public class CMapParser
             }
             previousToken = token;
         }
+        result.compact();
         return result;
     }
 
@@ -0,0 +1,301 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.fontbox.ttf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A TTF data stream over a {@link ByteBuffer}, either a memory-mapped font file or the bytes of
+ * an embedded font. The buffer is shared by all views of the stream and only read at absolute
+ * positions, so views can be read concurrently without locking. Only the position is per view.
+ */
+class ByteBufferTTFDataStream extends TTFDataStream
+{
+    private final ByteBuffer buffer;
+    private final int length;
+    private int position;
+
+    /**
+     * Constructor.
+     *
+     * @param buffer the font data in big endian byte order, must not be modified.
+     */
+    ByteBufferTTFDataStream(ByteBuffer buffer)
+    {
+        this.buffer = buffer;
+        this.length = buffer.limit();
+    }
+
+    /**
+     * Opens a font file. Files are memory-mapped, except those which are too large for a single
+     * buffer.
+     *
+     * @param file the font file.
+     * @return the stream.
+     * @throws IOException If the file could not be opened.
+     */
+    static TTFDataStream open(File file) throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try
+        {
+            long size = raf.length();
+            if (size > Integer.MAX_VALUE)
+            {
+                return new RAFDataStream(file, "r");
+            }
+            // the mapping stays valid after the file is closed
+            return new ByteBufferTTFDataStream(
+                    raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+        finally
+        {
+            raf.close();
+        }
+    }
+
+    /**
+     * Reads a font from a stream into memory.
+     *
+     * @param is the stream to read from. It will be closed by this method.
+     * @return the stream.
+     * @throws IOException If an error occurs while reading from the stream.
+     */
+    static ByteBufferTTFDataStream read(InputStream is) throws IOException
+    {
+        try
+        {
+            ByteArrayOutputStream output = new ByteArrayOutputStream(Math.max(32, is.available()));
+            byte[] bytes = new byte[16384];
+            int amountRead;
+            while ((amountRead = is.read(bytes)) != -1)
+            {
+                output.write(bytes, 0, amountRead);
+            }
+            return new ByteBufferTTFDataStream(ByteBuffer.wrap(output.toByteArray()));
+        }
+        finally
+        {
+            is.close();
+        }
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+        if (position >= length)
+        {
+            return -1;
+        }
+        return buffer.get(position++) & 0xFF;
+    }
+
+    @Override
+    public long readLong() throws IOException
+    {
+        checkAvailable(8);
+        long value = buffer.getLong(position);
+        position += 8;
+        return value;
+    }
+
+    @Override
+    public long readUnsignedInt() throws IOException
+    {
+        checkAvailable(4);
+        long value = buffer.getInt(position) & 0xFFFFFFFFL;
+        position += 4;
+        return value;
+    }
+
+    @Override
+    public int readUnsignedShort() throws IOException
+    {
+        checkAvailable(2);
+        int value = buffer.getShort(position) & 0xFFFF;
+        position += 2;
+        return value;
+    }
+
+    @Override
+    public short readSignedShort() throws IOException
+    {
+        checkAvailable(2);
+        short value = buffer.getShort(position);
+        position += 2;
+        return value;
+    }
+
+    @Override
+    public void seek(long pos) throws IOException
+    {
+        if (pos < 0 || pos > Integer.MAX_VALUE)
+        {
+            throw new IOException("Illegal seek position: " + pos);
+        }
+        position = (int) pos;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        if (position >= length)
+        {
+            return -1;
+        }
+        int amountRead = Math.min(len, length - position);
+        copy(position, b, off, amountRead);
+        position += amountRead;
+        return amountRead;
+    }
+
+    @Override
+    public long getCurrentPosition() throws IOException
+    {
+        return position;
+    }
+
+    @Override
+    public InputStream getOriginalData() throws IOException
+    {
+        return new InputStream()
+        {
+            private int pos;
+
+            @Override
+            public int read() throws IOException
+            {
+                return pos < length ? buffer.get(pos++) & 0xFF : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException
+            {
+                if (pos >= length)
+                {
+                    return -1;
+                }
+                int amountRead = Math.min(len, length - pos);
+                copy(pos, b, off, amountRead);
+                pos += amountRead;
+                return amountRead;
+            }
+
+            @Override
+            public int available() throws IOException
+            {
+                return length - pos;
+            }
+        };
+    }
+
+    @Override
+    public long getOriginalDataSize()
+    {
+        return length;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        // a mapped buffer is released by the garbage collector
+    }
+
+    @Override
+    byte[] readAt(long offset, int count) throws IOException
+    {
+        if (offset < 0 || count < 0 || offset + count > length)
+        {
+            throw new IOException("Unexpected end of TTF stream reached");
+        }
+        byte[] bytes = new byte[count];
+        copy((int) offset, bytes, 0, count);
+        return bytes;
+    }
+
+    @Override
+    TTFDataStream createView()
+    {
+        return new ByteBufferTTFDataStream(buffer);
+    }
+
+    /**
+     * Reads an unsigned short at the given position, without changing the position of the stream.
+     * The caller has to make sure that the position is valid.
+     *
+     * @param offset the position.
+     * @return the value.
+     */
+    int readUnsignedShortAt(long offset)
+    {
+        return buffer.getShort((int) offset) & 0xFFFF;
+    }
+
+    /**
+     * Reads a signed short at the given position, without changing the position of the stream.
+     * The caller has to make sure that the position is valid.
+     *
+     * @param offset the position.
+     * @return the value.
+     */
+    short readSignedShortAt(long offset)
+    {
+        return buffer.getShort((int) offset);
+    }
+
+    /**
+     * Reads an unsigned int at the given position, without changing the position of the stream.
+     * The caller has to make sure that the position is valid.
+     *
+     * @param offset the position.
+     * @return the value.
+     */
+    long readUnsignedIntAt(long offset)
+    {
+        return buffer.getInt((int) offset) & 0xFFFFFFFFL;
+    }
+
+    private void copy(int offset, byte[] b, int off, int len)
+    {
+        if (buffer.hasArray())
+        {
+            System.arraycopy(buffer.array(), buffer.arrayOffset() + offset, b, off, len);
+        }
+        else
+        {
+            // absolute bulk reads need a private cursor, the shared buffer's position isn't used
+            ByteBuffer duplicate = buffer.duplicate();
+            duplicate.position(offset);
+            duplicate.get(b, off, len);
+        }
+    }
+
+    private void checkAvailable(int count) throws EOFException
+    {
+        if (position < 0 || position > length - count)
+        {
+            throw new EOFException();
+        }
+    }
+}
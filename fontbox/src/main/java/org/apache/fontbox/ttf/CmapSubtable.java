@@ -23,10 +23,10 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.fontbox.util.IntMap;
 
 /**
  * A "cmap" subtable.
@@ -45,7 +45,7 @@ public class CmapSubtable implements CmapLookup
     private long subTableOffset;
     private int[] glyphIdToCharacterCode;
     private final Map<Integer, List<Integer>> glyphIdToCharacterCodeMultiple = new HashMap<Integer, List<Integer>>();
-    private Map<Integer, Integer> characterCodeToGlyphId= new HashMap<Integer, Integer>();
+    private IntMap characterCodeToGlyphId = IntMap.EMPTY;
 
     /**
      * This will read the required data from the stream.
@@ -141,7 +141,7 @@ public class CmapSubtable implements CmapLookup
         }
 
         glyphIdToCharacterCode = newGlyphIdToCharacterCode(numGlyphs);
-        characterCodeToGlyphId = new HashMap<Integer, Integer>(numGlyphs);
+        IntMap.Builder codeToGlyphId = new IntMap.Builder(numGlyphs);
         if (numGlyphs == 0)
         {
             LOG.warn("subtable has no glyphs");
@@ -199,9 +199,10 @@ public class CmapSubtable implements CmapLookup
                 }
 
                 glyphIdToCharacterCode[(int) glyphIndex] = currentCharCode;
-                characterCodeToGlyphId.put(currentCharCode, (int) glyphIndex);
+                codeToGlyphId.put(currentCharCode, (int) glyphIndex);
             }
         }
+        characterCodeToGlyphId = codeToGlyphId.build();
     }
 
     /**
@@ -239,7 +240,7 @@ public class CmapSubtable implements CmapLookup
     {
         long nbGroups = data.readUnsignedInt();
         glyphIdToCharacterCode = newGlyphIdToCharacterCode(numGlyphs);
-        characterCodeToGlyphId = new HashMap<Integer, Integer>(numGlyphs);
+        IntMap.Builder codeToGlyphId = new IntMap.Builder(numGlyphs);
         if (numGlyphs == 0)
         {
             LOG.warn("subtable has no glyphs");
@@ -279,9 +280,10 @@ public class CmapSubtable implements CmapLookup
                 }
 
                 glyphIdToCharacterCode[(int) glyphIndex] = (int) (firstCode + j);
-                characterCodeToGlyphId.put((int) (firstCode + j), (int) glyphIndex);
+                codeToGlyphId.put((int) (firstCode + j), (int) glyphIndex);
             }
         }
+        characterCodeToGlyphId = codeToGlyphId.build();
     }
 
     /**
@@ -295,7 +297,7 @@ public class CmapSubtable implements CmapLookup
     {
         long nbGroups = data.readUnsignedInt();
         glyphIdToCharacterCode = newGlyphIdToCharacterCode(numGlyphs);
-        characterCodeToGlyphId = new HashMap<Integer, Integer>(numGlyphs);
+        IntMap.Builder codeToGlyphId = new IntMap.Builder(numGlyphs);
         if (numGlyphs == 0)
         {
             LOG.warn("subtable has no glyphs");
@@ -337,9 +339,10 @@ public class CmapSubtable implements CmapLookup
                 }
 
                 glyphIdToCharacterCode[(int) glyphId] = (int) (firstCode + j);
-                characterCodeToGlyphId.put((int) (firstCode + j), (int) glyphId);
+                codeToGlyphId.put((int) (firstCode + j), (int) glyphId);
             }
         }
+        characterCodeToGlyphId = codeToGlyphId.build();
     }
 
     /**
@@ -372,14 +375,15 @@ public class CmapSubtable implements CmapLookup
         {
             return;
         }
-        characterCodeToGlyphId = new HashMap<Integer, Integer>(numGlyphs);
+        IntMap.Builder codeToGlyphId = new IntMap.Builder(numGlyphs);
         int[] glyphIdArray = data.readUnsignedShortArray(entryCount);
         int maxGlyphId = 0;
         for (int i = 0; i < entryCount; i++)
         {
             maxGlyphId = Math.max(maxGlyphId, glyphIdArray[i]);
-            characterCodeToGlyphId.put(firstCode + i, glyphIdArray[i]);
+            codeToGlyphId.put(firstCode + i, glyphIdArray[i]);
         }
+        characterCodeToGlyphId = codeToGlyphId.build();
         buildGlyphIdToCharacterCodeLookup(maxGlyphId);
     }
 
@@ -404,7 +408,7 @@ public class CmapSubtable implements CmapLookup
         long idRangeOffsetPosition = data.getCurrentPosition();
         int[] idRangeOffset = data.readUnsignedShortArray(segCount);
 
-        characterCodeToGlyphId = new HashMap<Integer, Integer>(numGlyphs);
+        IntMap.Builder codeToGlyphId = new IntMap.Builder(numGlyphs);
         int maxGlyphId = 0;
 
         for (int i = 0; i < segCount; i++)
@@ -422,7 +426,7 @@ public class CmapSubtable implements CmapLookup
                     {
                         int glyphid = (j + delta) & 0xFFFF;
                         maxGlyphId = Math.max(glyphid, maxGlyphId);
-                        characterCodeToGlyphId.put(j, glyphid);
+                        codeToGlyphId.put(j, glyphid);
                     }
                     else
                     {
@@ -433,12 +437,13 @@ public class CmapSubtable implements CmapLookup
                         {
                             glyphIndex = (glyphIndex + delta) & 0xFFFF;
                             maxGlyphId = Math.max(glyphIndex, maxGlyphId);
-                            characterCodeToGlyphId.put(j, glyphIndex);
+                            codeToGlyphId.put(j, glyphIndex);
                         }
                     }
                 }
             }
         }
+        characterCodeToGlyphId = codeToGlyphId.build();
 
         /*
          * this is the final result key=glyphId, value is character codes Create an array that contains MAX(GlyphIds)
@@ -455,26 +460,27 @@ public class CmapSubtable implements CmapLookup
     private void buildGlyphIdToCharacterCodeLookup(int maxGlyphId)
     {
         glyphIdToCharacterCode = newGlyphIdToCharacterCode(maxGlyphId + 1);
-        for (Entry<Integer, Integer> entry : characterCodeToGlyphId.entrySet())
+        for (int code : characterCodeToGlyphId.keys())
         {
-            if (glyphIdToCharacterCode[entry.getValue()] == -1)
+            int gid = characterCodeToGlyphId.get(code);
+            if (glyphIdToCharacterCode[gid] == -1)
             {
                 // add new value to the array
-                glyphIdToCharacterCode[entry.getValue()] = entry.getKey();
+                glyphIdToCharacterCode[gid] = code;
             }
             else
             {
                 // there is already a mapping for the given glyphId
-                List<Integer> mappedValues = glyphIdToCharacterCodeMultiple.get(entry.getValue());
+                List<Integer> mappedValues = glyphIdToCharacterCodeMultiple.get(gid);
                 if (mappedValues == null)
                 {
                     mappedValues = new ArrayList<Integer>();
-                    glyphIdToCharacterCodeMultiple.put(entry.getValue(), mappedValues);
-                    mappedValues.add(glyphIdToCharacterCode[entry.getValue()]);
+                    glyphIdToCharacterCodeMultiple.put(gid, mappedValues);
+                    mappedValues.add(glyphIdToCharacterCode[gid]);
                     // mark value as multiple mapping
-                    glyphIdToCharacterCode[entry.getValue()] = Integer.MIN_VALUE;
+                    glyphIdToCharacterCode[gid] = Integer.MIN_VALUE;
                 }
-                mappedValues.add(entry.getKey());
+                mappedValues.add(code);
             }
         }
     }
@@ -509,7 +515,7 @@ public class CmapSubtable implements CmapLookup
         }
         long startGlyphIndexOffset = data.getCurrentPosition();
         glyphIdToCharacterCode = newGlyphIdToCharacterCode(numGlyphs);
-        characterCodeToGlyphId = new HashMap<Integer, Integer>(numGlyphs);
+        IntMap.Builder codeToGlyphId = new IntMap.Builder(numGlyphs);
         if (numGlyphs == 0)
         {
             LOG.warn("subtable has no glyphs");
@@ -551,9 +557,10 @@ public class CmapSubtable implements CmapLookup
                 }
                 
                 glyphIdToCharacterCode[p] = charCode;
-                characterCodeToGlyphId.put(charCode, p);
+                codeToGlyphId.put(charCode, p);
             }
         }
+        characterCodeToGlyphId = codeToGlyphId.build();
     }
 
     /**
@@ -566,13 +573,14 @@ public class CmapSubtable implements CmapLookup
     {
         byte[] glyphMapping = data.read(256);
         glyphIdToCharacterCode = newGlyphIdToCharacterCode(256);
-        characterCodeToGlyphId = new HashMap<Integer, Integer>(glyphMapping.length);
+        IntMap.Builder codeToGlyphId = new IntMap.Builder(glyphMapping.length);
         for (int i = 0; i < glyphMapping.length; i++)
         {
             int glyphIndex = glyphMapping[i] & 0xFF;
             glyphIdToCharacterCode[glyphIndex] = i;
-            characterCodeToGlyphId.put(i, glyphIndex);
+            codeToGlyphId.put(i, glyphIndex);
         }
+        characterCodeToGlyphId = codeToGlyphId.build();
     }
 
     /**
@@ -627,8 +635,8 @@ public class CmapSubtable implements CmapLookup
     @Override
     public int getGlyphId(int characterCode)
     {
-        Integer glyphId = characterCodeToGlyphId.get(characterCode);
-        return glyphId == null ? 0 : glyphId;
+        int glyphId = characterCodeToGlyphId.get(characterCode);
+        return glyphId == IntMap.MISSING ? 0 : glyphId;
     }
 
     /**
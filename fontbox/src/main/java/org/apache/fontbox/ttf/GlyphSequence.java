@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.fontbox.ttf;
+
+/**
+ * The glyphs of a text after glyph substitution, together with the part of the text each glyph
+ * was made from. A ligature glyph has the text of all its components.
+ *
+ * @see GlyphShaper
+ */
+public final class GlyphSequence
+{
+    private final String text;
+    private final int[] glyphIds;
+    private final int[] clusters;
+
+    GlyphSequence(String text, int[] glyphIds, int[] clusters)
+    {
+        this.text = text;
+        this.glyphIds = glyphIds;
+        this.clusters = clusters;
+    }
+
+    /**
+     * Returns the number of glyphs.
+     */
+    public int size()
+    {
+        return glyphIds.length;
+    }
+
+    /**
+     * Returns the GID of a glyph.
+     *
+     * @param index the index of the glyph
+     * @return the GID, 0 if there is no glyph for the text
+     */
+    public int getGlyphId(int index)
+    {
+        return glyphIds[index];
+    }
+
+    /**
+     * Returns the part of the text a glyph was made from.
+     *
+     * @param index the index of the glyph
+     * @return the text, one or more code points
+     */
+    public String getText(int index)
+    {
+        int end = index + 1 < clusters.length ? clusters[index + 1] : text.length();
+        return text.substring(clusters[index], end);
+    }
+
+    /**
+     * Returns the whole text.
+     */
+    public String getText()
+    {
+        return text;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder("GlyphSequence[");
+        for (int i = 0; i < glyphIds.length; i++)
+        {
+            if (i > 0)
+            {
+                sb.append(',');
+            }
+            sb.append(glyphIds[i]).append('=').append(getText(i));
+        }
+        return sb.append(']').toString();
+    }
+}
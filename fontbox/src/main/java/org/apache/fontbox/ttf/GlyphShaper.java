@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.fontbox.ttf;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Maps whole strings to glyphs and applies the enabled features of the 'GSUB' table. Unlike
+ * {@link SubstitutingCmapLookup}, which maps one character at a time, this also applies
+ * ligatures. The text is split into runs of the same script, and the lookups of each script are
+ * selected only once. Single and ligature substitutions are supported, lookups which need
+ * context or glyph classes are ignored. Thread safe.
+ *
+ * @see TrueTypeFont#getGlyphShaper()
+ */
+public final class GlyphShaper
+{
+    private final CmapLookup cmap;
+    private final GlyphSubstitutionTable gsub;
+    private final List<String> enabledFeatures;
+
+    /**
+     * Creates a shaper.
+     *
+     * @param cmap the cmap, which must not perform glyph substitution itself
+     * @param gsub the 'GSUB' table
+     * @param enabledFeatures whitelist of features to apply, in order of preference
+     */
+    public GlyphShaper(CmapLookup cmap, GlyphSubstitutionTable gsub, List<String> enabledFeatures)
+    {
+        this.cmap = cmap;
+        this.gsub = gsub;
+        this.enabledFeatures = enabledFeatures;
+    }
+
+    /**
+     * Maps a text to glyphs.
+     *
+     * @param text the text
+     * @return the glyphs, with GID 0 for characters which aren't in the font
+     */
+    public GlyphSequence shape(String text)
+    {
+        int count = text.codePointCount(0, text.length());
+        int[] gids = new int[count];
+        int[] clusters = new int[count];
+        int length = 0;
+        int runStart = 0;
+        String[] runScriptTags = null;
+        int offset = 0;
+        for (int i = 0; i < count; i++)
+        {
+            int codePoint = text.codePointAt(offset);
+            String[] scriptTags = OpenTypeScript.getScriptTags(codePoint);
+            if (scriptTags != null && !isNeutral(scriptTags))
+            {
+                if (runScriptTags != null && !Arrays.equals(scriptTags, runScriptTags))
+                {
+                    length = shapeRun(gids, clusters, length, runStart, i, runScriptTags);
+                    runStart = i;
+                }
+                runScriptTags = scriptTags;
+            }
+            gids[i] = cmap.getGlyphId(codePoint);
+            clusters[i] = offset;
+            offset += Character.charCount(codePoint);
+        }
+        length = shapeRun(gids, clusters, length, runStart, count, runScriptTags);
+        return new GlyphSequence(text, Arrays.copyOf(gids, length), Arrays.copyOf(clusters, length));
+    }
+
+    /**
+     * Applies the lookups to the glyphs of one run and moves them behind the preceding runs.
+     */
+    private int shapeRun(int[] gids, int[] clusters, int length, int start, int end,
+                         String[] scriptTags)
+    {
+        if (start == end)
+        {
+            return length;
+        }
+        int[] lookupIndices = gsub.getLookupIndices(scriptTags != null ? scriptTags :
+                new String[] { OpenTypeScript.TAG_DEFAULT }, enabledFeatures);
+        int[] runGids = Arrays.copyOfRange(gids, start, end);
+        int[] runClusters = Arrays.copyOfRange(clusters, start, end);
+        int runLength = gsub.applyLookups(lookupIndices, runGids, runClusters, runGids.length);
+        System.arraycopy(runGids, 0, gids, length, runLength);
+        System.arraycopy(runClusters, 0, clusters, length, runLength);
+        return length + runLength;
+    }
+
+    /**
+     * Returns true if the script of a character depends on the surrounding text, e.g. for spaces,
+     * digits and combining marks, which are shaped together with the adjacent text.
+     */
+    private static boolean isNeutral(String[] scriptTags)
+    {
+        return scriptTags.length == 1 && (OpenTypeScript.TAG_DEFAULT.equals(scriptTags[0]) ||
+                OpenTypeScript.INHERITED.equals(scriptTags[0]));
+    }
+}
@@ -20,6 +20,7 @@ package org.apache.fontbox.ttf;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -28,6 +29,8 @@ import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -48,6 +51,11 @@ public class GlyphSubstitutionTable extends TTFTable
     private FeatureRecord[] featureList;
     private LookupTable[] lookupList;
 
+    // the features and lookups by script and enabled features, so that they're only selected once
+    private final Map<String, List<FeatureRecord>> featureRecordCache =
+            new ConcurrentHashMap<String, List<FeatureRecord>>();
+    private final Map<String, int[]> lookupIndexCache = new ConcurrentHashMap<String, int[]>();
+
     private final Map<Integer, Integer> lookupCache = new HashMap<Integer, Integer>();
     private final Map<Integer, Integer> reverseLookup = new HashMap<Integer, Integer>();
 
@@ -240,17 +248,54 @@ public class GlyphSubstitutionTable extends TTFTable
             lookupTable.markFilteringSet = data.readUnsignedShort();
         }
         lookupTable.subTables = new LookupSubTable[subTableCount];
-        switch (lookupTable.lookupType)
+        int lookupType = lookupTable.lookupType;
+        for (int i = 0; i < subTableCount; i++)
         {
-        case 1: // Single
-            for (int i = 0; i < subTableCount; i++)
+            long subTableOffset = offset + subTableOffets[i];
+            int subTableType = lookupTable.lookupType;
+            if (subTableType == 7) // Extension
+            {
+                // the extension points to a subtable of the actual type, at a 32-bit offset
+                data.seek(subTableOffset);
+                @SuppressWarnings("unused")
+                int substFormat = data.readUnsignedShort();
+                subTableType = data.readUnsignedShort();
+                subTableOffset += data.readUnsignedInt();
+                if (lookupType == 7)
+                {
+                    lookupType = subTableType;
+                }
+                else if (lookupType != subTableType)
+                {
+                    LOG.warn("Extension subtables of different types in GSUB lookup table: " +
+                            lookupType + " and " + subTableType);
+                    continue;
+                }
+            }
+            switch (subTableType)
             {
-                lookupTable.subTables[i] = readLookupSubTable(data, offset + subTableOffets[i]);
+            case 1: // Single
+                lookupTable.subTables[i] = readLookupSubTable(data, subTableOffset);
+                break;
+            case 4: // Ligature
+                lookupTable.subTables[i] = readLigatureSubstSubTable(data, subTableOffset);
+                break;
+            default:
+                // Other lookup types are not supported
+                LOG.debug("Type " + subTableType + " GSUB lookup table is not supported and will be ignored");
+            }
+        }
+        // extension lookups are replaced by the lookups they point to
+        lookupTable.lookupType = lookupType;
+
+        // all glyphs covered by the lookup, to skip the subtables of the other glyphs
+        lookupTable.coverage = new BitSet();
+        for (LookupSubTable subTable : lookupTable.subTables)
+        {
+            if (subTable != null)
+            {
+                subTable.coverageTable.addTo(lookupTable.coverage);
             }
-            break;
-        default:
-            // Other lookup types are not supported
-            LOG.debug("Type " + lookupTable.lookupType + " GSUB lookup table is not supported and will be ignored");
         }
         return lookupTable;
     }
@@ -289,6 +334,59 @@ public class GlyphSubstitutionTable extends TTFTable
         }
     }
 
+    LookupSubTable readLigatureSubstSubTable(TTFDataStream data, long offset) throws IOException
+    {
+        data.seek(offset);
+        int substFormat = data.readUnsignedShort();
+        if (substFormat != 1)
+        {
+            throw new IOException("Unknown substFormat: " + substFormat);
+        }
+        LookupTypeLigatureSubstFormat1 lookupSubTable = new LookupTypeLigatureSubstFormat1();
+        lookupSubTable.substFormat = substFormat;
+        int coverageOffset = data.readUnsignedShort();
+        int ligSetCount = data.readUnsignedShort();
+        int[] ligSetOffsets = new int[ligSetCount];
+        for (int i = 0; i < ligSetCount; i++)
+        {
+            ligSetOffsets[i] = data.readUnsignedShort();
+        }
+        lookupSubTable.coverageTable = readCoverageTable(data, offset + coverageOffset);
+        lookupSubTable.ligatureSets = new LigatureTable[ligSetCount][];
+        for (int i = 0; i < ligSetCount; i++)
+        {
+            lookupSubTable.ligatureSets[i] = readLigatureSet(data, offset + ligSetOffsets[i]);
+        }
+        return lookupSubTable;
+    }
+
+    LigatureTable[] readLigatureSet(TTFDataStream data, long offset) throws IOException
+    {
+        data.seek(offset);
+        int ligatureCount = data.readUnsignedShort();
+        int[] ligatureOffsets = new int[ligatureCount];
+        for (int i = 0; i < ligatureCount; i++)
+        {
+            ligatureOffsets[i] = data.readUnsignedShort();
+        }
+        LigatureTable[] ligatureSet = new LigatureTable[ligatureCount];
+        for (int i = 0; i < ligatureCount; i++)
+        {
+            data.seek(offset + ligatureOffsets[i]);
+            LigatureTable ligatureTable = new LigatureTable();
+            ligatureTable.ligatureGlyph = data.readUnsignedShort();
+            // the count includes the first component, which is covered by the coverage table
+            int componentCount = data.readUnsignedShort();
+            ligatureTable.componentGlyphIDs = new int[Math.max(0, componentCount - 1)];
+            for (int j = 0; j < ligatureTable.componentGlyphIDs.length; j++)
+            {
+                ligatureTable.componentGlyphIDs[j] = data.readUnsignedShort();
+            }
+            ligatureSet[i] = ligatureTable;
+        }
+        return ligatureSet;
+    }
+
     CoverageTable readCoverageTable(TTFDataStream data, long offset) throws IOException
     {
         data.seek(offset);
@@ -317,6 +415,7 @@ public class GlyphSubstitutionTable extends TTFTable
             {
                 coverageTable.rangeRecords[i] = readRangeRecord(data);
             }
+            coverageTable.compile();
             return coverageTable;
 
         }
@@ -366,6 +465,37 @@ public class GlyphSubstitutionTable extends TTFTable
         return tags[0];
     }
 
+    /**
+     * Choose from one of the supplied OpenType script tags without context, falling back to the
+     * default script. Characters of no specific script, e.g. punctuation, fall back to the first
+     * script of the font if it has no default script, as in {@link #selectScriptTag(String[])}.
+     *
+     * @param tags
+     * @return The OpenType script tag, or null if the font supports neither of the scripts
+     */
+    private String findScriptTag(String[] tags)
+    {
+        for (String tag : tags)
+        {
+            if (scriptList.containsKey(tag))
+            {
+                return tag;
+            }
+        }
+        if (scriptList.containsKey(OpenTypeScript.TAG_DEFAULT))
+        {
+            return OpenTypeScript.TAG_DEFAULT;
+        }
+        if (tags.length == 1 && !scriptList.isEmpty()
+                && (OpenTypeScript.TAG_DEFAULT.equals(tags[0])
+                || OpenTypeScript.INHERITED.equals(tags[0])))
+        {
+            // We don't know what script this should be, so we guess.
+            return scriptList.keySet().iterator().next();
+        }
+        return null;
+    }
+
     private Collection<LangSysTable> getLangSysTables(String scriptTag)
     {
         Collection<LangSysTable> result = Collections.emptyList();
@@ -398,6 +528,18 @@ public class GlyphSubstitutionTable extends TTFTable
      * @param enabledFeatures An optional whitelist of feature tags ({@code null} to allow all)
      * @return The indicated {@code FeatureRecord}s
      */
+    private List<FeatureRecord> getFeatureRecords(String scriptTag, List<String> enabledFeatures)
+    {
+        String key = scriptTag + ' ' + enabledFeatures;
+        List<FeatureRecord> featureRecords = featureRecordCache.get(key);
+        if (featureRecords == null)
+        {
+            featureRecords = getFeatureRecords(getLangSysTables(scriptTag), enabledFeatures);
+            featureRecordCache.put(key, featureRecords);
+        }
+        return featureRecords;
+    }
+
     private List<FeatureRecord> getFeatureRecords(Collection<LangSysTable> langSysTables,
             final List<String> enabledFeatures)
     {
@@ -409,12 +551,16 @@ public class GlyphSubstitutionTable extends TTFTable
         for (LangSysTable langSysTable : langSysTables)
         {
             int required = langSysTable.requiredFeatureIndex;
-            if (required != 0xffff) // if no required features = 0xFFFF
+            if (required != 0xffff && required < featureList.length) // if no required features = 0xFFFF
             {
                 result.add(featureList[required]);
             }
             for (int featureIndex : langSysTable.featureIndices)
             {
+                if (featureIndex >= featureList.length)
+                {
+                    continue;
+                }
                 if (enabledFeatures == null
                         || enabledFeatures.contains(featureList[featureIndex].featureTag))
                 {
@@ -475,11 +621,16 @@ public class GlyphSubstitutionTable extends TTFTable
     {
         for (int lookupListIndex : featureRecord.featureTable.lookupListIndices)
         {
+            if (lookupListIndex >= lookupList.length)
+            {
+                continue;
+            }
             LookupTable lookupTable = lookupList[lookupListIndex];
             if (lookupTable.lookupType != 1)
             {
                 LOG.debug("Skipping GSUB feature '" + featureRecord.featureTag
-                        + "' because it requires unsupported lookup table type " + lookupTable.lookupType);
+                        + "' because lookup table type " + lookupTable.lookupType
+                        + " can't be applied to a single glyph");
                 continue;
             }
             gid = doLookup(lookupTable, gid);
@@ -489,8 +640,16 @@ public class GlyphSubstitutionTable extends TTFTable
 
     private int doLookup(LookupTable lookupTable, int gid)
     {
+        if (gid < 0 || !lookupTable.coverage.get(gid))
+        {
+            return gid;
+        }
         for (LookupSubTable lookupSubtable : lookupTable.subTables)
         {
+            if (lookupSubtable == null)
+            {
+                continue;
+            }
             int coverageIndex = lookupSubtable.coverageTable.getCoverageIndex(gid);
             if (coverageIndex >= 0)
             {
@@ -528,8 +687,7 @@ public class GlyphSubstitutionTable extends TTFTable
             return cached;
         }
         String scriptTag = selectScriptTag(scriptTags);
-        Collection<LangSysTable> langSysTables = getLangSysTables(scriptTag);
-        List<FeatureRecord> featureRecords = getFeatureRecords(langSysTables, enabledFeatures);
+        List<FeatureRecord> featureRecords = getFeatureRecords(scriptTag, enabledFeatures);
         int sgid = gid;
         for (FeatureRecord featureRecord : featureRecords)
         {
@@ -560,6 +718,135 @@ public class GlyphSubstitutionTable extends TTFTable
         return gid;
     }
 
+    /**
+     * Returns the indices of the lookups of the given features which are supported for glyph
+     * sequences, in the order of the lookup list, which is the order in which they're applied.
+     * The lookups are selected once for each script and are cached.
+     *
+     * @param scriptTags Script tags applicable to the glyphs (see {@link OpenTypeScript})
+     * @param enabledFeatures Whitelist of features to apply
+     * @return the lookup indices, may be empty
+     */
+    int[] getLookupIndices(String[] scriptTags, List<String> enabledFeatures)
+    {
+        String scriptTag = findScriptTag(scriptTags);
+        if (scriptTag == null)
+        {
+            return new int[0];
+        }
+        String key = scriptTag + ' ' + enabledFeatures;
+        int[] lookupIndices = lookupIndexCache.get(key);
+        if (lookupIndices == null)
+        {
+            TreeSet<Integer> indices = new TreeSet<Integer>();
+            for (FeatureRecord featureRecord : getFeatureRecords(scriptTag, enabledFeatures))
+            {
+                for (int lookupListIndex : featureRecord.featureTable.lookupListIndices)
+                {
+                    if (lookupListIndex < lookupList.length &&
+                        (lookupList[lookupListIndex].lookupType == 1 ||
+                         lookupList[lookupListIndex].lookupType == 4))
+                    {
+                        indices.add(lookupListIndex);
+                    }
+                }
+            }
+            lookupIndices = new int[indices.size()];
+            int i = 0;
+            for (int index : indices)
+            {
+                lookupIndices[i++] = index;
+            }
+            lookupIndexCache.put(key, lookupIndices);
+        }
+        return lookupIndices;
+    }
+
+    /**
+     * Applies lookups to a glyph sequence. Ligatures replace several glyphs by one, so the
+     * sequence may get shorter, but never longer.
+     *
+     * @param lookupIndices the lookups from {@link #getLookupIndices(String[], List)}
+     * @param gids the glyphs, which are replaced
+     * @param clusters the index of the text of each glyph, which is kept in sync with the glyphs
+     * @param length the number of glyphs
+     * @return the new number of glyphs
+     */
+    int applyLookups(int[] lookupIndices, int[] gids, int[] clusters, int length)
+    {
+        int newLength = length;
+        for (int lookupIndex : lookupIndices)
+        {
+            LookupTable lookupTable = lookupList[lookupIndex];
+            if (lookupTable.lookupType == 1)
+            {
+                for (int i = 0; i < newLength; i++)
+                {
+                    gids[i] = doLookup(lookupTable, gids[i]);
+                }
+            }
+            else if (lookupTable.lookupType == 4)
+            {
+                newLength = applyLigatures(lookupTable, gids, clusters, newLength);
+            }
+        }
+        return newLength;
+    }
+
+    private int applyLigatures(LookupTable lookupTable, int[] gids, int[] clusters, int length)
+    {
+        int out = 0;
+        int i = 0;
+        while (i < length)
+        {
+            int gid = gids[i];
+            LigatureTable ligature = null;
+            if (gid >= 0 && lookupTable.coverage.get(gid))
+            {
+                ligature = findLigature(lookupTable, gids, i, length);
+            }
+            clusters[out] = clusters[i];
+            if (ligature != null)
+            {
+                gids[out++] = ligature.ligatureGlyph;
+                i += ligature.componentGlyphIDs.length + 1;
+            }
+            else
+            {
+                gids[out++] = gid;
+                i++;
+            }
+        }
+        return out;
+    }
+
+    private LigatureTable findLigature(LookupTable lookupTable, int[] gids, int start, int length)
+    {
+        for (LookupSubTable lookupSubTable : lookupTable.subTables)
+        {
+            if (!(lookupSubTable instanceof LookupTypeLigatureSubstFormat1))
+            {
+                continue;
+            }
+            LookupTypeLigatureSubstFormat1 ligatureSubTable =
+                    (LookupTypeLigatureSubstFormat1) lookupSubTable;
+            int coverageIndex = ligatureSubTable.coverageTable.getCoverageIndex(gids[start]);
+            if (coverageIndex < 0 || coverageIndex >= ligatureSubTable.ligatureSets.length)
+            {
+                continue;
+            }
+            // the ligatures are ordered by preference, usually the longest first
+            for (LigatureTable ligature : ligatureSubTable.ligatureSets[coverageIndex])
+            {
+                if (ligature.matches(gids, start + 1, length))
+                {
+                    return ligature;
+                }
+            }
+        }
+        return null;
+    }
+
     RangeRecord readRangeRecord(TTFDataStream data) throws IOException
     {
         RangeRecord rangeRecord = new RangeRecord();
@@ -650,6 +937,7 @@ public class GlyphSubstitutionTable extends TTFTable
         int lookupFlag;
         int markFilteringSet;
         LookupSubTable[] subTables;
+        BitSet coverage;
 
         @Override
         public String toString()
@@ -704,11 +992,61 @@ public class GlyphSubstitutionTable extends TTFTable
         }
     }
 
+    static class LookupTypeLigatureSubstFormat1 extends LookupSubTable
+    {
+        LigatureTable[][] ligatureSets;
+
+        @Override
+        int doSubstitution(int gid, int coverageIndex)
+        {
+            // ligatures need the following glyphs
+            return gid;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("LookupTypeLigatureSubstFormat1[substFormat=%d,ligatureSetCount=%d]",
+                    substFormat, ligatureSets.length);
+        }
+    }
+
+    static class LigatureTable
+    {
+        int ligatureGlyph;
+        int[] componentGlyphIDs; // without the first component
+
+        boolean matches(int[] gids, int start, int length)
+        {
+            if (start + componentGlyphIDs.length > length)
+            {
+                return false;
+            }
+            for (int i = 0; i < componentGlyphIDs.length; i++)
+            {
+                if (gids[start + i] != componentGlyphIDs[i])
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("LigatureTable[ligatureGlyph=%d,componentGlyphIDs=%s]",
+                    ligatureGlyph, Arrays.toString(componentGlyphIDs));
+        }
+    }
+
     static abstract class CoverageTable
     {
         int coverageFormat;
 
         abstract int getCoverageIndex(int gid);
+
+        abstract void addTo(BitSet glyphs);
     }
 
     static class CoverageTableFormat1 extends CoverageTable
@@ -721,6 +1059,15 @@ public class GlyphSubstitutionTable extends TTFTable
             return Arrays.binarySearch(glyphArray, gid);
         }
 
+        @Override
+        void addTo(BitSet glyphs)
+        {
+            for (int gid : glyphArray)
+            {
+                glyphs.set(gid);
+            }
+        }
+
         @Override
         public String toString()
         {
@@ -732,10 +1079,41 @@ public class GlyphSubstitutionTable extends TTFTable
     static class CoverageTableFormat2 extends CoverageTable
     {
         RangeRecord[] rangeRecords;
+        // the start glyphs for a binary search, null if the ranges aren't sorted
+        private int[] startGlyphIDs;
+
+        void compile()
+        {
+            int[] starts = new int[rangeRecords.length];
+            for (int i = 0; i < rangeRecords.length; i++)
+            {
+                starts[i] = rangeRecords[i].startGlyphID;
+                if (i > 0 && starts[i] <= rangeRecords[i - 1].endGlyphID)
+                {
+                    return;
+                }
+            }
+            startGlyphIDs = starts;
+        }
 
         @Override
         int getCoverageIndex(int gid)
         {
+            if (startGlyphIDs != null)
+            {
+                int index = Arrays.binarySearch(startGlyphIDs, gid);
+                if (index < 0)
+                {
+                    // the range which starts before the glyph
+                    index = -index - 2;
+                }
+                if (index >= 0 && gid <= rangeRecords[index].endGlyphID)
+                {
+                    RangeRecord rangeRecord = rangeRecords[index];
+                    return rangeRecord.startCoverageIndex + gid - rangeRecord.startGlyphID;
+                }
+                return -1;
+            }
             for (RangeRecord rangeRecord : rangeRecords)
             {
                 if (rangeRecord.startGlyphID <= gid && gid <= rangeRecord.endGlyphID)
@@ -746,6 +1124,18 @@ public class GlyphSubstitutionTable extends TTFTable
             return -1;
         }
 
+        @Override
+        void addTo(BitSet glyphs)
+        {
+            for (RangeRecord rangeRecord : rangeRecords)
+            {
+                if (rangeRecord.startGlyphID <= rangeRecord.endGlyphID)
+                {
+                    glyphs.set(rangeRecord.startGlyphID, rangeRecord.endGlyphID + 1);
+                }
+            }
+        }
+
         @Override
         public String toString()
         {
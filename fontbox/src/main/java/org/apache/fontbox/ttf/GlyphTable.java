@@ -128,7 +128,7 @@ public class GlyphTable extends TTFTable
                 {
                     ++cached;
                 }
-                glyphs[gid] = getGlyphData(gid);
+                glyphs[gid] = getGlyphData(gid, data);
             }
             initialized = true;
             return glyphs;
@@ -161,6 +161,29 @@ public class GlyphTable extends TTFTable
             return glyphs[gid];
         }
 
+        TTFDataStream view = data.createView();
+        if (view != null)
+        {
+            // read the glyph from a private view of the data, without locking
+            long start = loca.getGlyphOffset(gid);
+            if (start == loca.getGlyphOffset(gid + 1))
+            {
+                // no outline
+                return null;
+            }
+            view.seek(getOffset() + start);
+            GlyphData glyph = getGlyphData(gid, view);
+            synchronized (data)
+            {
+                if (glyphs != null && glyphs[gid] == null && cached < MAX_CACHED_GLYPHS)
+                {
+                    glyphs[gid] = glyph;
+                    ++cached;
+                }
+            }
+            return glyph;
+        }
+
         // PDFBOX-4219: synchronize on data because it is accessed by several threads
         // when PDFBox is accessing a standard 14 font for the first time
         synchronized (data)
@@ -179,7 +202,7 @@ public class GlyphTable extends TTFTable
 
             data.seek(getOffset() + offsets[gid]);
 
-            GlyphData glyph = getGlyphData(gid);
+            GlyphData glyph = getGlyphData(gid, data);
 
             // restore
             data.seek(currentPosition);
@@ -194,12 +217,12 @@ public class GlyphTable extends TTFTable
         }
     }
 
-    private GlyphData getGlyphData(int gid) throws IOException
+    private GlyphData getGlyphData(int gid, TTFDataStream stream) throws IOException
     {
         GlyphData glyph = new GlyphData();
         HorizontalMetricsTable hmt = font.getHorizontalMetrics();
         int leftSideBearing = hmt == null ? 0 : hmt.getLeftSideBearing(gid);
-        glyph.initData(this, data, leftSideBearing);
+        glyph.initData(this, stream, leftSideBearing);
         // resolve composite glyph
         if (glyph.getDescription().isComposite())
         {
@@ -35,6 +35,11 @@ public class HorizontalMetricsTable extends TTFTable
     private short[] nonHorizontalLeftSideBearing;
     private int numHMetrics;
 
+    // set if the metrics are read on demand from the font data instead of being copied
+    private ByteBufferTTFDataStream lazyData;
+    private int numNonHorizontal;
+    private int numNonHorizontalInTable;
+
     HorizontalMetricsTable(TrueTypeFont font)
     {
         super(font);
@@ -57,6 +62,23 @@ public class HorizontalMetricsTable extends TTFTable
         numHMetrics = hHeader.getNumberOfHMetrics();
         int numGlyphs = ttf.getNumberOfGlyphs();
 
+        if (data instanceof ByteBufferTTFDataStream && numHMetrics > 0
+                && numHMetrics * 4L <= getLength()
+                && getOffset() + getLength() <= data.getOriginalDataSize())
+        {
+            // the metrics can be read at absolute positions, so there's no need to copy them
+            lazyData = (ByteBufferTTFDataStream) data;
+            numNonHorizontal = numGlyphs - numHMetrics;
+            if (numNonHorizontal < 0)
+            {
+                numNonHorizontal = numGlyphs;
+            }
+            numNonHorizontalInTable = (int) Math.min(numNonHorizontal,
+                    (getLength() - numHMetrics * 4L) / 2);
+            initialized = true;
+            return;
+        }
+
         int bytesRead = 0;
         advanceWidth = new int[ numHMetrics ];
         leftSideBearing = new short[ numHMetrics ];
@@ -101,6 +123,13 @@ public class HorizontalMetricsTable extends TTFTable
      */
     public int getAdvanceWidth(int gid)
     {
+        if (lazyData != null)
+        {
+            // monospaced fonts may not have a width for every glyph
+            // the last one is for subsequent glyphs
+            int index = gid < numHMetrics ? checkIndex(gid, numHMetrics) : numHMetrics - 1;
+            return lazyData.readUnsignedShortAt(getOffset() + index * 4L);
+        }
         if (gid < numHMetrics)
         {
             return advanceWidth[gid];
@@ -120,6 +149,20 @@ public class HorizontalMetricsTable extends TTFTable
      */
     public int getLeftSideBearing(int gid)
     {
+        if (lazyData != null)
+        {
+            if (gid < numHMetrics)
+            {
+                return lazyData.readSignedShortAt(getOffset() + checkIndex(gid, numHMetrics) * 4L + 2);
+            }
+            int index = checkIndex(gid - numHMetrics, numNonHorizontal);
+            if (index < numNonHorizontalInTable)
+            {
+                return lazyData.readSignedShortAt(getOffset() + numHMetrics * 4L + index * 2L);
+            }
+            // bad fonts without the "leftSideBearing" array
+            return 0;
+        }
         if (gid < numHMetrics)
         {
             return leftSideBearing[gid];
@@ -129,4 +172,14 @@ public class HorizontalMetricsTable extends TTFTable
             return nonHorizontalLeftSideBearing[gid - numHMetrics];
         }
    }
+
+    private static int checkIndex(int index, int length)
+    {
+        // same failure as the arrays that are used if the metrics are copied
+        if (index < 0 || index >= length)
+        {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+        return index;
+    }
 }
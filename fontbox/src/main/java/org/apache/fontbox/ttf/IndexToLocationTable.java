@@ -35,6 +35,11 @@ public class IndexToLocationTable extends TTFTable
     
     private long[] offsets;
 
+    // set if the offsets are read on demand from the font data instead of being copied
+    private ByteBufferTTFDataStream lazyData;
+    private boolean longOffsets;
+    private int numOffsets;
+
     IndexToLocationTable(TrueTypeFont font)
     {
         super(font);
@@ -55,14 +60,29 @@ public class IndexToLocationTable extends TTFTable
             throw new IOException("Could not get head table");
         }
         int numGlyphs = ttf.getNumberOfGlyphs();
+        int format = head.getIndexToLocFormat();
+        if (data instanceof ByteBufferTTFDataStream
+                && (format == SHORT_OFFSETS || format == LONG_OFFSETS))
+        {
+            long size = (numGlyphs + 1L) * (format == SHORT_OFFSETS ? 2 : 4);
+            if (getOffset() + size <= data.getOriginalDataSize())
+            {
+                // the offsets can be read at absolute positions, so there's no need to copy them
+                lazyData = (ByteBufferTTFDataStream) data;
+                longOffsets = format == LONG_OFFSETS;
+                numOffsets = numGlyphs + 1;
+                initialized = true;
+                return;
+            }
+        }
         offsets = new long[ numGlyphs +1];
         for( int i=0; i<numGlyphs+1; i++ )
         {
-            if( head.getIndexToLocFormat() == SHORT_OFFSETS )
+            if( format == SHORT_OFFSETS )
             {
                 offsets[i] = data.readUnsignedShort() * 2;
             }
-            else if(  head.getIndexToLocFormat() == LONG_OFFSETS )
+            else if(  format == LONG_OFFSETS )
             {
                 offsets[i] = data.readUnsignedInt();
             }
@@ -73,18 +93,53 @@ public class IndexToLocationTable extends TTFTable
         }
         initialized = true;
     }
+
     /**
      * @return Returns the offsets.
      */
-    public long[] getOffsets()
+    public synchronized long[] getOffsets()
     {
+        if (offsets == null && lazyData != null)
+        {
+            long[] values = new long[numOffsets];
+            for (int i = 0; i < numOffsets; i++)
+            {
+                values[i] = getGlyphOffset(i);
+            }
+            offsets = values;
+        }
         return offsets;
     }
+
+    /**
+     * Returns the offset of a single glyph, without copying all offsets.
+     *
+     * @param index the GID, or the number of glyphs for the end of the last glyph
+     * @return the offset of the glyph in the glyph table
+     */
+    long getGlyphOffset(int index)
+    {
+        if (lazyData == null)
+        {
+            return getOffsets()[index];
+        }
+        if (index < 0 || index >= numOffsets)
+        {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+        if (longOffsets)
+        {
+            return lazyData.readUnsignedIntAt(getOffset() + index * 4L);
+        }
+        return lazyData.readUnsignedShortAt(getOffset() + index * 2L) * 2L;
+    }
+
     /**
      * @param offsetsValue The offsets to set.
      */
-    public void setOffsets(long[] offsetsValue)
+    public synchronized void setOffsets(long[] offsetsValue)
     {
         offsets = offsetsValue;
+        lazyData = null;
     }
 }
@@ -94,4 +94,17 @@ class TTCDataStream extends TTFDataStream
     {
         return stream.getOriginalDataSize();
     }
+
+    @Override
+    byte[] readAt(long offset, int length) throws IOException
+    {
+        return stream.readAt(offset, length);
+    }
+
+    @Override
+    TTFDataStream createView()
+    {
+        // the table offsets of the fonts in a collection are relative to the start of the file
+        return stream.createView();
+    }
 }
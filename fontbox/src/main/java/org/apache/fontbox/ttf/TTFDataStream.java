@@ -302,4 +302,37 @@ abstract class TTFDataStream implements Closeable
      * @throws IOException If there is an issue reading the data.
      */
     public abstract long getOriginalDataSize();
+
+    /**
+     * Reads bytes at the given position without changing the current position of this stream.
+     * This implementation seeks while holding the lock of this stream, subclasses that can read
+     * at absolute positions don't need the lock.
+     *
+     * @param offset the position to read from.
+     * @param length the number of bytes to read.
+     * @return the bytes.
+     * @throws IOException If there is an error while reading.
+     */
+    byte[] readAt(long offset, int length) throws IOException
+    {
+        synchronized (this)
+        {
+            long currentPosition = getCurrentPosition();
+            seek(offset);
+            byte[] bytes = read(length);
+            seek(currentPosition);
+            return bytes;
+        }
+    }
+
+    /**
+     * Creates a stream over the same data with its own position, which can be read concurrently
+     * with this stream and with other views without locking.
+     *
+     * @return the new stream, or null if this stream doesn't support views.
+     */
+    TTFDataStream createView()
+    {
+        return null;
+    }
 }
@@ -29,6 +29,7 @@ public class TTFParser
 {
     private boolean isEmbedded = false;
     private boolean parseOnDemandOnly = false;
+    private boolean memoryMapped = false;
 
     /**
      * Constructor.
@@ -60,6 +61,19 @@ public class TTFParser
         parseOnDemandOnly = parseOnDemand;
     }
 
+    /**
+     * Sets whether {@link #parse(File)} memory-maps the font file. The tables of a mapped font
+     * can be read by several threads without locking, but the mapping is only released when it is
+     * garbage collected, not by {@link TrueTypeFont#close()}. On Windows the file stays locked
+     * until then. The default is false.
+     *
+     * @param memoryMapped true if font files are to be memory-mapped
+     */
+    public void setMemoryMapped(boolean memoryMapped)
+    {
+        this.memoryMapped = memoryMapped;
+    }
+
     /**
      * Parse a file and return a TrueType font.
      *
@@ -81,7 +95,8 @@ public class TTFParser
      */
     public TrueTypeFont parse(File ttfFile) throws IOException
     {
-        RAFDataStream raf = new RAFDataStream(ttfFile, "r");
+        TTFDataStream raf = memoryMapped ? ByteBufferTTFDataStream.open(ttfFile)
+                : new RAFDataStream(ttfFile, "r");
         try
         {
             return parse(raf);
@@ -103,7 +118,7 @@ public class TTFParser
      */
     public TrueTypeFont parse(InputStream inputStream) throws IOException
     {
-        return parse(new MemoryTTFDataStream(inputStream));
+        return parse(ByteBufferTTFDataStream.read(inputStream));
     }
 
     /**
@@ -116,7 +131,7 @@ public class TTFParser
     public TrueTypeFont parseEmbedded(InputStream inputStream) throws IOException
     {
         this.isEmbedded = true;
-        return parse(new MemoryTTFDataStream(inputStream));
+        return parse(ByteBufferTTFDataStream.read(inputStream));
     }
 
     /**
@@ -16,13 +16,10 @@
  */
 package org.apache.fontbox.ttf;
 
-import java.io.ByteArrayOutputStream;
-import java.io.DataOutputStream;
-import java.io.EOFException;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -42,6 +39,11 @@ import org.apache.commons.logging.LogFactory;
 /**
  * Subsetter for TrueType (TTF) fonts.
  *
+ * <p>The subset is written into a single buffer, which is sized from the glyph offsets of the
+ * 'loca' table. A subsetter can be extended: characters can be added after the subset has been
+ * written and the subset can be written again. Only the glyphs that have been added since are
+ * searched for compound glyph references.
+ *
  * <p>Originally developed by Wolfgang Glas for
  * <a href="https://clazzes.org/display/SKETCH/Clazzes.org+Sketch+Home">Sketch</a>.
  *
@@ -59,8 +61,8 @@ public final class TTFSubsetter
 
     private final List<String> keepTables;
     private final SortedSet<Integer> glyphIds; // new glyph ids
+    private final SortedSet<Integer> unresolvedGlyphIds; // not yet searched for compound references
     private String prefix;
-    private boolean hasAddedCompoundReferences;
 
     /**
      * Creates a subsetter for the given font.
@@ -85,12 +87,13 @@ public final class TTFSubsetter
 
         uniToGID = new TreeMap<Integer, Integer>();
         glyphIds = new TreeSet<Integer>();
+        unresolvedGlyphIds = new TreeSet<Integer>();
 
         // find the best Unicode cmap
         this.unicodeCmap = ttf.getUnicodeCmapLookup();
 
         // always copy GID 0
-        glyphIds.add(0);
+        addGlyphId(0);
     }
 
     /**
@@ -112,7 +115,15 @@ public final class TTFSubsetter
         if (gid != 0)
         {
             uniToGID.put(unicode, gid);
-            glyphIds.add(gid);
+            addGlyphId(gid);
+        }
+    }
+
+    private void addGlyphId(int gid)
+    {
+        if (glyphIds.add(gid))
+        {
+            unresolvedGlyphIds.add(gid);
         }
     }
 
@@ -129,6 +140,19 @@ public final class TTFSubsetter
         }
     }
 
+    /**
+     * Add the given glyphs to the subset, e.g. ligatures which aren't mapped by the cmap.
+     *
+     * @param allGlyphIds GIDs
+     */
+    public void addGlyphIds(Set<Integer> allGlyphIds)
+    {
+        for (int gid : allGlyphIds)
+        {
+            addGlyphId(gid);
+        }
+    }
+
     /**
      * Returns the map of new -&gt; old GIDs.
      */
@@ -152,7 +176,7 @@ public final class TTFSubsetter
      * @return The file offset of the first TTF table to write.
      * @throws IOException Upon errors.
      */
-    private long writeFileHeader(DataOutputStream out, int nTables) throws IOException
+    private long writeFileHeader(FontBuffer out, int nTables)
     {
         out.writeInt(0x00010000);
         out.writeShort(nTables);
@@ -172,13 +196,16 @@ public final class TTFSubsetter
         return 0x00010000L + toUInt32(nTables, searchRange) + toUInt32(entrySelector, last);
     }
         
-    private long writeTableHeader(DataOutputStream out, String tag, long offset, byte[] bytes)
+    private long writeTableHeader(FontBuffer out, String tag, int offset, int length)
             throws IOException 
     {
+        // the table is padded with zeros, so it can be summed up in whole words
         long checksum = 0;
-        for (int nup = 0, n = bytes.length; nup < n; nup++)
+        byte[] bytes = out.bytes;
+        for (int i = offset, end = offset + length; i < end; i += 4)
         {
-            checksum += (bytes[nup] & 0xffL) << 24 - nup % 4 * 8;
+            checksum += (bytes[i] & 0xffL) << 24 | (bytes[i + 1] & 0xffL) << 16
+                    | (bytes[i + 2] & 0xffL) << 8 | bytes[i + 3] & 0xffL;
         }
         checksum &= 0xffffffffL;
 
@@ -186,28 +213,15 @@ public final class TTFSubsetter
 
         out.write(tagbytes, 0, 4);
         out.writeInt((int)checksum);
-        out.writeInt((int)offset);
-        out.writeInt(bytes.length);
+        out.writeInt(offset);
+        out.writeInt(length);
 
         // account for the checksum twice, once for the header field, once for the content itself
-        return toUInt32(tagbytes) + checksum + checksum + offset + bytes.length;
+        return toUInt32(tagbytes) + checksum + checksum + offset + length;
     }
 
-    private void writeTableBody(OutputStream os, byte[] bytes) throws IOException
+    private void writeHeadTable(FontBuffer out) throws IOException
     {
-        int n = bytes.length;
-        os.write(bytes);
-        if (n % 4 != 0)
-        {
-            os.write(PAD_BUF, 0, 4 - n % 4);
-        }
-    }
-
-    private byte[] buildHeadTable() throws IOException
-    {
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        DataOutputStream out = new DataOutputStream(bos);
-
         HeaderTable h = ttf.getHeader();
         writeFixed(out, h.getVersion());
         writeFixed(out, h.getFontRevision());
@@ -227,16 +241,10 @@ public final class TTFSubsetter
         // force long format of 'loca' table
         writeSInt16(out, (short)1); // h.getIndexToLocFormat()
         writeSInt16(out, h.getGlyphDataFormat());
-        out.flush();
-
-        return bos.toByteArray();
     }
 
-    private byte[] buildHheaTable() throws IOException
+    private void writeHheaTable(FontBuffer out) throws IOException
     {
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        DataOutputStream out = new DataOutputStream(bos);
-
         HorizontalHeaderTable h = ttf.getHorizontalHeader();
         writeFixed(out, h.getVersion());
         writeSInt16(out, h.getAscender());
@@ -263,9 +271,6 @@ public final class TTFSubsetter
             ++hmetrics;
         }
         writeUint16(out, hmetrics);
-
-        out.flush();
-        return bos.toByteArray();
     }
 
     private boolean shouldCopyNameRecord(NameRecord nr)
@@ -276,18 +281,26 @@ public final class TTFSubsetter
                 && nr.getNameId() >= 0 && nr.getNameId() < 7;
     }
 
-    private byte[] buildNameTable() throws IOException
+    private boolean hasNameTable() throws IOException
     {
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        DataOutputStream out = new DataOutputStream(bos);
-
         NamingTable name = ttf.getNaming();
         if (name == null || keepTables != null && !keepTables.contains("name"))
         {
-            return null;
+            return false;
         }
+        for (NameRecord record : name.getNameRecords())
+        {
+            if (shouldCopyNameRecord(record))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
 
-        List<NameRecord> nameRecords = name.getNameRecords();
+    private void writeNameTable(FontBuffer out) throws IOException
+    {
+        List<NameRecord> nameRecords = ttf.getNaming().getNameRecords();
         int numRecords = 0;
         for (NameRecord record : nameRecords)
         {
@@ -300,11 +313,6 @@ public final class TTFSubsetter
         writeUint16(out, numRecords);
         writeUint16(out, 2*3 + 2*6 * numRecords);
 
-        if (numRecords == 0)
-        {
-            return null;
-        }
-
         byte[][] names = new byte[numRecords][];
         int j = 0;
         for (NameRecord record : nameRecords)
@@ -367,16 +375,10 @@ public final class TTFSubsetter
         {
             out.write(names[i]);
         }
-
-        out.flush();
-        return bos.toByteArray();
     }
 
-    private byte[] buildMaxpTable() throws IOException
+    private void writeMaxpTable(FontBuffer out) throws IOException
     {
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        DataOutputStream out = new DataOutputStream(bos);
-
         MaximumProfileTable p = ttf.getMaximumProfile();
         writeFixed(out, 1.0);
         writeUint16(out, glyphIds.size());
@@ -393,21 +395,17 @@ public final class TTFSubsetter
         writeUint16(out, p.getMaxSizeOfInstructions());
         writeUint16(out, p.getMaxComponentElements());
         writeUint16(out, p.getMaxComponentDepth());
+    }
 
-        out.flush();
-        return bos.toByteArray();
+    private boolean hasOS2Table() throws IOException
+    {
+        return ttf.getOS2Windows() != null && !uniToGID.isEmpty() &&
+               (keepTables == null || keepTables.contains("OS/2"));
     }
 
-    private byte[] buildOS2Table() throws IOException
+    private void writeOS2Table(FontBuffer out) throws IOException
     {
         OS2WindowsMetricsTable os2 = ttf.getOS2Windows();
-        if (os2 == null || uniToGID.isEmpty() || keepTables != null && !keepTables.contains("OS/2"))
-        {
-            return null;
-        }
-
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        DataOutputStream out = new DataOutputStream(bos);
 
         writeUint16(out, os2.getVersion());
         writeSInt16(out, os2.getAverageCharWidth());
@@ -446,170 +444,50 @@ public final class TTFSubsetter
         writeUint16(out, os2.getTypoLineGap());
         writeUint16(out, os2.getWinAscent());
         writeUint16(out, os2.getWinDescent());
-
-        out.flush();
-        return bos.toByteArray();
     }
 
-    // never returns null
-    private byte[] buildLocaTable(long[] newOffsets) throws IOException
+    private void writeLocaTable(FontBuffer out, long[] newOffsets)
     {
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        DataOutputStream out = new DataOutputStream(bos);
-
         for (long offset : newOffsets)
         {
             writeUint32(out, offset);
         }
-
-        out.flush();
-        return bos.toByteArray();
     }
 
     /**
-     * Resolve compound glyph references.
+     * Resolve compound glyph references. Only the glyphs that have been added since the last call
+     * are searched.
      */
     private void addCompoundReferences() throws IOException
     {
-        if (hasAddedCompoundReferences)
+        if (unresolvedGlyphIds.isEmpty())
         {
             return;
         }
-        hasAddedCompoundReferences = true;
-
-        boolean hasNested;
-        do
-        {
-            GlyphTable g = ttf.getGlyph();
-            long[] offsets = ttf.getIndexToLocation().getOffsets();
-            InputStream is = ttf.getOriginalData();
-            Set<Integer> glyphIdsToAdd = null;
-            try
-            {
-                is.skip(g.getOffset());
-                long lastOff = 0L;
-                for (Integer glyphId : glyphIds)
-                {
-                    long offset = offsets[glyphId];
-                    long len = offsets[glyphId + 1] - offset;
-                    is.skip(offset - lastOff);
-                    byte[] buf = new byte[(int)len];
-                    is.read(buf);
-                    // rewrite glyphIds for compound glyphs
-                    if (buf.length >= 2 && buf[0] == -1 && buf[1] == -1)
-                    {
-                        int off = 2*5;
-                        int flags;
-                        do
-                        {
-                            flags = (buf[off] & 0xff) << 8 | buf[off + 1] & 0xff;
-                            off +=2;
-                            int ogid = (buf[off] & 0xff) << 8 | buf[off + 1] & 0xff;
-                            if (!glyphIds.contains(ogid))
-                            {
-                                if (glyphIdsToAdd == null)
-                                {
-                                    glyphIdsToAdd = new TreeSet<Integer>();
-                                }
-                                glyphIdsToAdd.add(ogid);
-                            }
-                            off += 2;
-                            // ARG_1_AND_2_ARE_WORDS
-                            if ((flags & 1 << 0) != 0)
-                            {
-                                off += 2 * 2;
-                            }
-                            else
-                            {
-                                off += 2;
-                            }
-                            // WE_HAVE_A_TWO_BY_TWO
-                            if ((flags & 1 << 7) != 0)
-                            {
-                                off += 2 * 4;
-                            }
-                            // WE_HAVE_AN_X_AND_Y_SCALE
-                            else if ((flags & 1 << 6) != 0)
-                            {
-                                off += 2 * 2;
-                            }
-                            // WE_HAVE_A_SCALE
-                            else if ((flags & 1 << 3) != 0)
-                            {
-                                off += 2;
-                            }
-                        }
-                        while ((flags & 1 << 5) != 0); // MORE_COMPONENTS
-
-                    }
-                    lastOff = offsets[glyphId + 1];
-                }
-            }
-            finally
-            {
-                is.close();
-            }
-            if (glyphIdsToAdd != null)
-            {
-                glyphIds.addAll(glyphIdsToAdd);
-            }
-            hasNested = glyphIdsToAdd != null;
-        }
-        while (hasNested);
-    }
-
-    // never returns null
-    private byte[] buildGlyfTable(long[] newOffsets) throws IOException
-    {
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
 
         GlyphTable g = ttf.getGlyph();
         long[] offsets = ttf.getIndexToLocation().getOffsets();
-        InputStream is = ttf.getOriginalData();
-        try
+        while (!unresolvedGlyphIds.isEmpty())
         {
-            is.skip(g.getOffset());
-
-            long prevEnd = 0;    // previously read glyph offset
-            long newOffset = 0;  // new offset for the glyph in the subset font
-            int newGid = 0;      // new GID in subset font
-
-            // for each glyph in the subset
-            for (Integer gid : glyphIds)
+            // components that are found are added to the set and searched in the next round
+            Integer[] glyphIdsToResolve =
+                    unresolvedGlyphIds.toArray(new Integer[unresolvedGlyphIds.size()]);
+            unresolvedGlyphIds.clear();
+            for (Integer glyphId : glyphIdsToResolve)
             {
-                long offset = offsets[gid];
-                long length = offsets[gid + 1] - offset;
-
-                newOffsets[newGid++] = newOffset;
-                is.skip(offset - prevEnd);
-
-                byte[] buf = new byte[(int)length];
-                is.read(buf);
-
-                // detect glyph type
+                byte[] buf = readGlyph(g, offsets, glyphId);
+                // rewrite glyphIds for compound glyphs
                 if (buf.length >= 2 && buf[0] == -1 && buf[1] == -1)
                 {
-                    // compound glyph
                     int off = 2*5;
                     int flags;
                     do
                     {
-                        // flags
                         flags = (buf[off] & 0xff) << 8 | buf[off + 1] & 0xff;
+                        off +=2;
+                        int ogid = (buf[off] & 0xff) << 8 | buf[off + 1] & 0xff;
+                        addGlyphId(ogid);
                         off += 2;
-
-                        // glyphIndex
-                        int componentGid = (buf[off] & 0xff) << 8 | buf[off + 1] & 0xff;
-                        if (!glyphIds.contains(componentGid))
-                        {
-                            glyphIds.add(componentGid);
-                        }
-
-                        int newComponentGid = getNewGlyphId(componentGid);
-                        buf[off]   = (byte)(newComponentGid >>> 8);
-                        buf[off + 1] = (byte)newComponentGid;
-                        off += 2;
-
                         // ARG_1_AND_2_ARE_WORDS
                         if ((flags & 1 << 0) != 0)
                         {
@@ -637,67 +515,128 @@ public final class TTFSubsetter
                     }
                     while ((flags & 1 << 5) != 0); // MORE_COMPONENTS
 
-                    // WE_HAVE_INSTRUCTIONS
-                    if ((flags & 0x0100) == 0x0100)
-                    {
-                        // USHORT numInstr
-                        int numInstr = (buf[off] & 0xff) << 8 | buf[off + 1] & 0xff;
-                        off += 2;
+                }
+            }
+        }
+    }
 
-                        // BYTE instr[numInstr]
-                        off += numInstr;
-                    }
+    /**
+     * Reads the data of a glyph, without going through the glyph table's parser.
+     */
+    private byte[] readGlyph(GlyphTable g, long[] offsets, int gid) throws IOException
+    {
+        long offset = offsets[gid];
+        long length = offsets[gid + 1] - offset;
+        return ttf.readBytes(g.getOffset() + offset, (int) length);
+    }
+
+    private void writeGlyfTable(FontBuffer out, long[] newOffsets, int[] newGlyphIds)
+            throws IOException
+    {
+        GlyphTable g = ttf.getGlyph();
+        long[] offsets = ttf.getIndexToLocation().getOffsets();
 
-                    // write the compound glyph
-                    bos.write(buf, 0, off);
+        long newOffset = 0;  // new offset for the glyph in the subset font
+        int newGid = 0;      // new GID in subset font
 
-                    // offset to start next glyph
-                    newOffset += off;
-                }
-                else if (buf.length > 0)
-                {
-                    // copy the entire glyph
-                    bos.write(buf, 0, buf.length);
+        // for each glyph in the subset
+        for (Integer gid : glyphIds)
+        {
+            newOffsets[newGid++] = newOffset;
+
+            byte[] buf = readGlyph(g, offsets, gid);
 
-                    // offset to start next glyph
-                    newOffset += buf.length;
+            // detect glyph type
+            if (buf.length >= 2 && buf[0] == -1 && buf[1] == -1)
+            {
+                // compound glyph
+                int off = 2*5;
+                int flags;
+                do
+                {
+                    // flags
+                    flags = (buf[off] & 0xff) << 8 | buf[off + 1] & 0xff;
+                    off += 2;
+
+                    // glyphIndex, all components have been added by addCompoundReferences()
+                    int componentGid = (buf[off] & 0xff) << 8 | buf[off + 1] & 0xff;
+                    int newComponentGid = newGlyphIds[componentGid];
+                    buf[off]   = (byte)(newComponentGid >>> 8);
+                    buf[off + 1] = (byte)newComponentGid;
+                    off += 2;
+
+                    // ARG_1_AND_2_ARE_WORDS
+                    if ((flags & 1 << 0) != 0)
+                    {
+                        off += 2 * 2;
+                    }
+                    else
+                    {
+                        off += 2;
+                    }
+                    // WE_HAVE_A_TWO_BY_TWO
+                    if ((flags & 1 << 7) != 0)
+                    {
+                        off += 2 * 4;
+                    }
+                    // WE_HAVE_AN_X_AND_Y_SCALE
+                    else if ((flags & 1 << 6) != 0)
+                    {
+                        off += 2 * 2;
+                    }
+                    // WE_HAVE_A_SCALE
+                    else if ((flags & 1 << 3) != 0)
+                    {
+                        off += 2;
+                    }
                 }
+                while ((flags & 1 << 5) != 0); // MORE_COMPONENTS
 
-                // 4-byte alignment
-                if (newOffset % 4 != 0)
+                // WE_HAVE_INSTRUCTIONS
+                if ((flags & 0x0100) == 0x0100)
                 {
-                    int len = 4 - (int)(newOffset % 4);
-                    bos.write(PAD_BUF, 0, len);
-                    newOffset += len;
+                    // USHORT numInstr
+                    int numInstr = (buf[off] & 0xff) << 8 | buf[off + 1] & 0xff;
+                    off += 2;
+
+                    // BYTE instr[numInstr]
+                    off += numInstr;
                 }
 
-                prevEnd = offset + length;
+                // write the compound glyph
+                out.write(buf, 0, off);
+
+                // offset to start next glyph
+                newOffset += off;
+            }
+            else if (buf.length > 0)
+            {
+                // copy the entire glyph
+                out.write(buf, 0, buf.length);
+
+                // offset to start next glyph
+                newOffset += buf.length;
             }
-            newOffsets[newGid++] = newOffset;
-        }
-        finally
-        {
-            is.close();
-        }
 
-        return bos.toByteArray();
+            // 4-byte alignment
+            if (newOffset % 4 != 0)
+            {
+                int len = 4 - (int)(newOffset % 4);
+                out.write(PAD_BUF, 0, len);
+                newOffset += len;
+            }
+        }
+        newOffsets[newGid] = newOffset;
     }
 
-    private int getNewGlyphId(Integer oldGid)
+    private boolean hasCmapTable() throws IOException
     {
-        return glyphIds.headSet(oldGid).size();
+        return ttf.getCmap() != null && !uniToGID.isEmpty() &&
+               (keepTables == null || keepTables.contains("cmap"));
     }
 
-    private byte[] buildCmapTable() throws IOException
+    private void writeCmapTable(FontBuffer out, int[] newGlyphIds)
     {
-        if (ttf.getCmap() == null || uniToGID.isEmpty() || keepTables != null && !keepTables.contains("cmap"))
-        {
-            return null;
-        }
-
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        DataOutputStream out = new DataOutputStream(bos);
-
         // cmap header
         writeUint16(out, 0); // version
         writeUint16(out, 1); // numberSubtables
@@ -711,7 +650,7 @@ public final class TTFSubsetter
         Iterator<Entry<Integer, Integer>> it = uniToGID.entrySet().iterator();
         Entry<Integer, Integer> lastChar = it.next();
         Entry<Integer, Integer> prevChar = lastChar;
-        int lastGid = getNewGlyphId(lastChar.getValue());
+        int lastGid = newGlyphIds[lastChar.getValue()];
 
         // +1 because .notdef is missing in uniToGID
         int[] startCode = new int[uniToGID.size()+1];
@@ -721,7 +660,7 @@ public final class TTFSubsetter
         while(it.hasNext())
         {
             Entry<Integer, Integer> curChar2Gid = it.next();
-            int curGid = getNewGlyphId(curChar2Gid.getValue());
+            int curGid = newGlyphIds[curChar2Gid.getValue()];
 
             // todo: need format Format 12 for non-BMP
             if (curChar2Gid.getKey() > 0xFFFF)
@@ -802,20 +741,16 @@ public final class TTFSubsetter
         {
             writeUint16(out, 0);
         }
+    }
 
-        return bos.toByteArray();
+    private boolean hasPostTable() throws IOException
+    {
+        return ttf.getPostScript() != null && (keepTables == null || keepTables.contains("post"));
     }
 
-    private byte[] buildPostTable() throws IOException
+    private void writePostTable(FontBuffer out) throws IOException
     {
         PostScriptTable post = ttf.getPostScript();
-        if (post == null || keepTables != null && !keepTables.contains("post"))
-        {
-            return null;
-        }
-
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        DataOutputStream out = new DataOutputStream(bos);
 
         writeFixed(out, 2.0); // version
         writeFixed(out, post.getItalicAngle());
@@ -863,19 +798,13 @@ public final class TTFSubsetter
             writeUint8(out, buf.length);
             out.write(buf);
         }
-
-        out.flush();
-        return bos.toByteArray();
     }
 
-    private byte[] buildHmtxTable() throws IOException
+    private void writeHmtxTable(FontBuffer out) throws IOException
     {
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-
         HorizontalHeaderTable h = ttf.getHorizontalHeader();
         HorizontalMetricsTable hm = ttf.getHorizontalMetrics();
-        InputStream is = ttf.getOriginalData();
-        
+
         // more info: https://developer.apple.com/fonts/TrueType-Reference-Manual/RM06/Chap6hmtx.html
         int lastgid = h.getNumberOfHMetrics() - 1;
         // true if lastgid is not in the set: we'll need its width (but not its left side bearing) later
@@ -885,63 +814,56 @@ public final class TTFSubsetter
             needLastGidWidth = true;
         }
 
-        try
+        for (Integer glyphId : glyphIds)
         {
-            is.skip(hm.getOffset());
-            long lastOffset = 0;
-            for (Integer glyphId : glyphIds)
+            if (glyphId <= lastgid)
             {
-                // offset in original file
-                long offset;
-                if (glyphId <= lastgid)
-                {
-                    // copy width and lsb
-                    offset = glyphId * 4l;
-                    lastOffset = copyBytes(is, bos, offset, lastOffset, 4);
-                }
-                else 
+                // copy width and lsb
+                writeUint16(out, hm.getAdvanceWidth(glyphId));
+                writeSInt16(out, (short) hm.getLeftSideBearing(glyphId));
+            }
+            else
+            {
+                if (needLastGidWidth)
                 {
-                    if (needLastGidWidth)
-                    {
-                        // one time only: copy width from lastgid, whose width applies
-                        // to all later glyphs
-                        needLastGidWidth = false;
-                        offset = lastgid * 4l;
-                        lastOffset = copyBytes(is, bos, offset, lastOffset, 2);
+                    // one time only: copy width from lastgid, whose width applies
+                    // to all later glyphs
+                    needLastGidWidth = false;
+                    writeUint16(out, hm.getAdvanceWidth(lastgid));
 
-                        // then go on with lsb from actual glyph (lsb are individual even in monotype fonts)
-                    }
-
-                    // copy lsb only, as we are beyond numOfHMetrics
-                    offset = h.getNumberOfHMetrics() * 4l + (glyphId - h.getNumberOfHMetrics()) * 2l;
-                    lastOffset = copyBytes(is, bos, offset, lastOffset, 2);
+                    // then go on with lsb from actual glyph (lsb are individual even in monotype fonts)
                 }
-            }
 
-            return bos.toByteArray();
-        }
-        finally
-        {
-            is.close();
+                // copy lsb only, as we are beyond numOfHMetrics
+                writeSInt16(out, (short) hm.getLeftSideBearing(glyphId));
+            }
         }
     }
 
-    private long copyBytes(InputStream is, OutputStream os, long newOffset, long lastOffset, int count)
-            throws IOException
+    /**
+     * Returns the expected size of the subset font. The size of the glyph data is known from the
+     * 'loca' offsets, the other tables that are built are small.
+     */
+    private int estimateSize(Set<String> tags, long[] offsets) throws IOException
     {
-        // skip over from last original offset
-        long nskip = newOffset - lastOffset;
-        if (nskip != is.skip(nskip))
+        long size = 12L + 16L * tags.size();
+        for (Integer gid : glyphIds)
         {
-            throw new EOFException("Unexpected EOF exception parsing glyphId of hmtx table.");
+            size += (offsets[gid + 1] - offsets[gid] + 3) & ~3L;
         }
-        byte[] buf = new byte[count];
-        if (count != is.read(buf, 0, count))
+        // loca, hmtx and post glyph name indices
+        size += 4L * (glyphIds.size() + 1) + 4L * glyphIds.size() + 2L * glyphIds.size();
+        // cmap segments
+        size += 8L * (uniToGID.size() + 2);
+        for (String tag : tags)
         {
-            throw new EOFException("Unexpected EOF exception parsing glyphId of hmtx table.");
+            TTFTable table = ttf.getTableMap().get(tag);
+            if (table != null && !"glyf".equals(tag) && !"loca".equals(tag) && !"hmtx".equals(tag))
+            {
+                size += table.getLength() + 3;
+            }
         }
-        os.write(buf, 0, count);
-        return newOffset + count; 
+        return (int) Math.min(size, Integer.MAX_VALUE - 8);
     }
 
     /**
@@ -960,87 +882,139 @@ public final class TTFSubsetter
         
         addCompoundReferences();
 
-        DataOutputStream out = new DataOutputStream(os);
         try 
         {
-            long[] newLoca = new long[glyphIds.size() + 1];
+            // the new GID of each old GID of the subset
+            int[] newGlyphIds = new int[glyphIds.last() + 1];
+            int newGid = 0;
+            for (Integer gid : glyphIds)
+            {
+                newGlyphIds[gid] = newGid++;
+            }
 
-            // generate tables in dependency order
-            byte[] head = buildHeadTable();
-            byte[] hhea = buildHheaTable();
-            byte[] maxp = buildMaxpTable();
-            byte[] name = buildNameTable();
-            byte[] os2  = buildOS2Table();
-            byte[] glyf = buildGlyfTable(newLoca);
-            byte[] loca = buildLocaTable(newLoca);
-            byte[] cmap = buildCmapTable();
-            byte[] hmtx = buildHmtxTable();
-            byte[] post = buildPostTable();
+            boolean hasOS2 = hasOS2Table();
+            boolean hasCmap = hasCmapTable();
+            boolean hasName = hasNameTable();
+            boolean hasPost = hasPostTable();
 
             // save to TTF in optimized order
-            Map<String, byte[]> tables = new TreeMap<String, byte[]>();
-            if (os2 != null)
+            SortedSet<String> tags = new TreeSet<String>(
+                    Arrays.asList("glyf", "head", "hhea", "hmtx", "loca", "maxp"));
+            if (hasOS2)
             {
-                tables.put("OS/2", os2);
+                tags.add("OS/2");
             }
-            if (cmap != null)
+            if (hasCmap)
             {
-                tables.put("cmap", cmap);
+                tags.add("cmap");
             }
-            tables.put("glyf", glyf); 
-            tables.put("head", head);
-            tables.put("hhea", hhea);
-            tables.put("hmtx", hmtx);
-            tables.put("loca", loca);
-            tables.put("maxp", maxp);
-            if (name != null)
+            if (hasName)
             {
-                tables.put("name", name);
+                tags.add("name");
             }
-            if (post != null)
+            if (hasPost)
             {
-                tables.put("post", post);
+                tags.add("post");
             }
 
             // copy all other tables
-            for (Map.Entry<String, TTFTable> entry : ttf.getTableMap().entrySet())
+            Map<String, TTFTable> tableMap = ttf.getTableMap();
+            for (String tag : tableMap.keySet())
             {
-                String tag = entry.getKey();
-                TTFTable table = entry.getValue();
+                if (keepTables == null || keepTables.contains(tag))
+                {
+                    tags.add(tag);
+                }
+            }
 
-                if (!tables.containsKey(tag) && (keepTables == null || keepTables.contains(tag)))
+            // write the tables behind the table directory, in the order of their tags
+            FontBuffer out = new FontBuffer(estimateSize(tags,
+                    ttf.getIndexToLocation().getOffsets()));
+            out.position = 12 + 16 * tags.size();
+            int[] tableOffsets = new int[tags.size()];
+            int[] tableLengths = new int[tags.size()];
+            long[] newLoca = new long[glyphIds.size() + 1];
+            int headOffset = 0;
+            int i = 0;
+            for (String tag : tags)
+            {
+                tableOffsets[i] = out.position;
+                if ("glyf".equals(tag))
                 {
-                    tables.put(tag, ttf.getTableBytes(table));
+                    writeGlyfTable(out, newLoca, newGlyphIds);
                 }
+                else if ("head".equals(tag))
+                {
+                    headOffset = out.position;
+                    writeHeadTable(out);
+                }
+                else if ("hhea".equals(tag))
+                {
+                    writeHheaTable(out);
+                }
+                else if ("hmtx".equals(tag))
+                {
+                    writeHmtxTable(out);
+                }
+                else if ("loca".equals(tag))
+                {
+                    // the glyph table comes first, so the offsets are known
+                    writeLocaTable(out, newLoca);
+                }
+                else if ("maxp".equals(tag))
+                {
+                    writeMaxpTable(out);
+                }
+                else if ("OS/2".equals(tag) && hasOS2)
+                {
+                    writeOS2Table(out);
+                }
+                else if ("cmap".equals(tag) && hasCmap)
+                {
+                    writeCmapTable(out, newGlyphIds);
+                }
+                else if ("name".equals(tag) && hasName)
+                {
+                    writeNameTable(out);
+                }
+                else if ("post".equals(tag) && hasPost)
+                {
+                    writePostTable(out);
+                }
+                else
+                {
+                    out.write(ttf.getTableBytes(tableMap.get(tag)));
+                }
+                tableLengths[i] = out.position - tableOffsets[i];
+                out.pad();
+                i++;
             }
+            int length = out.position;
 
             // calculate checksum
-            long checksum = writeFileHeader(out, tables.size());
-            long offset = 12L + 16L * tables.size();
-            for (Map.Entry<String, byte[]> entry : tables.entrySet())
+            out.position = 0;
+            long checksum = writeFileHeader(out, tags.size());
+            i = 0;
+            for (String tag : tags)
             {
-                checksum += writeTableHeader(out, entry.getKey(), offset, entry.getValue());
-                offset += (entry.getValue().length + 3) / 4 * 4;
+                checksum += writeTableHeader(out, tag, tableOffsets[i], tableLengths[i]);
+                i++;
             }
             checksum = 0xB1B0AFBAL - (checksum & 0xffffffffL);
 
             // update checksumAdjustment in 'head' table
-            head[8] = (byte)(checksum >>> 24);
-            head[9] = (byte)(checksum >>> 16);
-            head[10] = (byte)(checksum >>> 8);
-            head[11] = (byte)checksum;
-            for (byte[] bytes : tables.values())
-            {
-                writeTableBody(out, bytes);
-            }
+            out.position = headOffset + 8;
+            out.writeInt((int) checksum);
+
+            os.write(out.bytes, 0, length);
         }
         finally 
         {
-            out.close();
+            os.close();
         }
     }
 
-    private void writeFixed(DataOutputStream out, double f) throws IOException
+    private void writeFixed(FontBuffer out, double f)
     {
         double ip = Math.floor(f);
         double fp = (f-ip) * 65536.0;
@@ -1048,27 +1022,27 @@ public final class TTFSubsetter
         out.writeShort((int)fp);
     }
 
-    private void writeUint32(DataOutputStream out, long l) throws IOException
+    private void writeUint32(FontBuffer out, long l)
     {
         out.writeInt((int)l);
     }
 
-    private void writeUint16(DataOutputStream out, int i) throws IOException
+    private void writeUint16(FontBuffer out, int i)
     {
         out.writeShort(i);
     }
 
-    private void writeSInt16(DataOutputStream out, short i) throws IOException
+    private void writeSInt16(FontBuffer out, short i)
     {
         out.writeShort(i);
     }
 
-    private void writeUint8(DataOutputStream out, int i) throws IOException
+    private void writeUint8(FontBuffer out, int i)
     {
         out.writeByte(i);
     }
 
-    private void writeLongDateTime(DataOutputStream out, Calendar calendar) throws IOException
+    private void writeLongDateTime(FontBuffer out, Calendar calendar)
     {
         // inverse operation of TTFDataStream.readInternationalDate()
         Calendar cal = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
@@ -1096,4 +1070,78 @@ public final class TTFSubsetter
     {
         return (int)Math.round(Math.log(num) / Math.log(2));
     }
+
+    /**
+     * A big endian byte buffer for the subset font. It is sized in advance, so that it rarely has
+     * to grow, and the table directory is written last, at the start of the buffer.
+     */
+    private static final class FontBuffer
+    {
+        private byte[] bytes;
+        private int position;
+
+        FontBuffer(int capacity)
+        {
+            bytes = new byte[capacity];
+        }
+
+        void writeByte(int b)
+        {
+            ensureCapacity(1);
+            bytes[position++] = (byte) b;
+        }
+
+        void writeShort(int s)
+        {
+            ensureCapacity(2);
+            bytes[position++] = (byte) (s >>> 8);
+            bytes[position++] = (byte) s;
+        }
+
+        void writeInt(int i)
+        {
+            ensureCapacity(4);
+            bytes[position++] = (byte) (i >>> 24);
+            bytes[position++] = (byte) (i >>> 16);
+            bytes[position++] = (byte) (i >>> 8);
+            bytes[position++] = (byte) i;
+        }
+
+        void writeLong(long l)
+        {
+            writeInt((int) (l >>> 32));
+            writeInt((int) l);
+        }
+
+        void write(byte[] b)
+        {
+            write(b, 0, b.length);
+        }
+
+        void write(byte[] b, int off, int len)
+        {
+            ensureCapacity(len);
+            System.arraycopy(b, off, bytes, position, len);
+            position += len;
+        }
+
+        /**
+         * Pads the data to a multiple of 4 bytes. The padding is zero, because nothing is written
+         * behind the current position.
+         */
+        void pad()
+        {
+            int count = -position & 3;
+            ensureCapacity(count);
+            position += count;
+        }
+
+        private void ensureCapacity(int count)
+        {
+            if (position + count > bytes.length)
+            {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, position + count));
+            }
+        }
+    }
 }
@@ -31,9 +31,10 @@ public class TTFTable
     private long length;
     
     /**
-     * Indicates if the table is initialized or not.
+     * Indicates if the table is initialized or not. Set it after all other fields, it publishes the
+     * table to threads that read it without locking.
      */
-    protected boolean initialized;
+    protected volatile boolean initialized;
 
     /**
      * The font which contains this table.
@@ -53,7 +53,7 @@ public class TrueTypeCollection implements Closeable
      */
     public TrueTypeCollection(InputStream stream) throws IOException
     {
-        this(new MemoryTTFDataStream(stream));
+        this(ByteBufferTTFDataStream.read(stream));
     }
 
     /**
@@ -113,18 +113,20 @@ public class TrueTypeFont implements FontBoxFont, Closeable
      * @param table the table to read.
      * @throws IOException if there was an error accessing the table.
      */
-    public synchronized byte[] getTableBytes(TTFTable table) throws IOException
+    public byte[] getTableBytes(TTFTable table) throws IOException
     {
-        // save current position
-        long currentPosition = data.getCurrentPosition();
-        data.seek(table.getOffset());
-
-        // read all data
-        byte[] bytes = data.read((int)table.getLength());
+        return data.readAt(table.getOffset(), (int) table.getLength());
+    }
 
-        // restore current position
-        data.seek(currentPosition);
-        return bytes;
+    /**
+     * Returns raw bytes of the font data, e.g. the data of a single glyph.
+     * @param offset the position in the font data.
+     * @param length the number of bytes to read.
+     * @throws IOException if there was an error accessing the data.
+     */
+    byte[] readBytes(long offset, int length) throws IOException
+    {
+        return data.readAt(offset, length);
     }
 
     /**
@@ -134,12 +136,20 @@ public class TrueTypeFont implements FontBoxFont, Closeable
      * @return The table with the given tag.
      * @throws IOException if there was an error reading the table.
      */
-    protected synchronized TTFTable getTable(String tag) throws IOException
+    protected TTFTable getTable(String tag) throws IOException
     {
+        // the table map isn't changed after parsing, and tables that have been read are published
+        // by their volatile initialized flag
         TTFTable ttfTable = tables.get(tag);
         if (ttfTable != null && !ttfTable.getInitialized())
         {
-            readTable(ttfTable);
+            synchronized (this)
+            {
+                if (!ttfTable.getInitialized())
+                {
+                    readTable(ttfTable);
+                }
+            }
         }
         return ttfTable;
     }
@@ -343,6 +353,14 @@ public class TrueTypeFont implements FontBoxFont, Closeable
      */
     void readTable(TTFTable table) throws IOException
     {
+        TTFDataStream view = data.createView();
+        if (view != null)
+        {
+            // the table gets its own view of the data and may keep it for reading on demand
+            view.seek(table.getOffset());
+            table.read(this, view);
+            return;
+        }
         // PDFBOX-4219: synchronize on data because it is accessed by several threads
         // when PDFBox is accessing a standard 14 font for the first time
         synchronized (data)
@@ -543,6 +561,29 @@ public class TrueTypeFont implements FontBoxFont, Closeable
         return cmap;
     }
 
+    /**
+     * Returns a shaper which maps whole strings to glyphs and applies the enabled GSUB features.
+     * Unlike the cmap returned by {@link #getUnicodeCmapLookup()} this also applies ligatures,
+     * which replace several characters by one glyph.
+     *
+     * @return the shaper, or null if no features are enabled or the font has no 'GSUB' table
+     * @throws IOException if the font could not be read, or there is no Unicode cmap
+     */
+    public GlyphShaper getGlyphShaper() throws IOException
+    {
+        if (enabledGsubFeatures.isEmpty())
+        {
+            return null;
+        }
+        GlyphSubstitutionTable table = getGsub();
+        if (table == null)
+        {
+            return null;
+        }
+        return new GlyphShaper(getUnicodeCmapImpl(true), table,
+                Collections.unmodifiableList(new ArrayList<String>(enabledGsubFeatures)));
+    }
+
     private CmapSubtable getUnicodeCmapImpl(boolean isStrict) throws IOException
     {
         CmapTable cmapTable = getCmap();
@@ -0,0 +1,393 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.fontbox.util;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * An immutable map from int keys to non-negative int values, e.g. from character codes to glyph
+ * ids or CIDs. Keys below 0x10000 that fall into densely populated blocks of 256 codes are stored
+ * in a two-level page table, all other keys in sorted arrays that are searched with a binary
+ * search. Lookups don't allocate, and instances can be shared between threads.
+ *
+ * @see Builder
+ */
+public final class IntMap
+{
+    /**
+     * The value returned by {@link #get(int)} for keys that aren't mapped.
+     */
+    public static final int MISSING = -1;
+
+    /**
+     * An empty map.
+     */
+    public static final IntMap EMPTY = new Builder().build();
+
+    private static final int PAGE_SIZE = 256;
+    private static final int PAGE_COUNT = 0x10000 / PAGE_SIZE;
+
+    // a page pays off when it has at least this many entries, because each entry of the sorted
+    // arrays needs two ints
+    private static final int DENSE_PAGE_THRESHOLD = PAGE_SIZE / 2;
+
+    private final int[][] pages;
+    private final int[] keys;
+    private final int[] values;
+    private final int size;
+
+    private IntMap(int[][] pages, int[] keys, int[] values, int size)
+    {
+        this.pages = pages;
+        this.keys = keys;
+        this.values = values;
+        this.size = size;
+    }
+
+    /**
+     * Returns the value for the given key.
+     *
+     * @param key the key
+     * @return the value, or {@link #MISSING} if the key isn't mapped
+     */
+    public int get(int key)
+    {
+        if (key >= 0 && key < 0x10000)
+        {
+            int[] page = pages[key >>> 8];
+            if (page != null)
+            {
+                return page[key & 0xFF];
+            }
+        }
+        int index = Arrays.binarySearch(keys, key);
+        return index >= 0 ? values[index] : MISSING;
+    }
+
+    /**
+     * Returns the number of mapped keys.
+     *
+     * @return the number of keys
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Tells whether the map is empty.
+     *
+     * @return true if there are no keys
+     */
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * Returns all mapped keys in ascending order. This allocates a new array and is meant for
+     * building other structures, not for lookups.
+     *
+     * @return the keys
+     */
+    public int[] keys()
+    {
+        int[] result = new int[size];
+        int count = 0;
+        int arrayIndex = 0;
+        // the keys of the sorted arrays below 0x10000 come before the paged keys of higher pages
+        for (int pageIndex = 0; pageIndex < PAGE_COUNT; pageIndex++)
+        {
+            int[] page = pages[pageIndex];
+            if (page == null)
+            {
+                continue;
+            }
+            int pageStart = pageIndex << 8;
+            while (arrayIndex < keys.length && keys[arrayIndex] < pageStart)
+            {
+                result[count++] = keys[arrayIndex++];
+            }
+            for (int i = 0; i < PAGE_SIZE; i++)
+            {
+                if (page[i] != MISSING)
+                {
+                    result[count++] = pageStart + i;
+                }
+            }
+        }
+        while (arrayIndex < keys.length)
+        {
+            result[count++] = keys[arrayIndex++];
+        }
+        return result;
+    }
+
+    /**
+     * Writes the map in a binary form that can be read back with {@link #read(ByteBuffer)}
+     * without rebuilding the lookup tables.
+     *
+     * @param out the stream to write to
+     * @throws IOException if the stream could not be written
+     */
+    public void write(DataOutputStream out) throws IOException
+    {
+        out.writeInt(size);
+        int pageCount = 0;
+        for (int[] page : pages)
+        {
+            if (page != null)
+            {
+                pageCount++;
+            }
+        }
+        out.writeInt(pageCount);
+        for (int pageIndex = 0; pageIndex < PAGE_COUNT; pageIndex++)
+        {
+            int[] page = pages[pageIndex];
+            if (page != null)
+            {
+                out.writeInt(pageIndex);
+                for (int value : page)
+                {
+                    out.writeInt(value);
+                }
+            }
+        }
+        out.writeInt(keys.length);
+        for (int key : keys)
+        {
+            out.writeInt(key);
+        }
+        for (int value : values)
+        {
+            out.writeInt(value);
+        }
+    }
+
+    /**
+     * Reads a map that was written with {@link #write(DataOutputStream)}. The buffer must use big
+     * endian byte order and is positioned after the map.
+     *
+     * @param buffer the buffer to read from
+     * @return the map
+     * @throws IOException if the data is truncated or malformed
+     */
+    public static IntMap read(ByteBuffer buffer) throws IOException
+    {
+        try
+        {
+            int size = buffer.getInt();
+            int pageCount = buffer.getInt();
+            if (size < 0 || pageCount < 0 || pageCount > PAGE_COUNT)
+            {
+                throw new IOException("Invalid IntMap header");
+            }
+            int[][] pages = new int[PAGE_COUNT][];
+            for (int i = 0; i < pageCount; i++)
+            {
+                int pageIndex = buffer.getInt();
+                if (pageIndex < 0 || pageIndex >= PAGE_COUNT)
+                {
+                    throw new IOException("Invalid IntMap page " + pageIndex);
+                }
+                pages[pageIndex] = readInts(buffer, PAGE_SIZE);
+            }
+            int length = buffer.getInt();
+            if (length < 0 || length > size)
+            {
+                throw new IOException("Invalid IntMap length " + length);
+            }
+            int[] keys = readInts(buffer, length);
+            int[] values = readInts(buffer, length);
+            return new IntMap(pages, keys, values, size);
+        }
+        catch (BufferUnderflowException ex)
+        {
+            throw new IOException("Premature end of IntMap data", ex);
+        }
+    }
+
+    private static int[] readInts(ByteBuffer buffer, int count)
+    {
+        int[] result = new int[count];
+        IntBuffer ints = buffer.asIntBuffer();
+        ints.get(result);
+        buffer.position(buffer.position() + count * 4);
+        return result;
+    }
+
+    /**
+     * Collects the entries of an {@link IntMap}. If a key is put several times, the last value
+     * wins.
+     */
+    public static final class Builder
+    {
+        private int[] keys;
+        private int[] values;
+        private int count;
+
+        /**
+         * Creates an empty builder.
+         */
+        public Builder()
+        {
+            this(16);
+        }
+
+        /**
+         * Creates an empty builder with room for the given number of entries.
+         *
+         * @param expectedSize the expected number of entries
+         */
+        public Builder(int expectedSize)
+        {
+            keys = new int[Math.max(16, expectedSize)];
+            values = new int[keys.length];
+        }
+
+        /**
+         * Maps a key to a value.
+         *
+         * @param key the key
+         * @param value the value, must not be negative
+         * @return this builder
+         */
+        public Builder put(int key, int value)
+        {
+            if (value < 0)
+            {
+                throw new IllegalArgumentException("Negative value " + value + " for key " + key);
+            }
+            if (count == keys.length)
+            {
+                keys = Arrays.copyOf(keys, count * 2);
+                values = Arrays.copyOf(values, count * 2);
+            }
+            keys[count] = key;
+            values[count] = value;
+            count++;
+            return this;
+        }
+
+        /**
+         * Copies all entries of a map into this builder.
+         *
+         * @param map the map to copy
+         * @return this builder
+         */
+        public Builder putAll(IntMap map)
+        {
+            for (int key : map.keys())
+            {
+                put(key, map.get(key));
+            }
+            return this;
+        }
+
+        /**
+         * Tells whether no entries have been put.
+         *
+         * @return true if the builder is empty
+         */
+        public boolean isEmpty()
+        {
+            return count == 0;
+        }
+
+        /**
+         * Creates the map.
+         *
+         * @return a new map with the current entries
+         */
+        public IntMap build()
+        {
+            // sort by key and insertion order, so that the last value of a key can be kept
+            long[] order = new long[count];
+            for (int i = 0; i < count; i++)
+            {
+                order[i] = (long) keys[i] << 32 | i;
+            }
+            Arrays.sort(order);
+
+            int[] sortedKeys = new int[count];
+            int[] sortedValues = new int[count];
+            int unique = 0;
+            for (int i = 0; i < count; i++)
+            {
+                int key = (int) (order[i] >> 32);
+                int value = values[(int) order[i]];
+                if (unique > 0 && sortedKeys[unique - 1] == key)
+                {
+                    sortedValues[unique - 1] = value;
+                }
+                else
+                {
+                    sortedKeys[unique] = key;
+                    sortedValues[unique] = value;
+                    unique++;
+                }
+            }
+
+            int[] pageCounts = new int[PAGE_COUNT];
+            for (int i = 0; i < unique; i++)
+            {
+                int key = sortedKeys[i];
+                if (key >= 0 && key < 0x10000)
+                {
+                    pageCounts[key >>> 8]++;
+                }
+            }
+            int[][] pages = new int[PAGE_COUNT][];
+            int pagedCount = 0;
+            for (int pageIndex = 0; pageIndex < PAGE_COUNT; pageIndex++)
+            {
+                if (pageCounts[pageIndex] >= DENSE_PAGE_THRESHOLD)
+                {
+                    pages[pageIndex] = new int[PAGE_SIZE];
+                    Arrays.fill(pages[pageIndex], MISSING);
+                    pagedCount += pageCounts[pageIndex];
+                }
+            }
+
+            int[] arrayKeys = new int[unique - pagedCount];
+            int[] arrayValues = new int[unique - pagedCount];
+            int arrayCount = 0;
+            for (int i = 0; i < unique; i++)
+            {
+                int key = sortedKeys[i];
+                int[] page = key >= 0 && key < 0x10000 ? pages[key >>> 8] : null;
+                if (page != null)
+                {
+                    page[key & 0xFF] = sortedValues[i];
+                }
+                else
+                {
+                    arrayKeys[arrayCount] = key;
+                    arrayValues[arrayCount] = sortedValues[i];
+                    arrayCount++;
+                }
+            }
+            return new IntMap(pages, arrayKeys, arrayValues, unique);
+        }
+    }
+}
@@ -15,10 +15,12 @@
  */
 package org.apache.fontbox.cff;
 
+import java.awt.geom.PathIterator;
 import java.io.ByteArrayOutputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.List;
 import org.junit.Test;
 import static org.junit.Assert.*;
@@ -73,6 +75,149 @@ public class CFFParserTest
                 new int[]{146, 150}, stemSnapV);
     }
 
+    /**
+     * Test that the registry, ordering and supplement can be read without parsing the font.
+     *
+     * @throws IOException 
+     */
+    @Test
+    public void testParseROS() throws IOException
+    {
+        byte[] header = { 1, 0, 4, 1 };
+        // Name INDEX with "Test"
+        byte[] nameIndex = { 0, 1, 1, 1, 5, 'T', 'e', 's', 't' };
+        // Top DICT INDEX with "391 392 0 ROS"
+        byte[] cidTopDict = { 0, 1, 1, 1, 8, (byte) 248, 27, (byte) 248, 28, (byte) 139, 12, 30 };
+        byte[] type1TopDict = { 0, 1, 1, 1, 1 };
+        // String INDEX with "Adobe" and "Identity"
+        byte[] stringIndex = { 0, 2, 1, 1, 6, 14,
+            'A', 'd', 'o', 'b', 'e', 'I', 'd', 'e', 'n', 't', 'i', 't', 'y' };
+
+        String[] ros = new CFFParser().parseROS(concat(header, nameIndex, cidTopDict, stringIndex));
+        assertArrayEquals(new String[] { "Adobe", "Identity", "0" }, ros);
+
+        assertNull(new CFFParser().parseROS(concat(header, nameIndex, type1TopDict, stringIndex)));
+    }
+
+    /**
+     * Test that INDEX entries are read from the shared data on demand.
+     *
+     * @throws IOException 
+     */
+    @Test
+    public void testIndex() throws IOException
+    {
+        // 2 bytes of padding, then an INDEX with "ab" and "c"
+        byte[] bytes = { 9, 9, 0, 2, 1, 1, 3, 4, 'a', 'b', 'c' };
+        CFFIndex index = CFFIndex.read(ByteBuffer.wrap(bytes), 2);
+        assertEquals(2, index.getCount());
+        assertArrayEquals(new byte[] { 'a', 'b' }, index.get(0));
+        assertArrayEquals(new byte[] { 'c' }, index.get(1));
+        assertEquals(2, index.asList().size());
+        assertArrayEquals(new byte[] { 'c' }, index.asList().get(1));
+
+        // empty INDEX
+        assertNull(CFFIndex.read(ByteBuffer.wrap(new byte[] { 0, 0 }), 0));
+
+        // the last entry ends behind the data
+        byte[] truncated = { 0, 2, 1, 1, 3, 5, 'a', 'b', 'c' };
+        try
+        {
+            CFFIndex.read(ByteBuffer.wrap(truncated), 0);
+            fail("IOException expected");
+        }
+        catch (IOException e)
+        {
+            // expected
+        }
+    }
+
+    /**
+     * Test that charstrings set by a subclass in the deprecated field are still used.
+     */
+    @SuppressWarnings("deprecation")
+    @Test
+    public void testCharStringsOfSubclass()
+    {
+        CFFType1Font font = new CFFType1Font()
+        {
+            {
+                charStrings = new byte[][] { { 1, 2 }, { 3 } };
+            }
+        };
+        assertEquals(2, font.getNumCharStrings());
+        assertArrayEquals(new byte[] { 3 }, font.getCharStringBytes().get(1));
+
+        CFFIndex index = CFFIndex.wrap(new byte[][] { { 'a' }, {}, { 'b', 'c' } });
+        assertEquals(3, index.getCount());
+        assertArrayEquals(new byte[0], index.get(1));
+        assertArrayEquals(new byte[] { 'b', 'c' }, index.get(2));
+    }
+
+    /**
+     * Test that a compiled charstring gives the same outline, width and sequences as the parsed
+     * Type 2 sequence, including the inlined subroutine.
+     *
+     * @throws IOException 
+     */
+    @Test
+    public void testCompiledCharString() throws IOException
+    {
+        // 50 100 100 rmoveto -107 callsubr 10 20 30 40 hvcurveto endchar
+        byte[] bytes = { (byte) 189, (byte) 239, (byte) 239, 21, 32, 10,
+            (byte) 149, (byte) 159, (byte) 169, (byte) 179, 31, 14 };
+        // 200 0 rlineto return
+        byte[][] localSubrIndex = { { (byte) 247, 92, (byte) 139, 5, 11 } };
+
+        CompiledCharString compiled = CompiledCharString.compile(bytes, null, localSubrIndex);
+        assertTrue(compiled.isSupported);
+        Type2CharString type2 = new Type2CharString(null, "Test", "a", 1, bytes, null,
+                localSubrIndex, compiled, 500, 600);
+
+        List<Object> sequence = new Type2CharStringParser("Test", "a")
+                .parse(bytes, null, localSubrIndex);
+        Type2CharString expected = new Type2CharString(null, "Test", "a", 1, sequence, 500, 600);
+
+        assertEquals(650, type2.getWidth());
+        assertEquals(expected.getWidth(), type2.getWidth());
+        assertEquals(expected.getBounds(), type2.getBounds());
+        assertEquals(getSegments(expected.getPath().getPathIterator(null)),
+                getSegments(type2.getPath().getPathIterator(null)));
+        assertEquals(sequence, type2.getType2Sequence());
+        assertEquals(expected.getType1Sequence(), type2.getType1Sequence());
+
+        // arithmetic operators are left to the Type 1 conversion
+        byte[] arithmetic = { (byte) 139, (byte) 139, 12, 12, 14 };
+        assertFalse(CompiledCharString.compile(arithmetic, null, null).isSupported);
+    }
+
+    private static String getSegments(PathIterator iterator)
+    {
+        StringBuilder sb = new StringBuilder();
+        float[] coords = new float[6];
+        while (!iterator.isDone())
+        {
+            sb.append(iterator.currentSegment(coords));
+            for (float coord : coords)
+            {
+                sb.append(' ').append(coord);
+            }
+            sb.append('\n');
+            iterator.next();
+        }
+        return sb.toString();
+    }
+
+    private static byte[] concat(byte[]... parts)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts)
+        {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+
     private List<CFFFont> readFont(InputStream in) throws IOException
     {
         ByteArrayOutputStream content = new ByteArrayOutputStream();
@@ -45,6 +45,43 @@ public class TestCMap extends TestCase
         assertTrue("a".equals(cMap.toUnicode(200)));
     }
 
+    /**
+     * Check the compacted lookup tables: dense and sparse codes, sorted and overlapping CID ranges
+     * and mappings that are added after a lookup.
+     */
+    public void testCompactLookup()
+    {
+        CMap cMap = new CMap();
+        for (int code = 0; code < 0x300; code++)
+        {
+            cMap.addCharMapping(new byte[] { (byte) (code >> 8), (byte) code },
+                    code % 2 == 0 ? "even" : "odd");
+        }
+        cMap.addCharMapping(new byte[] { 0x12, 0x34, 0x56 }, "sparse");
+        cMap.addCharMapping(new byte[] { 0x00, 0x10 }, "last wins");
+        cMap.addCIDMapping(500, 0x20);
+        cMap.addCIDRange((char) 0x8140, (char) 0x817E, 633);
+        cMap.addCIDRange((char) 0x0100, (char) 0x01FF, 10);
+        cMap.compact();
+
+        assertEquals("even", cMap.toUnicode(0x0120));
+        assertEquals("odd", cMap.toUnicode(0x0121));
+        assertEquals("sparse", cMap.toUnicode(0x123456));
+        assertEquals("last wins", cMap.toUnicode(0x10));
+        assertNull(cMap.toUnicode(0x300));
+        assertEquals(500, cMap.toCID(0x20));
+        assertEquals(633, cMap.toCID(0x8140));
+        assertEquals(633 + 0x3E, cMap.toCID(0x817E));
+        assertEquals(11, cMap.toCID(0x0101));
+        assertEquals(0, cMap.toCID(0x817F));
+
+        // an overlapping range is only used where the earlier ones don't match
+        cMap.addCIDRange((char) 0x8100, (char) 0x81FF, 2000);
+        assertEquals(633, cMap.toCID(0x8140));
+        assertEquals(2000 + 0x7F, cMap.toCID(0x817F));
+        assertEquals("even", cMap.toUnicode(0x0120));
+    }
+
     /**
      * PDFBOX-3997: test unicode that is above the basic multilingual plane, here: helicopter
      * symbol, or D83D DE81 in the Noto Emoji font.
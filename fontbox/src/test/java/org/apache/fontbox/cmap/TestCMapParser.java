@@ -16,8 +16,10 @@
  */
 package org.apache.fontbox.cmap;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import junit.framework.TestCase;
 
@@ -112,6 +114,40 @@ public class TestCMapParser extends TestCase
         assertEquals("UniJIS-UCS2-H CID 65 -> 34", 34, cMap.toCID(65));
     }
 
+    /**
+     * Check that a compiled CMap gives the same results as the parsed one.
+     *
+     * @throws IOException If something went wrong
+     */
+    public void testCompiledCMap() throws IOException
+    {
+        File inDir = new File("src/main/resources/org/apache/fontbox/cmap");
+        String[] names = { "UniJIS-UCS2-H", "90ms-RKSJ-V", "Adobe-Japan1-UCS2" };
+        for (String name : names)
+        {
+            CMap parsed = new CMapParser().parse(new File(inDir, name));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            CMapCompiler.write(parsed, out);
+            CMap compiled = CMapCompiler.read(ByteBuffer.wrap(out.toByteArray()));
+
+            assertEquals(parsed.getName(), compiled.getName());
+            assertEquals(parsed.getRegistry(), compiled.getRegistry());
+            assertEquals(parsed.getOrdering(), compiled.getOrdering());
+            assertEquals(parsed.getSupplement(), compiled.getSupplement());
+            assertEquals(parsed.getWMode(), compiled.getWMode());
+            assertEquals(parsed.getSpaceMapping(), compiled.getSpaceMapping());
+            assertEquals(parsed.getCodespaceRanges().size(),
+                    compiled.getCodespaceRanges().size());
+            assertEquals(parsed.hasCIDMappings(), compiled.hasCIDMappings());
+            assertEquals(parsed.hasUnicodeMappings(), compiled.hasUnicodeMappings());
+            for (int code = 0; code < 0x10000; code++)
+            {
+                assertEquals(name + " " + code, parsed.toCID(code), compiled.toCID(code));
+                assertEquals(name + " " + code, parsed.toUnicode(code), compiled.toUnicode(code));
+            }
+        }
+    }
+
     /**
      * Test the parser against a valid, but poorly formatted CMap file.
      * @throws IOException If something went wrong
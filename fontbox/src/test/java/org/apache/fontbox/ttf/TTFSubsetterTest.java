@@ -21,6 +21,7 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map.Entry;
@@ -118,6 +119,44 @@ public class TTFSubsetterTest
         subset.close();
     }
 
+    /**
+     * Check that a subset can be extended after it has been written, and that the extended subset
+     * is the same as one that is built from scratch, including compound glyphs.
+     *
+     * @throws java.io.IOException
+     */
+    @Test
+    public void testIncrementalSubset() throws IOException
+    {
+        TrueTypeFont full = new TTFParser().parse("src/test/resources/ttf/LiberationSans-Regular.ttf");
+        TTFSubsetter incremental = new TTFSubsetter(full);
+        incremental.add('a');
+        incremental.writeToStream(new ByteArrayOutputStream());
+        incremental.add('b');
+        incremental.add('\u00E9'); // compound glyph: e acute
+        ByteArrayOutputStream incrementalBytes = new ByteArrayOutputStream();
+        incremental.writeToStream(incrementalBytes);
+
+        TTFSubsetter fresh = new TTFSubsetter(full);
+        fresh.add('a');
+        fresh.add('b');
+        fresh.add('\u00E9');
+        ByteArrayOutputStream freshBytes = new ByteArrayOutputStream();
+        fresh.writeToStream(freshBytes);
+
+        assertEquals(fresh.getGIDMap(), incremental.getGIDMap());
+        assertTrue(fresh.getGIDMap().size() > 4);
+        assertTrue(Arrays.equals(freshBytes.toByteArray(), incrementalBytes.toByteArray()));
+
+        TrueTypeFont subset = new TTFParser(true).parse(
+                new ByteArrayInputStream(incrementalBytes.toByteArray()));
+        assertEquals(fresh.getGIDMap().size(), subset.getNumberOfGlyphs());
+        assertEquals(full.getAdvanceWidth(full.nameToGID("eacute")),
+                     subset.getAdvanceWidth(subset.nameToGID("eacute")));
+        subset.close();
+        full.close();
+    }
+
     /**
      * Test of PDFBOX-3319: check that widths and left side bearings in partially monospaced font
      * are kept.
@@ -17,7 +17,9 @@ package org.apache.fontbox.ttf;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.List;
 import java.util.TimeZone;
 
 import junit.framework.TestCase;
@@ -53,4 +55,103 @@ public class TestTTFParser extends TestCase
         assertEquals(target, created);
     }
 
+    /**
+     * Check that a memory-mapped font, whose metrics and glyph offsets are read on demand, gives
+     * the same results as a font that is read through a RandomAccessFile.
+     *
+     * @throws IOException If something went wrong
+     */
+    public void testMappedFont() throws IOException
+    {
+        final File testFile = new File("src/test/resources/ttf/LiberationSans-Regular.ttf");
+        TTFParser parser = new TTFParser(false, true);
+        parser.setMemoryMapped(true);
+        TrueTypeFont mapped = parser.parse(testFile);
+        TrueTypeFont copied = new TTFParser(false, true).parse(new RAFDataStream(testFile, "r"));
+        try
+        {
+            int numGlyphs = copied.getNumberOfGlyphs();
+            assertEquals(numGlyphs, mapped.getNumberOfGlyphs());
+            HorizontalMetricsTable mappedHmtx = mapped.getHorizontalMetrics();
+            HorizontalMetricsTable copiedHmtx = copied.getHorizontalMetrics();
+            for (int gid = 0; gid < numGlyphs; gid++)
+            {
+                assertEquals(copiedHmtx.getAdvanceWidth(gid), mappedHmtx.getAdvanceWidth(gid));
+                assertEquals(copiedHmtx.getLeftSideBearing(gid),
+                        mappedHmtx.getLeftSideBearing(gid));
+                GlyphData copiedGlyph = copied.getGlyph().getGlyph(gid);
+                GlyphData mappedGlyph = mapped.getGlyph().getGlyph(gid);
+                if (copiedGlyph == null)
+                {
+                    assertNull(mappedGlyph);
+                }
+                else
+                {
+                    assertEquals(copiedGlyph.getBoundingBox().toString(),
+                            mappedGlyph.getBoundingBox().toString());
+                    assertEquals(copiedGlyph.getDescription().getPointCount(),
+                            mappedGlyph.getDescription().getPointCount());
+                }
+            }
+            assertTrue(Arrays.equals(copied.getIndexToLocation().getOffsets(),
+                    mapped.getIndexToLocation().getOffsets()));
+            for (TTFTable table : copied.getTables())
+            {
+                assertTrue(Arrays.equals(copied.getTableBytes(table),
+                        mapped.getTableBytes(mapped.getTableMap().get(table.getTag()))));
+            }
+        }
+        finally
+        {
+            mapped.close();
+            copied.close();
+        }
+    }
+
+    /**
+     * Check that the shaper replaces a conjunct by its ligature, keeps the text of the components
+     * and caches the selected lookups.
+     *
+     * @throws IOException If something went wrong
+     */
+    public void testGlyphShaper() throws IOException
+    {
+        TrueTypeFont ttf = new TTFParser().parse(new File("src/test/resources/ttf/Lohit-Bengali.ttf"));
+        try
+        {
+            assertNull(ttf.getGlyphShaper());
+            ttf.enableGsubFeature("akhn");
+            GlyphShaper shaper = ttf.getGlyphShaper();
+            assertNotNull(shaper);
+
+            // "ka virama ssa" is the akhand ligature "kssa"
+            String text = "a \u0995\u09CD\u09B7\u09AE";
+            GlyphSequence glyphs = shaper.shape(text);
+            assertEquals(4, glyphs.size());
+            CmapLookup cmap = ttf.getUnicodeCmapLookup();
+            assertEquals(cmap.getGlyphId('a'), glyphs.getGlyphId(0));
+            assertEquals(" ", glyphs.getText(1));
+            assertEquals(167, glyphs.getGlyphId(2));
+            assertEquals("\u0995\u09CD\u09B7", glyphs.getText(2));
+            assertEquals(cmap.getGlyphId(0x09AE), glyphs.getGlyphId(3));
+            assertEquals("\u09AE", glyphs.getText(3));
+
+            GlyphSubstitutionTable gsub = ttf.getGsub();
+            List<String> features = Arrays.asList("akhn");
+            int[] lookups = gsub.getLookupIndices(new String[] { "bng2", "beng" }, features);
+            assertEquals(1, lookups.length);
+            assertSame(lookups, gsub.getLookupIndices(new String[] { "bng2", "beng" }, features));
+            assertEquals(0, gsub.getLookupIndices(new String[] { "cyrl" }, features).length);
+
+            // the font has no default script, so text without a script uses the first script
+            assertEquals(1, gsub.getLookupIndices(
+                    new String[] { OpenTypeScript.TAG_DEFAULT }, features).length);
+            assertEquals(1, gsub.getLookupIndices(
+                    new String[] { OpenTypeScript.INHERITED }, features).length);
+        }
+        finally
+        {
+            ttf.close();
+        }
+    }
 }
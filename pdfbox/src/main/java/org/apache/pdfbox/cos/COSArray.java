@@ -32,6 +32,9 @@ import org.apache.pdfbox.pdmodel.common.COSObjectable;
 public class COSArray extends COSBase implements Iterable<COSBase>, COSUpdateInfo
 {
     private final List<COSBase> objects = new ArrayList<COSBase>();
+
+    // incremented on every change of the elements, to invalidate the cached digests
+    int modCount;
     private boolean needToBeUpdated;
 
     /**
@@ -50,6 +53,7 @@ public class COSArray extends COSBase implements Iterable<COSBase>, COSUpdateInf
     public void add( COSBase object )
     {
         objects.add( object );
+        modCount++;
     }
 
     /**
@@ -60,6 +64,7 @@ public class COSArray extends COSBase implements Iterable<COSBase>, COSUpdateInf
     public void add( COSObjectable object )
     {
         objects.add( object.getCOSObject() );
+        modCount++;
     }
 
     /**
@@ -72,6 +77,7 @@ public class COSArray extends COSBase implements Iterable<COSBase>, COSUpdateInf
     public void add( int i, COSBase object)
     {
         objects.add( i, object );
+        modCount++;
     }
 
     /**
@@ -80,6 +86,7 @@ public class COSArray extends COSBase implements Iterable<COSBase>, COSUpdateInf
     public void clear()
     {
         objects.clear();
+        modCount++;
     }
 
     /**
@@ -90,6 +97,7 @@ public class COSArray extends COSBase implements Iterable<COSBase>, COSUpdateInf
     public void removeAll( Collection<COSBase> objectsList )
     {
         objects.removeAll( objectsList );
+        modCount++;
     }
 
     /**
@@ -100,6 +108,7 @@ public class COSArray extends COSBase implements Iterable<COSBase>, COSUpdateInf
     public void retainAll( Collection<COSBase> objectsList )
     {
         objects.retainAll( objectsList );
+        modCount++;
     }
 
     /**
@@ -110,6 +119,7 @@ public class COSArray extends COSBase implements Iterable<COSBase>, COSUpdateInf
     public void addAll( Collection<COSBase> objectsList )
     {
         objects.addAll( objectsList );
+        modCount++;
     }
 
     /**
@@ -122,6 +132,7 @@ public class COSArray extends COSBase implements Iterable<COSBase>, COSUpdateInf
         if( objectList != null )
         {
             objects.addAll( objectList.objects );
+            modCount++;
         }
     }
 
@@ -135,6 +146,7 @@ public class COSArray extends COSBase implements Iterable<COSBase>, COSUpdateInf
     public void addAll( int i, Collection<COSBase> objectList )
     {
         objects.addAll( i, objectList );
+        modCount++;
     }
 
     /**
@@ -146,6 +158,7 @@ public class COSArray extends COSBase implements Iterable<COSBase>, COSUpdateInf
     public void set( int index, COSBase object )
     {
         objects.set( index, object );
+        modCount++;
     }
 
     /**
@@ -157,6 +170,7 @@ public class COSArray extends COSBase implements Iterable<COSBase>, COSUpdateInf
     public void set( int index, int intVal )
     {
         objects.set( index, COSInteger.get(intVal) );
+        modCount++;
     }
 
     /**
@@ -173,6 +187,7 @@ public class COSArray extends COSBase implements Iterable<COSBase>, COSUpdateInf
             base = object.getCOSObject();
         }
         objects.set( index, base );
+        modCount++;
     }
 
     /**
@@ -362,6 +377,7 @@ public class COSArray extends COSBase implements Iterable<COSBase>, COSUpdateInf
      */
     public COSBase remove( int i )
     {
+        modCount++;
         return objects.remove( i );
     }
 
@@ -375,6 +391,7 @@ public class COSArray extends COSBase implements Iterable<COSBase>, COSUpdateInf
      */
     public boolean remove( COSBase o )
     {
+        modCount++;
         return objects.remove( o );
     }
 
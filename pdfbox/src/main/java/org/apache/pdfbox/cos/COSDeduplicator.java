@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.cos;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Replaces streams and dictionaries of a document which are duplicates of others by references to
+ * one of them, e.g. the font programs, ICC profiles and images which were copied several times
+ * when documents were merged. Duplicates are found by their {@link COSDigester digest}, so they
+ * have to be identical, including everything they reference. The duplicates aren't referenced
+ * anymore afterwards, and won't be written when the document is saved.
+ * <p>
+ * Objects whose identity matters aren't merged: the document catalog, the document information
+ * dictionary, pages, annotations, form fields, structure elements, outline items, optional
+ * content groups, signatures, objects which reference each other in a cycle and all objects which
+ * reference any of those.
+ */
+final class COSDeduplicator
+{
+    // types of dictionaries which are never merged
+    private static final Set<COSName> PINNED_TYPES = new HashSet<COSName>(Arrays.asList(
+            COSName.CATALOG, COSName.PAGES, COSName.PAGE, COSName.ANNOT, COSName.OUTLINES,
+            COSName.STRUCT_TREE_ROOT, COSName.STRUCT_ELEM, COSName.OCG, COSName.SIG,
+            COSName.DOC_TIME_STAMP, COSName.ENCRYPT));
+
+    // keys of dictionaries which are part of a tree or placed on a page
+    private static final COSName[] PINNED_KEYS = { COSName.PARENT, COSName.P, COSName.KIDS,
+            COSName.RECT, COSName.FT, COSName.T };
+
+    private COSDeduplicator()
+    {
+    }
+
+    /**
+     * Removes the duplicates of the document with the given trailer.
+     *
+     * @param trailer the trailer
+     * @return the number of removed duplicates
+     * @throws IOException if the data of a stream can't be read
+     */
+    static int removeDuplicates(COSDictionary trailer) throws IOException
+    {
+        List<Map.Entry<COSBase, byte[]>> objects = COSDigester.digestObjects(trailer);
+
+        Set<COSBase> pinned = Collections.newSetFromMap(new IdentityHashMap<COSBase, Boolean>());
+        pinned.add(trailer);
+        pinned.add(dereference(trailer.getItem(COSName.ROOT)));
+        pinned.add(dereference(trailer.getItem(COSName.INFO)));
+
+        // the objects come after those they reference, so the first one of each digest is kept
+        Map<ByteBuffer, COSBase> canonicals = new HashMap<ByteBuffer, COSBase>();
+        Map<COSBase, COSBase> duplicates = new IdentityHashMap<COSBase, COSBase>();
+        for (Map.Entry<COSBase, byte[]> entry : objects)
+        {
+            COSBase object = entry.getKey();
+            if (entry.getValue() == null || pinned.contains(object) || isPinned(object)
+                    || referencesAny(object, pinned))
+            {
+                pinned.add(object);
+            }
+            else if (object instanceof COSDictionary)
+            {
+                ByteBuffer key = ByteBuffer.wrap(entry.getValue());
+                COSBase canonical = canonicals.get(key);
+                if (canonical == null)
+                {
+                    canonicals.put(key, object);
+                }
+                else
+                {
+                    duplicates.put(object, canonical);
+                }
+            }
+        }
+        if (duplicates.isEmpty())
+        {
+            return 0;
+        }
+
+        // keep the indirect reference of the canonical object, if there is one
+        Map<COSBase, COSObject> references = new IdentityHashMap<COSBase, COSObject>();
+        for (Map.Entry<COSBase, byte[]> entry : objects)
+        {
+            for (COSBase value : values(entry.getKey()))
+            {
+                if (value instanceof COSObject)
+                {
+                    COSBase target = ((COSObject) value).getObject();
+                    if (target != null && !duplicates.containsKey(target)
+                            && !references.containsKey(target))
+                    {
+                        references.put(target, (COSObject) value);
+                    }
+                }
+            }
+        }
+
+        for (Map.Entry<COSBase, byte[]> entry : objects)
+        {
+            COSBase object = entry.getKey();
+            if (object instanceof COSDictionary)
+            {
+                replaceDuplicates((COSDictionary) object, duplicates, references);
+            }
+            else
+            {
+                replaceDuplicates((COSArray) object, duplicates, references);
+            }
+        }
+        return duplicates.size();
+    }
+
+    private static void replaceDuplicates(COSDictionary dictionary,
+            Map<COSBase, COSBase> duplicates, Map<COSBase, COSObject> references)
+    {
+        List<COSName> keys = new ArrayList<COSName>(dictionary.keySet());
+        for (COSName key : keys)
+        {
+            COSBase replacement = getReplacement(dictionary.getItem(key), duplicates, references);
+            if (replacement != null)
+            {
+                dictionary.setItem(key, replacement);
+                dictionary.setNeedToBeUpdated(true);
+            }
+        }
+    }
+
+    private static void replaceDuplicates(COSArray array, Map<COSBase, COSBase> duplicates,
+            Map<COSBase, COSObject> references)
+    {
+        for (int i = 0; i < array.size(); i++)
+        {
+            COSBase replacement = getReplacement(array.get(i), duplicates, references);
+            if (replacement != null)
+            {
+                array.set(i, replacement);
+                array.setNeedToBeUpdated(true);
+            }
+        }
+    }
+
+    /**
+     * Returns the replacement of a value, or null if it isn't a duplicate.
+     */
+    private static COSBase getReplacement(COSBase value, Map<COSBase, COSBase> duplicates,
+            Map<COSBase, COSObject> references)
+    {
+        COSBase canonical = duplicates.get(dereference(value));
+        if (canonical == null)
+        {
+            return null;
+        }
+        COSObject reference = references.get(canonical);
+        return reference != null ? reference : canonical;
+    }
+
+    private static boolean isPinned(COSBase object)
+    {
+        if (!(object instanceof COSDictionary) || object instanceof COSStream)
+        {
+            return false;
+        }
+        COSDictionary dictionary = (COSDictionary) object;
+        if (PINNED_TYPES.contains(dictionary.getCOSName(COSName.TYPE)))
+        {
+            return true;
+        }
+        for (COSName key : PINNED_KEYS)
+        {
+            if (dictionary.containsKey(key))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean referencesAny(COSBase object, Set<COSBase> pinned)
+    {
+        for (COSBase value : values(object))
+        {
+            if (pinned.contains(dereference(value)))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Iterable<COSBase> values(COSBase object)
+    {
+        if (object instanceof COSDictionary)
+        {
+            return ((COSDictionary) object).getValues();
+        }
+        return (COSArray) object;
+    }
+
+    private static COSBase dereference(COSBase base)
+    {
+        return base instanceof COSObject ? ((COSObject) base).getObject() : base;
+    }
+}
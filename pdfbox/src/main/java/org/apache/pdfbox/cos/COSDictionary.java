@@ -42,6 +42,12 @@ public class COSDictionary extends COSBase implements COSUpdateInfo
     private static final String PATH_SEPARATOR = "/";
     private boolean needToBeUpdated;
 
+    // incremented on every change of the entries, to invalidate the cached digests
+    int modCount;
+
+    // the cached digests, see COSDigester
+    COSDigester.Entry digests;
+
     /**
      * The name-value pairs of this dictionary. The pairs are kept in the order they were added to the dictionary.
      */
@@ -119,6 +125,7 @@ public class COSDictionary extends COSBase implements COSUpdateInfo
     public void clear()
     {
         items.clear();
+        modCount++;
     }
 
     /**
@@ -215,6 +222,7 @@ public class COSDictionary extends COSBase implements COSUpdateInfo
         else
         {
             items.put(key, value);
+            modCount++;
         }
     }
 
@@ -1328,6 +1336,7 @@ public class COSDictionary extends COSBase implements COSUpdateInfo
     public void removeItem(COSName key)
     {
         items.remove(key);
+        modCount++;
     }
 
     /**
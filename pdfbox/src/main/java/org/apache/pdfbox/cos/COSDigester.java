@@ -0,0 +1,706 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.cos;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.pdfbox.util.Charsets;
+
+/**
+ * Computes SHA-256 digests of COS objects, e.g. to detect duplicate documents, pages or resources,
+ * or as keys of caches. The digest covers the object and everything it references, in a canonical
+ * form: indirect references are replaced by the objects they refer to, so that object numbers and
+ * file offsets don't matter, dictionary entries are sorted by name, entries with a null value are
+ * ignored, and strings are compared by their bytes, regardless of whether they were written as
+ * literal or hexadecimal strings. Streams contribute their raw, i.e. still encoded, data.
+ * <p>
+ * The digest of a dictionary or array is computed from the digests of the objects it references,
+ * so it doesn't matter whether an object is shared or copied, e.g. when direct objects are written
+ * to a file. Objects which reference each other in a cycle, e.g. the pages and the page tree, are
+ * digested together, starting with the first one that is reached, and references within the cycle
+ * are replaced by the position of the referenced object.
+ * <p>
+ * Digests are cached on the dictionary they were computed for, until that dictionary or any
+ * dictionary, array or string reached from it is modified. Modifications through the collections returned
+ * by {@link COSDictionary#entrySet()}, {@link COSArray#iterator()} and similar methods, and
+ * changes of the object of an indirect reference, aren't detected.
+ */
+public final class COSDigester
+{
+    private static final String ALGORITHM = "SHA-256";
+
+    // the kinds of cached digests
+    private static final int RAW_DATA = 0;
+    private static final int OBJECT = 1;
+    private static final int PAGE = 2;
+    private static final int DOCUMENT = 3;
+
+    // the inheritable page attributes, see PDF 32000-1:2008, table 30
+    private static final COSName[] INHERITABLE = { COSName.RESOURCES, COSName.MEDIA_BOX,
+            COSName.CROP_BOX, COSName.ROTATE };
+
+    // guards against cyclic /Parent chains
+    private static final int MAX_DEPTH = 1000;
+
+    private static final Comparator<Map.Entry<COSName, COSBase>> BY_KEY =
+            new Comparator<Map.Entry<COSName, COSBase>>()
+            {
+                @Override
+                public int compare(Map.Entry<COSName, COSBase> e1, Map.Entry<COSName, COSBase> e2)
+                {
+                    return e1.getKey().compareTo(e2.getKey());
+                }
+            };
+
+    private final int kind;
+    private final MessageDigest digest = createMessageDigest();
+    private final Map<COSBase, Node> nodes = new IdentityHashMap<COSBase, Node>();
+    private final List<COSDictionary> dictionaries = new ArrayList<COSDictionary>();
+    private final List<COSArray> arrays = new ArrayList<COSArray>();
+    private final List<COSString> strings = new ArrayList<COSString>();
+    private final Deque<Node> componentStack = new ArrayDeque<Node>();
+    private List<Map.Entry<COSBase, byte[]>> completed;
+    private final byte[] buffer = new byte[8];
+    private COSDictionary root;
+    private int index;
+
+    private COSDigester(int kind)
+    {
+        this.kind = kind;
+    }
+
+    /**
+     * Returns the digest of an object and everything it references. Note that a page references
+     * the whole page tree through /Parent, use {@link #digestPage(COSDictionary)} for pages.
+     *
+     * @param object the object, may be an indirect reference
+     * @return the digest
+     * @throws IOException if the data of a stream can't be read
+     */
+    public static byte[] digest(COSBase object) throws IOException
+    {
+        COSBase base = dereference(object);
+        if (base instanceof COSDictionary)
+        {
+            return digest((COSDictionary) base, OBJECT);
+        }
+        COSDigester digester = new COSDigester(OBJECT);
+        if (base instanceof COSArray)
+        {
+            return digester.digestGraph(digester.getNode(base));
+        }
+        digester.update(base);
+        return digester.digest.digest();
+    }
+
+    /**
+     * Returns the digest of a page, as it is displayed. This covers the page dictionary with its
+     * contents, resources, annotations and inherited attributes, and everything they reference,
+     * but neither other pages nor /Parent and /P entries, which lead back into the page tree or
+     * up the structure tree.
+     *
+     * @param page the page dictionary
+     * @return the digest
+     * @throws IOException if the data of a stream can't be read
+     */
+    public static byte[] digestPage(COSDictionary page) throws IOException
+    {
+        return digest(page, PAGE);
+    }
+
+    /**
+     * Returns the digest of a document, i.e. of the document catalog and the document information
+     * dictionary of the given trailer, and everything they reference. Other trailer entries, e.g.
+     * /ID, /Size and /Prev, which change when the file is saved, aren't included.
+     *
+     * @param trailer the trailer
+     * @return the digest
+     * @throws IOException if the data of a stream can't be read
+     */
+    public static byte[] digestDocument(COSDictionary trailer) throws IOException
+    {
+        return digest(trailer, DOCUMENT);
+    }
+
+    /**
+     * Returns the digest of the raw, i.e. still encoded, data of a stream, without its dictionary.
+     *
+     * @param stream the stream
+     * @return the digest
+     * @throws IOException if the data of the stream can't be read
+     */
+    public static byte[] digestRawData(COSStream stream) throws IOException
+    {
+        return rawDataDigest(stream).clone();
+    }
+
+    /**
+     * Digests the document graph of a trailer like {@link #digestDocument(COSDictionary)} and
+     * returns all its dictionaries and arrays with their digests, each one after the objects it
+     * references, unless they reference each other in a cycle. The digests of the objects which
+     * are part of a cycle are null, as they depend on where the cycle was entered.
+     *
+     * @param trailer the trailer
+     * @return the dictionaries and arrays with their digests
+     * @throws IOException if the data of a stream can't be read
+     */
+    static List<Map.Entry<COSBase, byte[]>> digestObjects(COSDictionary trailer) throws IOException
+    {
+        COSDigester digester = new COSDigester(DOCUMENT);
+        digester.root = trailer;
+        digester.completed = new ArrayList<Map.Entry<COSBase, byte[]>>();
+        digester.digestGraph(digester.getNode(trailer));
+        return digester.completed;
+    }
+
+    private static byte[] digest(COSDictionary root, int kind) throws IOException
+    {
+        Entry entry = getValidEntry(root, kind);
+        if (entry == null)
+        {
+            COSDigester digester = new COSDigester(kind);
+            digester.root = root;
+            byte[] result = digester.digestGraph(digester.getNode(root));
+            entry = new Entry(kind, result, digester.dictionaries, digester.arrays,
+                    digester.strings);
+            putEntry(root, entry);
+        }
+        return entry.digest.clone();
+    }
+
+    private static byte[] rawDataDigest(COSStream stream) throws IOException
+    {
+        Entry entry = getValidEntry(stream, RAW_DATA);
+        if (entry == null)
+        {
+            MessageDigest md = createMessageDigest();
+            InputStream input = stream.createRawInputStream();
+            try
+            {
+                byte[] data = new byte[65536];
+                int read;
+                while ((read = input.read(data)) > 0)
+                {
+                    md.update(data, 0, read);
+                }
+            }
+            finally
+            {
+                input.close();
+            }
+            entry = new Entry(RAW_DATA, md.digest(), Collections.<COSDictionary>singletonList(stream),
+                    Collections.<COSArray>emptyList(), Collections.<COSString>emptyList());
+            putEntry(stream, entry);
+        }
+        return entry.digest;
+    }
+
+    private static Entry getValidEntry(COSDictionary dictionary, int kind)
+    {
+        for (Entry entry = dictionary.digests; entry != null; entry = entry.next)
+        {
+            if (entry.kind == kind)
+            {
+                return entry.isValid() ? entry : null;
+            }
+        }
+        return null;
+    }
+
+    private static void putEntry(COSDictionary dictionary, Entry entry)
+    {
+        // keep the digests of the other kinds
+        for (Entry other = dictionary.digests; other != null; other = other.next)
+        {
+            if (other.kind != entry.kind)
+            {
+                entry = new Entry(other, entry);
+            }
+        }
+        dictionary.digests = entry;
+    }
+
+    /**
+     * Finds the strongly connected components of the graph with Tarjan's algorithm, without
+     * recursion. The components are completed in reverse topological order, i.e. all objects
+     * referenced from a component, apart from its own members, have been digested before.
+     */
+    private byte[] digestGraph(Node start) throws IOException
+    {
+        Deque<Node> path = new ArrayDeque<Node>();
+        visit(start, path);
+        while (!path.isEmpty())
+        {
+            Node node = path.peek();
+            if (node.next < node.values.length)
+            {
+                Node child = getNode(node.values[node.next++]);
+                if (child == null)
+                {
+                    continue;
+                }
+                if (child.index < 0)
+                {
+                    visit(child, path);
+                }
+                else if (child.onStack)
+                {
+                    node.lowlink = Math.min(node.lowlink, child.index);
+                }
+            }
+            else
+            {
+                path.pop();
+                if (!path.isEmpty())
+                {
+                    Node parent = path.peek();
+                    parent.lowlink = Math.min(parent.lowlink, node.lowlink);
+                }
+                if (node.lowlink == node.index)
+                {
+                    digestComponent(node);
+                }
+            }
+        }
+        return start.digest;
+    }
+
+    private void visit(Node node, Deque<Node> path)
+    {
+        node.index = index;
+        node.lowlink = index;
+        index++;
+        node.onStack = true;
+        componentStack.push(node);
+        path.push(node);
+    }
+
+    private void digestComponent(Node first) throws IOException
+    {
+        Node node;
+        int size = 0;
+        do
+        {
+            node = componentStack.pop();
+            node.onStack = false;
+            size++;
+        }
+        while (node != first);
+
+        if (size == 1 && !references(first, first))
+        {
+            updateNode(first, null);
+            first.digest = digest.digest();
+            if (completed != null)
+            {
+                completed.add(new AbstractMap.SimpleImmutableEntry<COSBase, byte[]>(first.object,
+                        first.digest));
+            }
+            return;
+        }
+
+        // number the members in the order they are reached from the first one
+        Map<Node, Integer> ordinals = new IdentityHashMap<Node, Integer>();
+        List<Node> members = new ArrayList<Node>(size);
+        ordinals.put(first, 0);
+        members.add(first);
+        for (int i = 0; i < members.size(); i++)
+        {
+            for (COSBase value : members.get(i).values)
+            {
+                Node child = getNode(value);
+                // the members are the only nodes without a digest yet
+                if (child != null && child.digest == null && !ordinals.containsKey(child))
+                {
+                    ordinals.put(child, members.size());
+                    members.add(child);
+                }
+            }
+        }
+        for (Node member : members)
+        {
+            updateNode(member, ordinals);
+        }
+        byte[] componentDigest = digest.digest();
+        for (Node member : members)
+        {
+            digest.update((byte) 'C');
+            digest.update(componentDigest);
+            updateLong(ordinals.get(member));
+            member.digest = digest.digest();
+            if (completed != null)
+            {
+                completed.add(new AbstractMap.SimpleImmutableEntry<COSBase, byte[]>(member.object,
+                        null));
+            }
+        }
+    }
+
+    private boolean references(Node node, Node target)
+    {
+        for (COSBase value : node.values)
+        {
+            if (getNode(value) == target)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Updates the digest with a dictionary or array. Referenced dictionaries and arrays of the
+     * same component are replaced by their ordinal, all others by their digest.
+     */
+    private void updateNode(Node node, Map<Node, Integer> ordinals) throws IOException
+    {
+        if (node.object instanceof COSStream)
+        {
+            digest.update((byte) 'T');
+            digest.update(rawDataDigest((COSStream) node.object));
+        }
+        else
+        {
+            digest.update((byte) (node.keys != null ? 'D' : 'A'));
+        }
+        updateLong(node.values.length);
+        for (int i = 0; i < node.values.length; i++)
+        {
+            if (node.keys != null)
+            {
+                update(node.keys[i]);
+            }
+            Node child = getNode(node.values[i]);
+            if (child == null)
+            {
+                update(node.values[i]);
+            }
+            else if (child.digest != null)
+            {
+                digest.update((byte) 'H');
+                digest.update(child.digest);
+            }
+            else
+            {
+                digest.update((byte) 'R');
+                updateLong(ordinals.get(child));
+            }
+        }
+    }
+
+    /**
+     * Returns the node of a dictionary or array, or null for all other objects.
+     */
+    private Node getNode(COSBase value)
+    {
+        if (!(value instanceof COSDictionary || value instanceof COSArray))
+        {
+            return null;
+        }
+        Node node = nodes.get(value);
+        if (node != null)
+        {
+            return node;
+        }
+        if (value instanceof COSArray)
+        {
+            COSArray array = (COSArray) value;
+            arrays.add(array);
+            COSBase[] values = new COSBase[array.size()];
+            for (int i = 0; i < values.length; i++)
+            {
+                values[i] = dereference(array.get(i));
+            }
+            node = new Node(array, null, values);
+        }
+        else
+        {
+            COSDictionary dictionary = (COSDictionary) value;
+            if (kind == PAGE && dictionary != root && isPageTreeNode(dictionary))
+            {
+                // another page, see update()
+                return null;
+            }
+            dictionaries.add(dictionary);
+            node = createDictionaryNode(dictionary);
+        }
+        nodes.put(value, node);
+        return node;
+    }
+
+    private Node createDictionaryNode(COSDictionary dictionary)
+    {
+        List<Map.Entry<COSName, COSBase>> entries = new ArrayList<Map.Entry<COSName, COSBase>>();
+        for (Map.Entry<COSName, COSBase> entry : dictionary.entrySet())
+        {
+            COSName key = entry.getKey();
+            COSBase value = dereference(entry.getValue());
+            if (value == null || value instanceof COSNull ||
+                    kind == PAGE && (COSName.PARENT.equals(key) || COSName.P.equals(key)) ||
+                    kind == DOCUMENT && dictionary == root &&
+                    !COSName.ROOT.equals(key) && !COSName.INFO.equals(key))
+            {
+                continue;
+            }
+            entries.add(new AbstractMap.SimpleImmutableEntry<COSName, COSBase>(key, value));
+        }
+        if (kind == PAGE && dictionary == root)
+        {
+            addInheritedAttributes(dictionary, entries);
+        }
+        Collections.sort(entries, BY_KEY);
+
+        COSName[] keys = new COSName[entries.size()];
+        COSBase[] values = new COSBase[entries.size()];
+        for (int i = 0; i < keys.length; i++)
+        {
+            keys[i] = entries.get(i).getKey();
+            values[i] = entries.get(i).getValue();
+        }
+        return new Node(dictionary, keys, values);
+    }
+
+    private void addInheritedAttributes(COSDictionary page, List<Map.Entry<COSName, COSBase>> entries)
+    {
+        for (COSName name : INHERITABLE)
+        {
+            if (page.containsKey(name))
+            {
+                continue;
+            }
+            COSDictionary node = page.getCOSDictionary(COSName.PARENT);
+            for (int depth = 0; node != null && depth < MAX_DEPTH; depth++)
+            {
+                // a change of the page tree node may change the page
+                dictionaries.add(node);
+                COSBase value = dereference(node.getItem(name));
+                if (value != null && !(value instanceof COSNull))
+                {
+                    entries.add(new AbstractMap.SimpleImmutableEntry<COSName, COSBase>(name, value));
+                    break;
+                }
+                node = node.getCOSDictionary(COSName.PARENT);
+            }
+        }
+    }
+
+    /**
+     * Updates the digest with an object that isn't a node.
+     */
+    private void update(COSBase base)
+    {
+        if (base == null || base instanceof COSNull)
+        {
+            digest.update((byte) 'n');
+        }
+        else if (base instanceof COSBoolean)
+        {
+            digest.update((byte) 'b');
+            digest.update((byte) (((COSBoolean) base).getValue() ? 1 : 0));
+        }
+        else if (base instanceof COSInteger)
+        {
+            digest.update((byte) 'i');
+            updateLong(((COSInteger) base).longValue());
+        }
+        else if (base instanceof COSFloat)
+        {
+            digest.update((byte) 'f');
+            updateLong(Float.floatToIntBits(((COSFloat) base).floatValue()));
+        }
+        else if (base instanceof COSName)
+        {
+            digest.update((byte) 'N');
+            updateBytes(((COSName) base).getName().getBytes(Charsets.UTF_8));
+        }
+        else if (base instanceof COSString)
+        {
+            // COSString.setValue() may change the digest
+            strings.add((COSString) base);
+            digest.update((byte) 'S');
+            updateBytes(((COSString) base).getBytes());
+        }
+        else if (base instanceof COSDictionary)
+        {
+            // another page, which isn't followed when digesting a page
+            digest.update((byte) 'p');
+        }
+        else
+        {
+            digest.update((byte) '?');
+            updateBytes(base.getClass().getName().getBytes(Charsets.UTF_8));
+        }
+    }
+
+    private void updateLong(long value)
+    {
+        for (int i = 0; i < 8; i++)
+        {
+            buffer[i] = (byte) (value >>> (56 - 8 * i));
+        }
+        digest.update(buffer, 0, 8);
+    }
+
+    private void updateBytes(byte[] bytes)
+    {
+        updateLong(bytes.length);
+        digest.update(bytes);
+    }
+
+    private static boolean isPageTreeNode(COSDictionary dictionary)
+    {
+        COSBase type = dictionary.getDictionaryObject(COSName.TYPE);
+        return COSName.PAGE.equals(type) || COSName.PAGES.equals(type);
+    }
+
+    private static COSBase dereference(COSBase base)
+    {
+        for (int depth = 0; base instanceof COSObject && depth < MAX_DEPTH; depth++)
+        {
+            base = ((COSObject) base).getObject();
+        }
+        return base instanceof COSObject ? null : base;
+    }
+
+    private static MessageDigest createMessageDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance(ALGORITHM);
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            // should never happen
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * A dictionary or array of the graph, with its entries in canonical order.
+     */
+    private static final class Node
+    {
+        private final COSBase object;
+        private final COSName[] keys;
+        private final COSBase[] values;
+        private int next;
+        private int index = -1;
+        private int lowlink;
+        private boolean onStack;
+        private byte[] digest;
+
+        Node(COSBase object, COSName[] keys, COSBase[] values)
+        {
+            this.object = object;
+            this.keys = keys;
+            this.values = values;
+        }
+    }
+
+    /**
+     * A cached digest, with the modification counts of the dictionaries, arrays and strings it was
+     * computed from.
+     */
+    static final class Entry
+    {
+        private final int kind;
+        private final byte[] digest;
+        private final COSDictionary[] dictionaries;
+        private final int[] dictionaryModCounts;
+        private final COSArray[] arrays;
+        private final int[] arrayModCounts;
+        private final COSString[] strings;
+        private final int[] stringModCounts;
+        private final Entry next;
+
+        Entry(int kind, byte[] digest, List<COSDictionary> dictionaries, List<COSArray> arrays,
+                List<COSString> strings)
+        {
+            this.kind = kind;
+            this.digest = digest;
+            this.dictionaries = dictionaries.toArray(new COSDictionary[dictionaries.size()]);
+            this.dictionaryModCounts = new int[this.dictionaries.length];
+            for (int i = 0; i < this.dictionaries.length; i++)
+            {
+                dictionaryModCounts[i] = this.dictionaries[i].modCount;
+            }
+            this.arrays = arrays.toArray(new COSArray[arrays.size()]);
+            this.arrayModCounts = new int[this.arrays.length];
+            for (int i = 0; i < this.arrays.length; i++)
+            {
+                arrayModCounts[i] = this.arrays[i].modCount;
+            }
+            this.strings = strings.toArray(new COSString[strings.size()]);
+            this.stringModCounts = new int[this.strings.length];
+            for (int i = 0; i < this.strings.length; i++)
+            {
+                stringModCounts[i] = this.strings[i].modCount;
+            }
+            this.next = null;
+        }
+
+        Entry(Entry entry, Entry next)
+        {
+            this.kind = entry.kind;
+            this.digest = entry.digest;
+            this.dictionaries = entry.dictionaries;
+            this.dictionaryModCounts = entry.dictionaryModCounts;
+            this.arrays = entry.arrays;
+            this.arrayModCounts = entry.arrayModCounts;
+            this.strings = entry.strings;
+            this.stringModCounts = entry.stringModCounts;
+            this.next = next;
+        }
+
+        boolean isValid()
+        {
+            for (int i = 0; i < dictionaries.length; i++)
+            {
+                if (dictionaries[i].modCount != dictionaryModCounts[i])
+                {
+                    return false;
+                }
+            }
+            for (int i = 0; i < arrays.length; i++)
+            {
+                if (arrays[i].modCount != arrayModCounts[i])
+                {
+                    return false;
+                }
+            }
+            for (int i = 0; i < strings.length; i++)
+            {
+                if (strings[i].modCount != stringModCounts[i])
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
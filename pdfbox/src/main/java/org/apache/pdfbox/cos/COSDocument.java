@@ -62,6 +62,13 @@ public class COSDocument extends COSBase implements Closeable
     private final Map<COSObjectKey, Long> xrefTable =
         new HashMap<COSObjectKey, Long>();
 
+    /**
+     * Maps object and generation id to the offset and length of the complete indirect object,
+     * from "obj" to "endobj", in the source file.
+     */
+    private final Map<COSObjectKey, long[]> objectByteRanges =
+        new HashMap<COSObjectKey, long[]>();
+
     /**
      * List containing all streams which are created when creating a new pdf. 
      */
@@ -113,11 +120,12 @@ public class COSDocument extends COSBase implements Closeable
     }
 
     /**
-     * Creates a new COSStream using the current configuration for scratch files.
+     * Creates a new COSStream using the current configuration for scratch files. This may be
+     * called by several threads, e.g. when images are encoded in parallel.
      * 
      * @return the new COSStream
      */
-    public COSStream createCOSStream()
+    public synchronized COSStream createCOSStream()
     {
         COSStream stream = new COSStream(scratchFile);
         // collect all COSStreams so that they can be closed when closing the COSDocument.
@@ -540,6 +548,21 @@ public class COSDocument extends COSBase implements Closeable
         this.warnMissingClose = warn;
     }
 
+    /**
+     * Replaces streams and dictionaries which are identical to others, including everything they
+     * reference, by references to one of them, so that the duplicates won't be written when the
+     * document is saved. This is useful after documents have been merged or pages have been
+     * imported, which copies fonts, images and color profiles. Objects whose identity matters,
+     * e.g. pages, annotations and form fields, are kept.
+     *
+     * @return the number of removed duplicates
+     * @throws IOException if the data of a stream can't be read
+     */
+    public int removeDuplicates() throws IOException
+    {
+        return COSDeduplicator.removeDuplicates(trailer);
+    }
+
     /**
      * This method will search the list of objects for types of ObjStm.  If it finds
      * them then it will parse out all of the objects from the stream that is contains.
@@ -628,6 +651,32 @@ public class COSDocument extends COSBase implements Closeable
         return xrefTable;
     }
 
+    /**
+     * Records where an indirect object was read from in the source file. If pass-through is
+     * enabled, this is set by the parser for unencrypted objects that aren't in an object stream,
+     * so that the writer can copy them unchanged.
+     *
+     * @param key the key of the object
+     * @param offset the offset of the object number in the source
+     * @param length the length of the object up to and including the "endobj" keyword
+     */
+    public void setObjectByteRange(COSObjectKey key, long offset, long length)
+    {
+        objectByteRanges.put(key, new long[] { offset, length });
+    }
+
+    /**
+     * Returns where an indirect object was read from in the source file.
+     *
+     * @param key the key of the object
+     * @return an array with the offset and the length of the object, or null if unknown
+     */
+    public long[] getObjectByteRange(COSObjectKey key)
+    {
+        long[] range = objectByteRanges.get(key);
+        return range == null ? null : range.clone();
+    }
+
     /**
      * This method set the startxref value of the document. This will only 
      * be needed for incremental updates.
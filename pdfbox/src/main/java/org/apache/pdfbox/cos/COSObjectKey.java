@@ -91,6 +91,32 @@ public class COSObjectKey implements Comparable<COSObjectKey>
         return number;
     }
 
+    /**
+     * Returns the object number and the generation number packed into a single long value, see
+     * {@link #computeInternalHash(long, int)}.
+     *
+     * @return the packed key.
+     */
+    public long getInternalHash()
+    {
+        return computeInternalHash(number, generation);
+    }
+
+    /**
+     * Packs an object number and a generation number into a single long value, so that sets of
+     * keys can be kept in primitive arrays. The generation number takes the lower 16 bits, the
+     * object number the remaining bits. Packed keys sort in the same order as
+     * {@link #compareTo(COSObjectKey)}.
+     *
+     * @param num the object number.
+     * @param gen the generation number.
+     * @return the packed key.
+     */
+    public static long computeInternalHash(long num, int gen)
+    {
+        return num << 16 | (gen & 0xFFFF);
+    }
+
     /**
      * {@inheritDoc}
      */
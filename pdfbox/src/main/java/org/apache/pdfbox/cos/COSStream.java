@@ -291,6 +291,7 @@ public class COSStream extends COSDictionary implements Closeable
         }
         IOUtils.closeQuietly(randomAccess);
         randomAccess = scratchFile.createBuffer();
+        modCount++;
         OutputStream randomOut = new RandomAccessOutputStream(randomAccess);
         OutputStream cosOut = new COSOutputStream(getFilterList(), this, randomOut, scratchFile);
         isWriting = true;
@@ -342,6 +343,7 @@ public class COSStream extends COSDictionary implements Closeable
         }
         IOUtils.closeQuietly(randomAccess);
         randomAccess = scratchFile.createBuffer();
+        modCount++;
         OutputStream out = new RandomAccessOutputStream(randomAccess);
         isWriting = true;
         return new FilterOutputStream(out)
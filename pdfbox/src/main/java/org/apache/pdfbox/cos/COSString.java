@@ -50,6 +50,9 @@ public final class COSString extends COSBase
     private byte[] bytes;
     private boolean forceHexForm;
 
+    // incremented on every change of the value, to invalidate the cached digests
+    int modCount;
+
     // legacy behaviour for old PDFParser
     public static final boolean FORCE_PARSING =
             Boolean.getBoolean("org.apache.pdfbox.forceParsing");
@@ -149,6 +152,7 @@ public final class COSString extends COSBase
     public void setValue(byte[] value)
     {
         bytes = value.clone();
+        modCount++;
     }
 
     /**
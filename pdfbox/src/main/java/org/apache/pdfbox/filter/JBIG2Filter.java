@@ -20,6 +20,7 @@ import java.awt.Graphics;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBuffer;
 import java.awt.image.DataBufferByte;
+import java.awt.image.Raster;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -127,7 +128,9 @@ final class JBIG2Filter extends Filter
                 image = packedImage;
             }
 
-            DataBuffer dBuf = image.getData().getDataBuffer();
+            // the raster of the decoded image is already packed, don't copy it with getData()
+            Raster raster = image.getRaster().getParent() == null ? image.getRaster() : image.getData();
+            DataBuffer dBuf = raster.getDataBuffer();
             if (dBuf.getDataType() == DataBuffer.TYPE_BYTE)
             {
                 decoded.write(((DataBufferByte) dBuf).getData());
@@ -16,6 +16,7 @@
  */
 package org.apache.pdfbox.filter;
 
+import java.awt.Rectangle;
 import java.awt.color.ColorSpace;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBuffer;
@@ -27,10 +28,13 @@ import java.awt.image.Raster;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
 import javax.imageio.ImageReadParam;
 import javax.imageio.ImageReader;
 import javax.imageio.stream.ImageInputStream;
 import javax.imageio.stream.MemoryCacheImageInputStream;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.apache.pdfbox.cos.COSDictionary;
 import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.pdmodel.graphics.color.PDJPXColorSpace;
@@ -52,6 +56,15 @@ import org.apache.pdfbox.pdmodel.graphics.color.PDJPXColorSpace;
  */
 public final class JPXFilter extends Filter
 {
+    private static final Log LOG = LogFactory.getLog(JPXFilter.class);
+
+    // markers and boxes of the JPEG 2000 file format, see ISO/IEC 15444-1
+    private static final int SOC = 0xFF4F;
+    private static final int COD = 0xFF52;
+    private static final int SOT = 0xFF90;
+    private static final int JP2C = 0x6A703263;
+    private static final int MAX_HEADER_SEGMENTS = 1000;
+
     /**
      * {@inheritDoc}
      */
@@ -119,17 +132,22 @@ public final class JPXFilter extends Filter
             // PDFBOX-4121: ImageIO.createImageInputStream() is much slower
             iis = new MemoryCacheImageInputStream(input);
 
-            reader.setInput(iis, true, true);
-            ImageReadParam irp = reader.getDefaultReadParam();
-            irp.setSourceRegion(options.getSourceRegion());
-            irp.setSourceSubsampling(options.getSubsamplingX(), options.getSubsamplingY(),
-                    options.getSubsamplingOffsetX(), options.getSubsamplingOffsetY());
+            // not seek forward only, the image may have to be read a second time
+            reader.setInput(iis, false, true);
             options.setFilterSubsampled(true);
 
             BufferedImage image;
             try
             {
-                image = reader.read(0, irp);
+                image = readReduced(reader, iis, options);
+                if (image == null)
+                {
+                    ImageReadParam irp = reader.getDefaultReadParam();
+                    irp.setSourceRegion(options.getSourceRegion());
+                    irp.setSourceSubsampling(options.getSubsamplingX(), options.getSubsamplingY(),
+                            options.getSubsamplingOffsetX(), options.getSubsamplingOffsetY());
+                    image = reader.read(0, irp);
+                }
             }
             catch (Exception e)
             {
@@ -188,6 +206,164 @@ public final class JPXFilter extends Filter
         }
     }
 
+    /**
+     * Reads a subsampled image at a lower resolution level, i.e. without the finest wavelet
+     * levels, which takes a fraction of the time and memory of decoding the full image and
+     * subsampling it. This is possible if the subsampling is divisible by 2, 4, 8... and the
+     * reader is the one of JAI Image I/O.
+     *
+     * @return the image, as it would have been read with the subsampling of the options, or null
+     * if it must be read at full resolution.
+     */
+    private static BufferedImage readReduced(ImageReader reader, ImageInputStream iis,
+            DecodeOptions options) throws IOException
+    {
+        int subsampling = options.getSubsamplingX();
+        if (subsampling < 2 || options.getSubsamplingY() != subsampling ||
+                options.getSubsamplingOffsetX() != 0 || options.getSubsamplingOffsetY() != 0)
+        {
+            return null;
+        }
+        int levels = readDecompositionLevels(iis);
+        int skipped = Math.min(levels, Integer.numberOfTrailingZeros(subsampling));
+        if (skipped == 0)
+        {
+            return null;
+        }
+        ImageReadParam irp = reader.getDefaultReadParam();
+        if (!setResolution(irp, levels - skipped))
+        {
+            return null;
+        }
+
+        // the source region is given in the coordinates of the reduced image
+        int width = reader.getWidth(0);
+        int height = reader.getHeight(0);
+        Rectangle region = new Rectangle(0, 0, width, height);
+        if (options.getSourceRegion() != null)
+        {
+            region = region.intersection(options.getSourceRegion());
+        }
+        int scale = 1 << skipped;
+        int step = subsampling / scale;
+        int targetWidth = (region.width + subsampling - 1) / subsampling;
+        int targetHeight = (region.height + subsampling - 1) / subsampling;
+        int x = region.x / scale;
+        int y = region.y / scale;
+        irp.setSourceRegion(new Rectangle(x, y,
+                Math.min(targetWidth * step, (width + scale - 1) / scale - x),
+                Math.min(targetHeight * step, (height + scale - 1) / scale - y)));
+        irp.setSourceSubsampling(step, step, 0, 0);
+        BufferedImage image = reader.read(0, irp);
+        if (image.getWidth() != targetWidth || image.getHeight() != targetHeight)
+        {
+            // e.g. a tile has less decomposition levels than the main header says
+            LOG.debug("JPX image has " + image.getWidth() + "x" + image.getHeight() +
+                    " pixels at the reduced resolution instead of " + targetWidth + "x" +
+                    targetHeight + ", reading it at full resolution");
+            return null;
+        }
+        return image;
+    }
+
+    /**
+     * Returns the number of wavelet decomposition levels in the COD segment of the main header of
+     * the codestream, i.e. how many times the resolution can be halved, or 0 if it can't be
+     * found. The position of the stream isn't changed.
+     */
+    private static int readDecompositionLevels(ImageInputStream iis) throws IOException
+    {
+        iis.mark();
+        try
+        {
+            if (iis.readUnsignedShort() != SOC)
+            {
+                // a JP2 file, find the contiguous codestream box
+                iis.seek(iis.getStreamPosition() - 2);
+                while (true)
+                {
+                    long start = iis.getStreamPosition();
+                    long length = iis.readUnsignedInt();
+                    int type = iis.readInt();
+                    if (length == 1)
+                    {
+                        length = iis.readLong();
+                    }
+                    if (type == JP2C)
+                    {
+                        break;
+                    }
+                    if (length < 8)
+                    {
+                        // the last box, or invalid
+                        return 0;
+                    }
+                    iis.seek(start + length);
+                }
+                if (iis.readUnsignedShort() != SOC)
+                {
+                    return 0;
+                }
+            }
+            for (int i = 0; i < MAX_HEADER_SEGMENTS; i++)
+            {
+                int marker = iis.readUnsignedShort();
+                int length = iis.readUnsignedShort();
+                if (marker == COD)
+                {
+                    // skip Scod, progression order, number of layers and MCT
+                    iis.skipBytes(5);
+                    return Math.min(iis.readUnsignedByte(), 32);
+                }
+                if (marker == SOT || (marker & 0xFF00) != 0xFF00 || length < 2)
+                {
+                    return 0;
+                }
+                iis.seek(iis.getStreamPosition() + length - 2);
+            }
+            return 0;
+        }
+        catch (IOException e)
+        {
+            // e.g. EOFException, the reader will report it if the image is broken
+            LOG.debug("Couldn't read the decomposition levels of the JPX image", e);
+            return 0;
+        }
+        finally
+        {
+            iis.reset();
+        }
+    }
+
+    /**
+     * Sets the resolution level of a J2KImageReadParam of JAI Image I/O, which is an optional
+     * dependency.
+     *
+     * @return true if the resolution level could be set.
+     */
+    private static boolean setResolution(ImageReadParam param, int resolution)
+    {
+        try
+        {
+            param.getClass().getMethod("setResolution", int.class).invoke(param, resolution);
+            return true;
+        }
+        catch (NoSuchMethodException e)
+        {
+            return false;
+        }
+        catch (IllegalAccessException e)
+        {
+            LOG.debug("Couldn't set the resolution level of the JPX image", e);
+            return false;
+        }
+        catch (InvocationTargetException e)
+        {
+            LOG.debug("Couldn't set the resolution level of the JPX image", e);
+            return false;
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -37,7 +37,8 @@ public class RandomAccessInputStream extends InputStream
 
     /**
      * Creates a new RandomAccessInputStream, with a position of zero. The InputStream will maintain
-     * its own position independent of the RandomAccessRead.
+     * its own position independent of the RandomAccessRead. Each access synchronizes on the
+     * RandomAccessRead, so that several streams on the same data can be read concurrently.
      *
      * @param randomAccessRead The RandomAccessRead to read from.
      */
@@ -55,67 +56,79 @@ public class RandomAccessInputStream extends InputStream
     @Override
     public int available() throws IOException
     {
-        restorePosition();
-        long available = input.length() - input.getPosition();
-        if (available > Integer.MAX_VALUE)
+        synchronized (input)
         {
-            return Integer.MAX_VALUE;
+            restorePosition();
+            long available = input.length() - input.getPosition();
+            if (available > Integer.MAX_VALUE)
+            {
+                return Integer.MAX_VALUE;
+            }
+            return (int)available;
         }
-        return (int)available;
     }
 
     @Override
     public int read() throws IOException
     {
-        restorePosition();
-        if (input.isEOF())
+        synchronized (input)
         {
-            return -1;
+            restorePosition();
+            if (input.isEOF())
+            {
+                return -1;
+            }
+            int b = input.read();
+            if (b != -1)
+            {
+                position += 1;
+            }
+            else
+            {
+                // should never happen due to prior isEOF() check
+                // unless there is an unsynchronized concurrent access
+                LOG.error("read() returns -1, assumed position: " +
+                           position + ", actual position: " + input.getPosition());
+            }
+            return b;
         }
-        int b = input.read();
-        if (b != -1)
-        {
-            position += 1;
-        }
-        else
-        {
-            // should never happen due to prior isEOF() check
-            // unless there is an unsynchronized concurrent access
-            LOG.error("read() returns -1, assumed position: " +
-                       position + ", actual position: " + input.getPosition());
-        }
-        return b;
     }
 
     @Override
     public int read(byte[] b, int off, int len) throws IOException
     {
-        restorePosition();
-        if (input.isEOF())
-        {
-            return -1;
-        }
-        int n = input.read(b, off, len);
-        if (n != -1)
+        synchronized (input)
         {
-            position += n;
-        }
-        else
-        {
-            // should never happen due to prior isEOF() check
-            // unless there is an unsynchronized concurrent access
-            LOG.error("read() returns -1, assumed position: " +
-                       position + ", actual position: " + input.getPosition());
+            restorePosition();
+            if (input.isEOF())
+            {
+                return -1;
+            }
+            int n = input.read(b, off, len);
+            if (n != -1)
+            {
+                position += n;
+            }
+            else
+            {
+                // should never happen due to prior isEOF() check
+                // unless there is an unsynchronized concurrent access
+                LOG.error("read() returns -1, assumed position: " +
+                           position + ", actual position: " + input.getPosition());
+            }
+            return n;
         }
-        return n;
     }
 
     @Override
     public long skip(long n) throws IOException
     {
-        restorePosition();
-        input.seek(position + n);
-        position += n;
-        return n;
+        synchronized (input)
+        {
+            restorePosition();
+            input.seek(position + n);
+            position += n;
+            return n;
+        }
     }
 }
@@ -112,6 +112,13 @@ public class COSParser extends BaseParser
     public static final String SYSPROP_EOFLOOKUPRANGE =
             "org.apache.pdfbox.pdfparser.nonSequentialPDFParser.eofLookupRange";
 
+    /**
+     * Record where the objects are in the file, so that unchanged objects can be copied by
+     * {@link org.apache.pdfbox.pdmodel.PDDocument#savePassThrough(java.io.OutputStream)}.
+     */
+    public static final String SYSPROP_PASSTHROUGH =
+            "org.apache.pdfbox.pdfparser.nonSequentialPDFParser.passThrough";
+
     /**
      * How many trailing bytes to read for EOF marker.
      */
@@ -149,6 +156,11 @@ public class COSParser extends BaseParser
 
     protected boolean initialParseDone = false;
 
+    /**
+     * record the byte ranges of the objects for pass-through saving ?
+     */
+    private boolean passThroughEnabled = false;
+
     private boolean trailerWasRebuild = false;
     /**
      * Contains all found objects of a brute force search.
@@ -164,6 +176,9 @@ public class COSParser extends BaseParser
      */
     protected SecurityHandler securityHandler = null;
 
+    // true if the /Length of the stream parsed last was correct
+    private boolean lastStreamLengthValid;
+
     /**
      *  how many trailing bytes to read for EOF marker.
      */
@@ -577,6 +592,36 @@ public class COSParser extends BaseParser
         this.isLenient = lenient;
     }
 
+    /**
+     * Returns whether the byte ranges of the objects are recorded for pass-through saving.
+     *
+     * @return true if the byte ranges are recorded
+     */
+    public boolean isPassThroughEnabled()
+    {
+        return passThroughEnabled;
+    }
+
+    /**
+     * Sets whether the offset and the length of each object read from the file are recorded, so
+     * that {@link org.apache.pdfbox.pdmodel.PDDocument#savePassThrough(java.io.OutputStream)}
+     * can copy the unchanged objects. This is off by default because it costs memory for every
+     * object. In case system property {@link #SYSPROP_PASSTHROUGH} is set to "true" it is
+     * enabled on initialization.
+     *
+     * This method can only be called before the parsing of the file.
+     *
+     * @param passThroughEnabled true to record the byte ranges
+     */
+    public void setPassThroughEnabled(boolean passThroughEnabled)
+    {
+        if (initialParseDone)
+        {
+            throw new IllegalArgumentException("Cannot enable pass-through after parsing");
+        }
+        this.passThroughEnabled = passThroughEnabled;
+    }
+
     /**
      * Creates a unique object id using object number and object generation
      * number. (requires object number &lt; 2^31))
@@ -899,6 +944,8 @@ public class COSParser extends BaseParser
     {
         // ---- go to object start
         source.seek(offsetOrObjstmObNr);
+        skipSpaces();
+        final long objectStart = source.getPosition();
 
         // ---- we must have an indirect object
         final long readObjNr = readObjectNumber();
@@ -960,6 +1007,13 @@ public class COSParser extends BaseParser
 
         pdfObject.setObject(pb);
 
+        if (passThroughEnabled && securityHandler == null && endObjectKey.trim().equals(ENDOBJ_STRING)
+                && (!(pb instanceof COSStream) || lastStreamLengthValid))
+        {
+            // remember where the object is, so that it can be copied as is when it is unchanged
+            document.setObjectByteRange(objKey, objectStart, source.getPosition() - objectStart);
+        }
+
         if (!endObjectKey.startsWith(ENDOBJ_STRING))
         {
             if (isLenient)
@@ -1131,7 +1185,9 @@ public class COSParser extends BaseParser
         }
 
         // get output stream to copy data to
-        if (streamLengthObj != null && validateStreamLength(streamLengthObj.longValue()))
+        lastStreamLengthValid = streamLengthObj != null
+                && validateStreamLength(streamLengthObj.longValue());
+        if (lastStreamLengthValid)
         {
             OutputStream out = stream.createRawOutputStream();
             try
@@ -142,6 +142,10 @@ public class PDFParser extends COSParser
                         + " does not contain an integer value, but: '" + eofLookupRangeStr + "'");
             }
         }
+        if (Boolean.getBoolean(SYSPROP_PASSTHROUGH))
+        {
+            setPassThroughEnabled(true);
+        }
         document = new COSDocument(scratchFile);
     }
     
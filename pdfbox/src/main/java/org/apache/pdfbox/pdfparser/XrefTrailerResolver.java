@@ -99,6 +99,7 @@ public class XrefTrailerResolver
     private final Map<Long, XrefTrailerObj> bytePosToXrefMap = new HashMap<Long, XrefTrailerObj>();
     private XrefTrailerObj curXrefTrailerObj   = null;
     private XrefTrailerObj resolvedXrefTrailer = null;
+    private XrefTrailerObj startXrefTrailer = null;
 
     /** Log instance. */
     private static final Log LOG = LogFactory.getLog( XrefTrailerResolver.class );
@@ -242,6 +243,7 @@ public class XrefTrailerResolver
         resolvedXrefTrailer.trailer = new COSDictionary();
 
         XrefTrailerObj curObj = bytePosToXrefMap.get( startxrefBytePosValue );
+        startXrefTrailer = curObj;
         List<Long>  xrefSeqBytePos = new ArrayList<Long>();
 
         if ( curObj == null )
@@ -321,6 +323,25 @@ public class XrefTrailerResolver
         return ( resolvedXrefTrailer == null ) ? null : resolvedXrefTrailer.xrefTable;
     }
     
+    /**
+     * Returns the keys of the objects of the last revision, i.e. of the xref table or stream at
+     * the startxref position. For a document which has been updated incrementally, e.g. with
+     * {@link org.apache.pdfbox.pdmodel.PDDocument#saveIncremental(java.io.OutputStream)}, these
+     * are the objects which have been added or changed by the last update. Might return
+     * <code>null</code> in case {@link #setStartxref(long)} was not called before or there is no
+     * xref at the startxref position.
+     *
+     * @return the object keys, which must not be modified
+     */
+    public Set<COSObjectKey> getLastRevisionObjectKeys()
+    {
+        if (resolvedXrefTrailer == null || startXrefTrailer == null)
+        {
+            return null;
+        }
+        return Collections.unmodifiableSet(startXrefTrailer.xrefTable.keySet());
+    }
+
     /** Returns object numbers which are referenced as contained
      *  in object stream with specified object number.
      *  
@@ -365,5 +386,6 @@ public class XrefTrailerResolver
         }
         curXrefTrailerObj = null;
         resolvedXrefTrailer = null;
+        startXrefTrailer = null;
     }
 }
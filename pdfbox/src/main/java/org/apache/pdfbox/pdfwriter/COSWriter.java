@@ -224,6 +224,11 @@ public class COSWriter implements ICOSVisitor, Closeable
     private byte[] incrementPart;
     private COSArray byteRangeArray;
 
+    // copying of unchanged objects
+    private RandomAccessRead passThroughInput;
+    private COSDocument passThroughDocument;
+    private byte[] copyBuffer;
+
     /**
      * COSWriter constructor.
      *
@@ -258,6 +263,152 @@ public class COSWriter implements ICOSVisitor, Closeable
         incrementalUpdate = true;
     }
 
+    /**
+     * Enables copying of unchanged objects when writing a complete document that was loaded from
+     * the given source. Objects that are not in an object stream and that are neither marked with
+     * {@link COSUpdateInfo#isNeedToBeUpdated()} themselves nor contain a direct object marked that
+     * way are copied byte by byte from the source instead of being serialized again. The object
+     * numbers of the source are kept, new objects get numbers above the highest existing one.
+     * <p>
+     * As with incremental updates, every object that was changed after loading must be marked
+     * with {@link COSUpdateInfo#setNeedToBeUpdated(boolean)}, otherwise the change is lost. Nothing
+     * is copied if the document is written with encryption, or if it was encrypted when loaded.
+     * This has no effect for incremental updates.
+     *
+     * @param inputData the source the document was loaded from.
+     */
+    public void setPassThroughInput(RandomAccessRead inputData)
+    {
+        passThroughInput = inputData;
+    }
+
+    private void preparePassThrough(PDDocument doc) throws IOException
+    {
+        // keep the original object numbers, the copied objects refer to them
+        prepareIncrement(doc);
+        COSDocument cosDoc = doc.getDocument();
+        for (COSObjectKey cosObjectKey : cosDoc.getXrefTable().keySet())
+        {
+            // indirect numbers aren't mapped by their value, they may be shared instances
+            objectKeys.put(cosDoc.getObjectFromPool(cosObjectKey), cosObjectKey);
+        }
+        passThroughDocument = cosDoc;
+        copyBuffer = new byte[65536];
+    }
+
+    /**
+     * Copies an object from the source if it is unchanged, and schedules the objects it refers to.
+     *
+     * @return true if the object was copied, false if it must be serialized.
+     */
+    private boolean copyUnchangedObject(COSBase obj, COSObjectKey key) throws IOException
+    {
+        long[] range = passThroughDocument.getObjectByteRange(key);
+        if (range == null || range[0] + range[1] > passThroughInput.length())
+        {
+            return false;
+        }
+        COSBase actual = obj instanceof COSObject ? ((COSObject) obj).getObject() : obj;
+        if (actual == null || keyObject.get(key) != actual || isUpdated(obj) || isUpdated(actual)
+                || isUpdated(passThroughDocument.getObjectFromPool(key)))
+        {
+            return false;
+        }
+        List<COSObject> references = new ArrayList<COSObject>();
+        if (!collectReferences(actual, references))
+        {
+            return false;
+        }
+
+        COSStandardOutputStream out = getStandardOutput();
+        passThroughInput.seek(range[0]);
+        long remaining = range[1];
+        int last = -1;
+        while (remaining > 0)
+        {
+            int count = passThroughInput.read(copyBuffer, 0,
+                    (int) Math.min(copyBuffer.length, remaining));
+            if (count <= 0)
+            {
+                throw new IOException("Unexpected end of input while copying object " + key);
+            }
+            out.write(copyBuffer, 0, count);
+            last = copyBuffer[count - 1];
+            remaining -= count;
+        }
+        if (last == '\n' || last == '\r')
+        {
+            out.setOnNewLine(true);
+        }
+        out.writeEOL();
+
+        for (COSObject reference : references)
+        {
+            COSBase referenced = reference.getObject();
+            if (referenced instanceof COSDictionary || referenced instanceof COSArray
+                    || referenced instanceof COSString)
+            {
+                addObjectToWrite(reference);
+            }
+            else if (!writtenObjects.contains(reference) && !objectsToWriteSet.contains(reference))
+            {
+                // numbers, booleans and null may be shared instances, so these must be tracked
+                // by their reference and not by their value
+                objectsToWrite.add(reference);
+                objectsToWriteSet.add(reference);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Collects the indirect references of an object. Returns false if the object contains a
+     * direct object that was marked as changed.
+     */
+    private static boolean collectReferences(COSBase object, List<COSObject> references)
+    {
+        Deque<COSBase> pending = new LinkedList<COSBase>();
+        pending.push(object);
+        while (!pending.isEmpty())
+        {
+            COSBase current = pending.pop();
+            Iterable<COSBase> children;
+            if (current instanceof COSDictionary)
+            {
+                children = ((COSDictionary) current).getValues();
+            }
+            else if (current instanceof COSArray)
+            {
+                children = (COSArray) current;
+            }
+            else
+            {
+                continue;
+            }
+            for (COSBase child : children)
+            {
+                if (child instanceof COSObject)
+                {
+                    references.add((COSObject) child);
+                }
+                else if (child instanceof COSUpdateInfo)
+                {
+                    if (isUpdated(child))
+                    {
+                        return false;
+                    }
+                    pending.push(child);
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean isUpdated(COSBase base)
+    {
+        return base instanceof COSUpdateInfo && ((COSUpdateInfo) base).isNeedToBeUpdated();
+    }
+
     private void prepareIncrement(PDDocument doc)
     {
       try
@@ -487,7 +638,7 @@ public class COSWriter implements ICOSVisitor, Closeable
             {
                 cosBase = keyObject.get(cosObjectKey);
             }
-            if (actual != null && objectKeys.containsKey(actual) 
+            if (incrementalUpdate && actual != null && objectKeys.containsKey(actual) 
                     && object instanceof COSUpdateInfo && !((COSUpdateInfo)object).isNeedToBeUpdated() 
                     && cosBase instanceof COSUpdateInfo && !((COSUpdateInfo)cosBase).isNeedToBeUpdated() )
             {
@@ -516,6 +667,10 @@ public class COSWriter implements ICOSVisitor, Closeable
         currentObjectKey = getObjectKey( obj );
         // add a x ref entry
         addXRefEntry( new COSWriterXRefEntry(getStandardOutput().getPos(), obj, currentObjectKey));
+        if (passThroughDocument != null && copyUnchangedObject(obj, currentObjectKey))
+        {
+            return;
+        }
         // write the object
         getStandardOutput().write(String.valueOf(currentObjectKey.getNumber()).getBytes(Charsets.ISO_8859_1));
         getStandardOutput().write(SPACE);
@@ -1331,6 +1486,11 @@ public class COSWriter implements ICOSVisitor, Closeable
             }
         }
 
+        if (passThroughInput != null && !incrementalUpdate && !willEncrypt)
+        {
+            preparePassThrough(doc);
+        }
+
         COSDocument cosDoc = pdDocument.getDocument();
         COSDictionary trailer = cosDoc.getTrailer();
         COSArray idArray = null;
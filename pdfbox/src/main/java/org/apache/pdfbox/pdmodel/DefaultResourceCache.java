@@ -32,7 +32,8 @@ import org.apache.pdfbox.pdmodel.graphics.state.PDExtendedGraphicsState;
 
 /**
  * A resource cached based on SoftReference, retains resources until memory pressure causes them
- * to be garbage collected.
+ * to be garbage collected. Thread safe, so that the pages of a document can be processed in
+ * parallel.
  *
  * @author John Hewson
  */
@@ -60,7 +61,7 @@ public class DefaultResourceCache implements ResourceCache
             new HashMap<COSObject, SoftReference<PDPropertyList>>();
 
     @Override
-    public PDFont getFont(COSObject indirect) throws IOException
+    public synchronized PDFont getFont(COSObject indirect) throws IOException
     {
         SoftReference<PDFont> font = fonts.get(indirect);
         if (font != null)
@@ -71,13 +72,13 @@ public class DefaultResourceCache implements ResourceCache
     }
 
     @Override
-    public void put(COSObject indirect, PDFont font) throws IOException
+    public synchronized void put(COSObject indirect, PDFont font) throws IOException
     {
         fonts.put(indirect, new SoftReference<PDFont>(font));
     }
 
     @Override
-    public PDColorSpace getColorSpace(COSObject indirect) throws IOException
+    public synchronized PDColorSpace getColorSpace(COSObject indirect) throws IOException
     {
         SoftReference<PDColorSpace> colorSpace = colorSpaces.get(indirect);
         if (colorSpace != null)
@@ -88,13 +89,13 @@ public class DefaultResourceCache implements ResourceCache
     }
 
     @Override
-    public void put(COSObject indirect, PDColorSpace colorSpace) throws IOException
+    public synchronized void put(COSObject indirect, PDColorSpace colorSpace) throws IOException
     {
         colorSpaces.put(indirect, new SoftReference<PDColorSpace>(colorSpace));
     }
 
     @Override
-    public PDExtendedGraphicsState getExtGState(COSObject indirect)
+    public synchronized PDExtendedGraphicsState getExtGState(COSObject indirect)
     {
         SoftReference<PDExtendedGraphicsState> extGState = extGStates.get(indirect);
         if (extGState != null)
@@ -105,13 +106,13 @@ public class DefaultResourceCache implements ResourceCache
     }
 
     @Override
-    public void put(COSObject indirect, PDExtendedGraphicsState extGState)
+    public synchronized void put(COSObject indirect, PDExtendedGraphicsState extGState)
     {
         extGStates.put(indirect, new SoftReference<PDExtendedGraphicsState>(extGState));
     }
 
     @Override
-    public PDShading getShading(COSObject indirect) throws IOException
+    public synchronized PDShading getShading(COSObject indirect) throws IOException
     {
         SoftReference<PDShading> shading = shadings.get(indirect);
         if (shading != null)
@@ -122,13 +123,13 @@ public class DefaultResourceCache implements ResourceCache
     }
 
     @Override
-    public void put(COSObject indirect, PDShading shading) throws IOException
+    public synchronized void put(COSObject indirect, PDShading shading) throws IOException
     {
         shadings.put(indirect, new SoftReference<PDShading>(shading));
     }
 
     @Override
-    public PDAbstractPattern getPattern(COSObject indirect) throws IOException
+    public synchronized PDAbstractPattern getPattern(COSObject indirect) throws IOException
     {
         SoftReference<PDAbstractPattern> pattern = patterns.get(indirect);
         if (pattern != null)
@@ -139,13 +140,13 @@ public class DefaultResourceCache implements ResourceCache
     }
 
     @Override
-    public void put(COSObject indirect, PDAbstractPattern pattern) throws IOException
+    public synchronized void put(COSObject indirect, PDAbstractPattern pattern) throws IOException
     {
         patterns.put(indirect, new SoftReference<PDAbstractPattern>(pattern));
     }
     
     @Override
-    public PDPropertyList getProperties(COSObject indirect)
+    public synchronized PDPropertyList getProperties(COSObject indirect)
     {
         SoftReference<PDPropertyList> propertyList = properties.get(indirect);
         if (propertyList != null)
@@ -156,13 +157,13 @@ public class DefaultResourceCache implements ResourceCache
     }
 
     @Override
-    public void put(COSObject indirect, PDPropertyList propertyList)
+    public synchronized void put(COSObject indirect, PDPropertyList propertyList)
     {
         properties.put(indirect, new SoftReference<PDPropertyList>(propertyList));
     }
 
     @Override
-    public PDXObject getXObject(COSObject indirect) throws IOException
+    public synchronized PDXObject getXObject(COSObject indirect) throws IOException
     {
         SoftReference<PDXObject> xobject = xobjects.get(indirect);
         if (xobject != null)
@@ -173,7 +174,7 @@ public class DefaultResourceCache implements ResourceCache
     }
 
     @Override
-    public void put(COSObject indirect, PDXObject xobject) throws IOException
+    public synchronized void put(COSObject indirect, PDXObject xobject) throws IOException
     {
         xobjects.put(indirect, new SoftReference<PDXObject>(xobject));
     }
@@ -30,8 +30,10 @@ import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -39,11 +41,13 @@ import org.apache.fontbox.ttf.TrueTypeFont;
 import org.apache.pdfbox.cos.COSArray;
 import org.apache.pdfbox.cos.COSBase;
 import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSDigester;
 import org.apache.pdfbox.cos.COSDocument;
 import org.apache.pdfbox.cos.COSInteger;
 import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.cos.COSNumber;
 import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSObjectKey;
 import org.apache.pdfbox.cos.COSUpdateInfo;
 import org.apache.pdfbox.io.IOUtils;
 import org.apache.pdfbox.io.MemoryUsageSetting;
@@ -56,6 +60,7 @@ import org.apache.pdfbox.pdfwriter.COSWriter;
 import org.apache.pdfbox.pdmodel.common.COSArrayList;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.documentinterchange.logicalstructure.PDStructureTreeRoot;
 import org.apache.pdfbox.pdmodel.encryption.AccessPermission;
 import org.apache.pdfbox.pdmodel.encryption.InvalidPasswordException;
 import org.apache.pdfbox.pdmodel.encryption.PDEncryption;
@@ -136,6 +141,9 @@ public class PDDocument implements Closeable
     // holds a flag which tells us if we should remove all security from this documents.
     private boolean allSecurityToBeRemoved;
 
+    // holds a flag which tells us if we should remove duplicate objects when saving
+    private boolean duplicatesToBeRemoved;
+
     // keep tracking customized documentId for the trailer. If null, a new id will be generated
     // this ID doesn't represent the actual documentId from the trailer
     private Long documentId;
@@ -164,6 +172,10 @@ public class PDDocument implements Closeable
     // to make sure only one signature is added
     private boolean signatureAdded = false;
 
+    // object keys each page depends on, keyed by page dictionary
+    private final Map<COSDictionary, long[]> pageObjectKeys =
+            new IdentityHashMap<COSDictionary, long[]>();
+
     /**
      * Creates an empty PDF document.
      * You need to add at least one page for the document to be valid.
@@ -1337,6 +1349,41 @@ public class PDDocument implements Closeable
      * @throws IOException if the output could not be written
      */
     public void save(OutputStream output) throws IOException
+    {
+        save(output, null);
+    }
+
+    /**
+     * Save the document to an output stream, copying all objects that haven't changed since the
+     * document was loaded byte by byte from the source instead of serializing them again. This
+     * makes saving after small changes, e.g. to the document information, much faster. This is
+     * only possible if the PDF was loaded from a file or a stream, not if the document was created
+     * in PDFBox itself, and the parser must have recorded where the objects are, see
+     * {@link org.apache.pdfbox.pdfparser.COSParser#setPassThroughEnabled(boolean)} and
+     * {@link org.apache.pdfbox.pdfparser.COSParser#SYSPROP_PASSTHROUGH}.
+     * Otherwise all objects are serialized again.
+     * <p>
+     * As with {@link #saveIncremental(OutputStream)}, every object that was changed after loading
+     * must have {@link COSUpdateInfo#isNeedToBeUpdated()} set, otherwise the change is lost. The
+     * object numbers of the source are kept. Objects in object streams and all objects of
+     * encrypted documents are always serialized again.
+     *
+     * @param output The stream to write to. It will be closed when done. It is recommended to wrap
+     * it in a {@link java.io.BufferedOutputStream}, unless it is already buffered.
+     *
+     * @throws IOException if the output could not be written
+     * @throws IllegalStateException if the document was not loaded from a file or a stream.
+     */
+    public void savePassThrough(OutputStream output) throws IOException
+    {
+        if (pdfSource == null)
+        {
+            throw new IllegalStateException("document was not loaded from a file or a stream");
+        }
+        save(output, pdfSource);
+    }
+
+    private void save(OutputStream output, RandomAccessRead passThroughInput) throws IOException
     {
         if (document.isClosed())
         {
@@ -1349,9 +1396,15 @@ public class PDDocument implements Closeable
             font.subset();
         }
         fontsToSubset.clear();
+
+        if (duplicatesToBeRemoved)
+        {
+            document.removeDuplicates();
+        }
         
         // save PDF
         COSWriter writer = new COSWriter(output);
+        writer.setPassThroughInput(passThroughInput);
         try
         {
             writer.write(this);
@@ -1503,6 +1556,81 @@ public class PDDocument implements Closeable
         return getDocumentCatalog().getPages().getCount();
     }
 
+    /**
+     * Returns the keys of all indirect objects that the page at the given index depends on, see
+     * {@link #getPageObjectKeys(PDPage)}.
+     *
+     * @param pageIndex the 0-based page index
+     * @return the sorted object keys.
+     */
+    public long[] getPageObjectKeys(int pageIndex)
+    {
+        return getPageObjectKeys(getPage(pageIndex));
+    }
+
+    /**
+     * Returns the keys of all indirect objects that the given page depends on: the page itself,
+     * its content streams, its own or inherited resources, its annotations and the structure
+     * elements of its content including their ancestors, and everything these reference in turn.
+     * Other pages and the page tree are not followed. This can be used to find out which objects
+     * must be copied when a page is extracted, or whether two pages share objects.
+     * <p>
+     * The keys are packed as described in {@link COSObjectKey#computeInternalHash(long, int)} and
+     * sorted, so that {@link Arrays#binarySearch(long[], long)} can be used to look up a key.
+     * Objects without an object number, i.e. objects created in memory that haven't been saved
+     * yet, are not included. The result is computed once per page and cached; call
+     * {@link #clearPageObjectKeys()} after modifying the document.
+     *
+     * @param page the page, which should belong to this document.
+     * @return the sorted object keys. The array is a copy and may be modified by the caller.
+     */
+    public long[] getPageObjectKeys(PDPage page)
+    {
+        COSDictionary pageDict = page.getCOSObject();
+        long[] keys;
+        synchronized (pageObjectKeys)
+        {
+            keys = pageObjectKeys.get(pageDict);
+        }
+        if (keys == null)
+        {
+            PDStructureTreeRoot structTreeRoot = getDocumentCatalog().getStructureTreeRoot();
+            keys = new PageObjectKeyCollector(pageDict,
+                    structTreeRoot == null ? null : structTreeRoot.getCOSObject()).collect();
+            synchronized (pageObjectKeys)
+            {
+                pageObjectKeys.put(pageDict, keys);
+            }
+        }
+        return keys.clone();
+    }
+
+    /**
+     * Clears the cache of {@link #getPageObjectKeys(PDPage)}. This must be called after pages,
+     * resources or the structure tree have been changed.
+     */
+    public void clearPageObjectKeys()
+    {
+        synchronized (pageObjectKeys)
+        {
+            pageObjectKeys.clear();
+        }
+    }
+
+    /**
+     * Returns a digest of the content of this document, i.e. of the document catalog and the
+     * document information, see {@link COSDigester#digestDocument(COSDictionary)}. The digest
+     * doesn't depend on object numbers or on how the file was written, so it can be used to find
+     * duplicate documents. It is cached until the document is modified.
+     *
+     * @return the SHA-256 digest. The array is a copy and may be modified by the caller.
+     * @throws IOException if the data of a stream can't be read.
+     */
+    public byte[] getDigest() throws IOException
+    {
+        return COSDigester.digestDocument(document.getTrailer());
+    }
+
     /**
      * This will close the underlying COSDocument object.
      * 
@@ -1621,6 +1749,28 @@ public class PDDocument implements Closeable
         allSecurityToBeRemoved = removeAllSecurity;
     }
 
+    /**
+     * Indicates if duplicate objects are removed or not when saving the pdf.
+     *
+     * @return returns true if duplicate objects shall be removed otherwise false
+     */
+    public boolean isDuplicatesToBeRemoved()
+    {
+        return duplicatesToBeRemoved;
+    }
+
+    /**
+     * Activates/Deactivates the removal of duplicate objects when saving the pdf, e.g. of fonts,
+     * images and color profiles which were copied several times when documents were merged, see
+     * {@link COSDocument#removeDuplicates()}. This doesn't apply to incremental updates.
+     *
+     * @param removeDuplicates remove duplicate objects if set to true
+     */
+    public void setDuplicatesToBeRemoved(boolean removeDuplicates)
+    {
+        duplicatesToBeRemoved = removeDuplicates;
+    }
+
     /**
      * Provides the document ID.
      *
@@ -30,6 +30,7 @@ import org.apache.pdfbox.contentstream.PDContentStream;
 import org.apache.pdfbox.cos.COSArray;
 import org.apache.pdfbox.cos.COSBase;
 import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSDigester;
 import org.apache.pdfbox.cos.COSFloat;
 import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.cos.COSNumber;
@@ -726,6 +727,20 @@ public class PDPage implements COSObjectable, PDContentStream
         return page.hashCode();
     }
 
+    /**
+     * Returns a digest of this page as it is displayed, i.e. of the page with its contents,
+     * resources, annotations and inherited attributes, see
+     * {@link COSDigester#digestPage(COSDictionary)}. Pages with the same digest look the same, so
+     * it can be used as a key for caching rendered pages. It is cached until the page is modified.
+     *
+     * @return the SHA-256 digest. The array is a copy and may be modified by the caller.
+     * @throws IOException if the data of a stream can't be read.
+     */
+    public byte[] getDigest() throws IOException
+    {
+        return COSDigester.digestPage(page);
+    }
+
     /**
      * Returns the resource cache associated with this page, or null if there is none.
      * 
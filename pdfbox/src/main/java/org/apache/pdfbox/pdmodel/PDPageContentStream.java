@@ -36,6 +36,7 @@ import org.apache.pdfbox.pdfwriter.COSWriter;
 import org.apache.pdfbox.pdmodel.common.PDStream;
 import org.apache.pdfbox.pdmodel.documentinterchange.markedcontent.PDPropertyList;
 import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType0Font;
 import org.apache.pdfbox.pdmodel.graphics.PDXObject;
 import org.apache.pdfbox.pdmodel.graphics.color.PDColor;
 import org.apache.pdfbox.pdmodel.graphics.color.PDColorSpace;
@@ -511,7 +512,15 @@ public final class PDPageContentStream implements Closeable
             }
         }
 
-        COSWriter.writeString(font.encode(text), output);
+        if (font instanceof PDType0Font)
+        {
+            // applies ligatures and the other GSUB features which need the whole text
+            COSWriter.writeString(((PDType0Font) font).encodeShaped(text), output);
+        }
+        else
+        {
+            COSWriter.writeString(font.encode(text), output);
+        }
     }
 
     /**
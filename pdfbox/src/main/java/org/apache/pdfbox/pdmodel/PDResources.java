@@ -24,6 +24,7 @@ import java.util.Map;
 
 import org.apache.pdfbox.cos.COSBase;
 import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSDigester;
 import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.cos.COSObject;
 import org.apache.pdfbox.cos.COSStream;
@@ -494,6 +495,23 @@ public final class PDResources implements COSObjectable
         return dict.getDictionaryObject(name);
     }
 
+    /**
+     * Returns a digest of the resource with the given name and kind, e.g. of a font or an image,
+     * see {@link COSDigester#digest(COSBase)}. Resources with the same digest are equal even if
+     * they are different objects, e.g. in different documents. It is cached until the resource is
+     * modified.
+     *
+     * @param kind the kind of the resource, e.g. {@link COSName#FONT} or {@link COSName#XOBJECT}.
+     * @param name the name of the resource.
+     * @return the SHA-256 digest, or null if there is no such resource.
+     * @throws IOException if the data of a stream can't be read.
+     */
+    public byte[] getDigest(COSName kind, COSName name) throws IOException
+    {
+        COSBase value = get(kind, name);
+        return value == null ? null : COSDigester.digest(value);
+    }
+
     /**
      * Returns the names of the color space resources, if any.
      * 
@@ -0,0 +1,382 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.pdmodel;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSNumber;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSObjectKey;
+
+/**
+ * Collects the keys of all indirect objects that a single page depends on: the page itself, its
+ * content streams, its (possibly inherited) resources, its annotations and the structure elements
+ * that refer to its marked content, together with everything they reference in turn.
+ * <p>
+ * Other pages and page tree nodes are recorded but not followed, and neither are the /Parent entry
+ * of the page and the /P entries of annotations and structure elements, because those lead back
+ * into the page tree or up the structure tree and would pull in most of the document. The ancestors
+ * of the structure elements of the page are added without their other children, and so are the
+ * parent fields of widgets, which hold inherited attributes such as /FT, /V, /DA and /Ff.
+ */
+final class PageObjectKeyCollector
+{
+    // the inheritable page attributes, see PDF 32000-1:2008, table 30
+    private static final COSName[] INHERITABLE = { COSName.RESOURCES, COSName.MEDIA_BOX,
+            COSName.CROP_BOX, COSName.ROTATE };
+
+    // guards against cyclic /Parent and /P chains and number trees
+    private static final int MAX_DEPTH = 1000;
+
+    private final COSDictionary page;
+    private final COSDictionary structTreeRoot;
+
+    private final Set<COSBase> visited =
+            Collections.newSetFromMap(new IdentityHashMap<COSBase, Boolean>());
+    private final Deque<COSBase> stack = new ArrayDeque<COSBase>();
+    private final List<COSDictionary> structElements = new ArrayList<COSDictionary>();
+    // dictionaries reached through /Parent, e.g. parent fields, whose /Kids are not followed
+    private final Set<COSDictionary> parents =
+            Collections.newSetFromMap(new IdentityHashMap<COSDictionary, Boolean>());
+    private long[] keys = new long[64];
+    private int size;
+
+    /**
+     * Constructor.
+     *
+     * @param page the page dictionary.
+     * @param structTreeRoot the structure tree root of the document, may be null.
+     */
+    PageObjectKeyCollector(COSDictionary page, COSDictionary structTreeRoot)
+    {
+        this.page = page;
+        this.structTreeRoot = structTreeRoot;
+    }
+
+    /**
+     * Walks the object graph of the page.
+     *
+     * @return the sorted keys of the objects, as returned by
+     * {@link COSObjectKey#computeInternalHash(long, int)}.
+     */
+    long[] collect()
+    {
+        addPageKey();
+        stack.push(page);
+        pushInheritedAttributes();
+        pushStructureElements();
+        traverse();
+        addStructureAncestors();
+
+        long[] result = Arrays.copyOf(keys, size);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Adds the key of the page itself, which is only known to the reference in the /Kids array of
+     * its parent.
+     */
+    private void addPageKey()
+    {
+        COSDictionary parent = page.getCOSDictionary(COSName.PARENT);
+        COSArray kids = parent == null ? null : parent.getCOSArray(COSName.KIDS);
+        if (kids == null)
+        {
+            return;
+        }
+        for (int i = 0; i < kids.size(); i++)
+        {
+            COSBase kid = kids.get(i);
+            if (kid instanceof COSObject && ((COSObject) kid).getObject() == page)
+            {
+                visited.add(kid);
+                addKey((COSObject) kid);
+                return;
+            }
+        }
+    }
+
+    private void pushInheritedAttributes()
+    {
+        for (COSName name : INHERITABLE)
+        {
+            if (page.containsKey(name))
+            {
+                continue;
+            }
+            COSDictionary node = page.getCOSDictionary(COSName.PARENT);
+            for (int depth = 0; node != null && depth < MAX_DEPTH; depth++)
+            {
+                COSBase value = node.getItem(name);
+                if (value != null)
+                {
+                    stack.push(value);
+                    break;
+                }
+                node = node.getCOSDictionary(COSName.PARENT);
+            }
+        }
+    }
+
+    private void pushStructureElements()
+    {
+        if (structTreeRoot == null)
+        {
+            return;
+        }
+        COSDictionary parentTree = structTreeRoot.getCOSDictionary(COSName.PARENT_TREE);
+        if (parentTree == null)
+        {
+            return;
+        }
+        int structParents = page.getInt(COSName.STRUCT_PARENTS, -1);
+        if (structParents >= 0)
+        {
+            pushStructureElement(lookupNumberTree(parentTree, structParents, 0));
+        }
+        COSArray annots = page.getCOSArray(COSName.ANNOTS);
+        if (annots != null)
+        {
+            for (int i = 0; i < annots.size(); i++)
+            {
+                COSBase annot = annots.getObject(i);
+                if (annot instanceof COSDictionary)
+                {
+                    int structParent = ((COSDictionary) annot).getInt(COSName.STRUCT_PARENT, -1);
+                    if (structParent >= 0)
+                    {
+                        pushStructureElement(lookupNumberTree(parentTree, structParent, 0));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Pushes a parent tree value, which is either a single structure element or an array of them
+     * for the marked content sequences of a content stream.
+     */
+    private void pushStructureElement(COSBase value)
+    {
+        if (value == null)
+        {
+            return;
+        }
+        stack.push(value);
+        COSBase direct = dereference(value);
+        if (direct instanceof COSArray)
+        {
+            COSArray array = (COSArray) direct;
+            for (int i = 0; i < array.size(); i++)
+            {
+                COSBase element = array.getObject(i);
+                if (element instanceof COSDictionary)
+                {
+                    structElements.add((COSDictionary) element);
+                }
+            }
+        }
+        else if (direct instanceof COSDictionary)
+        {
+            structElements.add((COSDictionary) direct);
+        }
+    }
+
+    private static COSBase lookupNumberTree(COSDictionary node, int key, int depth)
+    {
+        if (depth > MAX_DEPTH)
+        {
+            return null;
+        }
+        COSArray nums = node.getCOSArray(COSName.NUMS);
+        if (nums != null)
+        {
+            for (int i = 0; i + 1 < nums.size(); i += 2)
+            {
+                COSBase number = nums.getObject(i);
+                if (number instanceof COSNumber && ((COSNumber) number).intValue() == key)
+                {
+                    return nums.get(i + 1);
+                }
+            }
+        }
+        COSArray kids = node.getCOSArray(COSName.KIDS);
+        if (kids != null)
+        {
+            for (int i = 0; i < kids.size(); i++)
+            {
+                COSBase kid = kids.getObject(i);
+                if (!(kid instanceof COSDictionary))
+                {
+                    continue;
+                }
+                COSDictionary kidNode = (COSDictionary) kid;
+                COSArray limits = kidNode.getCOSArray(COSName.LIMITS);
+                if (limits != null && limits.size() >= 2
+                        && (key < limits.getInt(0) || key > limits.getInt(1)))
+                {
+                    continue;
+                }
+                COSBase value = lookupNumberTree(kidNode, key, depth + 1);
+                if (value != null)
+                {
+                    return value;
+                }
+            }
+        }
+        return null;
+    }
+
+    private void traverse()
+    {
+        while (!stack.isEmpty())
+        {
+            COSBase base = stack.pop();
+            if (base instanceof COSObject)
+            {
+                COSObject object = (COSObject) base;
+                if (!visited.add(object))
+                {
+                    continue;
+                }
+                addKey(object);
+                base = object.getObject();
+            }
+            if (base == null || !visited.add(base))
+            {
+                continue;
+            }
+            if (base instanceof COSDictionary)
+            {
+                COSDictionary dict = (COSDictionary) base;
+                if (dict != page && isPageTreeNode(dict))
+                {
+                    continue;
+                }
+                boolean skipP = isAnnotation(dict) || isStructureElement(dict);
+                boolean skipKids = parents.contains(dict);
+                for (Map.Entry<COSName, COSBase> entry : dict.entrySet())
+                {
+                    COSName name = entry.getKey();
+                    COSBase value = entry.getValue();
+                    if (COSName.PARENT.equals(name))
+                    {
+                        if (dict == page)
+                        {
+                            continue;
+                        }
+                        COSBase parent = dereference(value);
+                        if (parent instanceof COSDictionary)
+                        {
+                            parents.add((COSDictionary) parent);
+                        }
+                    }
+                    else if (COSName.P.equals(name) && skipP
+                            || COSName.KIDS.equals(name) && skipKids)
+                    {
+                        continue;
+                    }
+                    stack.push(value);
+                }
+            }
+            else if (base instanceof COSArray)
+            {
+                COSArray array = (COSArray) base;
+                for (int i = 0; i < array.size(); i++)
+                {
+                    stack.push(array.get(i));
+                }
+            }
+        }
+    }
+
+    private void addStructureAncestors()
+    {
+        for (COSDictionary element : structElements)
+        {
+            COSBase parent = element.getItem(COSName.P);
+            for (int depth = 0; parent instanceof COSObject && depth < MAX_DEPTH; depth++)
+            {
+                COSObject object = (COSObject) parent;
+                if (!visited.add(object))
+                {
+                    break;
+                }
+                addKey(object);
+                COSBase direct = object.getObject();
+                if (!(direct instanceof COSDictionary) || direct == structTreeRoot)
+                {
+                    break;
+                }
+                parent = ((COSDictionary) direct).getItem(COSName.P);
+            }
+        }
+    }
+
+    private void addKey(COSObject object)
+    {
+        // objects created in memory have no object number yet
+        if (object.getObjectNumber() <= 0)
+        {
+            return;
+        }
+        if (size == keys.length)
+        {
+            keys = Arrays.copyOf(keys, size * 2);
+        }
+        keys[size++] = COSObjectKey.computeInternalHash(object.getObjectNumber(),
+                object.getGenerationNumber());
+    }
+
+    private static boolean isPageTreeNode(COSDictionary dict)
+    {
+        COSBase type = dict.getDictionaryObject(COSName.TYPE);
+        return COSName.PAGE.equals(type) || COSName.PAGES.equals(type);
+    }
+
+    // the /Type of annotations and structure elements is optional
+    private static boolean isAnnotation(COSDictionary dict)
+    {
+        COSBase type = dict.getDictionaryObject(COSName.TYPE);
+        return COSName.ANNOT.equals(type) || type == null && dict.containsKey(COSName.SUBTYPE)
+                && dict.containsKey(COSName.RECT);
+    }
+
+    private static boolean isStructureElement(COSDictionary dict)
+    {
+        COSBase type = dict.getDictionaryObject(COSName.TYPE);
+        return COSName.STRUCT_ELEM.equals(type) || type == null && dict.containsKey(COSName.S)
+                && dict.containsKey(COSName.P);
+    }
+
+    private static COSBase dereference(COSBase base)
+    {
+        return base instanceof COSObject ? ((COSObject) base).getObject() : base;
+    }
+}
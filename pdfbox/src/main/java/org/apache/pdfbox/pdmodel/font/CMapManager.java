@@ -21,17 +21,15 @@ import org.apache.fontbox.cmap.CMapParser;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * CMap resource loader and cache.
  */
 final class CMapManager
 {
-    static Map<String, CMap> cMapCache =
-            Collections.synchronizedMap(new HashMap<String, CMap>());
+    static final ConcurrentMap<String, CMap> cMapCache = new ConcurrentHashMap<String, CMap>();
 
     private CMapManager()
     {
@@ -42,7 +40,7 @@ final class CMapManager
      *
      * @param cMapName CMap name
      * @return The predefined CMap, never null.
-     * @throws IOException 
+     * @throws IOException
      */
     public static CMap getPredefinedCMap(String cMapName) throws IOException
     {
@@ -55,9 +53,10 @@ final class CMapManager
         CMapParser parser = new CMapParser();
         CMap targetCmap = parser.parsePredefined(cMapName);
 
-        // limit the cache to predefined CMaps
-        cMapCache.put(targetCmap.getName(), targetCmap);
-        return targetCmap;
+        // limit the cache to predefined CMaps; if another thread loaded the same CMap in the
+        // meantime, use its instance so that all fonts share one copy
+        CMap existing = cMapCache.putIfAbsent(targetCmap.getName(), targetCmap);
+        return existing != null ? existing : targetCmap;
     }
 
     /**
@@ -16,12 +16,13 @@
  */
 package org.apache.pdfbox.pdmodel.font;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
@@ -30,11 +31,17 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.fontbox.FontBoxFont;
-import org.apache.fontbox.cff.CFFCIDFont;
-import org.apache.fontbox.cff.CFFFont;
+import org.apache.fontbox.cff.CFFParser;
+import org.apache.fontbox.ttf.CFFTable;
 import org.apache.fontbox.ttf.NamingTable;
 import org.apache.fontbox.ttf.OTFParser;
 import org.apache.fontbox.ttf.OpenTypeFont;
@@ -55,7 +62,14 @@ import org.apache.pdfbox.util.Charsets;
 final class FileSystemFontProvider extends FontProvider
 {
     private static final Log LOG = LogFactory.getLog(FileSystemFontProvider.class);
-    
+
+    // "PDFC", followed by the version of the cache format
+    private static final int CACHE_MAGIC = 0x50444643;
+    private static final int CACHE_VERSION = 1;
+
+    // guards against allocating huge arrays when the cache is corrupt
+    private static final int MAX_STRING_LENGTH = 0x10000;
+
     private final List<FSFontInfo> fontInfoList = new ArrayList<FSFontInfo>();
     private final FontCache cache;
 
@@ -319,6 +333,27 @@ final class FileSystemFontProvider extends FontProvider
             if (cachedInfos != null && !cachedInfos.isEmpty())
             {
                 fontInfoList.addAll(cachedInfos);
+
+                // only scan the fonts that were added since the cache was built
+                Set<String> cachedFiles = new HashSet<String>();
+                for (FSFontInfo info : cachedInfos)
+                {
+                    cachedFiles.add(info.file.getAbsolutePath());
+                }
+                List<File> newFiles = new ArrayList<File>();
+                for (File file : files)
+                {
+                    if (!cachedFiles.contains(file.getAbsolutePath()))
+                    {
+                        newFiles.add(file);
+                    }
+                }
+                if (!newFiles.isEmpty())
+                {
+                    LOG.warn("New fonts found, font cache will be updated");
+                    scanFonts(newFiles);
+                    saveDiskCache();
+                }
             }
             else
             {
@@ -335,32 +370,104 @@ final class FileSystemFontProvider extends FontProvider
         }
     }
     
+    /**
+     * Scans the given font files, in parallel if there are several processors. Only the tables
+     * needed for the font info are read.
+     */
     private void scanFonts(List<File> files)
     {
-        for (File file : files)
+        int threadCount = Math.min(files.size(), Runtime.getRuntime().availableProcessors());
+        if (threadCount <= 1)
         {
-            try
+            for (File file : files)
             {
-                if (file.getPath().toLowerCase().endsWith(".ttf") ||
-                        file.getPath().toLowerCase().endsWith(".otf"))
+                fontInfoList.addAll(scanFont(file));
+            }
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount, new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread thread = new Thread(r, "PDFBox font scanner");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try
+        {
+            List<Future<List<FSFontInfo>>> futures = new ArrayList<Future<List<FSFontInfo>>>();
+            for (final File file : files)
+            {
+                futures.add(executor.submit(new Callable<List<FSFontInfo>>()
                 {
-                    addTrueTypeFont(file);
-                }
-                else if (file.getPath().toLowerCase().endsWith(".ttc") ||
-                        file.getPath().toLowerCase().endsWith(".otc"))
+                    @Override
+                    public List<FSFontInfo> call()
+                    {
+                        return scanFont(file);
+                    }
+                }));
+            }
+            // keep the order of the files, so that the result doesn't depend on timing
+            for (int i = 0; i < futures.size(); i++)
+            {
+                try
                 {
-                    addTrueTypeCollection(file);
+                    fontInfoList.addAll(futures.get(i).get());
                 }
-                else if (file.getPath().toLowerCase().endsWith(".pfb"))
+                catch (ExecutionException e)
                 {
-                    addType1Font(file);
+                    LOG.error("Error parsing font " + files.get(i).getPath(), e.getCause());
                 }
             }
-            catch (IOException e)
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            LOG.warn("Interrupted while scanning fonts, the font list is incomplete", e);
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Reads the font info of a single font file.
+     *
+     * @return the font info of all fonts in the file, never empty so that the file isn't scanned
+     * again the next time.
+     */
+    private List<FSFontInfo> scanFont(File file)
+    {
+        List<FSFontInfo> infos = new ArrayList<FSFontInfo>(1);
+        String path = file.getPath().toLowerCase();
+        try
+        {
+            if (path.endsWith(".ttf") || path.endsWith(".otf"))
+            {
+                addTrueTypeFont(file, infos);
+            }
+            else if (path.endsWith(".ttc") || path.endsWith(".otc"))
             {
-                LOG.error("Error parsing font " + file.getPath(), e);
+                addTrueTypeCollection(file, infos);
             }
+            else if (path.endsWith(".pfb"))
+            {
+                addType1Font(file, infos);
+            }
+        }
+        catch (IOException e)
+        {
+            LOG.error("Error parsing font " + file.getPath(), e);
+        }
+        if (infos.isEmpty())
+        {
+            infos.add(new FSIgnored(file, FontFormat.TTF, "*skipexception*"));
         }
+        return infos;
     }
 
     private File getDiskCacheFile()
@@ -374,75 +481,61 @@ final class FileSystemFontProvider extends FontProvider
                 path = System.getProperty("java.io.tmpdir");
             }
         }
-        return new File(path, ".pdfbox.cache");
+        return new File(path, ".pdfbox.cache.bin");
     }
 
     /**
-     * Saves the font metadata cache to disk.
+     * Saves the font metadata cache to disk. The cache is a binary file with a header (magic
+     * number, format version, number of fonts) and one record per font.
      */
     private void saveDiskCache()
     {
-        BufferedWriter writer = null;
+        DataOutputStream output = null;
         try
         {
             try
             {
                 File file = getDiskCacheFile();
-                writer = new BufferedWriter(new FileWriter(file));
+                output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
             }
             catch (SecurityException e)
             {
                 return;
             }
 
+            output.writeInt(CACHE_MAGIC);
+            output.writeInt(CACHE_VERSION);
+            output.writeInt(fontInfoList.size());
             for (FSFontInfo fontInfo : fontInfoList)
             {
-                writer.write(fontInfo.postScriptName.trim());
-                writer.write("|");
-                writer.write(fontInfo.format.toString());
-                writer.write("|");
+                writeString(output, fontInfo.postScriptName.trim());
+                output.writeByte(fontInfo.format.ordinal());
                 if (fontInfo.cidSystemInfo != null)
                 {
-                    writer.write(fontInfo.cidSystemInfo.getRegistry() + '-' +
-                                 fontInfo.cidSystemInfo.getOrdering() + '-' +
-                                 fontInfo.cidSystemInfo.getSupplement());
+                    output.writeBoolean(true);
+                    writeString(output, fontInfo.cidSystemInfo.getRegistry());
+                    writeString(output, fontInfo.cidSystemInfo.getOrdering());
+                    output.writeInt(fontInfo.cidSystemInfo.getSupplement());
                 }
-                writer.write("|");
-                if (fontInfo.usWeightClass > -1)
-                {
-                    writer.write(Integer.toHexString(fontInfo.usWeightClass));
-                }
-                writer.write("|");
-                if (fontInfo.sFamilyClass > -1)
+                else
                 {
-                    writer.write(Integer.toHexString(fontInfo.sFamilyClass));
+                    output.writeBoolean(false);
                 }
-                writer.write("|");
-                writer.write(Integer.toHexString(fontInfo.ulCodePageRange1));
-                writer.write("|");
-                writer.write(Integer.toHexString(fontInfo.ulCodePageRange2));
-                writer.write("|");
-                if (fontInfo.macStyle > -1)
+                output.writeInt(fontInfo.usWeightClass);
+                output.writeInt(fontInfo.sFamilyClass);
+                output.writeInt(fontInfo.ulCodePageRange1);
+                output.writeInt(fontInfo.ulCodePageRange2);
+                output.writeInt(fontInfo.macStyle);
+                if (fontInfo.panose != null)
                 {
-                    writer.write(Integer.toHexString(fontInfo.macStyle));
+                    output.writeBoolean(true);
+                    output.write(fontInfo.panose.getBytes(), 0, 10);
                 }
-                writer.write("|");
-                if (fontInfo.panose != null)
+                else
                 {
-                    byte[] bytes = fontInfo.panose.getBytes();
-                    for (int i = 0; i < 10; i ++)
-                    {
-                        String str = Integer.toHexString(bytes[i]);
-                        if (str.length() == 1)
-                        {
-                            writer.write('0');
-                        }
-                        writer.write(str);
-                    }
+                    output.writeBoolean(false);
                 }
-                writer.write("|");
-                writer.write(fontInfo.file.getAbsolutePath());
-                writer.newLine();
+                writeString(output, fontInfo.file.getAbsolutePath());
             }
         }
         catch (IOException e)
@@ -453,23 +546,41 @@ final class FileSystemFontProvider extends FontProvider
         }
         finally
         {
-            IOUtils.closeQuietly(writer);
+            IOUtils.closeQuietly(output);
         }
     }
 
-    /**
-     * Loads the font metadata cache from disk.
-     */
-    private List<FSFontInfo> loadDiskCache(List<File> files)
+    private static void writeString(DataOutputStream output, String string) throws IOException
+    {
+        byte[] bytes = string.getBytes(Charsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(DataInputStream input) throws IOException
     {
-        Set<String> pending = new HashSet<String>();
-        for (File file : files)
+        int length = input.readInt();
+        if (length < 0 || length > MAX_STRING_LENGTH)
         {
-            pending.add(file.getAbsolutePath());
+            throw new IOException("Invalid string length " + length);
         }
-        
-        List<FSFontInfo> results = new ArrayList<FSFontInfo>();
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return new String(bytes, Charsets.UTF_8);
+    }
 
+    /**
+     * Loads the font metadata cache from disk. The whole file is read with a stream and not
+     * memory mapped: every record is needed right away, as the font files of all records are
+     * compared with the fonts found on the system and the font mapper searches all font infos, and
+     * a mapping would keep the file open until it is garbage collected, so that it couldn't be
+     * rewritten on Windows.
+     *
+     * @return the cached font infos of all fonts that still exist, or null if there is no valid
+     * cache.
+     */
+    private List<FSFontInfo> loadDiskCache(List<File> files)
+    {
         // Get the disk cache
         File file = null;
         boolean fileExists = false;
@@ -481,105 +592,85 @@ final class FileSystemFontProvider extends FontProvider
         catch (SecurityException e)
         {
         }
-        
-        if (fileExists)
+        if (!fileExists)
         {
-            BufferedReader reader = null;
-            try
-            {
-                reader = new BufferedReader(new FileReader(file));
-                String line;
-                while ((line = reader.readLine()) != null)
-                {
-                    String[] parts = line.split("\\|", 10);
-                    if (parts.length < 10)
-                    {
-                        LOG.error("Incorrect line '" + line + "' in font disk cache is skipped");
-                        continue;
-                    }
+            return null;
+        }
 
-                    String postScriptName;
-                    FontFormat format;
-                    CIDSystemInfo cidSystemInfo = null;
-                    int usWeightClass = -1;
-                    int sFamilyClass = -1;
-                    int ulCodePageRange1;
-                    int ulCodePageRange2;
-                    int macStyle = -1;
-                    byte[] panose = null;
-                    File fontFile;
-                    
-                    postScriptName = parts[0];
-                    format = FontFormat.valueOf(parts[1]);
-                    if (parts[2].length() > 0)
-                    {
-                        String[] ros = parts[2].split("-");
-                        cidSystemInfo = new CIDSystemInfo(ros[0], ros[1], Integer.parseInt(ros[2]));
-                    }
-                    if (parts[3].length() > 0)
-                    {
-                        usWeightClass = (int)Long.parseLong(parts[3], 16);
-                    }
-                    if (parts[4].length() > 0)
-                    {
-                        sFamilyClass = (int)Long.parseLong(parts[4], 16);
-                    }
-                    ulCodePageRange1 = (int)Long.parseLong(parts[5], 16);
-                    ulCodePageRange2 = (int)Long.parseLong(parts[6], 16);
-                    if (parts[7].length() > 0)
-                    {
-                        macStyle = (int)Long.parseLong(parts[7], 16);
-                    }
-                    if (parts[8].length() > 0)
-                    {
-                        panose = new byte[10];
-                        for (int i = 0; i < 10; i ++)
-                        {
-                            String str = parts[8].substring(i * 2, i * 2 + 2);
-                            int b = Integer.parseInt(str, 16);
-                            panose[i] = (byte)(b & 0xff);
-                        }
-                    }
-                    fontFile = new File(parts[9]);
-                    if (fontFile.exists())
-                    {
-                        FSFontInfo info = new FSFontInfo(fontFile, format, postScriptName,
-                                cidSystemInfo, usWeightClass, sFamilyClass, ulCodePageRange1,
-                                ulCodePageRange2, macStyle, panose, this);
-                        results.add(info);
-                    }
-                    else
-                    {
-                        LOG.debug("Font file " + fontFile.getAbsolutePath() + " not found, skipped");
-                    }
-                    pending.remove(fontFile.getAbsolutePath());
-                }
-            }
-            catch (IOException e)
+        Set<String> existing = new HashSet<String>();
+        for (File fontFile : files)
+        {
+            existing.add(fontFile.getAbsolutePath());
+        }
+
+        List<FSFontInfo> results = new ArrayList<FSFontInfo>();
+        FontFormat[] formats = FontFormat.values();
+        DataInputStream input = null;
+        try
+        {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (input.readInt() != CACHE_MAGIC || input.readInt() != CACHE_VERSION)
             {
-                LOG.error("Error loading font cache, will be re-built", e);
+                LOG.warn("Font cache has an unknown format, will be re-built");
                 return null;
             }
-            finally
+            int count = input.readInt();
+            for (int i = 0; i < count; i++)
             {
-                IOUtils.closeQuietly(reader);
+                String postScriptName = readString(input);
+                int formatIndex = input.readByte();
+                if (formatIndex < 0 || formatIndex >= formats.length)
+                {
+                    throw new IOException("Invalid font format " + formatIndex);
+                }
+                CIDSystemInfo cidSystemInfo = null;
+                if (input.readBoolean())
+                {
+                    String registry = readString(input);
+                    String ordering = readString(input);
+                    cidSystemInfo = new CIDSystemInfo(registry, ordering, input.readInt());
+                }
+                int usWeightClass = input.readInt();
+                int sFamilyClass = input.readInt();
+                int ulCodePageRange1 = input.readInt();
+                int ulCodePageRange2 = input.readInt();
+                int macStyle = input.readInt();
+                byte[] panose = null;
+                if (input.readBoolean())
+                {
+                    panose = new byte[10];
+                    input.readFully(panose);
+                }
+                File fontFile = new File(readString(input));
+                if (existing.contains(fontFile.getAbsolutePath()))
+                {
+                    results.add(new FSFontInfo(fontFile, formats[formatIndex], postScriptName,
+                            cidSystemInfo, usWeightClass, sFamilyClass, ulCodePageRange1,
+                            ulCodePageRange2, macStyle, panose, this));
+                }
+                else
+                {
+                    LOG.debug("Font file " + fontFile.getAbsolutePath() + " not found, skipped");
+                }
             }
         }
-        
-        if (!pending.isEmpty())
+        catch (IOException e)
         {
-            // re-build the entire cache if we encounter un-cached fonts (could be optimised)
-            LOG.warn("New fonts found, font cache will be re-built");
+            LOG.error("Error loading font cache, will be re-built", e);
             return null;
         }
-        
+        finally
+        {
+            IOUtils.closeQuietly(input);
+        }
         return results;
     }
 
     /**
      * Adds a TTC or OTC to the file cache. To reduce memory, the parsed font is not cached.
      */
-    private void addTrueTypeCollection(final File ttcFile) throws IOException
+    private void addTrueTypeCollection(final File ttcFile, final List<FSFontInfo> infos)
+            throws IOException
     {
         TrueTypeCollection ttc = null;
         try
@@ -590,7 +681,7 @@ final class FileSystemFontProvider extends FontProvider
                 @Override
                 public void process(TrueTypeFont ttf) throws IOException
                 {
-                    addTrueTypeFontImpl(ttf, ttcFile);
+                    addTrueTypeFontImpl(ttf, ttcFile, infos);
                 }
             });
         }
@@ -614,7 +705,7 @@ final class FileSystemFontProvider extends FontProvider
     /**
      * Adds an OTF or TTF font to the file cache. To reduce memory, the parsed font is not cached.
      */
-    private void addTrueTypeFont(File ttfFile) throws IOException
+    private void addTrueTypeFont(File ttfFile, List<FSFontInfo> infos) throws IOException
     {
         try
         {
@@ -622,13 +713,13 @@ final class FileSystemFontProvider extends FontProvider
             {
                 OTFParser parser = new OTFParser(false, true);
                 OpenTypeFont otf = parser.parse(ttfFile);
-                addTrueTypeFontImpl(otf, ttfFile);
+                addTrueTypeFontImpl(otf, ttfFile, infos);
             }
             else
             {
                 TTFParser parser = new TTFParser(false, true);
                 TrueTypeFont ttf = parser.parse(ttfFile);
-                addTrueTypeFontImpl(ttf, ttfFile);
+                addTrueTypeFontImpl(ttf, ttfFile, infos);
             }
         }
         catch (NullPointerException e) // TTF parser is buggy
@@ -644,14 +735,15 @@ final class FileSystemFontProvider extends FontProvider
     /**
      * Adds an OTF or TTF font to the file cache. To reduce memory, the parsed font is not cached.
      */
-    private void addTrueTypeFontImpl(TrueTypeFont ttf, File file) throws IOException
+    private void addTrueTypeFontImpl(TrueTypeFont ttf, File file, List<FSFontInfo> infos)
+            throws IOException
     {
         try
         {
             // read PostScript name, if any
             if (ttf.getName() != null && ttf.getName().contains("|"))
             {
-                fontInfoList.add(new FSIgnored(file, FontFormat.TTF, "*skippipeinname*"));
+                infos.add(new FSIgnored(file, FontFormat.TTF, "*skippipeinname*"));
                 LOG.warn("Skipping font with '|' in name " + ttf.getName() + " in file " + file);
             }
             else if (ttf.getName() != null)
@@ -659,7 +751,7 @@ final class FileSystemFontProvider extends FontProvider
                 // ignore bitmap fonts
                 if (ttf.getHeader() == null)
                 {
-                    fontInfoList.add(new FSIgnored(file, FontFormat.TTF, ttf.getName()));
+                    infos.add(new FSIgnored(file, FontFormat.TTF, ttf.getName()));
                     return;
                 }
                 int macStyle = ttf.getHeader().getMacStyle();
@@ -683,17 +775,16 @@ final class FileSystemFontProvider extends FontProvider
                 if (ttf instanceof OpenTypeFont && ((OpenTypeFont)ttf).isPostScript())
                 {
                     format = "OTF";
-                    CFFFont cff = ((OpenTypeFont)ttf).getCFF().getFont();
+                    // read only the top DICT instead of parsing the complete CFF font
+                    byte[] cffBytes = ttf.getTableBytes(ttf.getTableMap().get(CFFTable.TAG));
+                    String[] cidInfo = new CFFParser().parseROS(cffBytes);
                     CIDSystemInfo ros = null;
-                    if (cff instanceof CFFCIDFont)
+                    if (cidInfo != null)
                     {
-                        CFFCIDFont cidFont = (CFFCIDFont)cff;
-                        String registry = cidFont.getRegistry();
-                        String ordering = cidFont.getOrdering();
-                        int supplement = cidFont.getSupplement();
-                        ros = new CIDSystemInfo(registry, ordering, supplement);
+                        ros = new CIDSystemInfo(cidInfo[0], cidInfo[1],
+                                Integer.parseInt(cidInfo[2]));
                     }
-                    fontInfoList.add(new FSFontInfo(file, FontFormat.OTF, ttf.getName(), ros,
+                    infos.add(new FSFontInfo(file, FontFormat.OTF, ttf.getName(), ros,
                             usWeightClass, sFamilyClass, ulCodePageRange1, ulCodePageRange2,
                             macStyle, panose, this));
                 }
@@ -713,7 +804,7 @@ final class FileSystemFontProvider extends FontProvider
                     }
                     
                     format = "TTF";
-                    fontInfoList.add(new FSFontInfo(file, FontFormat.TTF, ttf.getName(), ros,
+                    infos.add(new FSFontInfo(file, FontFormat.TTF, ttf.getName(), ros,
                             usWeightClass, sFamilyClass, ulCodePageRange1, ulCodePageRange2,
                             macStyle, panose, this));
                 }
@@ -731,13 +822,13 @@ final class FileSystemFontProvider extends FontProvider
             }
             else
             {
-                fontInfoList.add(new FSIgnored(file, FontFormat.TTF, "*skipnoname*"));
+                infos.add(new FSIgnored(file, FontFormat.TTF, "*skipnoname*"));
                 LOG.warn("Missing 'name' entry for PostScript name in font " + file);
             }
         }
         catch (IOException e)
         {
-            fontInfoList.add(new FSIgnored(file, FontFormat.TTF, "*skipexception*"));
+            infos.add(new FSIgnored(file, FontFormat.TTF, "*skipexception*"));
             LOG.error("Could not load font file: " + file, e);
         }
         finally
@@ -749,7 +840,7 @@ final class FileSystemFontProvider extends FontProvider
     /**
      * Adds a Type 1 font to the file cache. To reduce memory, the parsed font is not cached.
      */
-    private void addType1Font(File pfbFile) throws IOException
+    private void addType1Font(File pfbFile, List<FSFontInfo> infos) throws IOException
     {
         InputStream input = new FileInputStream(pfbFile);
         try
@@ -757,11 +848,11 @@ final class FileSystemFontProvider extends FontProvider
             Type1Font type1 = Type1Font.createWithPFB(input);
             if (type1.getName() != null && type1.getName().contains("|"))
             {
-                fontInfoList.add(new FSIgnored(pfbFile, FontFormat.PFB, "*skippipeinname*"));
+                infos.add(new FSIgnored(pfbFile, FontFormat.PFB, "*skippipeinname*"));
                 LOG.warn("Skipping font with '|' in name " + type1.getName() + " in file " + pfbFile);
                 return;
             }
-            fontInfoList.add(new FSFontInfo(pfbFile, FontFormat.PFB, type1.getName(),
+            infos.add(new FSFontInfo(pfbFile, FontFormat.PFB, type1.getName(),
                                             null, -1, -1, 0, 0, -1, null, this));
 
             if (LOG.isTraceEnabled())
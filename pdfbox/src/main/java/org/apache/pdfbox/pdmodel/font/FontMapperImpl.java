@@ -18,16 +18,19 @@ package org.apache.pdfbox.pdmodel.font;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.ref.SoftReference;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.fontbox.FontBoxFont;
 import org.apache.fontbox.ttf.OpenTypeFont;
 import org.apache.fontbox.ttf.TTFParser;
@@ -36,18 +39,26 @@ import org.apache.fontbox.type1.Type1Font;
 
 /**
  * Font mapper, locates non-embedded fonts via a pluggable FontProvider.
+ * <p>
+ * The mapper can be used by several threads at once. The results of lookups are memoized, so that
+ * documents which use the same non-embedded font many times resolve it only once.
  *
  * @author John Hewson
  */
 final class FontMapperImpl implements FontMapper
 {
     private static final FontCache fontCache = new FontCache(); // todo: static cache isn't ideal
-    private FontProvider fontProvider;
-    private Map<String, FontInfo> fontInfoByName;
+    private volatile ProviderState state;
     private final TrueTypeFont lastResortFont;
 
-    /** Map of PostScript name substitutes, in priority order. */
-    private final Map<String, List<String>> substitutes = new HashMap<String, List<String>>();
+    /** Map of PostScript name substitutes, in priority order. Lists are replaced, not changed. */
+    private final ConcurrentMap<String, List<String>> substitutes =
+            new ConcurrentHashMap<String, List<String>>();
+
+    private final AtomicLong lookupCount = new AtomicLong();
+    private final AtomicLong cacheHitCount = new AtomicLong();
+    private final AtomicLong fallbackCount = new AtomicLong();
+    private final AtomicLong lastResortCount = new AtomicLong();
 
     FontMapperImpl()
     {
@@ -128,25 +139,60 @@ final class FontMapperImpl implements FontMapper
         private static final FontProvider INSTANCE = new FileSystemFontProvider(fontCache);
     }
 
+    /**
+     * The font provider together with its fonts by name and the lookups that were made with them.
+     * It is replaced as a whole when the provider changes, so that a lookup never mixes the fonts
+     * of two providers and never memoizes a result of a provider that has been replaced.
+     */
+    private static final class ProviderState
+    {
+        final FontProvider provider;
+        final Map<String, FontInfo> fontInfoByName;
+        final ConcurrentMap<String, SoftReference<FontMapping<?>>> mappings =
+                new ConcurrentHashMap<String, SoftReference<FontMapping<?>>>();
+
+        ProviderState(FontProvider provider, Map<String, FontInfo> fontInfoByName)
+        {
+            this.provider = provider;
+            this.fontInfoByName = fontInfoByName;
+        }
+    }
+
     /**
      * Sets the font service provider.
      */
     public synchronized void setProvider(FontProvider fontProvider)
     {
-        fontInfoByName = createFontInfoByName(fontProvider.getFontInfo());
-        this.fontProvider = fontProvider;
+        state = new ProviderState(fontProvider, createFontInfoByName(fontProvider.getFontInfo()));
     }
 
     /**
      * Returns the font service provider. Defaults to using FileSystemFontProvider.
      */
-    public synchronized FontProvider getProvider()
+    public FontProvider getProvider()
     {
-        if (fontProvider == null)
+        return getState().provider;
+    }
+
+    /**
+     * Returns the current provider state, initializing the default provider if needed. Only the
+     * first call has to lock.
+     */
+    private ProviderState getState()
+    {
+        ProviderState current = state;
+        if (current == null)
         {
-            setProvider(DefaultFontProvider.INSTANCE);
+            synchronized (this)
+            {
+                if (state == null)
+                {
+                    setProvider(DefaultFontProvider.INSTANCE);
+                }
+                current = state;
+            }
         }
-        return fontProvider;
+        return current;
     }
 
     /**
@@ -203,11 +249,71 @@ final class FontMapperImpl implements FontMapper
      */
     public void addSubstitute(String match, String replace)
     {
-        if (!substitutes.containsKey(match))
+        synchronized (substitutes)
+        {
+            List<String> current = substitutes.get(match);
+            List<String> subs = current == null ?
+                    new ArrayList<String>() : new ArrayList<String>(current);
+            subs.add(replace);
+            substitutes.put(match, subs);
+        }
+
+        // memoized lookups may resolve differently now
+        ProviderState current = state;
+        if (current != null)
+        {
+            current.mappings.clear();
+        }
+    }
+
+    /**
+     * Returns statistics about the lookups of this mapper, e.g. how often a fallback font had to
+     * be used.
+     */
+    FontMapperStatistics getStatistics()
+    {
+        return new FontMapperStatistics(lookupCount.get(), cacheHitCount.get(),
+                fallbackCount.get(), lastResortCount.get());
+    }
+
+    /**
+     * Returns a memoized lookup result, or null if there is none or it has been collected.
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends FontMapping<?>> T getCachedMapping(ProviderState current, String key)
+    {
+        SoftReference<FontMapping<?>> ref = current.mappings.get(key);
+        return ref != null ? (T) ref.get() : null;
+    }
+
+    /**
+     * Memoizes a lookup result and updates the statistics.
+     */
+    private <T extends FontMapping<?>> T cacheMapping(ProviderState current, String key,
+                                                      T mapping)
+    {
+        // mappings are soft references so that fonts can still be released by the FontCache
+        current.mappings.put(key, new SoftReference<FontMapping<?>>(mapping));
+        return count(mapping);
+    }
+
+    /**
+     * Updates the statistics for a lookup result.
+     */
+    private <T extends FontMapping<?>> T count(T mapping)
+    {
+        lookupCount.incrementAndGet();
+        if (mapping.isFallback())
         {
-            substitutes.put(match, new ArrayList<String>());
+            fallbackCount.incrementAndGet();
+            if (mapping.getFont() == lastResortFont ||
+                mapping instanceof CIDFontMapping &&
+                ((CIDFontMapping) mapping).getTrueTypeFont() == lastResortFont)
+            {
+                lastResortCount.incrementAndGet();
+            }
         }
-        substitutes.get(match).add(replace);
+        return mapping;
     }
 
     /**
@@ -316,7 +422,24 @@ final class FontMapperImpl implements FontMapper
     public FontMapping<TrueTypeFont> getTrueTypeFont(String baseFont,
                                                             PDFontDescriptor fontDescriptor)
     {
-        TrueTypeFont ttf = (TrueTypeFont)findFont(FontFormat.TTF, baseFont);
+        ProviderState current = getState();
+        // the descriptor is only used to choose the fallback font
+        String fallbackName = getFallbackFontName(fontDescriptor);
+        String key = "TTF/" + baseFont + "/" + fallbackName;
+        FontMapping<TrueTypeFont> mapping = getCachedMapping(current, key);
+        if (mapping != null)
+        {
+            cacheHitCount.incrementAndGet();
+            return count(mapping);
+        }
+        return cacheMapping(current, key,
+                findTrueTypeFont(current.fontInfoByName, baseFont, fallbackName));
+    }
+
+    private FontMapping<TrueTypeFont> findTrueTypeFont(Map<String, FontInfo> fontInfoByName,
+                                                       String baseFont, String fontName)
+    {
+        TrueTypeFont ttf = (TrueTypeFont)findFont(fontInfoByName, FontFormat.TTF, baseFont);
         if (ttf != null)
         {
             return new FontMapping<TrueTypeFont>(ttf, false);
@@ -324,8 +447,7 @@ final class FontMapperImpl implements FontMapper
         else
         {
             // fallback - todo: i.e. fuzzy match
-            String fontName = getFallbackFontName(fontDescriptor);
-            ttf = (TrueTypeFont) findFont(FontFormat.TTF, fontName);
+            ttf = (TrueTypeFont) findFont(fontInfoByName, FontFormat.TTF, fontName);
             if (ttf == null)
             {
                 // we have to return something here as TTFs aren't strictly required on the system
@@ -345,7 +467,23 @@ final class FontMapperImpl implements FontMapper
     public FontMapping<FontBoxFont> getFontBoxFont(String baseFont,
                                                           PDFontDescriptor fontDescriptor)
     {
-        FontBoxFont font = findFontBoxFont(baseFont);
+        ProviderState current = getState();
+        String fallbackName = getFallbackFontName(fontDescriptor);
+        String key = "FontBox/" + baseFont + "/" + fallbackName;
+        FontMapping<FontBoxFont> mapping = getCachedMapping(current, key);
+        if (mapping != null)
+        {
+            cacheHitCount.incrementAndGet();
+            return count(mapping);
+        }
+        return cacheMapping(current, key,
+                findFontBoxFont(current.fontInfoByName, baseFont, fallbackName));
+    }
+
+    private FontMapping<FontBoxFont> findFontBoxFont(Map<String, FontInfo> fontInfoByName,
+                                                     String baseFont, String fallbackName)
+    {
+        FontBoxFont font = findFontBoxFont(fontInfoByName, baseFont);
         if (font != null)
         {
             return new FontMapping<FontBoxFont>(font, false);
@@ -353,8 +491,7 @@ final class FontMapperImpl implements FontMapper
         else
         {
             // fallback - todo: i.e. fuzzy match
-            String fallbackName = getFallbackFontName(fontDescriptor);
-            font = findFontBoxFont(fallbackName);
+            font = findFontBoxFont(fontInfoByName, fallbackName);
             if (font == null)
             {
                 // we have to return something here as TTFs aren't strictly required on the system
@@ -369,21 +506,22 @@ final class FontMapperImpl implements FontMapper
      *
      * @param postScriptName PostScript font name
      */
-    private FontBoxFont findFontBoxFont(String postScriptName)
+    private FontBoxFont findFontBoxFont(Map<String, FontInfo> fontInfoByName,
+                                        String postScriptName)
     {
-        Type1Font t1 = (Type1Font)findFont(FontFormat.PFB, postScriptName);
+        Type1Font t1 = (Type1Font)findFont(fontInfoByName, FontFormat.PFB, postScriptName);
         if (t1 != null)
         {
             return t1;
         }
 
-        TrueTypeFont ttf = (TrueTypeFont)findFont(FontFormat.TTF, postScriptName);
+        TrueTypeFont ttf = (TrueTypeFont)findFont(fontInfoByName, FontFormat.TTF, postScriptName);
         if (ttf != null)
         {
             return ttf;
         }
 
-        OpenTypeFont otf = (OpenTypeFont) findFont(FontFormat.OTF, postScriptName);
+        OpenTypeFont otf = (OpenTypeFont) findFont(fontInfoByName, FontFormat.OTF, postScriptName);
         if (otf != null)
         {
             return otf;
@@ -397,29 +535,24 @@ final class FontMapperImpl implements FontMapper
      *
      * @param postScriptName PostScript font name
      */
-    private FontBoxFont findFont(FontFormat format, String postScriptName)
+    private FontBoxFont findFont(Map<String, FontInfo> fontInfoByName, FontFormat format,
+                                 String postScriptName)
     {
         // handle damaged PDFs, see PDFBOX-2884
         if (postScriptName == null)
         {
             return null;
         }
-        
-        // make sure the font provider is initialized
-        if (fontProvider == null)
-        {
-            getProvider();
-        }
 
         // first try to match the PostScript name
-        FontInfo info = getFont(format, postScriptName);
+        FontInfo info = getFont(fontInfoByName, format, postScriptName);
         if (info != null)
         {
             return info.getFont();
         }
 
         // remove hyphens (e.g. Arial-Black -> ArialBlack)
-        info = getFont(format, postScriptName.replace("-", ""));
+        info = getFont(fontInfoByName, format, postScriptName.replace("-", ""));
         if (info != null)
         {
             return info.getFont();
@@ -428,7 +561,7 @@ final class FontMapperImpl implements FontMapper
         // then try named substitutes
         for (String substituteName : getSubstitutes(postScriptName))
         {
-            info = getFont(format, substituteName);
+            info = getFont(fontInfoByName, format, substituteName);
             if (info != null)
             {
                 return info.getFont();
@@ -436,14 +569,14 @@ final class FontMapperImpl implements FontMapper
         }
 
         // then try converting Windows names e.g. (ArialNarrow,Bold) -> (ArialNarrow-Bold)
-        info = getFont(format, postScriptName.replace(",", "-"));
+        info = getFont(fontInfoByName, format, postScriptName.replace(",", "-"));
         if (info != null)
         {
             return info.getFont();
         }
 
         // try appending "-Regular", works for Wingdings on windows
-        info = getFont(format, postScriptName + "-Regular");
+        info = getFont(fontInfoByName, format, postScriptName + "-Regular");
         if (info != null)
         {
             return info.getFont();
@@ -455,7 +588,8 @@ final class FontMapperImpl implements FontMapper
     /**
      * Finds the named font with the given format.
      */
-    private FontInfo getFont(FontFormat format, String postScriptName)
+    private FontInfo getFont(Map<String, FontInfo> fontInfoByName, FontFormat format,
+                             String postScriptName)
     {
         // strip subset tag (happens when we substitute a corrupt embedded font, see PDFBOX-2642)
         if (postScriptName.contains("+"))
@@ -482,16 +616,68 @@ final class FontMapperImpl implements FontMapper
     @Override
     public CIDFontMapping getCIDFont(String baseFont, PDFontDescriptor fontDescriptor,
                                             PDCIDSystemInfo cidSystemInfo)
+    {
+        ProviderState current = getState();
+        String key = getCIDFontKey(baseFont, fontDescriptor, cidSystemInfo);
+        CIDFontMapping mapping = getCachedMapping(current, key);
+        if (mapping != null)
+        {
+            cacheHitCount.incrementAndGet();
+            return count(mapping);
+        }
+        return cacheMapping(current, key,
+                findCIDFont(current.fontInfoByName, baseFont, fontDescriptor, cidSystemInfo));
+    }
+
+    /**
+     * Returns the memoization key of a CID font lookup. It contains the parts of the descriptor
+     * that {@link #getFontMatches} looks at, but only for the character collections that can be
+     * substituted, because the descriptor isn't used for other fonts.
+     */
+    private String getCIDFontKey(String baseFont, PDFontDescriptor fontDescriptor,
+                                 PDCIDSystemInfo cidSystemInfo)
+    {
+        StringBuilder key = new StringBuilder("CID/").append(baseFont);
+        if (cidSystemInfo == null)
+        {
+            return key.toString();
+        }
+        String collection = cidSystemInfo.getRegistry() + "-" + cidSystemInfo.getOrdering();
+        key.append('/').append(collection);
+        if (isSubstitutableCollection(collection) && fontDescriptor != null)
+        {
+            key.append('/').append(fontDescriptor.getFontWeight());
+            if (fontDescriptor.getPanose() != null)
+            {
+                PDPanoseClassification panose = fontDescriptor.getPanose().getPanose();
+                key.append('/').append(panose.getFamilyKind())
+                   .append('/').append(panose.getSerifStyle())
+                   .append('/').append(panose.getWeight())
+                   .append('/').append(probablyBarcodeFont(fontDescriptor));
+            }
+        }
+        return key.toString();
+    }
+
+    private static boolean isSubstitutableCollection(String collection)
+    {
+        return collection.equals("Adobe-GB1") || collection.equals("Adobe-CNS1") ||
+               collection.equals("Adobe-Japan1") || collection.equals("Adobe-Korea1");
+    }
+
+    private CIDFontMapping findCIDFont(Map<String, FontInfo> fontInfoByName, String baseFont,
+                                       PDFontDescriptor fontDescriptor,
+                                       PDCIDSystemInfo cidSystemInfo)
     {
         // try name match or substitute with OTF
-        OpenTypeFont otf1 = (OpenTypeFont)findFont(FontFormat.OTF, baseFont);
+        OpenTypeFont otf1 = (OpenTypeFont)findFont(fontInfoByName, FontFormat.OTF, baseFont);
         if (otf1 != null)
         {
             return new CIDFontMapping(otf1, null, false);
         }
 
         // try name match or substitute with TTF
-        TrueTypeFont ttf = (TrueTypeFont)findFont(FontFormat.TTF, baseFont);
+        TrueTypeFont ttf = (TrueTypeFont)findFont(fontInfoByName, FontFormat.TTF, baseFont);
         if (ttf != null)
         {
             return new CIDFontMapping(null, ttf, false);
@@ -505,11 +691,11 @@ final class FontMapperImpl implements FontMapper
 
             String collection = cidSystemInfo.getRegistry() + "-" + cidSystemInfo.getOrdering();
             
-            if (collection.equals("Adobe-GB1") || collection.equals("Adobe-CNS1") ||
-                collection.equals("Adobe-Japan1") || collection.equals("Adobe-Korea1"))
+            if (isSubstitutableCollection(collection))
             {
                 // try automatic substitutes via character collection
-                PriorityQueue<FontMatch> queue = getFontMatches(fontDescriptor, cidSystemInfo);
+                PriorityQueue<FontMatch> queue =
+                        getFontMatches(fontInfoByName, fontDescriptor, cidSystemInfo);
                 FontMatch bestMatch = queue.poll();
                 if (bestMatch != null)
                 {
@@ -537,8 +723,9 @@ final class FontMapperImpl implements FontMapper
      * @param fontDescriptor FontDescriptor, always present.
      * @param cidSystemInfo Font's CIDSystemInfo, may be null.
      */
-    private PriorityQueue<FontMatch> getFontMatches(PDFontDescriptor fontDescriptor,
-                                                           PDCIDSystemInfo cidSystemInfo)
+    private PriorityQueue<FontMatch> getFontMatches(Map<String, FontInfo> fontInfoByName,
+                                                    PDFontDescriptor fontDescriptor,
+                                                    PDCIDSystemInfo cidSystemInfo)
     {
         PriorityQueue<FontMatch> queue = new PriorityQueue<FontMatch>(20);
         
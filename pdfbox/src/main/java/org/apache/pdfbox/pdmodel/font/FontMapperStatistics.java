@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.pdmodel.font;
+
+/**
+ * A snapshot of the lookup statistics of the default {@link FontMapper}. A high share of fallbacks
+ * means that documents use fonts which are neither embedded nor installed on the system.
+ *
+ * @see FontMappers#getStatistics()
+ */
+public final class FontMapperStatistics
+{
+    private final long lookupCount;
+    private final long cacheHitCount;
+    private final long fallbackCount;
+    private final long lastResortCount;
+
+    FontMapperStatistics(long lookupCount, long cacheHitCount, long fallbackCount,
+                         long lastResortCount)
+    {
+        this.lookupCount = lookupCount;
+        this.cacheHitCount = cacheHitCount;
+        this.fallbackCount = fallbackCount;
+        this.lastResortCount = lastResortCount;
+    }
+
+    /**
+     * Returns the number of fonts that were looked up.
+     */
+    public long getLookupCount()
+    {
+        return lookupCount;
+    }
+
+    /**
+     * Returns the number of lookups that were answered by an earlier lookup of the same font.
+     */
+    public long getCacheHitCount()
+    {
+        return cacheHitCount;
+    }
+
+    /**
+     * Returns the number of lookups that didn't find the requested font and returned a fallback.
+     */
+    public long getFallbackCount()
+    {
+        return fallbackCount;
+    }
+
+    /**
+     * Returns the number of fallbacks that had to use the built-in last resort font, because no
+     * suitable system font was found either.
+     */
+    public long getLastResortCount()
+    {
+        return lastResortCount;
+    }
+
+    /**
+     * Returns the share of lookups that returned a fallback, between 0 and 1.
+     */
+    public double getFallbackRatio()
+    {
+        return lookupCount == 0 ? 0 : (double) fallbackCount / lookupCount;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "FontMapperStatistics{lookups=" + lookupCount + ", cacheHits=" + cacheHitCount +
+               ", fallbacks=" + fallbackCount + ", lastResort=" + lastResortCount + "}";
+    }
+}
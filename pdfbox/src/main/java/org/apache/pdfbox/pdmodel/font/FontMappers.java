@@ -24,7 +24,7 @@ package org.apache.pdfbox.pdmodel.font;
  */
 public final class FontMappers
 {
-    private static FontMapper instance;
+    private static volatile FontMapper instance;
 
     private FontMappers()
     {
@@ -48,6 +48,37 @@ public final class FontMappers
         return instance;
     }
     
+    /**
+     * Scans the fonts of the local system and writes the on-disk font cache, or updates it if
+     * fonts were added since it was built. Scanning a large number of fonts can take a while, so
+     * this can be called when an application or container image is built, to spare the first
+     * document that needs a substitute font from waiting. The location of the cache can be set
+     * with the "pdfbox.fontcache" system property.
+     *
+     * @return the number of fonts found.
+     */
+    public static int buildFontCache()
+    {
+        return new FileSystemFontProvider(new FontCache()).getFontInfo().size();
+    }
+
+    /**
+     * Returns statistics about the font lookups of the default FontMapper, e.g. how often fonts had
+     * to be replaced by a fallback font.
+     *
+     * @return the statistics, or null if the FontMapper has been replaced with
+     * {@link #set(FontMapper)}.
+     */
+    public static FontMapperStatistics getStatistics()
+    {
+        FontMapper mapper = instance();
+        if (mapper instanceof FontMapperImpl)
+        {
+            return ((FontMapperImpl) mapper).getStatistics();
+        }
+        return null;
+    }
+
     /**
      * Sets the singleton FontMapper instance.
      */
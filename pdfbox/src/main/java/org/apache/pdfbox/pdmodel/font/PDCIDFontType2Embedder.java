@@ -31,6 +31,7 @@ import java.util.TreeSet;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.fontbox.ttf.GlyphData;
+import org.apache.fontbox.ttf.GlyphSequence;
 import org.apache.fontbox.ttf.GlyphTable;
 import org.apache.fontbox.ttf.HorizontalMetricsTable;
 import org.apache.fontbox.ttf.TrueTypeFont;
@@ -60,6 +61,7 @@ final class PDCIDFontType2Embedder extends TrueTypeEmbedder
     private final COSDictionary dict;
     private final COSDictionary cidFont;
     private final boolean vertical;
+    private final Map<Integer, String> shapedGlyphs = new HashMap<Integer, String>();
 
     /**
      * Creates a new TrueType font embedder for the given TTF as a PDCIDFontType2.
@@ -127,6 +129,25 @@ final class PDCIDFontType2Embedder extends TrueTypeEmbedder
         buildCIDSet(cidToGid);
     }
 
+    /**
+     * Adds shaped glyphs to the subset and remembers their text for the ToUnicode CMap, because
+     * ligatures aren't mapped by the cmap of the font.
+     *
+     * @param glyphs the glyphs from {@link org.apache.fontbox.ttf.GlyphShaper}
+     */
+    void addToSubset(GlyphSequence glyphs)
+    {
+        for (int i = 0; i < glyphs.size(); i++)
+        {
+            int gid = glyphs.getGlyphId(i);
+            if (gid != 0 && !shapedGlyphs.containsKey(gid))
+            {
+                shapedGlyphs.put(gid, glyphs.getText(i));
+                addGlyphToSubset(gid);
+            }
+        }
+    }
+
     private void buildToUnicodeCMap(Map<Integer, Integer> newGIDToOldCID) throws IOException
     {
         ToUnicodeWriter toUniWriter = new ToUnicodeWriter();
@@ -151,6 +172,18 @@ final class PDCIDFontType2Embedder extends TrueTypeEmbedder
                 cid = gid;
             }
 
+            // text of shaped glyphs, which may be several code points for a ligature
+            String text = shapedGlyphs.get(cid);
+            if (text != null)
+            {
+                if (text.codePointCount(0, text.length()) < text.length())
+                {
+                    hasSurrogates = true;
+                }
+                toUniWriter.add(cid, text);
+                continue;
+            }
+
             // skip composite glyph components that have no code point
             List<Integer> codes = cmapLookup.getCharCodes(cid); // old GID -> Unicode
             if (codes != null)
@@ -56,8 +56,9 @@ public abstract class PDFont implements COSObjectable, PDFontLike
     private final CMap toUnicodeCMap;
     
     /**
-     * AFM for standard 14 fonts
+     * AFM and widths for standard 14 fonts, shared by all documents
      */
+    private final Standard14Metrics standard14Metrics;
     private final FontMetrics afmStandard14;
 
     private PDFontDescriptor fontDescriptor;
@@ -75,6 +76,7 @@ public abstract class PDFont implements COSObjectable, PDFontLike
         dict.setItem(COSName.TYPE, COSName.FONT);
         toUnicodeCMap = null;
         fontDescriptor = null;
+        standard14Metrics = null;
         afmStandard14 = null;
         codeToWidthMap = new HashMap<Integer, Float>();
     }
@@ -87,11 +89,12 @@ public abstract class PDFont implements COSObjectable, PDFontLike
         dict = new COSDictionary();
         dict.setItem(COSName.TYPE, COSName.FONT);
         toUnicodeCMap = null;
-        afmStandard14 = Standard14Fonts.getAFM(baseFont);
-        if (afmStandard14 == null)
+        standard14Metrics = Standard14Fonts.getMetrics(baseFont);
+        if (standard14Metrics == null)
         {
             throw new IllegalArgumentException("No AFM for font " + baseFont);
         }
+        afmStandard14 = standard14Metrics.getAFM();
         fontDescriptor = PDType1FontEmbedder.buildFontDescriptor(afmStandard14);
         // standard 14 fonts may be accessed concurrently, as they are singletons
         codeToWidthMap = new ConcurrentHashMap<Integer, Float>();
@@ -107,10 +110,12 @@ public abstract class PDFont implements COSObjectable, PDFontLike
     protected PDFont(COSDictionary fontDictionary) throws IOException
     {
         dict = fontDictionary;
-        codeToWidthMap = new HashMap<Integer, Float>();
+        // fonts from the resource cache may be shared by pages which are processed concurrently
+        codeToWidthMap = new ConcurrentHashMap<Integer, Float>();
 
         // standard 14 fonts use an AFM
-        afmStandard14 = Standard14Fonts.getAFM(getName()); // may be null (it usually is)
+        standard14Metrics = Standard14Fonts.getMetrics(getName()); // may be null (it usually is)
+        afmStandard14 = standard14Metrics != null ? standard14Metrics.getAFM() : null;
         fontDescriptor = loadFontDescriptor();
         toUnicodeCMap = loadUnicodeCmap();
     }
@@ -176,6 +181,14 @@ public abstract class PDFont implements COSObjectable, PDFontLike
         return afmStandard14;
     }
 
+    /**
+     * Returns the shared metrics if this is a Standard 14 font.
+     */
+    final Standard14Metrics getStandard14Metrics()
+    {
+        return standard14Metrics;
+    }
+
     @Override
     public PDFontDescriptor getFontDescriptor()
     {
@@ -344,17 +344,11 @@ public abstract class PDSimpleFont extends PDFont
     @Override
     protected final float getStandard14Width(int code)
     {
-        if (getStandard14AFM() != null)
+        Standard14Metrics metrics = getStandard14Metrics();
+        if (metrics != null)
         {
-            String nameInAFM = getEncoding().getName(code);
-
-            // the Adobe AFMs don't include .notdef, but Acrobat uses 250, test with PDFBOX-2334
-            if (".notdef".equals(nameInAFM))
-            {
-                return 250f;
-            }
-
-            return getStandard14AFM().getCharacterWidth(nameInAFM);
+            // uses the precomputed widths of the standard encodings
+            return metrics.getWidth(getEncoding(), code);
         }
         throw new IllegalStateException("No AFM");
     }
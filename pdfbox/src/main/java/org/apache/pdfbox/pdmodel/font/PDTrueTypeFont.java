@@ -42,7 +42,6 @@ import org.apache.pdfbox.pdmodel.font.encoding.Encoding;
 import org.apache.pdfbox.pdmodel.font.encoding.GlyphList;
 import org.apache.pdfbox.pdmodel.font.encoding.MacOSRomanEncoding;
 import org.apache.pdfbox.pdmodel.font.encoding.StandardEncoding;
-import org.apache.pdfbox.pdmodel.font.encoding.Type1Encoding;
 import org.apache.pdfbox.pdmodel.font.encoding.WinAnsiEncoding;
 
 
@@ -243,7 +242,7 @@ public class PDTrueTypeFont extends PDSimpleFont implements PDVectorFont
         if (!isEmbedded() && getStandard14AFM() != null)
         {
             // read from AFM
-            return new Type1Encoding(getStandard14AFM());
+            return getStandard14Metrics().getBuiltInEncoding();
         }
         else
         {
@@ -17,6 +17,7 @@
 package org.apache.pdfbox.pdmodel.font;
 
 import java.awt.geom.GeneralPath;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -25,6 +26,8 @@ import java.util.Set;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.fontbox.cmap.CMap;
+import org.apache.fontbox.ttf.GlyphSequence;
+import org.apache.fontbox.ttf.GlyphShaper;
 import org.apache.fontbox.ttf.TTFParser;
 import org.apache.fontbox.ttf.TrueTypeFont;
 import org.apache.fontbox.util.BoundingBox;
@@ -52,6 +55,7 @@ public class PDType0Font extends PDFont implements PDVectorFont
     private PDCIDFontType2Embedder embedder;
     private final Set<Integer> noUnicode = new HashSet<Integer>(); 
     private TrueTypeFont ttf;
+    private GlyphShaper shaper;
     
     /**
      * Loads a TTF to be embedded and subset into a document as a Type 0 font. If you are loading a
@@ -218,6 +222,7 @@ public class PDType0Font extends PDFont implements PDVectorFont
             ttf.enableVerticalSubstitutions();
         }
         embedder = new PDCIDFontType2Embedder(document, dict, ttf, embedSubset, this, vertical);
+        shaper = ttf.getGlyphShaper();
         descendantFont = embedder.getCIDFont();
         readEncoding();
         fetchCMapUCS2();
@@ -415,6 +420,45 @@ public class PDType0Font extends PDFont implements PDVectorFont
         return descendantFont.encode(unicode);
     }
 
+    /**
+     * Encodes the given text after applying the enabled GSUB features of the font, see
+     * {@link TrueTypeFont#enableGsubFeature(String)}. Unlike {@link #encode(String)} this also
+     * applies ligatures, which replace several characters by one glyph. Only fonts which are
+     * loaded for embedding are shaped, and only subset fonts map ligatures back to their text;
+     * for other fonts this is the same as {@link #encode(String)}.
+     *
+     * @param text Any Unicode text.
+     * @return Array of PDF content stream bytes.
+     * @throws IOException If the text could not be encoded.
+     * @throws IllegalArgumentException if a character isn't supported by the font
+     */
+    public byte[] encodeShaped(String text) throws IOException
+    {
+        if (shaper == null)
+        {
+            return encode(text);
+        }
+        GlyphSequence glyphs = shaper.shape(text);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(glyphs.size() * 2);
+        for (int i = 0; i < glyphs.size(); i++)
+        {
+            int gid = glyphs.getGlyphId(i);
+            if (gid == 0)
+            {
+                throw new IllegalArgumentException("No glyph for \"" + glyphs.getText(i) +
+                        "\" in font " + getName());
+            }
+            // CID = GID, which is always 2-bytes (16-bit) for TrueType
+            out.write(gid >> 8 & 0xff);
+            out.write(gid & 0xff);
+        }
+        if (willBeSubset())
+        {
+            embedder.addToSubset(glyphs);
+        }
+        return out.toByteArray();
+    }
+
     @Override
     public boolean hasExplicitWidth(int code) throws IOException
     {
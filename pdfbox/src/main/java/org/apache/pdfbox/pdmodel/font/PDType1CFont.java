@@ -218,7 +218,7 @@ public class PDType1CFont extends PDSimpleFont
         if (!isEmbedded() && getStandard14AFM() != null)
         {
             // read from AFM
-            return new Type1Encoding(getStandard14AFM());
+            return getStandard14Metrics().getBuiltInEncoding();
         }
         else
         {
@@ -505,7 +505,7 @@ public class PDType1Font extends PDSimpleFont
         if (!isEmbedded() && getStandard14AFM() != null)
         {
             // read from AFM
-            return new Type1Encoding(getStandard14AFM());
+            return getStandard14Metrics().getBuiltInEncoding();
         }
         else
         {
@@ -37,7 +37,8 @@ final class Standard14Fonts
 {
     private static final Set<String> STANDARD_14_NAMES = new HashSet<String>(34);
     private static final Map<String, String> STANDARD_14_MAPPING = new HashMap<String, String>(34);
-    private static final Map<String, FontMetrics> STANDARD14_AFM_MAP =  new HashMap<String, FontMetrics>(34);
+    private static final Map<String, Standard14Metrics> STANDARD14_METRICS_MAP =
+            new HashMap<String, Standard14Metrics>(34);
     static
     {
         try
@@ -107,9 +108,12 @@ final class Standard14Fonts
         STANDARD_14_NAMES.add(fontName);
         STANDARD_14_MAPPING.put(fontName, afmName);
 
-        if (STANDARD14_AFM_MAP.containsKey(afmName))
+        // the additional names share the metrics of the font they map to
+        Standard14Metrics metrics = STANDARD14_METRICS_MAP.get(afmName);
+        if (metrics != null)
         {
-            STANDARD14_AFM_MAP.put(fontName, STANDARD14_AFM_MAP.get(afmName));
+            STANDARD14_METRICS_MAP.put(fontName, metrics);
+            return;
         }
 
         String resourceName = "/org/apache/pdfbox/resources/afm/" + afmName + ".afm";
@@ -122,7 +126,7 @@ final class Standard14Fonts
         {
             AFMParser parser = new AFMParser(afmStream);
             FontMetrics metric = parser.parse(true);
-            STANDARD14_AFM_MAP.put(fontName, metric);
+            STANDARD14_METRICS_MAP.put(fontName, new Standard14Metrics(metric));
         }
         finally
         {
@@ -136,7 +140,19 @@ final class Standard14Fonts
      */
     public static FontMetrics getAFM(String baseName)
     {
-        return STANDARD14_AFM_MAP.get(baseName);
+        Standard14Metrics metrics = STANDARD14_METRICS_MAP.get(baseName);
+        return metrics != null ? metrics.getAFM() : null;
+    }
+
+    /**
+     * Returns the shared metrics for the given font, which are created once and used by all
+     * documents.
+     * @param baseName base name of font
+     * @return the metrics, or null if this isn't a Standard 14 font
+     */
+    static Standard14Metrics getMetrics(String baseName)
+    {
+        return STANDARD14_METRICS_MAP.get(baseName);
     }
 
     /**
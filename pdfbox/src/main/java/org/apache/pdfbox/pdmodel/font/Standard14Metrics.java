@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.pdmodel.font;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import org.apache.fontbox.afm.FontMetrics;
+import org.apache.pdfbox.pdmodel.font.encoding.DictionaryEncoding;
+import org.apache.pdfbox.pdmodel.font.encoding.Encoding;
+import org.apache.pdfbox.pdmodel.font.encoding.MacRomanEncoding;
+import org.apache.pdfbox.pdmodel.font.encoding.StandardEncoding;
+import org.apache.pdfbox.pdmodel.font.encoding.SymbolEncoding;
+import org.apache.pdfbox.pdmodel.font.encoding.Type1Encoding;
+import org.apache.pdfbox.pdmodel.font.encoding.WinAnsiEncoding;
+import org.apache.pdfbox.pdmodel.font.encoding.ZapfDingbatsEncoding;
+
+/**
+ * The metrics of one of the Standard 14 fonts, which are shared by all fonts and documents that
+ * use it. Besides the AFM, this has the built-in encoding of the font and a table of the glyph
+ * widths for each of the standard encodings, so that these don't have to be derived from the AFM
+ * for every font dictionary. Immutable and thread safe.
+ *
+ * @see Standard14Fonts#getMetrics(String)
+ */
+final class Standard14Metrics
+{
+    // the Adobe AFMs don't include .notdef, but Acrobat uses 250, test with PDFBOX-2334
+    private static final int NOTDEF_WIDTH = 250;
+
+    private final FontMetrics afm;
+    private final Encoding builtInEncoding;
+    private final Map<Encoding, int[]> widths = new IdentityHashMap<Encoding, int[]>();
+
+    Standard14Metrics(FontMetrics afm)
+    {
+        this.afm = afm;
+        builtInEncoding = new Type1Encoding(afm);
+        addWidths(builtInEncoding);
+        addWidths(StandardEncoding.INSTANCE);
+        addWidths(WinAnsiEncoding.INSTANCE);
+        addWidths(MacRomanEncoding.INSTANCE);
+        addWidths(SymbolEncoding.INSTANCE);
+        addWidths(ZapfDingbatsEncoding.INSTANCE);
+    }
+
+    private void addWidths(Encoding encoding)
+    {
+        int[] table = new int[256];
+        for (int code = 0; code < table.length; code++)
+        {
+            String name = encoding.getName(code);
+            if (".notdef".equals(name))
+            {
+                table[code] = NOTDEF_WIDTH;
+            }
+            else
+            {
+                float width = afm.getCharacterWidth(name);
+                if (width != (int) width)
+                {
+                    // not the case for the Adobe AFMs, fractional widths are looked up in the AFM
+                    return;
+                }
+                table[code] = (int) width;
+            }
+        }
+        widths.put(encoding, table);
+    }
+
+    /**
+     * Returns the AFM of the font.
+     */
+    FontMetrics getAFM()
+    {
+        return afm;
+    }
+
+    /**
+     * Returns the built-in encoding of the font, from the AFM.
+     */
+    Encoding getBuiltInEncoding()
+    {
+        return builtInEncoding;
+    }
+
+    /**
+     * Returns the width of a glyph.
+     *
+     * @param encoding the encoding of the font
+     * @param code character code
+     * @return width in 1/1000 text space
+     */
+    float getWidth(Encoding encoding, int code)
+    {
+        Encoding tableEncoding = encoding;
+        if (encoding instanceof DictionaryEncoding &&
+            ((DictionaryEncoding) encoding).getDifferences().isEmpty())
+        {
+            tableEncoding = ((DictionaryEncoding) encoding).getBaseEncoding();
+        }
+        int[] table = widths.get(tableEncoding);
+        if (table != null && code >= 0 && code < table.length)
+        {
+            return table[code];
+        }
+
+        String nameInAFM = encoding.getName(code);
+        if (".notdef".equals(nameInAFM))
+        {
+            return NOTDEF_WIDTH;
+        }
+        return afm.getCharacterWidth(nameInAFM);
+    }
+}
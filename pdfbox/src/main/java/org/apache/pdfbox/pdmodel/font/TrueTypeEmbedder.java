@@ -27,6 +27,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
 import org.apache.fontbox.ttf.CmapLookup;
 import org.apache.fontbox.ttf.CmapSubtable;
 import org.apache.fontbox.ttf.HeaderTable;
@@ -55,6 +57,9 @@ abstract class TrueTypeEmbedder implements Subsetter
     private static final int OBLIQUE = 512;
     private static final String BASE25 = "BCDEFGHIJKLMNOPQRSTUVWXYZ";
 
+    // recently built subsets, shared by all documents
+    private static final TrueTypeSubsetCache SUBSET_CACHE = TrueTypeSubsetCache.getInstance();
+
     private final PDDocument document;
     protected TrueTypeFont ttf;
     protected PDFontDescriptor fontDescriptor;
@@ -69,6 +74,7 @@ abstract class TrueTypeEmbedder implements Subsetter
 
     protected final CmapLookup cmapLookup;
     private final Set<Integer> subsetCodePoints = new HashSet<Integer>();
+    private final Set<Integer> subsetGlyphIds = new HashSet<Integer>();
     private final boolean embedSubset;
 
     /**
@@ -289,6 +295,16 @@ abstract class TrueTypeEmbedder implements Subsetter
     {
         subsetCodePoints.add(codePoint);
     }
+
+    /**
+     * Adds glyphs which aren't mapped by the cmap, e.g. ligatures, to the subset.
+     *
+     * @param gid GID
+     */
+    void addGlyphToSubset(int gid)
+    {
+        subsetGlyphIds.add(gid);
+    }
     
     @Override
     public void subset() throws IOException
@@ -317,21 +333,42 @@ abstract class TrueTypeEmbedder implements Subsetter
         // Windows ClearType
         tables.add("gasp");
 
-        // set the GIDs to subset
-        TTFSubsetter subsetter = new TTFSubsetter(ttf, tables);
-        subsetter.addAll(subsetCodePoints);
-
-        // calculate deterministic tag based on the chosen subset
-        Map<Integer, Integer> gidToCid = subsetter.getGIDMap();
-        String tag = getTag(gidToCid);
-        subsetter.setPrefix(tag);
-
-        // save the subset font
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        subsetter.writeToStream(out);
+        // the subset doesn't depend on the code points, because the kept tables don't map them
+        SortedSet<Integer> glyphIds = new TreeSet<Integer>();
+        for (int codePoint : subsetCodePoints)
+        {
+            int gid = cmapLookup.getGlyphId(codePoint);
+            if (gid != 0)
+            {
+                glyphIds.add(gid);
+            }
+        }
+        glyphIds.addAll(subsetGlyphIds);
+        String key = TrueTypeSubsetCache.createKey(ttf, tables, glyphIds);
+        TrueTypeSubsetCache.Subset subset = SUBSET_CACHE.get(key);
+        if (subset == null)
+        {
+            // set the GIDs to subset
+            TTFSubsetter subsetter = new TTFSubsetter(ttf, tables);
+            subsetter.addAll(subsetCodePoints);
+            subsetter.addGlyphIds(subsetGlyphIds);
+
+            // calculate deterministic tag based on the chosen subset
+            Map<Integer, Integer> gidToCid = subsetter.getGIDMap();
+            String tag = getTag(gidToCid);
+            subsetter.setPrefix(tag);
+
+            // save the subset font
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            subsetter.writeToStream(out);
+
+            subset = new TrueTypeSubsetCache.Subset(out.toByteArray(), tag, gidToCid);
+            SUBSET_CACHE.put(key, subset);
+        }
 
         // re-build the embedded font
-        buildSubset(new ByteArrayInputStream(out.toByteArray()), tag, gidToCid);
+        buildSubset(new ByteArrayInputStream(subset.getFontData()), subset.getTag(),
+                subset.getGIDToCID());
         ttf.close();
     }
 
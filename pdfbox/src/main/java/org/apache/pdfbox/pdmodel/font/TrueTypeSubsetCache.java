@@ -0,0 +1,232 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.pdmodel.font;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import org.apache.fontbox.ttf.HeaderTable;
+import org.apache.fontbox.ttf.TrueTypeFont;
+
+/**
+ * A cache of the most recently built TrueType font subsets, shared by all documents. Documents
+ * that are generated from the same template usually embed the same subsets of the same fonts,
+ * which then only have to be built once. Subsets are keyed by the identity of the font and the set
+ * of glyphs. The cache is bounded by the total size of the subset font files, see
+ * {@link #setMaxSize(long)}.
+ */
+public final class TrueTypeSubsetCache
+{
+    /**
+     * The default maximum size of the cached subset font files, in bytes.
+     */
+    public static final long DEFAULT_MAX_SIZE = 16 * 1024 * 1024;
+
+    private static final TrueTypeSubsetCache INSTANCE = new TrueTypeSubsetCache(DEFAULT_MAX_SIZE);
+
+    private long maxSize;
+
+    private long size;
+
+    private final Map<String, Subset> subsets =
+            new LinkedHashMap<String, Subset>(16, 0.75f, true);
+
+    /**
+     * Creates a cache.
+     *
+     * @param maxSize the maximum total size of the subset font files, in bytes
+     */
+    TrueTypeSubsetCache(long maxSize)
+    {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the cache which is used when fonts are embedded.
+     */
+    static TrueTypeSubsetCache getInstance()
+    {
+        return INSTANCE;
+    }
+
+    /**
+     * Sets the maximum total size of the cached subset font files. The least recently used subsets
+     * are removed if the cache gets larger. A size of 0 disables the cache.
+     *
+     * @param maxSize the maximum size in bytes
+     * @throws IllegalArgumentException if the size is negative
+     */
+    public static void setMaxSize(long maxSize)
+    {
+        if (maxSize < 0)
+        {
+            throw new IllegalArgumentException("Negative cache size: " + maxSize);
+        }
+        synchronized (INSTANCE)
+        {
+            INSTANCE.maxSize = maxSize;
+            INSTANCE.trim();
+        }
+    }
+
+    /**
+     * Returns the maximum total size of the cached subset font files.
+     *
+     * @return the maximum size in bytes, 0 if the cache is disabled
+     */
+    public static long getMaxSize()
+    {
+        synchronized (INSTANCE)
+        {
+            return INSTANCE.maxSize;
+        }
+    }
+
+    /**
+     * Removes all subsets from the cache.
+     */
+    public static void clear()
+    {
+        synchronized (INSTANCE)
+        {
+            INSTANCE.subsets.clear();
+            INSTANCE.size = 0;
+        }
+    }
+
+    /**
+     * Returns the key of a subset. The font is identified by its name, size, checksum and
+     * modification date, so that the same font file has the same key even if it is parsed again
+     * for each document.
+     *
+     * @param ttf the font
+     * @param tables the tables that are kept in the subset
+     * @param glyphIds the glyphs of the subset, before compound glyphs are resolved
+     * @return the key
+     * @throws IOException if the font header could not be read
+     */
+    static String createKey(TrueTypeFont ttf, List<String> tables, SortedSet<Integer> glyphIds)
+            throws IOException
+    {
+        StringBuilder key = new StringBuilder();
+        key.append(ttf.getName()).append('/').append(ttf.getOriginalDataSize());
+        HeaderTable header = ttf.getHeader();
+        if (header != null)
+        {
+            key.append('/').append(header.getCheckSumAdjustment());
+            if (header.getModified() != null)
+            {
+                key.append('/').append(header.getModified().getTimeInMillis());
+            }
+        }
+        key.append('/').append(tables).append('/').append(glyphIds);
+        return key.toString();
+    }
+
+    /**
+     * Returns a cached subset.
+     *
+     * @param key the key of the subset
+     * @return the subset, or null if it isn't in the cache
+     */
+    synchronized Subset get(String key)
+    {
+        return subsets.get(key);
+    }
+
+    /**
+     * Adds a subset to the cache, unless it is larger than the maximum size, and removes the least
+     * recently used subsets if the cache gets too large.
+     *
+     * @param key the key of the subset
+     * @param subset the subset
+     */
+    synchronized void put(String key, Subset subset)
+    {
+        if (subset.getFontData().length > maxSize)
+        {
+            return;
+        }
+        Subset old = subsets.put(key, subset);
+        if (old != null)
+        {
+            size -= old.getFontData().length;
+        }
+        size += subset.getFontData().length;
+        trim();
+    }
+
+    /**
+     * Returns the total size of the cached subset font files.
+     */
+    synchronized long getSize()
+    {
+        return size;
+    }
+
+    /**
+     * Removes the least recently used subsets until the cache isn't larger than the maximum size.
+     */
+    private void trim()
+    {
+        Iterator<Subset> iterator = subsets.values().iterator();
+        while (size > maxSize && iterator.hasNext())
+        {
+            size -= iterator.next().getFontData().length;
+            iterator.remove();
+        }
+    }
+
+    /**
+     * A font subset: the subset font file, its tag and the map from new to old glyph ids.
+     */
+    static final class Subset
+    {
+        private final byte[] fontData;
+        private final String tag;
+        private final Map<Integer, Integer> gidToCid;
+
+        Subset(byte[] fontData, String tag, Map<Integer, Integer> gidToCid)
+        {
+            this.fontData = fontData;
+            this.tag = tag;
+            this.gidToCid = Collections.unmodifiableMap(gidToCid);
+        }
+
+        /**
+         * Returns the subset font file, which must not be modified.
+         */
+        byte[] getFontData()
+        {
+            return fontData;
+        }
+
+        String getTag()
+        {
+            return tag;
+        }
+
+        Map<Integer, Integer> getGIDToCID()
+        {
+            return gidToCid;
+        }
+    }
+}
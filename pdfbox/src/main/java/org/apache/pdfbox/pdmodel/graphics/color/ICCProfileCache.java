@@ -0,0 +1,300 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.pdmodel.graphics.color;
+
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.color.ICC_ColorSpace;
+import java.awt.color.ICC_Profile;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.util.Charsets;
+
+/**
+ * A process-wide cache of ICC profiles, keyed by the profile data. Most
+ * documents embed one of a few common profiles, e.g. sRGB or a FOGRA profile, which are parsed
+ * and validated by the color management module only once, instead of for every document. The
+ * profiles are shared and must not be modified. The color spaces aren't shared, because
+ * {@link ICC_ColorSpace} sets up its transforms lazily without synchronization, so every user
+ * gets its own, see {@link Entry#createColorSpace()}. Thread safe.
+ */
+public final class ICCProfileCache
+{
+    private static final Log LOG = LogFactory.getLog(ICCProfileCache.class);
+
+    private static final int MAX_ENTRIES = 16;
+
+    // Entry is qualified, inside the anonymous map it would be Map.Entry
+    private static final Map<ByteBuffer, ICCProfileCache.Entry> CACHE =
+            new LinkedHashMap<ByteBuffer, ICCProfileCache.Entry>(MAX_ENTRIES, 0.75f, true)
+            {
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<ByteBuffer, ICCProfileCache.Entry> eldest)
+                {
+                    return size() > MAX_ENTRIES;
+                }
+            };
+
+    private ICCProfileCache()
+    {
+    }
+
+    /**
+     * Returns the cached profile for the given data, parsing it if it isn't in the cache.
+     *
+     * @param data the ICC profile data, e.g. the decoded ICCBased stream.
+     * @return the cached profile, which may be invalid.
+     */
+    public static Entry get(byte[] data)
+    {
+        // hashing and comparing the data is much faster than a message digest of it, which took
+        // longer than parsing the profile
+        ByteBuffer key = ByteBuffer.wrap(data);
+        synchronized (CACHE)
+        {
+            Entry entry = CACHE.get(key);
+            if (entry != null)
+            {
+                return entry;
+            }
+        }
+        // validating the profile can take milliseconds, don't block the cache meanwhile
+        Entry entry = new Entry(data);
+        synchronized (CACHE)
+        {
+            Entry existing = CACHE.get(key);
+            if (existing != null)
+            {
+                return existing;
+            }
+            // the caller may modify the array afterwards
+            CACHE.put(ByteBuffer.wrap(data.clone()), entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Returns the cached profile for the data of the given stream, parsing it if it isn't in the
+     * cache. The stream isn't closed.
+     *
+     * @param input the ICC profile data, e.g. the decoded ICCBased stream.
+     * @return the cached profile, which may be invalid.
+     * @throws IOException if the stream can't be read.
+     */
+    public static Entry get(InputStream input) throws IOException
+    {
+        return get(IOUtils.toByteArray(input));
+    }
+
+    /**
+     * Removes all profiles from the cache.
+     */
+    public static void clear()
+    {
+        synchronized (CACHE)
+        {
+            CACHE.clear();
+        }
+    }
+
+    /**
+     * A parsed ICC profile, with the profile used for rendering.
+     */
+    public static final class Entry
+    {
+        private final ICC_Profile profile;
+        private final Exception profileError;
+        private final ICC_Profile displayProfile;
+        private final Exception colorSpaceError;
+        private final boolean isSRGB;
+
+        private Entry(byte[] data)
+        {
+            ICC_Profile parsed = null;
+            Exception parseError = null;
+            try
+            {
+                // PDFBOX-2819: load ICC profile as a stream, not as a byte array because of java error
+                parsed = ICC_Profile.getInstance(new ByteArrayInputStream(data));
+            }
+            catch (IllegalArgumentException e)
+            {
+                parseError = e;
+            }
+            catch (IOException e)
+            {
+                parseError = e;
+            }
+            profile = parsed;
+            profileError = parseError;
+
+            ICC_Profile display = null;
+            Exception csError = parseError;
+            boolean sRGB = false;
+            if (parsed != null)
+            {
+                // the color management modules aren't reliably thread safe, see PDFBOX-4309
+                synchronized (ICCProfileCache.class)
+                {
+                    try
+                    {
+                        // if the embedded profile is sRGB then we can use Java's built-in profile,
+                        // which results in a large performance gain as it's our native color
+                        // space, see PDFBOX-2587
+                        ColorSpace cs;
+                        if (isSRGB(parsed))
+                        {
+                            sRGB = true;
+                            cs = ColorSpace.getInstance(ColorSpace.CS_sRGB);
+                        }
+                        else
+                        {
+                            display = ensureDisplayProfile(parsed);
+                            cs = new ICC_ColorSpace(display);
+                        }
+                        // PDFBOX-4015: this one triggers "CMMException: LCMS error 13" with LCMS
+                        new ComponentColorModel(cs, false, false,
+                                Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+                        csError = null;
+                    }
+                    catch (RuntimeException e)
+                    {
+                        // ProfileDataException, CMMException, IllegalArgumentException,
+                        // ArrayIndexOutOfBoundsException
+                        display = null;
+                        sRGB = false;
+                        csError = e;
+                    }
+                }
+            }
+            displayProfile = display;
+            colorSpaceError = csError;
+            isSRGB = sRGB;
+        }
+
+        /**
+         * Returns true if the given profile is represents sRGB.
+         */
+        private static boolean isSRGB(ICC_Profile profile)
+        {
+            byte[] bytes = Arrays.copyOfRange(profile.getData(ICC_Profile.icSigHead),
+                    ICC_Profile.icHdrModel, ICC_Profile.icHdrModel + 7);
+            String deviceModel = new String(bytes, Charsets.US_ASCII).trim();
+            return deviceModel.equals("sRGB");
+        }
+
+        // PDFBOX-4114: fix profile that has the wrong display class,
+        // as done by Harald Kuhr in twelvemonkeys JPEGImageReader.ensureDisplayProfile()
+        private static ICC_Profile ensureDisplayProfile(ICC_Profile profile)
+        {
+            if (profile.getProfileClass() != ICC_Profile.CLASS_DISPLAY)
+            {
+                byte[] profileData = profile.getData(); // Need to clone entire profile, due to a OpenJDK bug
+
+                if (profileData[ICC_Profile.icHdrRenderingIntent] == ICC_Profile.icPerceptual)
+                {
+                    LOG.warn("ICC profile is Perceptual, ignoring, treating as Display class");
+                    intToBigEndian(ICC_Profile.icSigDisplayClass, profileData, ICC_Profile.icHdrDeviceClass);
+                    return ICC_Profile.getInstance(profileData);
+                }
+            }
+            return profile;
+        }
+
+        private static void intToBigEndian(int value, byte[] array, int index)
+        {
+            array[index] = (byte) (value >> 24);
+            array[index + 1] = (byte) (value >> 16);
+            array[index + 2] = (byte) (value >> 8);
+            array[index + 3] = (byte) (value);
+        }
+
+        /**
+         * Returns the profile as it is embedded in the document, e.g. to check its header.
+         *
+         * @return the profile, which must not be modified.
+         * @throws IOException if the data isn't a valid ICC profile.
+         * @throws IllegalArgumentException if the data isn't a valid ICC profile.
+         */
+        public ICC_Profile getProfile() throws IOException
+        {
+            if (profileError instanceof IOException)
+            {
+                throw new IOException(profileError.getMessage(), profileError);
+            }
+            if (profileError != null)
+            {
+                throw new IllegalArgumentException(profileError.getMessage(), profileError);
+            }
+            return profile;
+        }
+
+        /**
+         * Creates a color space for rendering. This is Java's built-in sRGB color space if the
+         * profile is sRGB, otherwise a new color space for every call, which the caller may keep
+         * but shouldn't share with other threads.
+         *
+         * @return the color space, or null if the profile can't be used, see
+         * {@link #getColorSpaceError()}.
+         */
+        public ICC_ColorSpace createColorSpace()
+        {
+            if (isSRGB)
+            {
+                return (ICC_ColorSpace) ColorSpace.getInstance(ColorSpace.CS_sRGB);
+            }
+            if (displayProfile == null)
+            {
+                return null;
+            }
+            // the color management modules aren't reliably thread safe, see PDFBOX-4309
+            synchronized (ICCProfileCache.class)
+            {
+                return new ICC_ColorSpace(displayProfile);
+            }
+        }
+
+        /**
+         * Returns the reason why the profile can't be used for rendering.
+         *
+         * @return the exception, or null if there is a color space.
+         */
+        public Exception getColorSpaceError()
+        {
+            return colorSpaceError;
+        }
+
+        /**
+         * Returns true if the profile is sRGB and the color space is Java's built-in sRGB.
+         */
+        public boolean isSRGB()
+        {
+            return isSRGB;
+        }
+    }
+}
@@ -17,19 +17,15 @@
 package org.apache.pdfbox.pdmodel.graphics.color;
 
 import java.awt.Color;
-import java.awt.Transparency;
 import java.awt.color.CMMException;
 import java.awt.color.ColorSpace;
 import java.awt.color.ICC_ColorSpace;
 import java.awt.color.ICC_Profile;
 import java.awt.color.ProfileDataException;
 import java.awt.image.BufferedImage;
-import java.awt.image.ComponentColorModel;
-import java.awt.image.DataBuffer;
 import java.awt.image.WritableRaster;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Arrays;
 import java.util.List;
 import java.util.StringTokenizer;
 import org.apache.commons.logging.Log;
@@ -46,7 +42,6 @@ import org.apache.pdfbox.pdmodel.PDResources;
 import org.apache.pdfbox.pdmodel.common.COSArrayList;
 import org.apache.pdfbox.pdmodel.common.PDRange;
 import org.apache.pdfbox.pdmodel.common.PDStream;
-import org.apache.pdfbox.util.Charsets;
 
 /**
  * ICCBased color spaces are based on a cross-platform color profile as defined by the
@@ -209,77 +204,70 @@ public final class PDICCBased extends PDCIEBasedColorSpace
               LOG.warn("Error initializing alternate color space: " + e.getLocalizedMessage());
             }
         }
+        // the profile is parsed and validated only once per process
+        ICCProfileCache.Entry entry;
         InputStream input = null;
         try
         {
             input = this.stream.createInputStream();
-
-            // if the embedded profile is sRGB then we can use Java's built-in profile, which
-            // results in a large performance gain as it's our native color space, see PDFBOX-2587
-            ICC_Profile profile;
-            synchronized (LOG)
-            {
-                profile = ICC_Profile.getInstance(input);
-                if (is_sRGB(profile))
-                {
-                    isRGB = true;
-                    awtColorSpace = (ICC_ColorSpace) ColorSpace.getInstance(ColorSpace.CS_sRGB);
-                    iccProfile = awtColorSpace.getProfile();
-                }
-                else
-                {
-                    profile = ensureDisplayProfile(profile);
-                    awtColorSpace = new ICC_ColorSpace(profile);
-                    iccProfile = profile;
-                }
-
-                // set initial colour
-                float[] initial = new float[getNumberOfComponents()];
-                for (int c = 0; c < getNumberOfComponents(); c++)
-                {
-                    initial[c] = Math.max(0, getRangeForComponent(c).getMin());
-                }
-                initialColor = new PDColor(initial, this);
-
-                if (IS_KCMS)
-                {
-                    // do things that trigger a ProfileDataException
-                    // or CMMException due to invalid profiles, see PDFBOX-1295 and PDFBOX-1740 (ü-file)
-                    // or ArrayIndexOutOfBoundsException, see PDFBOX-3610
-                    // also triggers a ProfileDataException for PDFBOX-3549 with KCMS
-                    new Color(awtColorSpace, new float[getNumberOfComponents()], 1f);
-                }
-                else
-                {
-                    // PDFBOX-4015: this one triggers "CMMException: LCMS error 13" with LCMS
-                    new ComponentColorModel(awtColorSpace, false, false,
-                            Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
-                }
-            }
+            entry = ICCProfileCache.get(input);
         }
-        catch (ProfileDataException e)
-        {
-            fallbackToAlternateColorSpace(e);
-        }
-        catch (CMMException e)
+        catch (IOException e)
         {
             fallbackToAlternateColorSpace(e);
+            return;
         }
-        catch (IllegalArgumentException e)
+        finally
         {
-            fallbackToAlternateColorSpace(e);
+            IOUtils.closeQuietly(input);
         }
-        catch (ArrayIndexOutOfBoundsException e)
+        ICC_ColorSpace colorSpace = entry.createColorSpace();
+        if (colorSpace == null)
         {
-            fallbackToAlternateColorSpace(e);
+            fallbackToAlternateColorSpace(entry.getColorSpaceError());
+            return;
         }
-        catch (IOException e)
+        awtColorSpace = colorSpace;
+        iccProfile = awtColorSpace.getProfile();
+        isRGB = entry.isSRGB();
+
+        // set initial colour
+        float[] initial = new float[getNumberOfComponents()];
+        for (int c = 0; c < getNumberOfComponents(); c++)
         {
-            fallbackToAlternateColorSpace(e);
+            initial[c] = Math.max(0, getRangeForComponent(c).getMin());
         }
-        finally
+        initialColor = new PDColor(initial, this);
+
+        if (IS_KCMS)
         {
-            IOUtils.closeQuietly(input);
+            try
+            {
+                synchronized (LOG)
+                {
+                    // do things that trigger a ProfileDataException
+                    // or CMMException due to invalid profiles, see PDFBOX-1295 and PDFBOX-1740 (ü-file)
+                    // or ArrayIndexOutOfBoundsException, see PDFBOX-3610
+                    // also triggers a ProfileDataException for PDFBOX-3549 with KCMS
+                    new Color(awtColorSpace, new float[getNumberOfComponents()], 1f);
+                }
+            }
+            catch (ProfileDataException e)
+            {
+                fallbackToAlternateColorSpace(e);
+            }
+            catch (CMMException e)
+            {
+                fallbackToAlternateColorSpace(e);
+            }
+            catch (IllegalArgumentException e)
+            {
+                fallbackToAlternateColorSpace(e);
+            }
+            catch (ArrayIndexOutOfBoundsException e)
+            {
+                fallbackToAlternateColorSpace(e);
+            }
         }
     }
 
@@ -299,43 +287,6 @@ public final class PDICCBased extends PDCIEBasedColorSpace
         initialColor = alternateColorSpace.getInitialColor();
     }
 
-    /**
-     * Returns true if the given profile is represents sRGB.
-     */
-    private boolean is_sRGB(ICC_Profile profile)
-    {
-        byte[] bytes = Arrays.copyOfRange(profile.getData(ICC_Profile.icSigHead),
-                ICC_Profile.icHdrModel, ICC_Profile.icHdrModel + 7);
-        String deviceModel = new String(bytes, Charsets.US_ASCII).trim();
-        return deviceModel.equals("sRGB");
-    }
-
-    // PDFBOX-4114: fix profile that has the wrong display class,
-    // as done by Harald Kuhr in twelvemonkeys JPEGImageReader.ensureDisplayProfile()
-    private static ICC_Profile ensureDisplayProfile(ICC_Profile profile)
-    {
-        if (profile.getProfileClass() != ICC_Profile.CLASS_DISPLAY)
-        {
-            byte[] profileData = profile.getData(); // Need to clone entire profile, due to a OpenJDK bug
-
-            if (profileData[ICC_Profile.icHdrRenderingIntent] == ICC_Profile.icPerceptual)
-            {
-                LOG.warn("ICC profile is Perceptual, ignoring, treating as Display class");
-            	intToBigEndian(ICC_Profile.icSigDisplayClass, profileData, ICC_Profile.icHdrDeviceClass);
-                return ICC_Profile.getInstance(profileData);
-            }
-        }
-        return profile;
-    }
-
-    private static void intToBigEndian(int value, byte[] array, int index)
-    {
-        array[index] = (byte) (value >> 24);
-        array[index + 1] = (byte) (value >> 16);
-        array[index + 2] = (byte) (value >> 8);
-        array[index + 3] = (byte) (value);
-    }
-
     @Override
     public float[] toRGB(float[] value) throws IOException
     {
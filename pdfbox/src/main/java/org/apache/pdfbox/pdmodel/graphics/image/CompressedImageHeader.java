@@ -0,0 +1,351 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.pdmodel.graphics.image;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.pdfbox.pdmodel.graphics.color.PDColorSpace;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceCMYK;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceGray;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceRGB;
+
+/**
+ * Reads the size, bit depth and number of components of JPEG and JPEG 2000 images from their
+ * headers, without decoding the image and without ImageIO. Only the bytes up to the frame header
+ * (JPEG SOF marker, JP2 image header box or J2K SIZ marker) are read.
+ */
+final class CompressedImageHeader
+{
+    private static final Log LOG = LogFactory.getLog(CompressedImageHeader.class);
+
+    // JPEG 2000 box types and signatures
+    private static final int JP2_SIGNATURE_BOX_LENGTH = 12;
+    private static final int JP2_SIGNATURE_BOX = 0x6A502020; // "jP  "
+    private static final int JP2_SIGNATURE = 0x0D0A870A;
+    private static final int JP2_HEADER_BOX = 0x6A703268; // "jp2h"
+    private static final int JP2_IMAGE_HEADER_BOX = 0x69686472; // "ihdr"
+    private static final int JP2_COLOUR_BOX = 0x636F6C72; // "colr"
+    private static final int JP2_CODESTREAM_BOX = 0x6A703263; // "jp2c"
+    private static final int J2K_SOC_SIZ = 0xFF4FFF51;
+
+    // enumerated colour spaces of the JP2 colour specification box
+    private static final int JP2_CS_CMYK = 12;
+    private static final int JP2_CS_SRGB = 16;
+    private static final int JP2_CS_GREYSCALE = 17;
+    private static final int JP2_CS_SYCC = 18;
+
+    private final int width;
+    private final int height;
+    private final int bitsPerComponent;
+    private final int numComponents;
+    private final int enumeratedColorSpace;
+
+    private CompressedImageHeader(int width, int height, int bitsPerComponent, int numComponents,
+            int enumeratedColorSpace)
+    {
+        this.width = width;
+        this.height = height;
+        this.bitsPerComponent = bitsPerComponent;
+        this.numComponents = numComponents;
+        this.enumeratedColorSpace = enumeratedColorSpace;
+    }
+
+    int getWidth()
+    {
+        return width;
+    }
+
+    int getHeight()
+    {
+        return height;
+    }
+
+    int getBitsPerComponent()
+    {
+        return bitsPerComponent;
+    }
+
+    int getNumComponents()
+    {
+        return numComponents;
+    }
+
+    /**
+     * Returns the device color space that matches the image data.
+     *
+     * @return the color space, or null if the number of components isn't supported.
+     */
+    PDColorSpace getColorSpace()
+    {
+        switch (enumeratedColorSpace)
+        {
+            case JP2_CS_GREYSCALE:
+                return PDDeviceGray.INSTANCE;
+            case JP2_CS_SRGB:
+            case JP2_CS_SYCC:
+                return PDDeviceRGB.INSTANCE;
+            case JP2_CS_CMYK:
+                return PDDeviceCMYK.INSTANCE;
+            default:
+                break;
+        }
+        switch (numComponents)
+        {
+            case 1:
+                return PDDeviceGray.INSTANCE;
+            case 3:
+                return PDDeviceRGB.INSTANCE;
+            case 4:
+                return PDDeviceCMYK.INSTANCE;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Reads the header of a JPEG (DCT) image up to the first SOF marker.
+     *
+     * @param input the JPEG data, positioned at the SOI marker. The stream is not closed.
+     * @return the header, or null if the data couldn't be parsed, e.g. because the height is only
+     * given in a DNL marker.
+     * @throws IOException if the stream could not be read.
+     */
+    static CompressedImageHeader readJPEG(InputStream input) throws IOException
+    {
+        DataInputStream in = new DataInputStream(input);
+        try
+        {
+            if (in.readUnsignedByte() != 0xFF || in.readUnsignedByte() != 0xD8)
+            {
+                return null;
+            }
+            while (true)
+            {
+                if (in.readUnsignedByte() != 0xFF)
+                {
+                    LOG.debug("JPEG marker expected");
+                    return null;
+                }
+                int marker;
+                do
+                {
+                    // skip fill bytes
+                    marker = in.readUnsignedByte();
+                }
+                while (marker == 0xFF);
+
+                if (marker == 0xD9 || marker == 0xDA)
+                {
+                    // EOI or SOS before any SOF
+                    return null;
+                }
+                if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7))
+                {
+                    // TEM and RSTn have no length
+                    continue;
+                }
+                int length = in.readUnsignedShort();
+                if (length < 2)
+                {
+                    return null;
+                }
+                if (isStartOfFrame(marker))
+                {
+                    int precision = in.readUnsignedByte();
+                    int h = in.readUnsignedShort();
+                    int w = in.readUnsignedShort();
+                    int nc = in.readUnsignedByte();
+                    if (w == 0 || h == 0 || nc == 0)
+                    {
+                        return null;
+                    }
+                    return new CompressedImageHeader(w, h, precision, nc, 0);
+                }
+                skipFully(in, length - 2);
+            }
+        }
+        catch (EOFException ex)
+        {
+            LOG.debug("Premature end of JPEG header", ex);
+            return null;
+        }
+    }
+
+    /**
+     * Reads the header of a JPEG 2000 image, either a JP2 file or a raw J2K codestream.
+     *
+     * @param input the JPEG 2000 data, positioned at the start. The stream is not closed.
+     * @return the header, or null if the data couldn't be parsed.
+     * @throws IOException if the stream could not be read.
+     */
+    static CompressedImageHeader readJPEG2000(InputStream input) throws IOException
+    {
+        DataInputStream in = new DataInputStream(input);
+        try
+        {
+            int first = in.readInt();
+            if (first == J2K_SOC_SIZ)
+            {
+                return readCodestreamSize(in);
+            }
+            if (first != JP2_SIGNATURE_BOX_LENGTH || in.readInt() != JP2_SIGNATURE_BOX
+                    || in.readInt() != JP2_SIGNATURE)
+            {
+                return null;
+            }
+            while (true)
+            {
+                long length = in.readInt() & 0xFFFFFFFFL;
+                int type = in.readInt();
+                long contentLength;
+                if (length == 1)
+                {
+                    contentLength = in.readLong() - 16;
+                }
+                else if (length == 0)
+                {
+                    // box extends to the end of the file
+                    contentLength = Long.MAX_VALUE;
+                }
+                else
+                {
+                    contentLength = length - 8;
+                }
+                if (type == JP2_HEADER_BOX)
+                {
+                    return readJP2Header(in, contentLength);
+                }
+                if (type == JP2_CODESTREAM_BOX || length == 0 || contentLength < 0)
+                {
+                    return null;
+                }
+                skipFully(in, contentLength);
+            }
+        }
+        catch (EOFException ex)
+        {
+            LOG.debug("Premature end of JPEG 2000 header", ex);
+            return null;
+        }
+    }
+
+    private static CompressedImageHeader readJP2Header(DataInputStream in, long superBoxLength)
+            throws IOException
+    {
+        int w = 0;
+        int h = 0;
+        int nc = 0;
+        int bpc = 0;
+        int enumCS = 0;
+        long remaining = superBoxLength;
+        while (remaining >= 8)
+        {
+            long length = in.readInt() & 0xFFFFFFFFL;
+            int type = in.readInt();
+            if (length < 8 || length > remaining)
+            {
+                break;
+            }
+            long contentLength = length - 8;
+            if (type == JP2_IMAGE_HEADER_BOX && contentLength >= 14)
+            {
+                h = in.readInt();
+                w = in.readInt();
+                nc = in.readUnsignedShort();
+                bpc = in.readUnsignedByte();
+                skipFully(in, contentLength - 11);
+            }
+            else if (type == JP2_COLOUR_BOX && contentLength >= 7)
+            {
+                int method = in.readUnsignedByte();
+                skipFully(in, 2); // precedence and approximation
+                if (method == 1)
+                {
+                    enumCS = in.readInt();
+                    skipFully(in, contentLength - 7);
+                }
+                else
+                {
+                    skipFully(in, contentLength - 3);
+                }
+            }
+            else
+            {
+                skipFully(in, contentLength);
+            }
+            remaining -= length;
+        }
+        if (w <= 0 || h <= 0 || nc == 0)
+        {
+            return null;
+        }
+        // 255 means that the bit depth varies by component, 8 is the most common
+        int bitsPerComponent = bpc == 255 ? 8 : (bpc & 0x7F) + 1;
+        return new CompressedImageHeader(w, h, bitsPerComponent, nc, enumCS);
+    }
+
+    private static CompressedImageHeader readCodestreamSize(DataInputStream in) throws IOException
+    {
+        // SIZ marker segment: Lsiz, Rsiz, Xsiz, Ysiz, XOsiz, YOsiz, XTsiz, YTsiz, XTOsiz, YTOsiz,
+        // Csiz, then Ssiz, XRsiz, YRsiz for each component
+        skipFully(in, 4);
+        long xsiz = in.readInt() & 0xFFFFFFFFL;
+        long ysiz = in.readInt() & 0xFFFFFFFFL;
+        long xosiz = in.readInt() & 0xFFFFFFFFL;
+        long yosiz = in.readInt() & 0xFFFFFFFFL;
+        skipFully(in, 16);
+        int nc = in.readUnsignedShort();
+        int ssiz = in.readUnsignedByte();
+        long w = xsiz - xosiz;
+        long h = ysiz - yosiz;
+        if (w <= 0 || h <= 0 || w > Integer.MAX_VALUE || h > Integer.MAX_VALUE || nc == 0)
+        {
+            return null;
+        }
+        return new CompressedImageHeader((int) w, (int) h, (ssiz & 0x7F) + 1, nc, 0);
+    }
+
+    private static boolean isStartOfFrame(int marker)
+    {
+        // SOF0 - SOF15, except DHT (C4), JPG (C8) and DAC (CC)
+        return marker >= 0xC0 && marker <= 0xCF
+                && marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+    }
+
+    private static void skipFully(DataInputStream in, long count) throws IOException
+    {
+        long remaining = count;
+        while (remaining > 0)
+        {
+            long skipped = in.skip(remaining);
+            if (skipped <= 0)
+            {
+                // skip() may return 0 without being at the end, read() tells for sure
+                if (in.read() == -1)
+                {
+                    throw new EOFException();
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+}
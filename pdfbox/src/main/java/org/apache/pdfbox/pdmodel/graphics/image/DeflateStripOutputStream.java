@@ -0,0 +1,297 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.pdmodel.graphics.image;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Deflates one strip of a larger data block into raw deflate data that can be concatenated with
+ * the strips before and after it into a single zlib stream, the same way pigz does it. All strips
+ * except the last one end with a sync flush, so that they stop on a byte boundary without setting
+ * the final block bit. The last strip is finished normally. The zlib header and the Adler-32
+ * trailer of the complete stream are written with {@link #writeZlibHeader(OutputStream, int)} and
+ * {@link #writeZlibTrailer(OutputStream, long)}.
+ */
+final class DeflateStripOutputStream extends OutputStream
+{
+    private static final Log LOG = LogFactory.getLog(DeflateStripOutputStream.class);
+
+    // Deflater.SYNC_FLUSH, not available before Java 7
+    private static final int SYNC_FLUSH = 2;
+
+    private static final int ADLER_BASE = 65521;
+
+    private static final Method DEFLATE_WITH_FLUSH;
+
+    static
+    {
+        Method method = null;
+        try
+        {
+            method = Deflater.class.getMethod("deflate", byte[].class, int.class, int.class,
+                    int.class);
+        }
+        catch (NoSuchMethodException ex)
+        {
+            LOG.debug("Deflater.SYNC_FLUSH is not available, images will be deflated by one thread");
+        }
+        DEFLATE_WITH_FLUSH = method;
+    }
+
+    private final Deflater deflater;
+    private final boolean lastStrip;
+    private final Adler32 adler32 = new Adler32();
+    private final ByteArrayOutputStream compressed;
+    private final byte[] buffer = new byte[16384];
+    private long uncompressedLength;
+    private boolean closed;
+
+    /**
+     * Constructor.
+     *
+     * @param compressionLevel the deflate compression level.
+     * @param lastStrip true if this is the last strip of the stream.
+     * @param expectedSize the expected size of the compressed data, used to pre-size the buffer.
+     */
+    DeflateStripOutputStream(int compressionLevel, boolean lastStrip, int expectedSize)
+    {
+        this.deflater = new Deflater(compressionLevel, true);
+        this.lastStrip = lastStrip;
+        this.compressed = new ByteArrayOutputStream(Math.max(32, expectedSize));
+    }
+
+    /**
+     * Tells whether strips can be deflated independently, which requires a sync flush.
+     *
+     * @return true if this JVM supports {@code Deflater.SYNC_FLUSH}.
+     */
+    static boolean isSupported()
+    {
+        return DEFLATE_WITH_FLUSH != null;
+    }
+
+    @Override
+    public void write(int b) throws IOException
+    {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+        if (closed)
+        {
+            throw new IOException("Stream is closed");
+        }
+        if (len == 0)
+        {
+            return;
+        }
+        adler32.update(b, off, len);
+        uncompressedLength += len;
+        deflater.setInput(b, off, len);
+        while (!deflater.needsInput())
+        {
+            int count = deflater.deflate(buffer, 0, buffer.length);
+            compressed.write(buffer, 0, count);
+        }
+    }
+
+    /**
+     * Finishes the strip: the last strip is finished, all others are sync flushed.
+     *
+     * @throws IOException if the sync flush is not supported or fails.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if (closed)
+        {
+            return;
+        }
+        closed = true;
+        try
+        {
+            if (lastStrip)
+            {
+                deflater.finish();
+                while (!deflater.finished())
+                {
+                    int count = deflater.deflate(buffer, 0, buffer.length);
+                    compressed.write(buffer, 0, count);
+                }
+            }
+            else
+            {
+                syncFlush();
+            }
+        }
+        finally
+        {
+            deflater.end();
+        }
+    }
+
+    private void syncFlush() throws IOException
+    {
+        if (DEFLATE_WITH_FLUSH == null)
+        {
+            throw new IOException("Deflater.SYNC_FLUSH is not supported by this JVM");
+        }
+        try
+        {
+            int count;
+            do
+            {
+                // the flush is complete when the buffer isn't filled completely
+                count = (Integer) DEFLATE_WITH_FLUSH.invoke(deflater, buffer, 0, buffer.length,
+                        SYNC_FLUSH);
+                compressed.write(buffer, 0, count);
+            }
+            while (count == buffer.length);
+        }
+        catch (IllegalAccessException ex)
+        {
+            throw new IOException(ex);
+        }
+        catch (InvocationTargetException ex)
+        {
+            throw new IOException(ex.getCause());
+        }
+    }
+
+    /**
+     * Returns the compressed data of this strip. Only valid after {@link #close()}.
+     *
+     * @return the raw deflate data.
+     */
+    byte[] toByteArray()
+    {
+        return compressed.toByteArray();
+    }
+
+    /**
+     * Returns the Adler-32 checksum of the uncompressed data of this strip.
+     *
+     * @return the checksum.
+     */
+    long getAdler32()
+    {
+        return adler32.getValue();
+    }
+
+    /**
+     * Returns the number of uncompressed bytes written to this strip.
+     *
+     * @return the uncompressed length.
+     */
+    long getUncompressedLength()
+    {
+        return uncompressedLength;
+    }
+
+    /**
+     * Writes the two byte zlib header (RFC 1950) for a 32K window and the given compression level.
+     *
+     * @param out the stream to write to.
+     * @param compressionLevel the deflate compression level.
+     * @throws IOException if the stream could not be written.
+     */
+    static void writeZlibHeader(OutputStream out, int compressionLevel) throws IOException
+    {
+        int cmf = 0x78;
+        int flevel;
+        if (compressionLevel == Deflater.DEFAULT_COMPRESSION || compressionLevel == 6)
+        {
+            flevel = 2;
+        }
+        else if (compressionLevel < 2)
+        {
+            flevel = 0;
+        }
+        else if (compressionLevel < 6)
+        {
+            flevel = 1;
+        }
+        else
+        {
+            flevel = 3;
+        }
+        int flg = flevel << 6;
+        flg += 31 - ((cmf << 8) + flg) % 31;
+        out.write(cmf);
+        out.write(flg);
+    }
+
+    /**
+     * Writes the Adler-32 checksum of the complete uncompressed data which ends a zlib stream.
+     *
+     * @param out the stream to write to.
+     * @param adler32 the checksum.
+     * @throws IOException if the stream could not be written.
+     */
+    static void writeZlibTrailer(OutputStream out, long adler32) throws IOException
+    {
+        out.write((int) (adler32 >> 24) & 0xFF);
+        out.write((int) (adler32 >> 16) & 0xFF);
+        out.write((int) (adler32 >> 8) & 0xFF);
+        out.write((int) adler32 & 0xFF);
+    }
+
+    /**
+     * Combines the Adler-32 checksums of two consecutive data blocks into the checksum of the
+     * concatenated data, like zlib's {@code adler32_combine()}.
+     *
+     * @param adler1 the checksum of the first block.
+     * @param adler2 the checksum of the second block.
+     * @param length2 the length of the second block.
+     * @return the checksum of both blocks.
+     */
+    static long combineAdler32(long adler1, long adler2, long length2)
+    {
+        long rem = length2 % ADLER_BASE;
+        long sum1 = adler1 & 0xFFFF;
+        long sum2 = (rem * sum1) % ADLER_BASE;
+        sum1 += (adler2 & 0xFFFF) + ADLER_BASE - 1;
+        sum2 += ((adler1 >> 16) & 0xFFFF) + ((adler2 >> 16) & 0xFFFF) + ADLER_BASE - rem;
+        if (sum1 >= ADLER_BASE)
+        {
+            sum1 -= ADLER_BASE;
+        }
+        if (sum1 >= ADLER_BASE)
+        {
+            sum1 -= ADLER_BASE;
+        }
+        if (sum2 >= ((long) ADLER_BASE << 1))
+        {
+            sum2 -= (long) ADLER_BASE << 1;
+        }
+        if (sum2 >= ADLER_BASE)
+        {
+            sum2 -= ADLER_BASE;
+        }
+        return sum1 | (sum2 << 16);
+    }
+}
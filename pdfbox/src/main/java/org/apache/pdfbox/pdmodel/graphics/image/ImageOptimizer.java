@@ -0,0 +1,663 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.pdmodel.graphics.image;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.pdfbox.contentstream.PDFStreamEngine;
+import org.apache.pdfbox.contentstream.operator.DrawObject;
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.contentstream.operator.OperatorName;
+import org.apache.pdfbox.contentstream.operator.state.Concatenate;
+import org.apache.pdfbox.contentstream.operator.state.Restore;
+import org.apache.pdfbox.contentstream.operator.state.Save;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.graphics.PDXObject;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceGray;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotation;
+import org.apache.pdfbox.util.Matrix;
+
+/**
+ * Reduces the size of the images of a document by downsampling those whose resolution is higher
+ * than needed, and encoding them again.
+ * <p>
+ * The effective resolution of an image is determined by processing the content streams of the
+ * pages and the appearance streams of their annotations: it is the number of image pixels per
+ * inch of the displayed image, at the largest size the image is drawn at. Images whose effective
+ * resolution in either direction exceeds 1.5 times the target resolution are scaled down to the
+ * target resolution with area averaging. Bilevel images are encoded with CCITT group 4, images
+ * which were DCT or JPX compressed and images with many colors with DCT, and all other images
+ * with Flate. Images are decoded, scaled and encoded in parallel, and the new data replaces the
+ * data of the existing image streams, so all references to the images remain valid. An image is
+ * only replaced if it gets smaller.
+ * <p>
+ * Images which are only used in patterns, Type 3 glyphs or soft masks, inline images, stencil
+ * masks and images with a color key mask aren't changed. Color images are converted to
+ * DeviceRGB.
+ */
+public final class ImageOptimizer
+{
+    private static final Log LOG = LogFactory.getLog(ImageOptimizer.class);
+
+    // images are downsampled if their resolution is higher than this factor times the target
+    private static final float THRESHOLD = 1.5f;
+
+    // images with more colors are photographic and encoded with DCT
+    private static final int MAX_LOSSLESS_COLORS = 256;
+
+    // the entries of an image dictionary which are kept when the image data is replaced
+    private static final COSName[] KEPT_KEYS = { COSName.SMASK, COSName.MASK, COSName.METADATA,
+            COSName.OC, COSName.INTENT, COSName.INTERPOLATE, COSName.STRUCT_PARENT, COSName.ID,
+            COSName.NAME };
+
+    private float targetResolution = 150;
+    private float jpegQuality = 0.75f;
+    private int threadCount = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Returns the resolution, in dots per inch, to which images are downsampled.
+     *
+     * @return the target resolution. The default is 150.
+     */
+    public float getTargetResolution()
+    {
+        return targetResolution;
+    }
+
+    /**
+     * Sets the resolution, in dots per inch, to which images are downsampled. Images whose
+     * resolution is more than 1.5 times higher are downsampled.
+     *
+     * @param targetResolution the target resolution.
+     * @throws IllegalArgumentException if the resolution isn't positive.
+     */
+    public void setTargetResolution(float targetResolution)
+    {
+        if (!(targetResolution > 0))
+        {
+            throw new IllegalArgumentException("Invalid target resolution: " + targetResolution);
+        }
+        this.targetResolution = targetResolution;
+    }
+
+    /**
+     * Returns the quality of DCT encoded images.
+     *
+     * @return the quality, between 0 and 1. The default is 0.75.
+     */
+    public float getJPEGQuality()
+    {
+        return jpegQuality;
+    }
+
+    /**
+     * Sets the quality of DCT encoded images, see
+     * {@link JPEGFactory#createFromImage(PDDocument, BufferedImage, float)}.
+     *
+     * @param quality the quality, between 0 and 1.
+     * @throws IllegalArgumentException if the quality is out of range.
+     */
+    public void setJPEGQuality(float quality)
+    {
+        if (!(quality >= 0 && quality <= 1))
+        {
+            throw new IllegalArgumentException("Invalid JPEG quality: " + quality);
+        }
+        this.jpegQuality = quality;
+    }
+
+    /**
+     * Returns the maximum number of threads used to process images. The default is the number of
+     * available processors.
+     *
+     * @return the number of threads.
+     */
+    public int getThreadCount()
+    {
+        return threadCount;
+    }
+
+    /**
+     * Sets the maximum number of threads used to process images.
+     *
+     * @param threadCount the number of threads, 1 means that images are processed one after the
+     * other.
+     * @throws IllegalArgumentException if the number is less than 1.
+     */
+    public void setThreadCount(int threadCount)
+    {
+        if (threadCount < 1)
+        {
+            throw new IllegalArgumentException("threadCount must be at least 1");
+        }
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * Downsamples and encodes the images of a document whose resolution is higher than needed.
+     * Images which can't be read are logged and kept.
+     *
+     * @param document the document
+     * @return the number of replaced images
+     * @throws IOException if a content stream can't be processed
+     */
+    public int optimize(final PDDocument document) throws IOException
+    {
+        ResolutionCollector collector = new ResolutionCollector();
+        for (PDPage page : document.getPages())
+        {
+            collector.processPage(page);
+            for (PDAnnotation annotation : page.getAnnotations())
+            {
+                collector.showAnnotation(annotation);
+            }
+        }
+
+        final List<ImageUsage> usages = new ArrayList<ImageUsage>();
+        for (ImageUsage usage : collector.usages.values())
+        {
+            if (usage.computeTargetSize(targetResolution))
+            {
+                usages.add(usage);
+            }
+        }
+        if (usages.isEmpty())
+        {
+            return 0;
+        }
+
+        List<Future<PDImageXObject>> futures = new ArrayList<Future<PDImageXObject>>(usages.size());
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(threadCount, usages.size()));
+        try
+        {
+            for (final ImageUsage usage : usages)
+            {
+                futures.add(executor.submit(new Callable<PDImageXObject>()
+                {
+                    @Override
+                    public PDImageXObject call()
+                    {
+                        try
+                        {
+                            return encode(document, usage);
+                        }
+                        catch (IOException e)
+                        {
+                            LOG.warn("Could not optimize image, it is kept", e);
+                            return null;
+                        }
+                    }
+                }));
+            }
+
+            int count = 0;
+            for (int i = 0; i < usages.size(); i++)
+            {
+                PDImageXObject replacement = getResult(futures.get(i));
+                COSStream target = usages.get(i).image.getCOSObject();
+                if (replacement != null && replacement.getCOSObject().getLength() < target.getLength())
+                {
+                    replace(target, replacement.getCOSObject());
+                    count++;
+                }
+                if (replacement != null)
+                {
+                    replacement.getCOSObject().close();
+                }
+            }
+            return count;
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    private PDImageXObject encode(PDDocument document, ImageUsage usage) throws IOException
+    {
+        PDImageXObject image = usage.image;
+        List<COSName> filters = image.getStream().getFilters();
+        boolean lossy = filters.contains(COSName.DCT_DECODE) || filters.contains(COSName.JPX_DECODE);
+
+        boolean bilevel = image.getBitsPerComponent() == 1
+                && image.getColorSpace() instanceof PDDeviceGray;
+
+        // bilevel images are averaged to gray when they are subsampled, all others are decoded
+        // fully, because subsampling would skip pixels, i.e. alias halftones into moire, instead
+        // of averaging them in downsample()
+        int subsampling = 1;
+        if (bilevel)
+        {
+            subsampling = Math.max(1, Math.min(image.getWidth() / usage.width,
+                    image.getHeight() / usage.height));
+        }
+        BufferedImage decoded = SampledImageReader.getRGBImage(image, null, subsampling, null);
+        BufferedImage scaled = downsample(decoded, usage.width, usage.height);
+
+        if (bilevel)
+        {
+            return CCITTFactory.createFromImage(document, toBinaryImage(scaled));
+        }
+        if (lossy || !hasFewColors(scaled))
+        {
+            return JPEGFactory.createFromImage(document, scaled, jpegQuality);
+        }
+        // the images are already encoded in parallel
+        LosslessEncoderParameters parameters = new LosslessEncoderParameters();
+        parameters.setThreadCount(1);
+        return LosslessFactory.createFromImage(document, scaled, parameters);
+    }
+
+    /**
+     * Replaces the data and the image attributes of an image stream by those of another one.
+     */
+    private static void replace(COSStream target, COSStream source) throws IOException
+    {
+        COSDictionary kept = new COSDictionary();
+        for (COSName key : KEPT_KEYS)
+        {
+            COSBase value = target.getItem(key);
+            if (value != null)
+            {
+                kept.setItem(key, value);
+            }
+        }
+        target.clear();
+        target.addAll(source);
+        target.addAll(kept);
+
+        InputStream input = source.createRawInputStream();
+        try
+        {
+            OutputStream output = target.createRawOutputStream();
+            try
+            {
+                IOUtils.copy(input, output);
+            }
+            finally
+            {
+                output.close();
+            }
+        }
+        finally
+        {
+            input.close();
+        }
+        target.setNeedToBeUpdated(true);
+    }
+
+    private static PDImageXObject getResult(Future<PDImageXObject> future) throws IOException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while optimizing images");
+        }
+        catch (ExecutionException ex)
+        {
+            if (ex.getCause() instanceof IOException)
+            {
+                throw (IOException) ex.getCause();
+            }
+            throw new IOException(ex.getCause());
+        }
+    }
+
+    /**
+     * Scales an image down with area averaging, i.e. each target pixel is the average of the
+     * source pixels it covers, weighted by the covered area. The result is a TYPE_BYTE_GRAY image
+     * for gray and black-and-white images and a TYPE_INT_RGB image for all others.
+     *
+     * @param image the image
+     * @param width the target width, not larger than the width of the image
+     * @param height the target height, not larger than the height of the image
+     * @return the scaled image
+     */
+    static BufferedImage downsample(BufferedImage image, int width, int height)
+    {
+        if (image.getType() == BufferedImage.TYPE_BYTE_BINARY && isGray(image.getColorModel()))
+        {
+            BufferedImage grayImage = new BufferedImage(image.getWidth(), image.getHeight(),
+                    BufferedImage.TYPE_BYTE_GRAY);
+            Graphics2D g = grayImage.createGraphics();
+            g.drawImage(image, 0, 0, null);
+            g.dispose();
+            image = grayImage;
+        }
+        else if (image.getType() != BufferedImage.TYPE_BYTE_GRAY
+                && image.getType() != BufferedImage.TYPE_INT_RGB)
+        {
+            BufferedImage rgbImage = new BufferedImage(image.getWidth(), image.getHeight(),
+                    BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = rgbImage.createGraphics();
+            g.drawImage(image, 0, 0, null);
+            g.dispose();
+            image = rgbImage;
+        }
+        if (width == image.getWidth() && height == image.getHeight())
+        {
+            return image;
+        }
+
+        Raster source = image.getRaster();
+        int bands = source.getNumBands();
+        int sourceWidth = image.getWidth();
+        BufferedImage result = new BufferedImage(width, height, image.getType());
+        WritableRaster target = result.getRaster();
+        Span[] columns = Span.create(sourceWidth, width);
+        Span[] rows = Span.create(image.getHeight(), height);
+
+        int[] sourceRow = new int[sourceWidth * bands];
+        float[] scaledRow = new float[width * bands];
+        float[] sum = new float[width * bands];
+        int[] targetRow = new int[width * bands];
+        int scaledRowIndex = -1;
+        for (int y = 0; y < height; y++)
+        {
+            Span span = rows[y];
+            Arrays.fill(sum, 0);
+            for (int i = 0; i < span.weights.length; i++)
+            {
+                int sourceY = span.start + i;
+                if (sourceY != scaledRowIndex)
+                {
+                    // rows at the border of two target rows are scaled once
+                    source.getPixels(0, sourceY, sourceWidth, 1, sourceRow);
+                    scaleRow(sourceRow, scaledRow, columns, bands);
+                    scaledRowIndex = sourceY;
+                }
+                float weight = span.weights[i];
+                for (int x = 0; x < sum.length; x++)
+                {
+                    sum[x] += weight * scaledRow[x];
+                }
+            }
+            for (int x = 0; x < sum.length; x++)
+            {
+                targetRow[x] = Math.min(255, Math.round(sum[x]));
+            }
+            target.setPixels(0, y, width, 1, targetRow);
+        }
+        return result;
+    }
+
+    private static void scaleRow(int[] sourceRow, float[] scaledRow, Span[] columns, int bands)
+    {
+        for (int x = 0; x < columns.length; x++)
+        {
+            Span span = columns[x];
+            for (int band = 0; band < bands; band++)
+            {
+                float value = 0;
+                int offset = span.start * bands + band;
+                for (int i = 0; i < span.weights.length; i++)
+                {
+                    value += span.weights[i] * sourceRow[offset];
+                    offset += bands;
+                }
+                scaledRow[x * bands + band] = value;
+            }
+        }
+    }
+
+    private static boolean isGray(ColorModel colorModel)
+    {
+        if (!(colorModel instanceof IndexColorModel))
+        {
+            return false;
+        }
+        IndexColorModel indexColorModel = (IndexColorModel) colorModel;
+        for (int i = 0; i < indexColorModel.getMapSize(); i++)
+        {
+            int red = indexColorModel.getRed(i);
+            if (red != indexColorModel.getGreen(i) || red != indexColorModel.getBlue(i))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static BufferedImage toBinaryImage(BufferedImage image)
+    {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        BufferedImage binary = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_BINARY);
+        Raster source = image.getRaster();
+        WritableRaster target = binary.getRaster();
+        boolean gray = source.getNumBands() == 1;
+        int[] row = new int[width * source.getNumBands()];
+        int[] binaryRow = new int[width];
+        for (int y = 0; y < height; y++)
+        {
+            source.getPixels(0, y, width, 1, row);
+            for (int x = 0; x < width; x++)
+            {
+                int value = gray ? row[x] : (row[3 * x] + row[3 * x + 1] + row[3 * x + 2]) / 3;
+                binaryRow[x] = value < 128 ? 0 : 1;
+            }
+            target.setPixels(0, y, width, 1, binaryRow);
+        }
+        return binary;
+    }
+
+    private static boolean hasFewColors(BufferedImage image)
+    {
+        if (image.getType() == BufferedImage.TYPE_BYTE_GRAY)
+        {
+            return false;
+        }
+        Set<Integer> colors = new HashSet<Integer>();
+        int width = image.getWidth();
+        int[] row = new int[width];
+        for (int y = 0; y < image.getHeight(); y++)
+        {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int rgb : row)
+            {
+                if (colors.add(rgb) && colors.size() > MAX_LOSSLESS_COLORS)
+                {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The source pixels covered by a target pixel, and the covered fraction of each of them,
+     * divided by the size of the target pixel.
+     */
+    private static final class Span
+    {
+        private final int start;
+        private final float[] weights;
+
+        private Span(int start, float[] weights)
+        {
+            this.start = start;
+            this.weights = weights;
+        }
+
+        static Span[] create(int sourceSize, int targetSize)
+        {
+            double scale = (double) sourceSize / targetSize;
+            Span[] spans = new Span[targetSize];
+            for (int i = 0; i < targetSize; i++)
+            {
+                double from = i * scale;
+                double to = Math.min(sourceSize, (i + 1) * scale);
+                int start = (int) from;
+                int end = Math.min(sourceSize, (int) Math.ceil(to));
+                float[] weights = new float[end - start];
+                for (int j = start; j < end; j++)
+                {
+                    weights[j - start] = (float) ((Math.min(to, j + 1) - Math.max(from, j)) / scale);
+                }
+                spans[i] = new Span(start, weights);
+            }
+            return spans;
+        }
+    }
+
+    /**
+     * An image with the highest scale at which it is drawn, and the size it is scaled to.
+     */
+    private static final class ImageUsage
+    {
+        private final PDImageXObject image;
+        private float maxScaleX;
+        private float maxScaleY;
+        private int width;
+        private int height;
+
+        ImageUsage(PDImageXObject image)
+        {
+            this.image = image;
+        }
+
+        /**
+         * Computes the target size of the image, and returns whether it has to be downsampled.
+         */
+        boolean computeTargetSize(float targetResolution)
+        {
+            float resolutionX = image.getWidth() * 72 / maxScaleX;
+            float resolutionY = image.getHeight() * 72 / maxScaleY;
+            if (resolutionX <= targetResolution * THRESHOLD
+                    && resolutionY <= targetResolution * THRESHOLD)
+            {
+                return false;
+            }
+            width = Math.min(image.getWidth(),
+                    Math.max(1, (int) Math.ceil(maxScaleX * targetResolution / 72)));
+            height = Math.min(image.getHeight(),
+                    Math.max(1, (int) Math.ceil(maxScaleY * targetResolution / 72)));
+            return true;
+        }
+    }
+
+    /**
+     * Records the largest size at which each image is drawn.
+     */
+    private static final class ResolutionCollector extends PDFStreamEngine
+    {
+        private final Map<COSStream, ImageUsage> usages =
+                new IdentityHashMap<COSStream, ImageUsage>();
+
+        ResolutionCollector()
+        {
+            addOperator(new Concatenate());
+            addOperator(new DrawObject());
+            addOperator(new Save());
+            addOperator(new Restore());
+        }
+
+        @Override
+        protected void processOperator(Operator operator, List<COSBase> operands)
+                throws IOException
+        {
+            if (OperatorName.DRAW_OBJECT.equals(operator.getName()) && !operands.isEmpty()
+                    && operands.get(0) instanceof COSName
+                    && getResources().isImageXObject((COSName) operands.get(0)))
+            {
+                PDXObject xobject = getResources().getXObject((COSName) operands.get(0));
+                if (xobject instanceof PDImageXObject)
+                {
+                    addUsage((PDImageXObject) xobject);
+                }
+            }
+            else
+            {
+                super.processOperator(operator, operands);
+            }
+        }
+
+        private void addUsage(PDImageXObject image)
+        {
+            if (!isSupported(image))
+            {
+                return;
+            }
+            // the lengths of the image's unit vectors on the page, the signed scaling factors
+            // would miss flipped images
+            Matrix ctm = getGraphicsState().getCurrentTransformationMatrix();
+            float scaleX = (float) Math.hypot(ctm.getValue(0, 0), ctm.getValue(0, 1));
+            float scaleY = (float) Math.hypot(ctm.getValue(1, 0), ctm.getValue(1, 1));
+            if (!(scaleX > 0 && scaleY > 0))
+            {
+                return;
+            }
+            ImageUsage usage = usages.get(image.getCOSObject());
+            if (usage == null)
+            {
+                usage = new ImageUsage(image);
+                usages.put(image.getCOSObject(), usage);
+            }
+            usage.maxScaleX = Math.max(usage.maxScaleX, scaleX);
+            usage.maxScaleY = Math.max(usage.maxScaleY, scaleY);
+        }
+
+        private static boolean isSupported(PDImageXObject image)
+        {
+            COSStream stream = image.getCOSObject();
+            if (image.isStencil() || image.getWidth() <= 0 || image.getHeight() <= 0
+                    || stream.getDictionaryObject(COSName.MASK) instanceof COSArray
+                    || stream.containsKey(COSName.getPDFName("SMaskInData")))
+            {
+                return false;
+            }
+            // the soft mask must have the size of the image if it has a matte color
+            COSBase softMask = stream.getDictionaryObject(COSName.SMASK);
+            return !(softMask instanceof COSDictionary
+                    && ((COSDictionary) softMask).containsKey(COSName.MATTE));
+        }
+    }
+}
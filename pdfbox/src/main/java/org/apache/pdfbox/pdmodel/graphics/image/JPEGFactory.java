@@ -25,6 +25,8 @@ import java.awt.image.Raster;
 import java.awt.image.WritableRaster;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.InputStream;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -48,6 +50,7 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.pdfbox.cos.COSArray;
 import org.apache.pdfbox.cos.COSInteger;
 import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
 import org.apache.pdfbox.filter.MissingImageReaderException;
 import org.apache.pdfbox.io.IOUtils;
 import org.apache.pdfbox.pdmodel.PDDocument;
@@ -73,6 +76,9 @@ public final class JPEGFactory
      * Creates a new JPEG Image XObject from an input stream containing JPEG data.
      * 
      * The input stream data will be preserved and embedded in the PDF file without modification.
+     * The data is copied directly into the document's scratch storage; the image size and number
+     * of components are read from the JPEG header, so the image is not decoded.
+     *
      * @param document the document where the image will be created
      * @param stream a stream of JPEG data
      * @return a new Image XObject
@@ -82,7 +88,60 @@ public final class JPEGFactory
     public static PDImageXObject createFromStream(PDDocument document, InputStream stream)
             throws IOException
     {
-        return createFromByteArray(document, IOUtils.toByteArray(stream));
+        COSStream cosStream = PDImageXObject.createRawStream(document, stream);
+        Dimensions meta = null;
+        InputStream headerStream = cosStream.createRawInputStream();
+        try
+        {
+            meta = retrieveHeaderDimensions(headerStream);
+        }
+        finally
+        {
+            headerStream.close();
+        }
+        if (meta == null)
+        {
+            // Plan B: ask ImageIO, which may have to read the whole image
+            headerStream = cosStream.createRawInputStream();
+            try
+            {
+                meta = retrieveDimensions(headerStream);
+            }
+            finally
+            {
+                headerStream.close();
+                if (meta == null)
+                {
+                    // free the scratch file pages of the stream if ImageIO failed
+                    cosStream.close();
+                }
+            }
+        }
+        return createJPEGImage(cosStream, meta);
+    }
+
+    /**
+     * Creates a new JPEG Image XObject from a JPEG file. The file is copied directly into the
+     * document's scratch storage without keeping the whole file in memory.
+     *
+     * @param document the document where the image will be created
+     * @param file a JPEG file
+     * @return a new Image XObject
+     *
+     * @throws IOException if the file cannot be read
+     */
+    public static PDImageXObject createFromFile(PDDocument document, File file)
+            throws IOException
+    {
+        InputStream fis = new FileInputStream(file);
+        try
+        {
+            return createFromStream(document, fis);
+        }
+        finally
+        {
+            fis.close();
+        }
     }
 
     /**
@@ -100,8 +159,57 @@ public final class JPEGFactory
         // copy stream
         ByteArrayInputStream byteStream = new ByteArrayInputStream(byteArray);
 
-        Dimensions meta = retrieveDimensions(byteStream);
+        Dimensions meta = retrieveHeaderDimensions(byteStream);
+        if (meta == null)
+        {
+            byteStream.reset();
+            meta = retrieveDimensions(byteStream);
+        }
+        byteStream.reset();
+
+        return createJPEGImage(PDImageXObject.createRawStream(document, byteStream), meta);
+    }
 
+    /**
+     * Creates a new JPEG 2000 Image XObject from an input stream containing a JP2 file or a J2K
+     * codestream. The data is embedded without modification, using the JPXDecode filter. The image
+     * size and color space are read from the JPEG 2000 header boxes, so the image is not decoded
+     * and no JPEG 2000 ImageIO plugin is needed.
+     *
+     * @param document the document where the image will be created
+     * @param stream a stream of JPEG 2000 data
+     * @return a new Image XObject
+     *
+     * @throws IOException if the input stream cannot be read or is not a JPEG 2000 image
+     */
+    public static PDImageXObject createFromJPEG2000Stream(PDDocument document, InputStream stream)
+            throws IOException
+    {
+        COSStream cosStream = PDImageXObject.createRawStream(document, stream);
+        CompressedImageHeader header;
+        InputStream headerStream = cosStream.createRawInputStream();
+        try
+        {
+            header = CompressedImageHeader.readJPEG2000(headerStream);
+        }
+        finally
+        {
+            headerStream.close();
+        }
+        if (header == null || header.getColorSpace() == null)
+        {
+            cosStream.close();
+            throw new IOException("Could not read JPEG 2000 header");
+        }
+        // BitsPerComponent is ignored by PDF readers for JPXDecode but the color space
+        // given here overrides the one in the JPEG 2000 data
+        return new PDImageXObject(cosStream, COSName.JPX_DECODE, header.getWidth(),
+                header.getHeight(), header.getBitsPerComponent(), header.getColorSpace());
+    }
+
+    private static PDImageXObject createJPEGImage(COSStream cosStream, Dimensions meta)
+            throws IOException
+    {
         PDColorSpace colorSpace;
         switch (meta.numComponents)
         {
@@ -115,12 +223,13 @@ public final class JPEGFactory
                 colorSpace = PDDeviceCMYK.INSTANCE;
                 break;
             default:
+                cosStream.close();
                 throw new UnsupportedOperationException("number of data elements not supported: " +
                         meta.numComponents);
         }
 
         // create PDImageXObject from stream
-        PDImageXObject pdImage = new PDImageXObject(document, byteStream, 
+        PDImageXObject pdImage = new PDImageXObject(cosStream,
                 COSName.DCT_DECODE, meta.width, meta.height, 8, colorSpace);
 
         if (colorSpace instanceof PDDeviceCMYK)
@@ -147,7 +256,27 @@ public final class JPEGFactory
         private int numComponents;
     }
 
-    private static Dimensions retrieveDimensions(ByteArrayInputStream stream) throws IOException
+    /**
+     * Get the dimensions from the SOF marker of the JPEG header.
+     *
+     * @return the dimensions or null if they couldn't be determined from the header.
+     */
+    private static Dimensions retrieveHeaderDimensions(InputStream stream) throws IOException
+    {
+        CompressedImageHeader header = CompressedImageHeader.readJPEG(stream);
+        if (header == null)
+        {
+            LOG.debug("Could not read JPEG header, will use ImageIO");
+            return null;
+        }
+        Dimensions meta = new Dimensions();
+        meta.width = header.getWidth();
+        meta.height = header.getHeight();
+        meta.numComponents = header.getNumComponents();
+        return meta;
+    }
+
+    private static Dimensions retrieveDimensions(InputStream stream) throws IOException
     {
         // find suitable image reader
         Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName("JPEG");
@@ -203,7 +332,6 @@ public final class JPEGFactory
             {
                 iis.close();
             }
-            stream.reset();
             reader.dispose();
         }
     }
@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.pdmodel.graphics.image;
+
+import java.util.zip.Deflater;
+import org.apache.pdfbox.filter.Filter;
+
+/**
+ * Controls how {@link LosslessFactory} encodes images: the deflate compression level, the PNG
+ * predictor used for each row and the number of threads that compress the image in parallel.
+ *
+ * @see LosslessFactory#createFromImage(org.apache.pdfbox.pdmodel.PDDocument,
+ * java.awt.image.BufferedImage, LosslessEncoderParameters)
+ */
+public final class LosslessEncoderParameters
+{
+    /**
+     * The PNG row filters, see https://www.w3.org/TR/PNG-Filters.html.
+     */
+    public enum PNGPredictor
+    {
+        /** No filtering. */
+        NONE,
+        /** Difference to the pixel on the left. */
+        SUB,
+        /** Difference to the pixel above. */
+        UP,
+        /** Difference to the average of the left and above pixels. */
+        AVERAGE,
+        /** Paeth predictor. */
+        PAETH,
+        /**
+         * Try all filters for each row and use the one with the lowest sum of absolute
+         * differences, as recommended by the PNG specification. This is the default.
+         */
+        OPTIMUM
+    }
+
+    private int compressionLevel = Filter.getCompressionLevel();
+    private PNGPredictor predictor = PNGPredictor.OPTIMUM;
+    private int threadCount = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Returns the deflate compression level. The default is taken from the
+     * {@link Filter#SYSPROP_DEFLATELEVEL} system property.
+     *
+     * @return the compression level, between -1 (default) and 9.
+     */
+    public int getCompressionLevel()
+    {
+        return compressionLevel;
+    }
+
+    /**
+     * Sets the deflate compression level.
+     *
+     * @param compressionLevel the compression level, between -1 (zlib default) and 9 (best
+     * compression).
+     * @throws IllegalArgumentException if the level is out of range.
+     */
+    public void setCompressionLevel(int compressionLevel)
+    {
+        if (compressionLevel < Deflater.DEFAULT_COMPRESSION
+                || compressionLevel > Deflater.BEST_COMPRESSION)
+        {
+            throw new IllegalArgumentException("Invalid compression level: " + compressionLevel);
+        }
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * Returns the PNG predictor used for the image rows.
+     *
+     * @return the predictor, never null.
+     */
+    public PNGPredictor getPredictor()
+    {
+        return predictor;
+    }
+
+    /**
+     * Sets the PNG predictor used for the image rows. A fixed predictor is faster than
+     * {@link PNGPredictor#OPTIMUM} but usually compresses worse.
+     *
+     * @param predictor the predictor.
+     */
+    public void setPredictor(PNGPredictor predictor)
+    {
+        if (predictor == null)
+        {
+            throw new IllegalArgumentException("predictor must not be null");
+        }
+        this.predictor = predictor;
+    }
+
+    /**
+     * Returns the maximum number of threads used to encode one image. The default is the number
+     * of available processors.
+     *
+     * @return the number of threads.
+     */
+    public int getThreadCount()
+    {
+        return threadCount;
+    }
+
+    /**
+     * Sets the maximum number of threads used to encode one image. The image is split into strips
+     * of rows which are filtered and deflated independently and then joined into a single zlib
+     * stream. Small images are always encoded by the calling thread.
+     *
+     * @param threadCount the number of threads, 1 means no parallel encoding.
+     */
+    public void setThreadCount(int threadCount)
+    {
+        if (threadCount < 1)
+        {
+            throw new IllegalArgumentException("threadCount must be at least 1");
+        }
+        this.threadCount = threadCount;
+    }
+}
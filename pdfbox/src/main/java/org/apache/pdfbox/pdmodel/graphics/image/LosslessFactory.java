@@ -25,8 +25,16 @@ import java.awt.image.Raster;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
 import javax.imageio.stream.MemoryCacheImageOutputStream;
@@ -42,6 +50,7 @@ import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceColorSpace;
 import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceGray;
 import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceRGB;
 import org.apache.pdfbox.pdmodel.graphics.color.PDICCBased;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessEncoderParameters.PNGPredictor;
 
 /**
  * Factory for creating a PDImageXObject containing a lossless compressed image.
@@ -78,6 +87,26 @@ public final class LosslessFactory
      */
     public static PDImageXObject createFromImage(PDDocument document, BufferedImage image)
             throws IOException
+    {
+        return createFromImage(document, image, null);
+    }
+
+    /**
+     * Creates a new lossless encoded image XObject from a BufferedImage, using the given encoder
+     * settings. When several threads are allowed, large images are split into strips of rows
+     * which are filtered and deflated in parallel and then joined into a single zlib stream. The
+     * parameters apply to color images; grayscale and bitonal images are always encoded as in
+     * {@link #createFromImage(PDDocument, BufferedImage)}.
+     *
+     * @param document the document where the image will be created
+     * @param image the BufferedImage to embed
+     * @param parameters the compression level, predictor and thread settings, or null for the
+     * defaults of {@link #createFromImage(PDDocument, BufferedImage)}
+     * @return a new image XObject
+     * @throws IOException if something goes wrong
+     */
+    public static PDImageXObject createFromImage(PDDocument document, BufferedImage image,
+            LosslessEncoderParameters parameters) throws IOException
     {
         if (isGrayImage(image))
         {
@@ -87,7 +116,10 @@ public final class LosslessFactory
         // We try to encode the image with predictor
         if (usePredictorEncoder)
         {
-            PDImageXObject pdImageXObject = new PredictorEncoder(document, image).encode();
+            PredictorEncoder predictorEncoder = parameters == null
+                    ? new PredictorEncoder(document, image)
+                    : new PredictorEncoder(document, image, parameters);
+            PDImageXObject pdImageXObject = predictorEncoder.encode();
             if (pdImageXObject != null)
             {
                 if (pdImageXObject.getColorSpace() == PDDeviceRGB.INSTANCE &&
@@ -260,6 +292,12 @@ public final class LosslessFactory
 
     private static class PredictorEncoder
     {
+        /**
+         * Strips are not made smaller than this number of uncompressed bytes, so that the
+         * deflate blocks stay large enough to compress well.
+         */
+        private static final int MIN_STRIP_SIZE = 256 * 1024;
+
         private final PDDocument document;
         private final BufferedImage image;
         private final int componentsPerPixel;
@@ -270,29 +308,48 @@ public final class LosslessFactory
         private final int height;
         private final int width;
 
-        private final byte[] dataRawRowNone;
-        private final byte[] dataRawRowSub;
-        private final byte[] dataRawRowUp;
-        private final byte[] dataRawRowAverage;
-        private final byte[] dataRawRowPaeth;
+        private final int compressionLevel;
+        private final PNGPredictor predictor;
+        private final int threadCount;
 
         final int imageType;
         final boolean hasAlpha;
         final byte[] alphaImageData;
 
-        final byte[] aValues;
-        final byte[] cValues;
-        final byte[] bValues;
-        final byte[] xValues;
-        final byte[] tmpResultValues;
+        // set by encode(), depend on the raster format
+        private int elementsInRowPerPixel;
+        private int rowElementType;
 
         /**
-         * Initialize the encoder and set all final fields
+         * Initialize the encoder with the default settings: one thread, adaptive predictor and the
+         * compression level of {@link Filter#getCompressionLevel()}.
          */
         PredictorEncoder(PDDocument document, BufferedImage image)
+        {
+            this(document, image, Filter.getCompressionLevel(), PNGPredictor.OPTIMUM, 1);
+        }
+
+        /**
+         * Initialize the encoder with the given settings.
+         */
+        PredictorEncoder(PDDocument document, BufferedImage image,
+                LosslessEncoderParameters parameters)
+        {
+            this(document, image, parameters.getCompressionLevel(), parameters.getPredictor(),
+                    parameters.getThreadCount());
+        }
+
+        /**
+         * Initialize the encoder and set all final fields
+         */
+        private PredictorEncoder(PDDocument document, BufferedImage image, int compressionLevel,
+                PNGPredictor predictor, int threadCount)
         {
             this.document = document;
             this.image = image;
+            this.compressionLevel = compressionLevel;
+            this.predictor = predictor;
+            this.threadCount = threadCount;
 
             // The raw count of components per pixel including optional alpha
             this.componentsPerPixel = image.getColorModel().getNumComponents();
@@ -309,32 +366,6 @@ public final class LosslessFactory
             this.hasAlpha = image.getColorModel().getNumComponents() != image.getColorModel()
                     .getNumColorComponents();
             this.alphaImageData = hasAlpha ? new byte[width * height * bytesPerComponent] : null;
-
-            // The rows have 1-byte encoding marker and width * BYTES_PER_PIXEL pixel-bytes
-            int dataRowByteCount = width * bytesPerPixel + 1;
-            this.dataRawRowNone = new byte[dataRowByteCount];
-            this.dataRawRowSub = new byte[dataRowByteCount];
-            this.dataRawRowUp = new byte[dataRowByteCount];
-            this.dataRawRowAverage = new byte[dataRowByteCount];
-            this.dataRawRowPaeth = new byte[dataRowByteCount];
-
-            // Write the encoding markers
-            dataRawRowNone[0] = 0;
-            dataRawRowSub[0] = 1;
-            dataRawRowUp[0] = 2;
-            dataRawRowAverage[0] = 3;
-            dataRawRowPaeth[0] = 4;
-
-            // c | b
-            // -----
-            // a | x
-            //
-            // x => current pixel
-            this.aValues = new byte[bytesPerPixel];
-            this.cValues = new byte[bytesPerPixel];
-            this.bValues = new byte[bytesPerPixel];
-            this.xValues = new byte[bytesPerPixel];
-            this.tmpResultValues = new byte[bytesPerPixel];
         }
 
         /**
@@ -345,29 +376,16 @@ public final class LosslessFactory
          */
         PDImageXObject encode() throws IOException
         {
-            Raster imageRaster = image.getRaster();
-            final int elementsInRowPerPixel;
-
-            // These variables store a row of the image each, the exact type depends
-            // on the image encoding. Can be a int[], short[] or byte[]
-            Object prevRow;
-            Object transferRow;
-
             switch (imageType)
             {
                 case BufferedImage.TYPE_CUSTOM:
                 {
-                    switch (imageRaster.getTransferType())
+                    switch (image.getRaster().getTransferType())
                     {
                         case DataBuffer.TYPE_USHORT:
-                            elementsInRowPerPixel = componentsPerPixel;
-                            prevRow = new short[width * elementsInRowPerPixel];
-                            transferRow = new short[width * elementsInRowPerPixel];
-                            break;
                         case DataBuffer.TYPE_BYTE:
                             elementsInRowPerPixel = componentsPerPixel;
-                            prevRow = new byte[width * elementsInRowPerPixel];
-                            transferRow = new byte[width * elementsInRowPerPixel];
+                            rowElementType = image.getRaster().getTransferType();
                             break;
                         default:
                             return null;
@@ -379,8 +397,7 @@ public final class LosslessFactory
                 case BufferedImage.TYPE_4BYTE_ABGR:
                 {
                     elementsInRowPerPixel = componentsPerPixel;
-                    prevRow = new byte[width * elementsInRowPerPixel];
-                    transferRow = new byte[width * elementsInRowPerPixel];
+                    rowElementType = DataBuffer.TYPE_BYTE;
                     break;
                 }
 
@@ -389,8 +406,7 @@ public final class LosslessFactory
                 case BufferedImage.TYPE_INT_RGB:
                 {
                     elementsInRowPerPixel = 1;
-                    prevRow = new int[width * elementsInRowPerPixel];
-                    transferRow = new int[width * elementsInRowPerPixel];
+                    rowElementType = DataBuffer.TYPE_INT;
                     break;
                 }
 
@@ -399,113 +415,385 @@ public final class LosslessFactory
                     return null;
             }
 
-            final int elementsInTransferRow = width * elementsInRowPerPixel;
-
-            // pre-size the output stream to half of the maximum size
-            ByteArrayOutputStream stream = new ByteArrayOutputStream(
-                    height * width * bytesPerPixel / 2);
-            Deflater deflater = new Deflater(Filter.getCompressionLevel());
-            DeflaterOutputStream zip = new DeflaterOutputStream(stream, deflater);
+            // The rows have 1-byte encoding marker and width * BYTES_PER_PIXEL pixel-bytes
+            int dataRowByteCount = width * bytesPerPixel + 1;
+            int rowsPerStrip = computeRowsPerStrip(dataRowByteCount);
+            byte[] encodedData;
+            if (rowsPerStrip >= height)
+            {
+                // pre-size the output stream to half of the maximum size
+                ByteArrayOutputStream stream = new ByteArrayOutputStream(
+                        height * width * bytesPerPixel / 2);
+                Deflater deflater = new Deflater(compressionLevel);
+                DeflaterOutputStream zip = new DeflaterOutputStream(stream, deflater);
+                new StripEncoder().encodeRows(0, height, zip);
+                zip.close();
+                deflater.end();
+                encodedData = stream.toByteArray();
+            }
+            else
+            {
+                encodedData = encodeStrips(rowsPerStrip, dataRowByteCount);
+            }
 
-            int alphaPtr = 0;
+            return preparePredictorPDImage(encodedData, bytesPerComponent * 8);
+        }
 
-            for (int rowNum = 0; rowNum < height; rowNum++)
+        /**
+         * Split the image into one strip per thread, but don't create strips that are too small
+         * to be worth it.
+         */
+        private int computeRowsPerStrip(int dataRowByteCount)
+        {
+            if (threadCount < 2 || !DeflateStripOutputStream.isSupported())
             {
-                imageRaster.getDataElements(0, rowNum, width, 1, transferRow);
-
-                // We start to write at index one, as the predictor marker is in index zero
-                int writerPtr = 1;
-                Arrays.fill(aValues, (byte) 0);
-                Arrays.fill(cValues, (byte) 0);
+                return height;
+            }
+            long imageSize = (long) dataRowByteCount * height;
+            int stripCount = (int) Math.min(threadCount, imageSize / MIN_STRIP_SIZE);
+            if (stripCount < 2)
+            {
+                return height;
+            }
+            return (height + stripCount - 1) / stripCount;
+        }
 
-                final byte[] transferRowByte;
-                final byte[] prevRowByte;
-                final int[] transferRowInt;
-                final int[] prevRowInt;
-                final short[] transferRowShort;
-                final short[] prevRowShort;
+        /**
+         * Filters and deflates each strip of rows in its own thread and joins the results into
+         * one zlib stream.
+         */
+        private byte[] encodeStrips(int rowsPerStrip, final int dataRowByteCount)
+                throws IOException
+        {
+            int stripCount = (height + rowsPerStrip - 1) / rowsPerStrip;
+            List<Future<DeflateStripOutputStream>> futures =
+                    new ArrayList<Future<DeflateStripOutputStream>>(stripCount);
+            ExecutorService executor = Executors.newFixedThreadPool(
+                    Math.min(threadCount, stripCount));
+            try
+            {
+                for (int strip = 0; strip < stripCount; ++strip)
+                {
+                    final int startRow = strip * rowsPerStrip;
+                    final int endRow = Math.min(height, startRow + rowsPerStrip);
+                    futures.add(executor.submit(new Callable<DeflateStripOutputStream>()
+                    {
+                        @Override
+                        public DeflateStripOutputStream call() throws IOException
+                        {
+                            DeflateStripOutputStream out = new DeflateStripOutputStream(
+                                    compressionLevel, endRow == height,
+                                    (endRow - startRow) * dataRowByteCount / 2);
+                            new StripEncoder().encodeRows(startRow, endRow, out);
+                            out.close();
+                            return out;
+                        }
+                    }));
+                }
 
-                if (transferRow instanceof byte[])
+                ByteArrayOutputStream stream = new ByteArrayOutputStream(
+                        height * width * bytesPerPixel / 2);
+                DeflateStripOutputStream.writeZlibHeader(stream, compressionLevel);
+                long adler32 = 1;
+                for (Future<DeflateStripOutputStream> future : futures)
                 {
-                    transferRowByte = (byte[]) transferRow;
-                    prevRowByte = (byte[]) prevRow;
-                    transferRowInt = prevRowInt = null;
-                    transferRowShort = prevRowShort = null;
+                    DeflateStripOutputStream strip = getStrip(future);
+                    stream.write(strip.toByteArray());
+                    adler32 = DeflateStripOutputStream.combineAdler32(adler32,
+                            strip.getAdler32(), strip.getUncompressedLength());
                 }
-                else if (transferRow instanceof int[])
+                DeflateStripOutputStream.writeZlibTrailer(stream, adler32);
+                return stream.toByteArray();
+            }
+            finally
+            {
+                executor.shutdownNow();
+            }
+        }
+
+        private static DeflateStripOutputStream getStrip(Future<DeflateStripOutputStream> future)
+                throws IOException
+        {
+            try
+            {
+                return future.get();
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while encoding image");
+            }
+            catch (ExecutionException ex)
+            {
+                if (ex.getCause() instanceof IOException)
                 {
-                    transferRowInt = (int[]) transferRow;
-                    prevRowInt = (int[]) prevRow;
-                    transferRowShort = prevRowShort = null;
-                    transferRowByte = prevRowByte = null;
+                    throw (IOException) ex.getCause();
                 }
-                else
+                throw new IOException(ex.getCause());
+            }
+        }
+
+        private Object createRowBuffer()
+        {
+            int elementsInTransferRow = width * elementsInRowPerPixel;
+            switch (rowElementType)
+            {
+                case DataBuffer.TYPE_USHORT:
+                    return new short[elementsInTransferRow];
+                case DataBuffer.TYPE_INT:
+                    return new int[elementsInTransferRow];
+                default:
+                    return new byte[elementsInTransferRow];
+            }
+        }
+
+        /**
+         * Holds the buffers to filter the rows of one strip. Each thread has its own instance.
+         */
+        private final class StripEncoder
+        {
+            private final byte[] dataRawRowNone;
+            private final byte[] dataRawRowSub;
+            private final byte[] dataRawRowUp;
+            private final byte[] dataRawRowAverage;
+            private final byte[] dataRawRowPaeth;
+
+            private final byte[] aValues;
+            private final byte[] cValues;
+            private final byte[] bValues;
+            private final byte[] xValues;
+
+            StripEncoder()
+            {
+                // The rows have 1-byte encoding marker and width * BYTES_PER_PIXEL pixel-bytes
+                int dataRowByteCount = width * bytesPerPixel + 1;
+                this.dataRawRowNone = new byte[dataRowByteCount];
+                this.dataRawRowSub = new byte[dataRowByteCount];
+                this.dataRawRowUp = new byte[dataRowByteCount];
+                this.dataRawRowAverage = new byte[dataRowByteCount];
+                this.dataRawRowPaeth = new byte[dataRowByteCount];
+
+                // Write the encoding markers
+                dataRawRowNone[0] = 0;
+                dataRawRowSub[0] = 1;
+                dataRawRowUp[0] = 2;
+                dataRawRowAverage[0] = 3;
+                dataRawRowPaeth[0] = 4;
+
+                // c | b
+                // -----
+                // a | x
+                //
+                // x => current pixel
+                this.aValues = new byte[bytesPerPixel];
+                this.cValues = new byte[bytesPerPixel];
+                this.bValues = new byte[bytesPerPixel];
+                this.xValues = new byte[bytesPerPixel];
+            }
+
+            /**
+             * Filters the rows from startRow (inclusive) to endRow (exclusive) and writes them
+             * to the given stream. The alpha values of these rows are copied into the
+             * alphaImageData array.
+             */
+            void encodeRows(int startRow, int endRow, OutputStream out) throws IOException
+            {
+                Raster imageRaster = image.getRaster();
+                final int elementsInTransferRow = width * elementsInRowPerPixel;
+
+                // These variables store a row of the image each, the exact type depends
+                // on the image encoding. Can be a int[], short[] or byte[]
+                Object prevRow = createRowBuffer();
+                Object transferRow = createRowBuffer();
+                if (startRow > 0)
                 {
-                    // This must be short[]
-                    transferRowShort = (short[]) transferRow;
-                    prevRowShort = (short[]) prevRow;
-                    transferRowInt = prevRowInt = null;
-                    transferRowByte = prevRowByte = null;
+                    // the row above the strip is needed for the Up, Average and Paeth filters
+                    imageRaster.getDataElements(0, startRow - 1, width, 1, prevRow);
                 }
 
-                for (int indexInTransferRow = 0; indexInTransferRow < elementsInTransferRow;
-                        indexInTransferRow += elementsInRowPerPixel, alphaPtr += bytesPerComponent)
+                boolean allFilters = predictor == PNGPredictor.OPTIMUM;
+                int alphaPtr = startRow * width * bytesPerComponent;
+
+                for (int rowNum = startRow; rowNum < endRow; rowNum++)
                 {
-                    // Copy the pixel values into the byte array
-                    if (transferRowByte != null)
+                    imageRaster.getDataElements(0, rowNum, width, 1, transferRow);
+
+                    // We start to write at index one, as the predictor marker is in index zero
+                    int writerPtr = 1;
+                    Arrays.fill(aValues, (byte) 0);
+                    Arrays.fill(cValues, (byte) 0);
+
+                    final byte[] transferRowByte;
+                    final byte[] prevRowByte;
+                    final int[] transferRowInt;
+                    final int[] prevRowInt;
+                    final short[] transferRowShort;
+                    final short[] prevRowShort;
+
+                    if (transferRow instanceof byte[])
                     {
-                        copyImageBytes(transferRowByte, indexInTransferRow, xValues, alphaImageData,
-                                alphaPtr);
-                        copyImageBytes(prevRowByte, indexInTransferRow, bValues, null, 0);
+                        transferRowByte = (byte[]) transferRow;
+                        prevRowByte = (byte[]) prevRow;
+                        transferRowInt = prevRowInt = null;
+                        transferRowShort = prevRowShort = null;
                     }
-                    else if (transferRowInt != null)
+                    else if (transferRow instanceof int[])
                     {
-                        copyIntToBytes(transferRowInt, indexInTransferRow, xValues, alphaImageData,
-                                alphaPtr);
-                        copyIntToBytes(prevRowInt, indexInTransferRow, bValues, null, 0);
+                        transferRowInt = (int[]) transferRow;
+                        prevRowInt = (int[]) prevRow;
+                        transferRowShort = prevRowShort = null;
+                        transferRowByte = prevRowByte = null;
                     }
                     else
                     {
                         // This must be short[]
-                        copyShortsToBytes(transferRowShort, indexInTransferRow, xValues, alphaImageData, alphaPtr);
-                        copyShortsToBytes(prevRowShort, indexInTransferRow, bValues, null, 0);
+                        transferRowShort = (short[]) transferRow;
+                        prevRowShort = (short[]) prevRow;
+                        transferRowInt = prevRowInt = null;
+                        transferRowByte = prevRowByte = null;
                     }
 
-                    // Encode the pixel values in the different encodings
-                    int length = xValues.length;
-                    for (int bytePtr = 0; bytePtr < length; bytePtr++)
+                    for (int indexInTransferRow = 0; indexInTransferRow < elementsInTransferRow;
+                            indexInTransferRow += elementsInRowPerPixel, alphaPtr += bytesPerComponent)
                     {
-                        int x = xValues[bytePtr] & 0xFF;
-                        int a = aValues[bytePtr] & 0xFF;
-                        int b = bValues[bytePtr] & 0xFF;
-                        int c = cValues[bytePtr] & 0xFF;
-                        dataRawRowNone[writerPtr] = (byte) x;
-                        dataRawRowSub[writerPtr] = pngFilterSub(x, a);
-                        dataRawRowUp[writerPtr] = pngFilterUp(x, b);
-                        dataRawRowAverage[writerPtr] = pngFilterAverage(x, a, b);
-                        dataRawRowPaeth[writerPtr] = pngFilterPaeth(x, a, b, c);
-                        writerPtr++;
+                        // Copy the pixel values into the byte array
+                        if (transferRowByte != null)
+                        {
+                            copyImageBytes(transferRowByte, indexInTransferRow, xValues,
+                                    alphaImageData, alphaPtr);
+                            copyImageBytes(prevRowByte, indexInTransferRow, bValues, null, 0);
+                        }
+                        else if (transferRowInt != null)
+                        {
+                            copyIntToBytes(transferRowInt, indexInTransferRow, xValues,
+                                    alphaImageData, alphaPtr);
+                            copyIntToBytes(prevRowInt, indexInTransferRow, bValues, null, 0);
+                        }
+                        else
+                        {
+                            // This must be short[]
+                            copyShortsToBytes(transferRowShort, indexInTransferRow, xValues,
+                                    alphaImageData, alphaPtr);
+                            copyShortsToBytes(prevRowShort, indexInTransferRow, bValues, null, 0);
+                        }
+
+                        // Encode the pixel values in the different encodings
+                        int length = xValues.length;
+                        for (int bytePtr = 0; bytePtr < length; bytePtr++)
+                        {
+                            int x = xValues[bytePtr] & 0xFF;
+                            int a = aValues[bytePtr] & 0xFF;
+                            int b = bValues[bytePtr] & 0xFF;
+                            int c = cValues[bytePtr] & 0xFF;
+                            if (allFilters)
+                            {
+                                dataRawRowNone[writerPtr] = (byte) x;
+                                dataRawRowSub[writerPtr] = pngFilterSub(x, a);
+                                dataRawRowUp[writerPtr] = pngFilterUp(x, b);
+                                dataRawRowAverage[writerPtr] = pngFilterAverage(x, a, b);
+                                dataRawRowPaeth[writerPtr] = pngFilterPaeth(x, a, b, c);
+                            }
+                            else
+                            {
+                                applyFixedFilter(writerPtr, x, a, b, c);
+                            }
+                            writerPtr++;
+                        }
+
+                        //  We shift the values into the prev / upper left values for the next pixel
+                        System.arraycopy(xValues, 0, aValues, 0, bytesPerPixel);
+                        System.arraycopy(bValues, 0, cValues, 0, bytesPerPixel);
                     }
 
-                    //  We shift the values into the prev / upper left values for the next pixel
-                    System.arraycopy(xValues, 0, aValues, 0, bytesPerPixel);
-                    System.arraycopy(bValues, 0, cValues, 0, bytesPerPixel);
-                }
+                    byte[] rowToWrite = chooseDataRowToWrite();
 
-                byte[] rowToWrite = chooseDataRowToWrite();
+                    // Write and compress the row as long it is hot (CPU cache wise)
+                    out.write(rowToWrite, 0, rowToWrite.length);
 
-                // Write and compress the row as long it is hot (CPU cache wise)
-                zip.write(rowToWrite, 0, rowToWrite.length);
+                    // We swap prev and transfer row, so that we have the prev row for the next row.
+                    Object temp = prevRow;
+                    prevRow = transferRow;
+                    transferRow = temp;
+                }
+            }
 
-                // We swap prev and transfer row, so that we have the prev row for the next row.
-                Object temp = prevRow;
-                prevRow = transferRow;
-                transferRow = temp;
+            private void applyFixedFilter(int writerPtr, int x, int a, int b, int c)
+            {
+                switch (predictor)
+                {
+                    case SUB:
+                        dataRawRowSub[writerPtr] = pngFilterSub(x, a);
+                        break;
+                    case UP:
+                        dataRawRowUp[writerPtr] = pngFilterUp(x, b);
+                        break;
+                    case AVERAGE:
+                        dataRawRowAverage[writerPtr] = pngFilterAverage(x, a, b);
+                        break;
+                    case PAETH:
+                        dataRawRowPaeth[writerPtr] = pngFilterPaeth(x, a, b, c);
+                        break;
+                    default:
+                        dataRawRowNone[writerPtr] = (byte) x;
+                        break;
+                }
             }
-            zip.close();
-            deflater.end();
 
-            return preparePredictorPDImage(stream, bytesPerComponent * 8);
+            /**
+             * We look which row encoding is the "best" one, ie. has the lowest sum. We don't implement
+             * anything fancier to choose the right row encoding. This is just the recommend algorithm
+             * in the spec. The get the perfect encoding you would need to do a brute force check how
+             * all the different encoded rows compress in the zip stream together. You have would have
+             * to check 5*image-height permutations...
+             * <p>
+             * If a fixed predictor was requested then its row is returned.
+             *
+             * @return the "best" row encoding of the row encodings
+             */
+            private byte[] chooseDataRowToWrite()
+            {
+                switch (predictor)
+                {
+                    case NONE:
+                        return dataRawRowNone;
+                    case SUB:
+                        return dataRawRowSub;
+                    case UP:
+                        return dataRawRowUp;
+                    case AVERAGE:
+                        return dataRawRowAverage;
+                    case PAETH:
+                        return dataRawRowPaeth;
+                    default:
+                        break;
+                }
+                byte[] rowToWrite = dataRawRowNone;
+                long estCompressSum = estCompressSum(dataRawRowNone);
+                long estCompressSumSub = estCompressSum(dataRawRowSub);
+                long estCompressSumUp = estCompressSum(dataRawRowUp);
+                long estCompressSumAvg = estCompressSum(dataRawRowAverage);
+                long estCompressSumPaeth = estCompressSum(dataRawRowPaeth);
+                if (estCompressSum > estCompressSumSub)
+                {
+                    rowToWrite = dataRawRowSub;
+                    estCompressSum = estCompressSumSub;
+                }
+                if (estCompressSum > estCompressSumUp)
+                {
+                    rowToWrite = dataRawRowUp;
+                    estCompressSum = estCompressSumUp;
+                }
+                if (estCompressSum > estCompressSumAvg)
+                {
+                    rowToWrite = dataRawRowAverage;
+                    estCompressSum = estCompressSumAvg;
+                }
+                if (estCompressSum > estCompressSumPaeth)
+                {
+                    rowToWrite = dataRawRowPaeth;
+                }
+                return rowToWrite;
+            }
         }
 
         private void copyIntToBytes(int[] transferRow, int indexInTranferRow, byte[] targetValues,
@@ -571,7 +859,7 @@ public final class LosslessFactory
             }
         }
 
-        private PDImageXObject preparePredictorPDImage(ByteArrayOutputStream stream,
+        private PDImageXObject preparePredictorPDImage(byte[] encodedData,
                 int bitsPerComponent) throws IOException
         {
             int h = image.getHeight();
@@ -607,7 +895,7 @@ public final class LosslessFactory
             }
 
             PDImageXObject imageXObject = new PDImageXObject(document,
-                    new ByteArrayInputStream(stream.toByteArray()), COSName.FLATE_DECODE, w,
+                    new ByteArrayInputStream(encodedData), COSName.FLATE_DECODE, w,
                     h, bitsPerComponent, pdColorSpace);
 
             COSDictionary decodeParms = new COSDictionary();
@@ -626,45 +914,6 @@ public final class LosslessFactory
             return imageXObject;
         }
 
-        /**
-         * We look which row encoding is the "best" one, ie. has the lowest sum. We don't implement
-         * anything fancier to choose the right row encoding. This is just the recommend algorithm
-         * in the spec. The get the perfect encoding you would need to do a brute force check how
-         * all the different encoded rows compress in the zip stream together. You have would have
-         * to check 5*image-height permutations...
-         *
-         * @return the "best" row encoding of the row encodings
-         */
-        private byte[] chooseDataRowToWrite()
-        {
-            byte[] rowToWrite = dataRawRowNone;
-            long estCompressSum = estCompressSum(dataRawRowNone);
-            long estCompressSumSub = estCompressSum(dataRawRowSub);
-            long estCompressSumUp = estCompressSum(dataRawRowUp);
-            long estCompressSumAvg = estCompressSum(dataRawRowAverage);
-            long estCompressSumPaeth = estCompressSum(dataRawRowPaeth);
-            if (estCompressSum > estCompressSumSub)
-            {
-                rowToWrite = dataRawRowSub;
-                estCompressSum = estCompressSumSub;
-            }
-            if (estCompressSum > estCompressSumUp)
-            {
-                rowToWrite = dataRawRowUp;
-                estCompressSum = estCompressSumUp;
-            }
-            if (estCompressSum > estCompressSumAvg)
-            {
-                rowToWrite = dataRawRowAverage;
-                estCompressSum = estCompressSumAvg;
-            }
-            if (estCompressSum > estCompressSumPaeth)
-            {
-                rowToWrite = dataRawRowPaeth;
-            }
-            return rowToWrite;
-        }
-
         /*
          * PNG Filters, see https://www.w3.org/TR/PNG-Filters.html
          */
@@ -69,6 +69,7 @@ public final class PDImageXObject extends PDXObject implements PDImage
     private static final Log LOG = LogFactory.getLog(PDImageXObject.class);
 
     private SoftReference<BufferedImage> cachedImage;
+    private SoftReference<BufferedImage> cachedBilevelImage;
     private PDColorSpace colorSpace;
 
     // initialize to MAX_VALUE as we prefer lower subsampling when keeping/replacing cache.
@@ -110,7 +111,24 @@ public final class PDImageXObject extends PDXObject implements PDImage
             COSBase cosFilter, int width, int height, int bitsPerComponent, 
             PDColorSpace initColorSpace) throws IOException
     {
-        super(createRawStream(document, encodedStream), COSName.IMAGE);
+        this(createRawStream(document, encodedStream), cosFilter, width, height,
+                bitsPerComponent, initColorSpace);
+    }
+
+    /**
+     * Creates an Image XObject from a stream that already holds the filtered image data.
+     *
+     * @param rawStream a stream with the encoded image data
+     * @param cosFilter the filter or a COSArray of filters
+     * @param width the image width
+     * @param height the image height
+     * @param bitsPerComponent the bits per component
+     * @param initColorSpace the color space
+     */
+    PDImageXObject(COSStream rawStream, COSBase cosFilter, int width, int height,
+            int bitsPerComponent, PDColorSpace initColorSpace)
+    {
+        super(rawStream, COSName.IMAGE);
         getCOSObject().setItem(COSName.FILTER, cosFilter);
         resources = null;
         colorSpace = null;
@@ -165,9 +183,10 @@ public final class PDImageXObject extends PDXObject implements PDImage
     }
 
     /**
-     * Creates a COS stream from raw (encoded) data.
+     * Creates a COS stream from raw (encoded) data. The data is copied into the scratch storage
+     * of the document.
      */
-    private static COSStream createRawStream(PDDocument document, InputStream rawInput)
+    static COSStream createRawStream(PDDocument document, InputStream rawInput)
             throws IOException
     {
         COSStream stream = document.getDocument().createCOSStream();
@@ -234,16 +253,7 @@ public final class PDImageXObject extends PDXObject implements PDImage
         String ext = name.substring(dot + 1).toLowerCase();
         if ("jpg".equals(ext) || "jpeg".equals(ext))
         {
-            FileInputStream fis = null;
-            try
-            {
-                fis = new FileInputStream(file);
-                return JPEGFactory.createFromStream(doc, fis);
-            }
-            finally
-            {
-                IOUtils.closeQuietly(fis);
-            }
+            return JPEGFactory.createFromFile(doc, file);
         }
         if ("tif".equals(ext) || "tiff".equals(ext))
         {
@@ -259,8 +269,9 @@ public final class PDImageXObject extends PDXObject implements PDImage
 
     /**
      * Create a PDImageXObject from an image file. The file format is determined by the file
-     * content. The following file types are supported: JPG, JPEG, TIF, TIFF, GIF, BMP and PNG. This
-     * is a convenience method that calls {@link JPEGFactory#createFromStream},
+     * content. The following file types are supported: JPG, JPEG, JPEG 2000, TIF, TIFF, GIF, BMP and
+     * PNG. This is a convenience method that calls {@link JPEGFactory#createFromFile},
+     * {@link JPEGFactory#createFromJPEG2000Stream},
      * {@link CCITTFactory#createFromFile} or {@link ImageIO#read} combined with
      * {@link LosslessFactory#createFromImage}. (The later can also be used to create a
      * PDImageXObject from a BufferedImage). Starting with 2.0.18, this call will create an image
@@ -304,11 +315,20 @@ public final class PDImageXObject extends PDXObject implements PDImage
         }
 
         if (fileType.equals(FileType.JPEG))
+        {
+            return JPEGFactory.createFromFile(doc, file);
+        }
+        if (fileType.equals(FileType.JPEG2000))
         {
             FileInputStream fis = new FileInputStream(file);
-            PDImageXObject imageXObject = JPEGFactory.createFromStream(doc, fis);
-            fis.close();
-            return imageXObject;
+            try
+            {
+                return JPEGFactory.createFromJPEG2000Stream(doc, fis);
+            }
+            finally
+            {
+                fis.close();
+            }
         }
         if (fileType.equals(FileType.TIFF))
         {
@@ -335,8 +355,9 @@ public final class PDImageXObject extends PDXObject implements PDImage
 
     /**
      * Create a PDImageXObject from bytes of an image file. The file format is determined by the
-     * file content. The following file types are supported: JPG, JPEG, TIF, TIFF, GIF, BMP and PNG.
-     * This is a convenience method that calls {@link JPEGFactory#createFromByteArray},
+     * file content. The following file types are supported: JPG, JPEG, JPEG 2000, TIF, TIFF, GIF, BMP
+     * and PNG. This is a convenience method that calls {@link JPEGFactory#createFromByteArray},
+     * {@link JPEGFactory#createFromJPEG2000Stream},
      * {@link CCITTFactory#createFromFile} or {@link ImageIO#read} combined with
      * {@link LosslessFactory#createFromImage}. (The later can also be used to create a
      * PDImageXObject from a BufferedImage). Starting with 2.0.18, this call will create an image
@@ -375,6 +396,11 @@ public final class PDImageXObject extends PDXObject implements PDImage
         {
             return JPEGFactory.createFromByteArray(document, byteArray);
         }
+        if (fileType.equals(FileType.JPEG2000))
+        {
+            return JPEGFactory.createFromJPEG2000Stream(document,
+                    new ByteArrayInputStream(byteArray));
+        }
         if (fileType.equals(FileType.PNG))
         {
             // Try to directly convert the image without recoding it.
@@ -483,7 +509,7 @@ public final class PDImageXObject extends PDXObject implements PDImage
         if (softMask != null)
         {
             float[] matte = extractMatte(softMask);
-            image = applyMask(image, softMask.getOpaqueImage(), true, matte);
+            image = applyMask(image, getMaskImage(softMask, region, subsampling), true, matte);
         }
         else
         {
@@ -491,7 +517,7 @@ public final class PDImageXObject extends PDXObject implements PDImage
             PDImageXObject mask = getMask();
             if (mask != null && mask.isStencil())
             {
-                image = applyMask(image, mask.getOpaqueImage(), false, null);
+                image = applyMask(image, getMaskImage(mask, region, subsampling), false, null);
             }
         }
 
@@ -506,6 +532,37 @@ public final class PDImageXObject extends PDXObject implements PDImage
         return image;
     }
 
+    /**
+     * Returns the image as a packed TYPE_BYTE_BINARY image if it is an unmasked 1-bit DeviceGray
+     * image, e.g. a CCITT or JBIG2 compressed scan. Such an image takes an eighth of the memory of
+     * {@link #getImage()} and is drawn just the same, but the samples of its raster are 0 and 1.
+     * The returned images are cached via a SoftReference.
+     *
+     * @return the image as a bilevel buffered image, or null if it isn't an unmasked bilevel image
+     * @throws IOException if the image cannot be read
+     */
+    public BufferedImage getBilevelImage() throws IOException
+    {
+        if (getSoftMask() != null || getMask() != null || getColorKeyMask() != null)
+        {
+            return null;
+        }
+        if (cachedBilevelImage != null)
+        {
+            BufferedImage cached = cachedBilevelImage.get();
+            if (cached != null)
+            {
+                return cached;
+            }
+        }
+        BufferedImage image = SampledImageReader.getBilevelImage(this, null);
+        if (image != null)
+        {
+            cachedBilevelImage = new SoftReference<BufferedImage>(image);
+        }
+        return image;
+    }
+
     /**
      * Extract the matte color from a softmask.
      * 
@@ -553,6 +610,21 @@ public final class PDImageXObject extends PDXObject implements PDImage
         return SampledImageReader.getRGBImage(this, null);
     }
 
+    /**
+     * Reads a mask image. If the mask has the same size as this image, it is read with the same
+     * subsampling, so that a subsampled image doesn't need a mask decoded at full resolution.
+     */
+    private BufferedImage getMaskImage(PDImageXObject mask, Rectangle region, int subsampling)
+            throws IOException
+    {
+        if (region == null && subsampling > 1 &&
+            mask.getWidth() == getWidth() && mask.getHeight() == getHeight())
+        {
+            return SampledImageReader.getRGBImage(mask, null, subsampling, null);
+        }
+        return mask.getOpaqueImage();
+    }
+
     // explicit mask: RGB + Binary -> ARGB
     // soft mask: RGB + Gray -> ARGB
     private BufferedImage applyMask(BufferedImage image, BufferedImage mask,
@@ -577,7 +649,7 @@ public final class PDImageXObject extends PDXObject implements PDImage
             height = mask.getHeight();
             image = scaleImage(image, width, height);
         }
-        else if (image.getRaster().getPixel(0, 0, (int[]) null).length < 3)
+        if (image.getRaster().getPixel(0, 0, (int[]) null).length < 3)
         {
             // PDFBOX-4470 bitonal image has only one element => copy into RGB
             image = scaleImage(image, width, height);
@@ -794,6 +866,7 @@ public final class PDImageXObject extends PDXObject implements PDImage
         getCOSObject().setItem(COSName.COLORSPACE, cs != null ? cs.getCOSObject() : null);
         colorSpace = null;
         cachedImage = null;
+        cachedBilevelImage = null;
     }
 
     @Override
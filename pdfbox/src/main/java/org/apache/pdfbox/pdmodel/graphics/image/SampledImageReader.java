@@ -23,6 +23,7 @@ import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBuffer;
 import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
 import java.awt.image.Raster;
 import java.awt.image.WritableRaster;
 import java.io.IOException;
@@ -209,6 +210,10 @@ final class SampledImageReader
         {
             if (bitsPerComponent == 1 && colorKey == null && numComponents == 1)
             {
+                if (colorSpace instanceof PDDeviceGray && subsampling > 1)
+                {
+                    return fromBilevel(pdImage, clipped, subsampling, width, height, false);
+                }
                 return from1Bit(pdImage, clipped, subsampling, width, height);
             }
 
@@ -233,13 +238,44 @@ final class SampledImageReader
         }
     }
 
+    /**
+     * Returns the content of a 1-bit DeviceGray image, e.g. a CCITT or JBIG2 compressed scan, as
+     * a packed TYPE_BYTE_BINARY image with one bit per pixel. This takes an eighth of the memory of
+     * {@link #getRGBImage(PDImage, Rectangle, int, COSArray)}, but the samples of its raster are
+     * 0 and 1 and not gray values, so it is meant for drawing and not for reading the raster.
+     * @param pdImage the image to read
+     * @param region The region of the source image to get, or null if the entire image is needed.
+     *               The actual region will be clipped to the dimensions of the source image.
+     * @return content of this image as a bilevel buffered image, or null if it isn't a 1-bit
+     * DeviceGray image
+     * @throws IOException if the image cannot be read
+     */
+    public static BufferedImage getBilevelImage(PDImage pdImage, Rectangle region)
+            throws IOException
+    {
+        if (pdImage.isEmpty())
+        {
+            throw new IOException("Image stream is empty");
+        }
+        if (pdImage.getBitsPerComponent() != 1
+                || !(pdImage.getColorSpace() instanceof PDDeviceGray))
+        {
+            return null;
+        }
+        Rectangle clipped = clipRegion(pdImage, region);
+        if (clipped.width <= 0 || clipped.height <= 0)
+        {
+            throw new IOException("image width and height must be positive");
+        }
+        return fromBilevel(pdImage, clipped, 1, clipped.width, clipped.height, true);
+    }
+
     private static BufferedImage from1Bit(PDImage pdImage, Rectangle clipped, final int subsampling,
                                           final int width, final int height) throws IOException
     {
         int currentSubsampling = subsampling;
         final PDColorSpace colorSpace = pdImage.getColorSpace();
         final float[] decode = getDecodeArray(pdImage);
-        BufferedImage bim = null;
         WritableRaster raster;
         byte[] output;
 
@@ -276,18 +312,7 @@ final class SampledImageReader
                 scanWidth = clipped.width;
                 scanHeight = clipped.height;
             }
-            if (colorSpace instanceof PDDeviceGray)
-            {
-                // TYPE_BYTE_GRAY and not TYPE_BYTE_BINARY because this one is handled
-                // without conversion to RGB by Graphics.drawImage
-                // this reduces the memory footprint, only one byte per pixel instead of three.
-                bim = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
-                raster = bim.getRaster();
-            }
-            else
-            {
-                raster = Raster.createBandedRaster(DataBuffer.TYPE_BYTE, width, height, 1, new Point(0, 0));
-            }
+            raster = Raster.createBandedRaster(DataBuffer.TYPE_BYTE, width, height, 1, new Point(0, 0));
             output = ((DataBufferByte) raster.getDataBuffer()).getData();
             final boolean isIndexed = colorSpace instanceof PDIndexed;
 
@@ -346,13 +371,143 @@ final class SampledImageReader
                 }
             }
 
-            if (bim != null)
+            // use the color space to convert the image to RGB
+            return colorSpace.toRGBImage(raster);
+        }
+        finally
+        {
+            if (iis != null)
             {
-                return bim;
+                iis.close();
             }
+        }
+    }
 
-            // use the color space to convert the image to RGB
-            return colorSpace.toRGBImage(raster);
+    /**
+     * Reads a 1-bit DeviceGray image, e.g. a CCITT or JBIG2 compressed scan. If packed is set, the
+     * rows are copied into a TYPE_BYTE_BINARY image, which requires a subsampling of 1. Otherwise
+     * a TYPE_BYTE_GRAY image is returned where each pixel is the average of the source pixels it
+     * covers, counted on the packed rows, so that thin lines don't get lost as with point sampling.
+     */
+    private static BufferedImage fromBilevel(PDImage pdImage, Rectangle clipped,
+            final int subsampling, final int width, final int height, boolean packed)
+            throws IOException
+    {
+        final float[] decode = getDecodeArray(pdImage);
+        // the gray values of 0 and 1 bits
+        final int value0 = decode[0] < decode[1] ? 0 : 255;
+        final int value1 = 255 - value0;
+
+        DecodeOptions options = new DecodeOptions(subsampling);
+        options.setSourceRegion(clipped);
+        InputStream iis = null;
+        try
+        {
+            iis = pdImage.createInputStream(options);
+
+            final int inputWidth;
+            final int startx;
+            final int starty;
+            final int scanWidth;
+            final int scanHeight;
+            final int currentSubsampling;
+            if (options.isFilterSubsampled())
+            {
+                // Decode options were honored, and so there is no need for additional clipping or subsampling
+                inputWidth = width;
+                startx = 0;
+                starty = 0;
+                scanWidth = width;
+                scanHeight = height;
+                currentSubsampling = 1;
+            }
+            else
+            {
+                // Decode options not honored, so we need to clip and subsample ourselves.
+                inputWidth = pdImage.getWidth();
+                startx = clipped.x;
+                starty = clipped.y;
+                scanWidth = clipped.width;
+                scanHeight = clipped.height;
+                currentSubsampling = subsampling;
+            }
+
+            BufferedImage bim;
+            if (packed)
+            {
+                byte[] gray = { (byte) value0, (byte) value1 };
+                bim = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_BINARY,
+                        new IndexColorModel(1, 2, gray, gray, gray));
+            }
+            else
+            {
+                bim = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+            }
+            byte[] output = ((DataBufferByte) bim.getRaster().getDataBuffer()).getData();
+
+            byte[] row = new byte[(inputWidth + 7) / 8];
+            // the number of 1 bits covered by each pixel of the current output row
+            int[] ones = currentSubsampling == 1 ? null : new int[width];
+            for (int y = 0; y < starty + scanHeight; y++)
+            {
+                int readLen = (int) IOUtils.populateBuffer(iis, row);
+                if (readLen != row.length)
+                {
+                    LOG.warn("premature EOF, image will be incomplete");
+                    if (y < starty)
+                    {
+                        break;
+                    }
+                    Arrays.fill(row, Math.max(readLen, 0), row.length, (byte) 0);
+                }
+                if (y >= starty)
+                {
+                    int scanY = y - starty;
+                    if (packed)
+                    {
+                        copyBits(row, startx, output, scanY * ((width + 7) / 8), width);
+                    }
+                    else if (ones == null)
+                    {
+                        // subsampled by the filter
+                        int offset = scanY * width;
+                        for (int x = 0; x < width; x++)
+                        {
+                            int bit = row[x >> 3] >> (7 - (x & 7)) & 1;
+                            output[offset + x] = (byte) (bit == 0 ? value0 : value1);
+                        }
+                    }
+                    else
+                    {
+                        for (int x = 0; x < width; x++)
+                        {
+                            int from = startx + x * currentSubsampling;
+                            int to = Math.min(from + currentSubsampling, startx + scanWidth);
+                            ones[x] += countBits(row, from, to);
+                        }
+                        int rows = scanY % currentSubsampling + 1;
+                        if (rows == currentSubsampling || scanY == scanHeight - 1
+                                || readLen != row.length)
+                        {
+                            int offset = scanY / currentSubsampling * width;
+                            for (int x = 0; x < width; x++)
+                            {
+                                int columns = Math.min(currentSubsampling,
+                                        scanWidth - x * currentSubsampling);
+                                int pixels = columns * rows;
+                                int ratio = (255 * ones[x] + pixels / 2) / pixels;
+                                output[offset + x] = (byte) (value0 == 0 ? ratio : 255 - ratio);
+                            }
+                            Arrays.fill(ones, 0);
+                        }
+                    }
+                }
+                if (readLen != row.length)
+                {
+                    break;
+                }
+            }
+            return bim;
         }
         finally
         {
@@ -363,6 +518,45 @@ final class SampledImageReader
         }
     }
 
+    /**
+     * Copies length bits of a packed row, starting at the given bit position, to the start of a
+     * byte of the target.
+     */
+    private static void copyBits(byte[] source, int from, byte[] target, int offset, int length)
+    {
+        int targetLen = (length + 7) / 8;
+        int shift = from & 7;
+        int start = from >> 3;
+        if (shift == 0)
+        {
+            System.arraycopy(source, start, target, offset, targetLen);
+            return;
+        }
+        for (int i = 0; i < targetLen; i++)
+        {
+            int high = source[start + i] & 0xff;
+            int low = start + i + 1 < source.length ? source[start + i + 1] & 0xff : 0;
+            target[offset + i] = (byte) (high << shift | low >> (8 - shift));
+        }
+    }
+
+    /**
+     * Counts the 1 bits of a row in the given range of bit positions.
+     */
+    private static int countBits(byte[] row, int from, int to)
+    {
+        int count = 0;
+        while (from < to)
+        {
+            int bit = from & 7;
+            int n = Math.min(8 - bit, to - from);
+            int bits = (row[from >> 3] & 0xff) >> (8 - bit - n) & ((1 << n) - 1);
+            count += Integer.bitCount(bits);
+            from += n;
+        }
+        return count;
+    }
+
     // faster, 8-bit non-decoded, non-colormasked image conversion
     private static BufferedImage from8bit(PDImage pdImage, WritableRaster raster, Rectangle clipped, final int subsampling,
                                           final int width, final int height) throws IOException
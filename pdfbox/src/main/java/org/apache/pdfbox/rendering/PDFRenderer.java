@@ -130,6 +130,9 @@ public class PDFRenderer
     /**
      * Sets a value instructing the renderer whether it is allowed to subsample images before
      * drawing. The subsampling frequency is determined according to image size and requested scale.
+     * JPX (JPEG 2000) images are then decoded at 1/2, 1/4 or 1/8 of their resolution, if JAI Image
+     * I/O is used. Soft masks and stencil masks of the same size as their image are decoded with the
+     * same subsampling as the image.
      *
      * Subsampling may be faster and less memory-intensive in some cases, but it may also lead to
      * loss of quality, especially in images with high spatial frequency.
@@ -1122,12 +1122,13 @@ public class PageDrawer extends PDFGraphicsStreamEngine
             {
                 int subsampling = getSubsampling(pdImage, at);
                 // draw the subsampled image
-                drawBufferedImage(pdImage.getImage(null, subsampling), at);
+                drawBufferedImage(subsampling == 1 ? getFullImage(pdImage)
+                        : pdImage.getImage(null, subsampling), at);
             }
             else
             {
                 // subsampling not allowed, draw the image
-                drawBufferedImage(pdImage.getImage(), at);
+                drawBufferedImage(getFullImage(pdImage), at);
             }
         }
 
@@ -1139,6 +1140,23 @@ public class PageDrawer extends PDFGraphicsStreamEngine
         }
     }
 
+    /**
+     * Returns the full resolution image, which is kept packed for bilevel images such as scans, as
+     * these are often large and an expanded image takes eight times the memory.
+     */
+    private BufferedImage getFullImage(PDImage pdImage) throws IOException
+    {
+        if (pdImage instanceof PDImageXObject)
+        {
+            BufferedImage image = ((PDImageXObject) pdImage).getBilevelImage();
+            if (image != null)
+            {
+                return image;
+            }
+        }
+        return pdImage.getImage();
+    }
+
     /**
      * Calculated the subsampling frequency for a given PDImage based on the current transformation
      * and its calculated transform
@@ -1162,6 +1180,12 @@ public class PageDrawer extends PDFGraphicsStreamEngine
         {
             subsampling = 1;
         }
+        if (subsampling > 2 && "jpx".equals(pdImage.getSuffix()))
+        {
+            // JPX images are decoded at a lower resolution level when the subsampling is a power
+            // of two, which is much faster than decoding them fully and skipping pixels
+            subsampling = Integer.highestOneBit(subsampling);
+        }
         if (subsampling > pdImage.getWidth() || subsampling > pdImage.getHeight())
         {
             // For very small images it is possible that the subsampling would imply 0 size.
@@ -53,5 +53,7 @@ public enum FileType
     /** FujiFilm camera raw. */
     RAF,
     /** Panasonic camera raw. */
-    RW2
+    RW2,
+    /** JPEG 2000, JP2 file or J2K codestream. */
+    JPEG2000
 }
\ No newline at end of file
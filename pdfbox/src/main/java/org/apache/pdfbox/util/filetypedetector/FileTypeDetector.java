@@ -59,6 +59,8 @@ public final class FileTypeDetector
         root.addPath(FileType.PCX, new byte[]{0x0A, 0x03, 0x01});
         root.addPath(FileType.PCX, new byte[]{0x0A, 0x05, 0x01});
         root.addPath(FileType.RIFF, "RIFF".getBytes(Charsets.ISO_8859_1));
+        root.addPath(FileType.JPEG2000, new byte[]{0x00, 0x00, 0x00, 0x0C, 0x6A, 0x50, 0x20, 0x20, 0x0D, 0x0A, (byte)0x87, 0x0A});
+        root.addPath(FileType.JPEG2000, new byte[]{(byte)0xff, 0x4f, (byte)0xff, 0x51});
 
         // https://github.com/drewnoakes/metadata-extractor/issues/217
         //root.addPath(FileType.ARW, "II".getBytes(Charsets.ISO_8859_1), new byte[]{0x2a, 0x00, 0x08, 0x00})
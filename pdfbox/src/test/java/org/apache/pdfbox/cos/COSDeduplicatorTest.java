@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.cos;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import org.apache.pdfbox.multipdf.PDFMergerUtility;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.apache.pdfbox.pdmodel.graphics.optionalcontent.PDOptionalContentGroup;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationText;
+import org.apache.pdfbox.util.Charsets;
+import org.junit.Test;
+
+public class COSDeduplicatorTest
+{
+    @Test
+    public void testMergedDocuments() throws IOException
+    {
+        PDDocument source = new PDDocument();
+        PDDocument merged = new PDDocument();
+        try
+        {
+            PDPage page = new PDPage();
+            source.addPage(page);
+            BufferedImage bim = new BufferedImage(64, 64, BufferedImage.TYPE_INT_RGB);
+            Random random = new Random(42);
+            for (int y = 0; y < 64; y++)
+            {
+                for (int x = 0; x < 64; x++)
+                {
+                    bim.setRGB(x, y, random.nextInt(0x1000000));
+                }
+            }
+            PDImageXObject image = LosslessFactory.createFromImage(source, bim);
+            PDPageContentStream cs = new PDPageContentStream(source, page);
+            cs.drawImage(image, 10, 10);
+            cs.beginText();
+            cs.setFont(PDType1Font.HELVETICA, 12);
+            cs.showText("Hello");
+            cs.endText();
+            cs.close();
+
+            PDFMergerUtility merger = new PDFMergerUtility();
+            for (int i = 0; i < 3; i++)
+            {
+                merger.appendDocument(merged, source);
+            }
+            byte[] withDuplicates = save(merged);
+            byte[] pageDigest = merged.getPage(2).getDigest();
+
+            merged.setDuplicatesToBeRemoved(true);
+            byte[] withoutDuplicates = save(merged);
+            assertTrue(withoutDuplicates.length < withDuplicates.length - 2 * 64 * 64);
+
+            PDDocument reloaded = PDDocument.load(withoutDuplicates);
+            try
+            {
+                assertEquals(3, reloaded.getNumberOfPages());
+                COSStream first = getImage(reloaded.getPage(0));
+                for (int i = 1; i < 3; i++)
+                {
+                    assertSame(first, getImage(reloaded.getPage(i)));
+                }
+                assertArrayEquals(pageDigest, reloaded.getPage(2).getDigest());
+            }
+            finally
+            {
+                reloaded.close();
+            }
+        }
+        finally
+        {
+            source.close();
+            merged.close();
+        }
+    }
+
+    @Test
+    public void testPinnedObjects() throws IOException
+    {
+        PDDocument doc = new PDDocument();
+        try
+        {
+            PDOptionalContentGroup ocg1 = new PDOptionalContentGroup("layer");
+            PDOptionalContentGroup ocg2 = new PDOptionalContentGroup("layer");
+            COSStream stream1 = createStream("data");
+            COSStream stream2 = createStream("data");
+            COSStream stream3 = createStream("data");
+            stream3.setItem(COSName.OC, ocg1);
+            COSStream stream4 = createStream("data");
+            stream4.setItem(COSName.OC, ocg2);
+            for (int i = 0; i < 2; i++)
+            {
+                PDPage page = new PDPage();
+                doc.addPage(page);
+                PDAnnotationText annotation = new PDAnnotationText();
+                annotation.setRectangle(new PDRectangle(10, 10, 20, 20));
+                page.getAnnotations().add(annotation);
+                page.setResources(new PDResources());
+            }
+            COSDictionary xobjects1 = new COSDictionary();
+            xobjects1.setItem(COSName.A, stream1);
+            xobjects1.setItem(COSName.B, stream3);
+            doc.getPage(0).getResources().getCOSObject().setItem(COSName.XOBJECT, xobjects1);
+            COSDictionary xobjects2 = new COSDictionary();
+            xobjects2.setItem(COSName.A, stream2);
+            xobjects2.setItem(COSName.B, stream4);
+            doc.getPage(1).getResources().getCOSObject().setItem(COSName.XOBJECT, xobjects2);
+            COSObject reference = new COSObject(stream1);
+            xobjects1.setItem(COSName.A, reference);
+
+            assertEquals(1, doc.getDocument().removeDuplicates());
+            assertSame(reference, xobjects2.getItem(COSName.A));
+            assertSame(stream4, xobjects2.getItem(COSName.B));
+            assertNotSame(doc.getPage(0).getAnnotations().get(0).getCOSObject(),
+                    doc.getPage(1).getAnnotations().get(0).getCOSObject());
+            assertEquals(0, doc.getDocument().removeDuplicates());
+        }
+        finally
+        {
+            doc.close();
+        }
+    }
+
+    private static COSStream getImage(PDPage page) throws IOException
+    {
+        PDResources resources = page.getResources();
+        COSName name = resources.getXObjectNames().iterator().next();
+        return (COSStream) resources.getXObject(name).getCOSObject();
+    }
+
+    private static COSStream createStream(String data) throws IOException
+    {
+        COSStream stream = new COSStream();
+        OutputStream out = stream.createRawOutputStream();
+        out.write(data.getBytes(Charsets.US_ASCII));
+        out.close();
+        return stream;
+    }
+
+    private static byte[] save(PDDocument doc) throws IOException
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        doc.save(baos);
+        return baos.toByteArray();
+    }
+}
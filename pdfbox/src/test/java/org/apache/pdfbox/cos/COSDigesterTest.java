@@ -0,0 +1,260 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.cos;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.util.Charsets;
+import org.junit.Test;
+
+public class COSDigesterTest
+{
+    @Test
+    public void testCanonicalForm() throws IOException
+    {
+        COSDictionary dict1 = new COSDictionary();
+        dict1.setItem(COSName.A, COSInteger.ONE);
+        dict1.setItem(COSName.B, new COSString("text"));
+        dict1.setItem(COSName.C, new COSObject(createArray()));
+        dict1.setItem(COSName.D, COSNull.NULL);
+
+        COSDictionary dict2 = new COSDictionary();
+        dict2.setItem(COSName.C, createArray());
+        COSObject indirect = new COSObject(COSInteger.ONE);
+        indirect.setObjectNumber(42);
+        dict2.setItem(COSName.A, indirect);
+        dict2.setItem(COSName.B, COSString.parseHex("74657874"));
+
+        assertArrayEquals(COSDigester.digest(dict1), COSDigester.digest(dict2));
+
+        dict2.setItem(COSName.B, new COSString("other"));
+        assertFalse(Arrays.equals(COSDigester.digest(dict1), COSDigester.digest(dict2)));
+
+        // same value, different type
+        dict2.setItem(COSName.B, new COSString("text"));
+        dict2.setItem(COSName.A, new COSFloat(1));
+        assertFalse(Arrays.equals(COSDigester.digest(dict1), COSDigester.digest(dict2)));
+    }
+
+    @Test
+    public void testSharedObjects() throws IOException
+    {
+        // a shared object is the same as two copies, e.g. after direct objects have been written
+        COSArray array = createArray();
+        COSDictionary shared = new COSDictionary();
+        shared.setItem(COSName.A, array);
+        shared.setItem(COSName.B, array);
+        COSDictionary copied = new COSDictionary();
+        copied.setItem(COSName.A, createArray());
+        copied.setItem(COSName.B, createArray());
+        assertArrayEquals(COSDigester.digest(shared), COSDigester.digest(copied));
+    }
+
+    @Test
+    public void testCycles() throws IOException
+    {
+        COSDictionary parent1 = createTree();
+        COSDictionary parent2 = createTree();
+        assertArrayEquals(COSDigester.digest(parent1), COSDigester.digest(parent2));
+
+        // a reference to the other child instead of back to the parent
+        COSArray kids = (COSArray) parent2.getDictionaryObject(COSName.KIDS);
+        ((COSDictionary) kids.getObject(0)).setItem(COSName.PARENT, kids.getObject(1));
+        assertFalse(Arrays.equals(COSDigester.digest(parent1), COSDigester.digest(parent2)));
+    }
+
+    @Test
+    public void testCacheInvalidation() throws IOException
+    {
+        COSDictionary parent = createTree();
+        byte[] digest = COSDigester.digest(parent);
+        assertArrayEquals(digest, COSDigester.digest(parent));
+
+        COSArray kids = (COSArray) parent.getDictionaryObject(COSName.KIDS);
+        COSDictionary kid = (COSDictionary) kids.getObject(1);
+        kid.setInt(COSName.COUNT, 2);
+        byte[] changed = COSDigester.digest(parent);
+        assertFalse(Arrays.equals(digest, changed));
+
+        kid.setInt(COSName.COUNT, 1);
+        assertArrayEquals(digest, COSDigester.digest(parent));
+
+        kids.add(COSNull.NULL);
+        assertFalse(Arrays.equals(digest, COSDigester.digest(parent)));
+
+        // strings are changed in place
+        COSString title = new COSString("Title");
+        kid.setItem(COSName.T, title);
+        digest = COSDigester.digest(parent);
+        title.setValue("Other".getBytes(Charsets.US_ASCII));
+        changed = COSDigester.digest(parent);
+        assertFalse(Arrays.equals(digest, changed));
+        title.setValue("Title".getBytes(Charsets.US_ASCII));
+        assertArrayEquals(digest, COSDigester.digest(parent));
+    }
+
+    @Test
+    public void testStreams() throws IOException
+    {
+        COSStream stream1 = createStream("data");
+        COSStream stream2 = createStream("data");
+        assertArrayEquals(COSDigester.digestRawData(stream1), COSDigester.digestRawData(stream2));
+        assertArrayEquals(COSDigester.digest(stream1), COSDigester.digest(stream2));
+
+        COSDictionary dict = new COSDictionary();
+        dict.setItem(COSName.XOBJECT, stream1);
+        byte[] digest = COSDigester.digest(dict);
+
+        writeStream(stream1, "other");
+        assertFalse(Arrays.equals(COSDigester.digestRawData(stream1),
+                COSDigester.digestRawData(stream2)));
+        assertFalse(Arrays.equals(digest, COSDigester.digest(dict)));
+
+        // a dictionary with the same entries isn't a stream
+        COSDictionary dict2 = new COSDictionary();
+        dict2.setInt(COSName.LENGTH, 4);
+        assertFalse(Arrays.equals(COSDigester.digest(dict2), COSDigester.digest(stream2)));
+    }
+
+    @Test
+    public void testDocumentAndPages() throws IOException
+    {
+        PDDocument doc1 = createDocument("Hello", "World");
+        PDDocument doc2 = createDocument("World", "Hello");
+        try
+        {
+            PDDocument doc3 = createDocument("Hello", "World");
+            assertArrayEquals(doc1.getDigest(), doc3.getDigest());
+            doc3.close();
+            assertFalse(Arrays.equals(doc1.getDigest(), doc2.getDigest()));
+
+            // the position of the page doesn't matter
+            PDPage page1 = doc1.getPage(0);
+            PDPage page2 = doc2.getPage(1);
+            byte[] pageDigest = page1.getDigest();
+            assertArrayEquals(pageDigest, page2.getDigest());
+            assertFalse(Arrays.equals(pageDigest, doc1.getPage(1).getDigest()));
+
+            PDResources resources = page1.getResources();
+            COSName fontName = resources.getFontNames().iterator().next();
+            assertArrayEquals(resources.getDigest(COSName.FONT, fontName),
+                    page2.getResources().getDigest(COSName.FONT, fontName));
+            assertNull(resources.getDigest(COSName.XOBJECT, fontName));
+
+            // the digest doesn't change when the document is saved and reloaded
+            byte[] docDigest = doc1.getDigest();
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            doc1.save(baos);
+            PDDocument reloaded = PDDocument.load(baos.toByteArray());
+            try
+            {
+                assertArrayEquals(docDigest, reloaded.getDigest());
+                assertArrayEquals(pageDigest, reloaded.getPage(0).getDigest());
+            }
+            finally
+            {
+                reloaded.close();
+            }
+
+            // inherited attributes are part of the page
+            page1.getCOSObject().removeItem(COSName.ROTATE);
+            byte[] unrotated = page1.getDigest();
+            doc1.getPages().getCOSObject().setInt(COSName.ROTATE, 90);
+            assertFalse(Arrays.equals(unrotated, page1.getDigest()));
+            assertEquals(90, page1.getRotation());
+
+            // other pages are not
+            doc1.getPages().getCOSObject().removeItem(COSName.ROTATE);
+            assertArrayEquals(unrotated, page1.getDigest());
+            doc1.getPage(1).setRotation(180);
+            assertArrayEquals(unrotated, page1.getDigest());
+            assertFalse(Arrays.equals(docDigest, doc1.getDigest()));
+        }
+        finally
+        {
+            doc1.close();
+            doc2.close();
+        }
+    }
+
+    private static COSArray createArray()
+    {
+        COSArray array = new COSArray();
+        array.add(COSName.A);
+        array.add(new COSFloat(0.5f));
+        array.add(COSBoolean.TRUE);
+        return array;
+    }
+
+    private static COSDictionary createTree()
+    {
+        COSDictionary parent = new COSDictionary();
+        COSArray kids = new COSArray();
+        for (int i = 0; i < 2; i++)
+        {
+            COSDictionary kid = new COSDictionary();
+            kid.setItem(COSName.PARENT, parent);
+            kid.setInt(COSName.COUNT, i);
+            kids.add(kid);
+        }
+        parent.setItem(COSName.KIDS, kids);
+        return parent;
+    }
+
+    private static COSStream createStream(String data) throws IOException
+    {
+        COSStream stream = new COSStream();
+        writeStream(stream, data);
+        return stream;
+    }
+
+    private static void writeStream(COSStream stream, String data) throws IOException
+    {
+        OutputStream out = stream.createRawOutputStream();
+        out.write(data.getBytes(Charsets.US_ASCII));
+        out.close();
+    }
+
+    private static PDDocument createDocument(String... texts) throws IOException
+    {
+        PDDocument doc = new PDDocument();
+        for (String text : texts)
+        {
+            PDPage page = new PDPage();
+            doc.addPage(page);
+            PDPageContentStream cs = new PDPageContentStream(doc, page);
+            cs.beginText();
+            cs.setFont(PDType1Font.HELVETICA, 12);
+            cs.showText(text);
+            cs.endText();
+            cs.close();
+        }
+        return doc;
+    }
+}
@@ -19,10 +19,21 @@ package org.apache.pdfbox.pdfwriter;
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import org.apache.pdfbox.cos.COSObjectKey;
+import org.apache.pdfbox.io.RandomAccessBuffer;
+import org.apache.pdfbox.pdfparser.PDFParser;
 import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDDocumentInformation;
 import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.apache.pdfbox.util.Charsets;
 import org.junit.Test;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
 public class COSWriterTest
 {
     /**
@@ -62,4 +73,70 @@ public class COSWriterTest
         }));
         doc.close();
     }
+
+    /**
+     * Check that unchanged objects are copied as is and that marked changes are written.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testSavePassThrough() throws IOException
+    {
+        // the comment and the unusual spacing would be lost if the objects were serialized again
+        String content = "BT /F1 12 Tf 20 100 Td (Hello) Tj ET";
+        String[] objects = {
+            "<< /Type /Catalog /Pages 2 0 R >>",
+            "<< /Type /Pages /Kids [3 0 R] /Count 1 >>",
+            "<< /Type /Page /Parent 2 0 R /MediaBox [ 0  0  200  200 ] /Contents 4 0 R"
+                    + " /Resources << /Font << /F1 5 0 R >> >> >>",
+            "<< /Length " + content.length() + " >> % kept\nstream\n" + content + "\nendstream",
+            "<< /Type /Font /Subtype /Type1 /BaseFont /Helvetica >>",
+            "<< /Title (Old) >>" };
+        StringBuilder pdf = new StringBuilder("%PDF-1.4\n");
+        int[] offsets = new int[objects.length];
+        for (int i = 0; i < objects.length; i++)
+        {
+            offsets[i] = pdf.length();
+            pdf.append(i + 1).append(" 0 obj\n").append(objects[i]).append("\nendobj\n");
+        }
+        int startxref = pdf.length();
+        pdf.append("xref\n0 ").append(objects.length + 1).append("\n0000000000 65535 f\r\n");
+        for (int offset : offsets)
+        {
+            pdf.append(String.format("%010d 00000 n\r\n", offset));
+        }
+        pdf.append("trailer\n<< /Size ").append(objects.length + 1)
+                .append(" /Root 1 0 R /Info 6 0 R >>\nstartxref\n").append(startxref)
+                .append("\n%%EOF\n");
+
+        byte[] source = pdf.toString().getBytes(Charsets.ISO_8859_1);
+
+        // the byte ranges are only recorded on request
+        PDDocument doc = PDDocument.load(source);
+        assertNull(doc.getDocument().getObjectByteRange(new COSObjectKey(3, 0)));
+        doc.close();
+
+        PDFParser parser = new PDFParser(new RandomAccessBuffer(source));
+        parser.setPassThroughEnabled(true);
+        parser.parse();
+        doc = parser.getPDDocument();
+        PDDocumentInformation info = doc.getDocumentInformation();
+        info.setTitle("New");
+        info.getCOSObject().setNeedToBeUpdated(true);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        doc.savePassThrough(baos);
+        doc.close();
+        byte[] saved = baos.toByteArray();
+
+        String savedText = new String(saved, Charsets.ISO_8859_1);
+        assertTrue(savedText.contains("3 0 obj\n" + objects[2] + "\nendobj"));
+        assertTrue(savedText.contains("4 0 obj\n" + objects[3] + "\nendobj"));
+        assertFalse(savedText.contains("(Old)"));
+
+        doc = PDDocument.load(saved);
+        assertEquals("New", doc.getDocumentInformation().getTitle());
+        assertEquals(1, doc.getNumberOfPages());
+        assertEquals("Hello", new PDFTextStripper().getText(doc).trim());
+        doc.close();
+    }
 }
@@ -25,10 +25,20 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Locale;
 
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSObjectKey;
 import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationWidget;
+import org.apache.pdfbox.pdmodel.interactive.form.PDAcroForm;
+import org.apache.pdfbox.pdmodel.interactive.form.PDTextField;
 
 import junit.framework.TestCase;
 import static junit.framework.TestCase.assertNull;
@@ -194,4 +204,113 @@ public class TestPDDocument extends TestCase
         boolean deleted = f.delete();
         assertTrue("delete good file failed after successful load() and close()", deleted);
     }
+
+    /**
+     * Test that the object keys of a page include its own objects and shared resources, but not
+     * the objects of other pages.
+     *
+     * @throws IOException if something went wrong
+     */
+    public void testGetPageObjectKeys() throws IOException
+    {
+        PDDocument document = new PDDocument();
+        // shared resources, written as an indirect object
+        PDResources resources = new PDResources();
+        resources.add(PDType1Font.HELVETICA);
+        COSObject sharedResources = new COSObject(resources.getCOSObject());
+        for (int i = 0; i < 2; i++)
+        {
+            PDPage page = new PDPage();
+            page.getCOSObject().setItem(COSName.RESOURCES, sharedResources);
+            document.addPage(page);
+            PDPageContentStream contents = new PDPageContentStream(document, page);
+            contents.beginText();
+            contents.setFont(PDType1Font.HELVETICA, 12);
+            contents.showText("Page " + i);
+            contents.endText();
+            contents.close();
+        }
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        document.save(baos);
+        document.close();
+
+        PDDocument loadDoc = PDDocument.load(new ByteArrayInputStream(baos.toByteArray()));
+        long[] keys0 = loadDoc.getPageObjectKeys(0);
+        long[] keys1 = loadDoc.getPageObjectKeys(loadDoc.getPage(1));
+
+        // the pages themselves
+        long page0 = getKey(loadDoc.getPages().getCOSObject().getCOSArray(COSName.KIDS).get(0));
+        long page1 = getKey(loadDoc.getPages().getCOSObject().getCOSArray(COSName.KIDS).get(1));
+        assertTrue(Arrays.binarySearch(keys0, page0) >= 0);
+        assertTrue(Arrays.binarySearch(keys0, page1) < 0);
+        assertTrue(Arrays.binarySearch(keys1, page1) >= 0);
+
+        long contents0 = getKey(loadDoc.getPage(0).getCOSObject().getItem(COSName.CONTENTS));
+        long contents1 = getKey(loadDoc.getPage(1).getCOSObject().getItem(COSName.CONTENTS));
+        assertTrue(Arrays.binarySearch(keys0, contents0) >= 0);
+        assertTrue(Arrays.binarySearch(keys0, contents1) < 0);
+        assertTrue(Arrays.binarySearch(keys1, contents1) >= 0);
+        assertTrue(Arrays.binarySearch(keys1, contents0) < 0);
+
+        // the shared resources are needed by both pages
+        long resourcesKey = getKey(loadDoc.getPage(0).getCOSObject().getItem(COSName.RESOURCES));
+        assertTrue(Arrays.binarySearch(keys0, resourcesKey) >= 0);
+        assertTrue(Arrays.binarySearch(keys1, resourcesKey) >= 0);
+
+        // the cached result is returned as a copy
+        keys0[0] = -1;
+        assertTrue(loadDoc.getPageObjectKeys(0)[0] != -1);
+        loadDoc.close();
+    }
+
+    /**
+     * Test that the object keys of a page include the parent field of a widget, which holds its
+     * inherited attributes, but not the widgets of that field on other pages.
+     *
+     * @throws IOException if something went wrong
+     */
+    public void testGetPageObjectKeysWidgetParent() throws IOException
+    {
+        PDDocument document = new PDDocument();
+        PDAcroForm acroForm = new PDAcroForm(document);
+        document.getDocumentCatalog().setAcroForm(acroForm);
+        PDTextField field = new PDTextField(acroForm);
+        field.setPartialName("text");
+        field.getCOSObject().setString(COSName.DA, "/Helv 0 Tf 0 g");
+        field.getCOSObject().setString(COSName.V, "value");
+        acroForm.getFields().add(field);
+        List<PDAnnotationWidget> widgets = new ArrayList<PDAnnotationWidget>();
+        for (int i = 0; i < 2; i++)
+        {
+            PDPage page = new PDPage();
+            document.addPage(page);
+            PDAnnotationWidget widget = new PDAnnotationWidget();
+            widget.setRectangle(new PDRectangle(50, 50, 100, 20));
+            widget.setPage(page);
+            widget.getCOSObject().setItem(COSName.PARENT, field);
+            page.getAnnotations().add(widget);
+            widgets.add(widget);
+        }
+        field.setWidgets(widgets);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        document.save(baos);
+        document.close();
+
+        PDDocument loadDoc = PDDocument.load(new ByteArrayInputStream(baos.toByteArray()));
+        long[] keys0 = loadDoc.getPageObjectKeys(0);
+        long widget0 = getKey(loadDoc.getPage(0).getCOSObject().getCOSArray(COSName.ANNOTS).get(0));
+        long widget1 = getKey(loadDoc.getPage(1).getCOSObject().getCOSArray(COSName.ANNOTS).get(0));
+        long fieldKey = getKey(loadDoc.getDocumentCatalog().getAcroForm().getCOSObject()
+                .getCOSArray(COSName.FIELDS).get(0));
+        assertTrue(Arrays.binarySearch(keys0, widget0) >= 0);
+        assertTrue(Arrays.binarySearch(keys0, fieldKey) >= 0);
+        assertTrue(Arrays.binarySearch(keys0, widget1) < 0);
+        loadDoc.close();
+    }
+
+    private static long getKey(Object base)
+    {
+        assertTrue(base instanceof COSObject);
+        return new COSObjectKey((COSObject) base).getInternalHash();
+    }
 }
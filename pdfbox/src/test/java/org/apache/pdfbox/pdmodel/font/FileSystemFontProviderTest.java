@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.pdmodel.font;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for the disk cache of FileSystemFontProvider
+ */
+public class FileSystemFontProviderTest extends TestCase
+{
+    private final File cacheDir = new File("target/test-output/fontcache");
+
+    public void testDiskCacheRoundTrip() throws IOException
+    {
+        cacheDir.mkdirs();
+        File cacheFile = new File(cacheDir, ".pdfbox.cache.bin");
+        cacheFile.delete();
+        String oldPath = System.getProperty("pdfbox.fontcache");
+        System.setProperty("pdfbox.fontcache", cacheDir.getAbsolutePath());
+        try
+        {
+            List<String> scanned = describe(new FileSystemFontProvider(new FontCache()));
+            if (scanned.isEmpty())
+            {
+                // no fonts installed, nothing to compare
+                return;
+            }
+            assertTrue(cacheFile.isFile());
+
+            // the cache is read, not re-built
+            long lastModified = 1000000000000L;
+            assertTrue(cacheFile.setLastModified(lastModified));
+            List<String> cached = describe(new FileSystemFontProvider(new FontCache()));
+            assertEquals(scanned, cached);
+            assertEquals(lastModified, cacheFile.lastModified());
+
+            // a truncated cache is re-built
+            RandomAccessFile raf = new RandomAccessFile(cacheFile, "rw");
+            try
+            {
+                raf.setLength(raf.length() / 2);
+            }
+            finally
+            {
+                raf.close();
+            }
+            assertEquals(scanned, describe(new FileSystemFontProvider(new FontCache())));
+            assertEquals(scanned, describe(new FileSystemFontProvider(new FontCache())));
+        }
+        finally
+        {
+            if (oldPath == null)
+            {
+                System.clearProperty("pdfbox.fontcache");
+            }
+            else
+            {
+                System.setProperty("pdfbox.fontcache", oldPath);
+            }
+        }
+    }
+
+    private static List<String> describe(FontProvider provider)
+    {
+        List<String> result = new ArrayList<String>();
+        for (FontInfo info : provider.getFontInfo())
+        {
+            result.add(info + " weight: " + info.getWeightClass() + ", codepages: "
+                    + info.getCodePageRange1() + "/" + info.getCodePageRange2() + ", panose: "
+                    + info.getPanose());
+        }
+        return result;
+    }
+}
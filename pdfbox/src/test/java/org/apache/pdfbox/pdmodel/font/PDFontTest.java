@@ -23,8 +23,11 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.Collections;
+import java.util.List;
 import org.apache.fontbox.ttf.TTFParser;
 import org.apache.fontbox.ttf.TrueTypeFont;
+import org.apache.pdfbox.cos.COSDictionary;
 import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
@@ -190,6 +193,85 @@ public class PDFontTest
         doc.close();
     }
 
+    /**
+     * Check that font lookups are memoized, that changing the substitutes invalidates them and
+     * that fallbacks are counted.
+     */
+    @Test
+    public void testFontMapperMemoization()
+    {
+        FontMapperImpl mapper = new FontMapperImpl();
+        mapper.setProvider(new FontProvider()
+        {
+            @Override
+            public String toDebugString()
+            {
+                return null;
+            }
+
+            @Override
+            public List<? extends FontInfo> getFontInfo()
+            {
+                return Collections.emptyList();
+            }
+        });
+
+        FontMapping<TrueTypeFont> mapping1 = mapper.getTrueTypeFont("NoSuchFont", null);
+        FontMapping<TrueTypeFont> mapping2 = mapper.getTrueTypeFont("NoSuchFont", null);
+        Assert.assertTrue(mapping1.isFallback());
+        Assert.assertSame(mapping1, mapping2);
+        Assert.assertNotSame(mapping1, mapper.getFontBoxFont("NoSuchFont", null));
+
+        mapper.addSubstitute("NoSuchFont", "NoOtherFont");
+        Assert.assertNotSame(mapping1, mapper.getTrueTypeFont("NoSuchFont", null));
+
+        FontMapperStatistics statistics = mapper.getStatistics();
+        Assert.assertEquals(4, statistics.getLookupCount());
+        Assert.assertEquals(1, statistics.getCacheHitCount());
+        Assert.assertEquals(4, statistics.getFallbackCount());
+        Assert.assertEquals(4, statistics.getLastResortCount());
+        Assert.assertEquals(1.0, statistics.getFallbackRatio(), 0);
+    }
+
+    /**
+     * Check that the Standard 14 metrics are shared by fonts from different documents and by
+     * the alternative font names, and that the width tables match the AFM.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testStandard14Metrics() throws IOException
+    {
+        Standard14Metrics metrics = Standard14Fonts.getMetrics("Helvetica");
+        Assert.assertSame(metrics, Standard14Fonts.getMetrics("Arial"));
+        Assert.assertSame(metrics.getAFM(), Standard14Fonts.getAFM("ArialMT"));
+        Assert.assertNull(Standard14Fonts.getMetrics("NoSuchFont"));
+
+        COSDictionary dict1 = new COSDictionary();
+        dict1.setItem(COSName.TYPE, COSName.FONT);
+        dict1.setItem(COSName.SUBTYPE, COSName.TYPE1);
+        dict1.setName(COSName.BASE_FONT, "Arial");
+        dict1.setItem(COSName.ENCODING, COSName.WIN_ANSI_ENCODING);
+        COSDictionary dict2 = new COSDictionary();
+        dict2.setItem(COSName.TYPE, COSName.FONT);
+        dict2.setItem(COSName.SUBTYPE, COSName.TYPE1);
+        dict2.setName(COSName.BASE_FONT, "Helvetica");
+        PDType1Font font1 = new PDType1Font(dict1);
+        PDType1Font font2 = new PDType1Font(dict2);
+        Assert.assertSame(metrics, font1.getStandard14Metrics());
+        Assert.assertSame(metrics, font2.getStandard14Metrics());
+        Assert.assertSame(metrics.getBuiltInEncoding(), font2.getEncoding());
+
+        for (int code = 0; code < 256; code++)
+        {
+            String name = WinAnsiEncoding.INSTANCE.getName(code);
+            float expected = ".notdef".equals(name) ? 250 : metrics.getAFM().getCharacterWidth(name);
+            Assert.assertEquals(expected, font1.getWidth(code), 0);
+        }
+        Assert.assertEquals(556, font1.getWidth('a'), 0);
+        Assert.assertEquals(250, metrics.getWidth(WinAnsiEncoding.INSTANCE, 0x0A), 0);
+    }
+
     /**
      * Test whether bug from PDFBOX-4318 is fixed, which had the wrong cache key.
      * @throws java.io.IOException
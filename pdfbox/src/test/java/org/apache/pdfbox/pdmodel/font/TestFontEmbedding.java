@@ -23,6 +23,8 @@ import java.io.InputStream;
 import java.util.HashSet;
 import java.util.Set;
 import junit.framework.TestCase;
+import org.apache.fontbox.ttf.TTFParser;
+import org.apache.fontbox.ttf.TrueTypeFont;
 import org.apache.pdfbox.cos.COSArray;
 import org.apache.pdfbox.cos.COSDictionary;
 import org.apache.pdfbox.cos.COSName;
@@ -214,6 +216,45 @@ public class TestFontEmbedding extends TestCase
         assertEquals(text, extracted.trim());
     }
 
+    /**
+     * Embed a TTF with a ligature feature enabled, check that showText() writes the ligature and
+     * that the subset maps it back to its text.
+     *
+     * @throws IOException
+     */
+    public void testCIDFontType2Ligatures() throws IOException
+    {
+        PDDocument document = new PDDocument();
+        PDPage page = new PDPage(PDRectangle.A4);
+        document.addPage(page);
+
+        InputStream input = PDFont.class.getResourceAsStream(
+                "/org/apache/pdfbox/resources/ttf/LiberationSans-Regular.ttf");
+        TrueTypeFont ttf = new TTFParser().parse(input);
+        // tone letters "extra high" and "extra low" are combined into one contour glyph
+        ttf.enableGsubFeature("ccmp");
+        PDType0Font font = PDType0Font.load(document, ttf, true);
+
+        String text = "Tone a\u02E5\u02E9";
+        assertEquals(2 * text.length(), font.encode(text).length);
+        assertEquals(2 * (text.length() - 1), font.encodeShaped(text).length);
+
+        PDPageContentStream stream = new PDPageContentStream(document, page);
+        stream.beginText();
+        stream.setFont(font, 12);
+        stream.newLineAtOffset(50, 600);
+        stream.showText(text);
+        stream.endText();
+        stream.close();
+
+        File file = new File(OUT_DIR, "CIDFontType2Ligatures.pdf");
+        document.save(file);
+        document.close();
+        ttf.close();
+
+        assertEquals(text, getUnicodeText(file).trim());
+    }
+
     private void validateCIDFontType2(boolean useSubset) throws Exception
     {
         PDDocument document = new PDDocument();
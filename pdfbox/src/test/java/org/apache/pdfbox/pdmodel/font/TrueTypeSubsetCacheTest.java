@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.pdmodel.font;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import junit.framework.TestCase;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+
+/**
+ * Tests for the cache of TrueType font subsets.
+ */
+public class TrueTypeSubsetCacheTest extends TestCase
+{
+    /**
+     * Test that the cache is bounded by the size of the subsets and removes the least recently
+     * used ones.
+     */
+    public void testMaxSize()
+    {
+        TrueTypeSubsetCache cache = new TrueTypeSubsetCache(100);
+        cache.put("a", createSubset(40));
+        cache.put("b", createSubset(40));
+        assertNotNull(cache.get("a"));
+        cache.put("c", createSubset(40));
+        assertEquals(80, cache.getSize());
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+
+        // replacing a subset doesn't count it twice
+        cache.put("c", createSubset(50));
+        assertEquals(90, cache.getSize());
+
+        // too large to be cached at all
+        cache.put("d", createSubset(101));
+        assertNull(cache.get("d"));
+        assertEquals(90, cache.getSize());
+    }
+
+    /**
+     * Test that the shared cache can be disabled and cleared.
+     *
+     * @throws IOException if something went wrong
+     */
+    public void testDisableAndClear() throws IOException
+    {
+        TrueTypeSubsetCache cache = TrueTypeSubsetCache.getInstance();
+        long maxSize = TrueTypeSubsetCache.getMaxSize();
+        assertEquals(TrueTypeSubsetCache.DEFAULT_MAX_SIZE, maxSize);
+        try
+        {
+            TrueTypeSubsetCache.clear();
+            TrueTypeSubsetCache.setMaxSize(0);
+            embedSubset();
+            assertEquals(0, cache.getSize());
+
+            TrueTypeSubsetCache.setMaxSize(maxSize);
+            embedSubset();
+            assertTrue(cache.getSize() > 0);
+
+            TrueTypeSubsetCache.clear();
+            assertEquals(0, cache.getSize());
+
+            try
+            {
+                TrueTypeSubsetCache.setMaxSize(-1);
+                fail("negative sizes must be rejected");
+            }
+            catch (IllegalArgumentException e)
+            {
+                // expected
+            }
+        }
+        finally
+        {
+            TrueTypeSubsetCache.setMaxSize(maxSize);
+        }
+    }
+
+    private static void embedSubset() throws IOException
+    {
+        PDDocument document = new PDDocument();
+        PDPage page = new PDPage();
+        document.addPage(page);
+        PDFont font = PDType0Font.load(document, PDDocument.class.getResourceAsStream(
+                "/org/apache/pdfbox/resources/ttf/LiberationSans-Regular.ttf"));
+        PDPageContentStream contentStream = new PDPageContentStream(document, page);
+        contentStream.beginText();
+        contentStream.setFont(font, 12);
+        contentStream.showText("subset");
+        contentStream.endText();
+        contentStream.close();
+        document.save(new ByteArrayOutputStream());
+        document.close();
+    }
+
+    private static TrueTypeSubsetCache.Subset createSubset(int size)
+    {
+        return new TrueTypeSubsetCache.Subset(new byte[size], "ABCDEF",
+                new HashMap<Integer, Integer>());
+    }
+}
@@ -15,9 +15,26 @@
  */
 package org.apache.pdfbox.pdmodel.graphics.color;
 
+import java.awt.color.ColorSpace;
+import java.awt.color.ICC_ColorSpace;
+import java.awt.color.ICC_Profile;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.io.IOUtils;
 import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import org.junit.Test;
 
 /**
@@ -43,4 +60,77 @@ public class PDICCBasedTest
         assertNotNull(iccBased.getPDStream());
     }
 
+    /**
+     * Test that equal profiles share the parsed profile, also across documents, but not the color
+     * space.
+     *
+     * @throws IOException
+     */
+    @Test
+    public void testProfileCache() throws IOException
+    {
+        byte[] cmyk = readResource("/org/apache/pdfbox/resources/icc/ISOcoated_v2_300_bas.icc");
+        ICCProfileCache.Entry entry = ICCProfileCache.get(cmyk);
+        assertSame(entry, ICCProfileCache.get(cmyk.clone()));
+        ICC_ColorSpace colorSpace = entry.createColorSpace();
+        assertNotNull(colorSpace);
+        assertNotSame(colorSpace, entry.createColorSpace());
+        assertNull(entry.getColorSpaceError());
+        assertFalse(entry.isSRGB());
+        assertEquals(ColorSpace.TYPE_CMYK, entry.getProfile().getColorSpaceType());
+
+        PDICCBased iccBased1 = createICCBased(cmyk, 4);
+        PDICCBased iccBased2 = createICCBased(cmyk, 4);
+        assertEquals(ColorSpace.TYPE_CMYK, iccBased1.getColorSpaceType());
+        float[] white = { 0, 0, 0, 0 };
+        assertArrayEquals(iccBased1.toRGB(white), iccBased2.toRGB(white), 0);
+
+        // sRGB, recognized by the device model, uses Java's built-in color space
+        byte[] srgb = ICC_Profile.getInstance(ColorSpace.CS_sRGB).getData();
+        System.arraycopy(new byte[] { 's', 'R', 'G', 'B' }, 0, srgb, ICC_Profile.icHdrModel, 4);
+        ICCProfileCache.Entry srgbEntry = ICCProfileCache.get(srgb);
+        assertTrue(srgbEntry.isSRGB());
+        assertSame(ColorSpace.getInstance(ColorSpace.CS_sRGB), srgbEntry.createColorSpace());
+
+        // invalid profiles are cached as well, PDICCBased falls back to the alternate
+        byte[] invalid = new byte[200];
+        ICCProfileCache.Entry invalidEntry = ICCProfileCache.get(invalid);
+        assertSame(invalidEntry, ICCProfileCache.get(invalid));
+        assertNull(invalidEntry.createColorSpace());
+        assertNotNull(invalidEntry.getColorSpaceError());
+        try
+        {
+            invalidEntry.getProfile();
+            fail("IllegalArgumentException expected");
+        }
+        catch (IllegalArgumentException e)
+        {
+            // expected
+        }
+        PDICCBased invalidBased = createICCBased(invalid, 3);
+        assertArrayEquals(new float[] { 1, 0, 0 }, invalidBased.toRGB(new float[] { 1, 0, 0 }), 0);
+    }
+
+    private static PDICCBased createICCBased(byte[] profile, int n) throws IOException
+    {
+        PDStream stream = new PDStream(new PDDocument(), new ByteArrayInputStream(profile));
+        stream.getCOSObject().setInt(COSName.N, n);
+        COSArray array = new COSArray();
+        array.add(COSName.ICCBASED);
+        array.add(stream);
+        return PDICCBased.create(array, null);
+    }
+
+    private static byte[] readResource(String name) throws IOException
+    {
+        InputStream is = PDICCBasedTest.class.getResourceAsStream(name);
+        try
+        {
+            return IOUtils.toByteArray(is);
+        }
+        finally
+        {
+            is.close();
+        }
+    }
 }
@@ -15,6 +15,7 @@
  */
 package org.apache.pdfbox.pdmodel.graphics.image;
 
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FileInputStream;
@@ -27,6 +28,9 @@ import javax.imageio.ImageIO;
 import javax.imageio.ImageReader;
 import javax.imageio.stream.ImageInputStream;
 import junit.framework.TestCase;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSInteger;
+import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.io.IOUtils;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
@@ -34,6 +38,7 @@ import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.apache.pdfbox.pdmodel.PDPageContentStream;
 import org.apache.pdfbox.pdmodel.PDPageContentStream.AppendMode;
 import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceGray;
+import org.apache.pdfbox.rendering.PDFRenderer;
 
 import static org.apache.pdfbox.pdmodel.graphics.image.ValidateXImage.checkIdent;
 import static org.apache.pdfbox.pdmodel.graphics.image.ValidateXImage.validate;
@@ -202,6 +207,111 @@ public class CCITTFactoryTest extends TestCase
         document.close();
     }
     
+    /**
+     * Tests that bilevel images are decoded, and averaged to gray when they are subsampled.
+     */
+    public void testBilevelImage() throws IOException
+    {
+        PDDocument document = new PDDocument();
+        BufferedImage bim = new BufferedImage(21, 4, BufferedImage.TYPE_BYTE_BINARY);
+        for (int x = 0; x < bim.getWidth(); ++x)
+        {
+            for (int y = 0; y < bim.getHeight(); ++y)
+            {
+                // columns 0-1 white, 2-3 half white, 4-5 black...
+                boolean white = x % 6 < 2 || x % 6 < 4 && y % 2 == 0;
+                bim.setRGB(x, y, white ? 0xFFFFFFFF : 0xFF000000);
+            }
+        }
+        PDImageXObject ximage = CCITTFactory.createFromImage(document, bim);
+
+        BufferedImage image = ximage.getImage();
+        checkIdent(bim, image);
+
+        // not aligned to bytes
+        image = ximage.getImage(new Rectangle(3, 1, 15, 2), 1);
+        checkIdent(bim.getSubimage(3, 1, 15, 2), image);
+
+        image = ximage.getImage(null, 2);
+        assertEquals(BufferedImage.TYPE_BYTE_GRAY, image.getType());
+        assertEquals(11, image.getWidth());
+        assertEquals(2, image.getHeight());
+        int[] row = image.getRaster().getPixels(0, 0, 4, 1, (int[]) null);
+        assertTrue(Arrays.equals(new int[] { 255, 128, 0, 255 }, row));
+
+        // a bilevel soft mask
+        PDImageXObject masked = LosslessFactory.createFromImage(document,
+                new BufferedImage(21, 4, BufferedImage.TYPE_INT_RGB));
+        masked.getCOSObject().setItem(COSName.SMASK, ximage);
+        image = masked.getImage();
+        assertEquals(0xFF000000, image.getRGB(0, 0));
+        assertEquals(0, image.getRGB(4, 0));
+        assertEquals(0xFF000000, image.getRGB(2, 0));
+        assertEquals(0, image.getRGB(2, 1));
+
+        document.close();
+    }
+
+    /**
+     * Tests that full resolution reads of bilevel images for drawing keep the packed raster.
+     */
+    public void testFullResolutionBilevelImage() throws IOException
+    {
+        PDDocument document = new PDDocument();
+        BufferedImage bim = new BufferedImage(21, 4, BufferedImage.TYPE_BYTE_BINARY);
+        for (int x = 0; x < bim.getWidth(); ++x)
+        {
+            for (int y = 0; y < bim.getHeight(); ++y)
+            {
+                boolean white = (x + y) % 3 == 0;
+                bim.setRGB(x, y, white ? 0xFFFFFFFF : 0xFF000000);
+            }
+        }
+        PDImageXObject ximage = CCITTFactory.createFromImage(document, bim);
+
+        BufferedImage image = ximage.getBilevelImage();
+        assertEquals(BufferedImage.TYPE_BYTE_BINARY, image.getType());
+        checkIdent(bim, image);
+        assertSame(image, ximage.getBilevelImage());
+
+        // not aligned to bytes
+        image = SampledImageReader.getBilevelImage(ximage, new Rectangle(3, 1, 15, 2));
+        assertEquals(BufferedImage.TYPE_BYTE_BINARY, image.getType());
+        checkIdent(bim.getSubimage(3, 1, 15, 2), image);
+
+        // getImage() keeps returning an expanded image
+        assertTrue(ximage.getImage().getType() != BufferedImage.TYPE_BYTE_BINARY);
+
+        // the decode array is applied by the color model
+        COSArray decode = new COSArray();
+        decode.add(COSInteger.ONE);
+        decode.add(COSInteger.ZERO);
+        ximage.setDecode(decode);
+        image = SampledImageReader.getBilevelImage(ximage, null);
+        assertEquals(0xFF000000, image.getRGB(0, 0));
+        assertEquals(0xFFFFFFFF, image.getRGB(1, 0));
+        ximage.setDecode(null);
+
+        // images that aren't bilevel or have a mask
+        PDImageXObject rgb = LosslessFactory.createFromImage(document,
+                new BufferedImage(21, 4, BufferedImage.TYPE_INT_RGB));
+        assertNull(rgb.getBilevelImage());
+        PDImageXObject masked = CCITTFactory.createFromImage(document, bim);
+        masked.getCOSObject().setItem(COSName.SMASK, ximage);
+        assertNull(masked.getBilevelImage());
+
+        // rendering at full resolution
+        PDPage page = new PDPage(new PDRectangle(21, 4));
+        document.addPage(page);
+        PDPageContentStream contentStream = new PDPageContentStream(document, page);
+        contentStream.drawImage(ximage, 0, 0);
+        contentStream.close();
+        image = new PDFRenderer(document).renderImage(0);
+        checkIdent(bim, image);
+
+        document.close();
+    }
+
     /**
      * Tests that CCITTFactory#createFromFile(PDDocument document, File file) doesn't lock the
      * source file
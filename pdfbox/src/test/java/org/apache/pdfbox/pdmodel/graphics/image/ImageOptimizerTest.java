@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.pdmodel.graphics.image;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import junit.framework.TestCase;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceGray;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceRGB;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.apache.pdfbox.util.Matrix;
+
+import static org.apache.pdfbox.pdmodel.graphics.image.ValidateXImage.validate;
+
+/**
+ * Unit tests for ImageOptimizer
+ */
+public class ImageOptimizerTest extends TestCase
+{
+    public void testOptimize() throws IOException
+    {
+        PDDocument document = new PDDocument();
+        try
+        {
+            BufferedImage photo = new BufferedImage(1200, 600, BufferedImage.TYPE_INT_RGB);
+            Random random = new Random(42);
+            for (int y = 0; y < 600; y++)
+            {
+                for (int x = 0; x < 1200; x++)
+                {
+                    photo.setRGB(x, y, new Color(x * 255 / 1200, y * 255 / 600,
+                            random.nextInt(64)).getRGB());
+                }
+            }
+            PDImageXObject photoImage = LosslessFactory.createFromImage(document, photo);
+            PDImageXObject mask = LosslessFactory.createFromImage(document,
+                    new BufferedImage(10, 10, BufferedImage.TYPE_BYTE_GRAY));
+            photoImage.getCOSObject().setItem(COSName.SMASK, mask);
+
+            BufferedImage bilevel = new BufferedImage(1200, 1200, BufferedImage.TYPE_BYTE_BINARY);
+            Graphics2D g = bilevel.createGraphics();
+            g.setColor(Color.WHITE);
+            g.fillRect(600, 0, 600, 1200);
+            g.dispose();
+            PDImageXObject bilevelImage = LosslessFactory.createFromImage(document, bilevel);
+            assertEquals(1, bilevelImage.getBitsPerComponent());
+
+            BufferedImage graphics = new BufferedImage(800, 800, BufferedImage.TYPE_INT_RGB);
+            g = graphics.createGraphics();
+            g.setColor(Color.RED);
+            g.fillRect(0, 0, 400, 800);
+            g.setColor(Color.BLUE);
+            g.fillRect(400, 0, 400, 800);
+            g.dispose();
+            PDImageXObject graphicsImage = LosslessFactory.createFromImage(document, graphics);
+
+            PDImageXObject smallImage = LosslessFactory.createFromImage(document,
+                    new BufferedImage(100, 100, BufferedImage.TYPE_INT_RGB));
+            long smallLength = smallImage.getCOSObject().getLength();
+
+            PDPage page = new PDPage();
+            document.addPage(page);
+            PDPageContentStream cs = new PDPageContentStream(document, page);
+            cs.drawImage(photoImage, 0, 0, 72, 36);
+            // the largest size determines the resolution
+            cs.drawImage(photoImage, 0, 100, 144, 72);
+            cs.drawImage(bilevelImage, 200, 0, 72, 72);
+            cs.drawImage(graphicsImage, 300, 0, 72, 72);
+            cs.drawImage(smallImage, 400, 0, 72, 72);
+            cs.close();
+
+            ImageOptimizer optimizer = new ImageOptimizer();
+            optimizer.setTargetResolution(150);
+            assertEquals(3, optimizer.optimize(document));
+
+            // not validate(), which can't write the masked image as JPEG
+            assertEquals(300, photoImage.getWidth());
+            assertEquals(150, photoImage.getHeight());
+            assertEquals("jpg", photoImage.getSuffix());
+            assertEquals(PDDeviceRGB.INSTANCE, photoImage.getColorSpace());
+            assertEquals(300, photoImage.getImage().getWidth());
+            assertEquals(mask.getCOSObject(), photoImage.getCOSObject().getDictionaryObject(COSName.SMASK));
+
+            validate(bilevelImage, 1, 150, 150, "tiff", PDDeviceGray.INSTANCE.getName());
+            BufferedImage image = bilevelImage.getImage();
+            assertEquals(Color.BLACK.getRGB(), image.getRGB(10, 75));
+            assertEquals(Color.WHITE.getRGB(), image.getRGB(140, 75));
+
+            validate(graphicsImage, 8, 150, 150, "png", PDDeviceRGB.INSTANCE.getName());
+            image = graphicsImage.getImage();
+            assertEquals(Color.RED.getRGB(), image.getRGB(10, 75));
+            assertEquals(Color.BLUE.getRGB(), image.getRGB(140, 75));
+
+            assertEquals(100, smallImage.getWidth());
+            assertEquals(smallLength, smallImage.getCOSObject().getLength());
+
+            // the images are already small enough now
+            assertEquals(0, optimizer.optimize(document));
+
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            document.save(baos);
+            PDDocument reloaded = PDDocument.load(baos.toByteArray());
+            try
+            {
+                new PDFRenderer(reloaded).renderImage(0);
+            }
+            finally
+            {
+                reloaded.close();
+            }
+        }
+        finally
+        {
+            document.close();
+        }
+    }
+
+    public void testFlippedAndRotated() throws IOException
+    {
+        PDDocument document = new PDDocument();
+        try
+        {
+            BufferedImage graphics = new BufferedImage(600, 600, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = graphics.createGraphics();
+            g.setColor(Color.RED);
+            g.fillRect(0, 0, 600, 600);
+            g.dispose();
+            PDImageXObject flippedImage = LosslessFactory.createFromImage(document, graphics);
+            PDImageXObject rotatedImage = LosslessFactory.createFromImage(document, graphics);
+
+            PDPage page = new PDPage();
+            document.addPage(page);
+            PDPageContentStream cs = new PDPageContentStream(document, page);
+            // upside down, 1 inch
+            cs.drawImage(flippedImage, new Matrix(72, 0, 0, -72, 0, 72));
+            // rotated by 90 degrees, 2 inches
+            cs.drawImage(rotatedImage, new Matrix(0, 144, -144, 0, 300, 0));
+            cs.close();
+
+            ImageOptimizer optimizer = new ImageOptimizer();
+            optimizer.setTargetResolution(150);
+            assertEquals(2, optimizer.optimize(document));
+            validate(flippedImage, 8, 150, 150, "png", PDDeviceRGB.INSTANCE.getName());
+            validate(rotatedImage, 8, 300, 300, "png", PDDeviceRGB.INSTANCE.getName());
+        }
+        finally
+        {
+            document.close();
+        }
+    }
+
+    public void testHalftone() throws IOException
+    {
+        PDDocument document = new PDDocument();
+        try
+        {
+            // a checkerboard of single pixels, like a fine halftone
+            BufferedImage halftone = new BufferedImage(1200, 1200, BufferedImage.TYPE_BYTE_GRAY);
+            for (int y = 0; y < 1200; y++)
+            {
+                for (int x = 0; x < 1200; x++)
+                {
+                    halftone.setRGB(x, y, (x + y) % 2 == 0 ? 0 : 0xFFFFFF);
+                }
+            }
+            PDImageXObject image = JPEGFactory.createFromImage(document, halftone, 1);
+
+            PDPage page = new PDPage();
+            document.addPage(page);
+            PDPageContentStream cs = new PDPageContentStream(document, page);
+            cs.drawImage(image, 0, 0, 72, 72);
+            cs.close();
+
+            ImageOptimizer optimizer = new ImageOptimizer();
+            optimizer.setTargetResolution(150);
+            assertEquals(1, optimizer.optimize(document));
+            assertEquals(150, image.getWidth());
+
+            // all pixels are averaged, skipping pixels would give black or white
+            int gray = image.getImage().getRGB(75, 75) & 0xFF;
+            assertTrue("expected gray, but was " + gray, gray > 96 && gray < 160);
+        }
+        finally
+        {
+            document.close();
+        }
+    }
+
+    public void testDownsample()
+    {
+        BufferedImage image = new BufferedImage(3, 1, BufferedImage.TYPE_BYTE_GRAY);
+        image.getRaster().setPixels(0, 0, 3, 1, new int[] { 0, 90, 255 });
+        BufferedImage scaled = ImageOptimizer.downsample(image, 2, 1);
+        int[] pixels = scaled.getRaster().getPixels(0, 0, 2, 1, (int[]) null);
+        // each target pixel covers one and a half source pixels
+        assertEquals(30, pixels[0]);
+        assertEquals(Math.round((45 + 255) / 1.5f), pixels[1]);
+    }
+}
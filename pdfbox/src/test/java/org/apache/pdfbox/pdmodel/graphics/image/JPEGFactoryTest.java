@@ -17,7 +17,9 @@ package org.apache.pdfbox.pdmodel.graphics.image;
 
 import java.awt.Graphics;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -97,6 +99,77 @@ public class JPEGFactoryTest extends TestCase
         checkJpegStream(testResultsDir, "jpeg256stream.pdf", JPEGFactoryTest.class.getResourceAsStream("jpeg256.jpg"));
     }
 
+    /**
+     * Tests JPEGFactory#createFromByteArray(PDDocument document, byte[] byteArray), the
+     * dimensions are taken from the JPEG header.
+     */
+    public void testCreateFromByteArray() throws IOException
+    {
+        PDDocument document = new PDDocument();
+        String[] names = { "jpeg.jpg", "jpegcmyk.jpg", "jpeg256.jpg" };
+        int[] widths = { 344, 343, 344 };
+        String[] colorSpaces = { PDDeviceRGB.INSTANCE.getName(), PDDeviceCMYK.INSTANCE.getName(),
+            PDDeviceGray.INSTANCE.getName() };
+        for (int i = 0; i < names.length; ++i)
+        {
+            byte[] bytes = IOUtils.toByteArray(JPEGFactoryTest.class.getResourceAsStream(names[i]));
+            PDImageXObject ximage = JPEGFactory.createFromByteArray(document, bytes);
+            validate(ximage, 8, widths[i], 287, "jpg", colorSpaces[i]);
+        }
+        document.close();
+    }
+
+    /**
+     * Tests JPEGFactory#createFromJPEG2000Stream(PDDocument document, InputStream stream) with the
+     * header of a JP2 file. The image data is not decoded.
+     */
+    public void testCreateFromJPEG2000Stream() throws IOException
+    {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(baos);
+        // signature box
+        dos.writeInt(12);
+        dos.writeBytes("jP  ");
+        dos.writeInt(0x0D0A870A);
+        // file type box
+        dos.writeInt(20);
+        dos.writeBytes("ftypjp2 ");
+        dos.writeInt(0);
+        dos.writeBytes("jp2 ");
+        // header super box with image header and colour specification box
+        dos.writeInt(8 + 22 + 15);
+        dos.writeBytes("jp2h");
+        dos.writeInt(22);
+        dos.writeBytes("ihdr");
+        dos.writeInt(300); // height
+        dos.writeInt(400); // width
+        dos.writeShort(3);
+        dos.writeByte(7);
+        dos.writeByte(7);
+        dos.writeByte(0);
+        dos.writeByte(0);
+        dos.writeInt(15);
+        dos.writeBytes("colr");
+        dos.writeByte(1);
+        dos.writeByte(0);
+        dos.writeByte(0);
+        dos.writeInt(16); // sRGB
+        // empty codestream box
+        dos.writeInt(8);
+        dos.writeBytes("jp2c");
+        dos.close();
+
+        PDDocument document = new PDDocument();
+        PDImageXObject ximage = JPEGFactory.createFromJPEG2000Stream(document,
+                new ByteArrayInputStream(baos.toByteArray()));
+        assertEquals(COSName.JPX_DECODE, ximage.getCOSObject().getItem(COSName.FILTER));
+        assertEquals(400, ximage.getWidth());
+        assertEquals(300, ximage.getHeight());
+        assertEquals(PDDeviceRGB.INSTANCE, ximage.getColorSpace());
+        assertArrayEquals(baos.toByteArray(), IOUtils.toByteArray(ximage.getCOSObject().createRawInputStream()));
+        document.close();
+    }
+
     /**
      * Tests RGB JPEGFactory#createFromImage(PDDocument document, BufferedImage
      * image) with color JPEG image
@@ -594,4 +594,45 @@ public class LosslessFactoryTest extends TestCase
 
         doWritePDF(document, ximage, testResultsDir, "png16bit.pdf");
     }
+
+    /**
+     * Tests that an image encoded in parallel strips is identical to the original, for the
+     * adaptive and for a fixed predictor.
+     *
+     * @throws java.io.IOException
+     */
+    public void testCreateLosslessFromImageParallel() throws IOException
+    {
+        PDDocument document = new PDDocument();
+        int w = 1000;
+        int h = 800;
+        BufferedImage image = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        Random random = new Random(4711);
+        for (int y = 0; y < h; ++y)
+        {
+            for (int x = 0; x < w; ++x)
+            {
+                int noise = random.nextInt(16);
+                image.setRGB(x, y, new Color((x + noise) % 256, (y + noise) % 256,
+                        (x * y) % 256, (x + y) % 256).getRGB());
+            }
+        }
+
+        LosslessEncoderParameters parameters = new LosslessEncoderParameters();
+        parameters.setThreadCount(4);
+        PDImageXObject ximage = LosslessFactory.createFromImage(document, image, parameters);
+        validate(ximage, 8, w, h, "png", PDDeviceRGB.INSTANCE.getName());
+        checkIdent(image, ximage.getImage());
+        checkIdentRGB(image, ximage.getOpaqueImage());
+        assertNotNull(ximage.getSoftMask());
+        validate(ximage.getSoftMask(), 8, w, h, "png", PDDeviceGray.INSTANCE.getName());
+
+        parameters.setPredictor(LosslessEncoderParameters.PNGPredictor.PAETH);
+        parameters.setCompressionLevel(9);
+        ximage = LosslessFactory.createFromImage(document, image, parameters);
+        validate(ximage, 8, w, h, "png", PDDeviceRGB.INSTANCE.getName());
+        checkIdent(image, ximage.getImage());
+
+        doWritePDF(document, ximage, testResultsDir, "parallel.pdf");
+    }
 }
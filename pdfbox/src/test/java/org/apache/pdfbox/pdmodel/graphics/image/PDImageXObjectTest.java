@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.pdfbox.pdmodel.graphics.image;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import junit.framework.TestCase;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceRGB;
+
+import com.github.jaiimageio.jpeg2000.J2KImageWriteParam;
+
+/**
+ * Unit tests for reading subsampled images with PDImageXObject
+ */
+public class PDImageXObjectTest extends TestCase
+{
+    /**
+     * Tests that a soft mask of the same size as its image is read with the same subsampling.
+     *
+     * @throws java.io.IOException
+     */
+    public void testSubsampledSoftMask() throws IOException
+    {
+        PDDocument document = new PDDocument();
+        BufferedImage image = new BufferedImage(40, 40, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.RED);
+        g.fillRect(20, 0, 20, 40);
+        g.dispose();
+        PDImageXObject ximage = LosslessFactory.createFromImage(document, image);
+        assertNotNull(ximage.getSoftMask());
+
+        // without the subsampled mask, the image would be scaled up to the size of the mask
+        BufferedImage subsampled = ximage.getImage(null, 4);
+        assertEquals(10, subsampled.getWidth());
+        assertEquals(10, subsampled.getHeight());
+        assertEquals(0, subsampled.getRGB(1, 5) >>> 24);
+        assertEquals(Color.RED.getRGB(), subsampled.getRGB(8, 5));
+
+        document.close();
+    }
+
+    /**
+     * Tests that JPX images are read at a lower resolution level when the subsampling is a power
+     * of two. A checkerboard of single pixels is then gray, it would be black with skipped pixels.
+     *
+     * @throws java.io.IOException
+     */
+    public void testSubsampledJPX() throws IOException
+    {
+        PDDocument document = new PDDocument();
+        BufferedImage image = new BufferedImage(400, 320, BufferedImage.TYPE_3BYTE_BGR);
+        for (int y = 0; y < image.getHeight(); y++)
+        {
+            for (int x = 0; x < image.getWidth(); x++)
+            {
+                image.setRGB(x, y, (x + y) % 2 == 0 ? 0 : 0xFFFFFF);
+            }
+        }
+        PDImageXObject ximage = new PDImageXObject(PDImageXObject.createRawStream(document,
+                new ByteArrayInputStream(encodeJPX(image))), COSName.JPX_DECODE,
+                image.getWidth(), image.getHeight(), 8, PDDeviceRGB.INSTANCE);
+
+        BufferedImage full = ximage.getImage();
+        assertEquals(400, full.getWidth());
+        assertEquals(0xFF000000, full.getRGB(0, 0));
+        assertEquals(0xFFFFFFFF, full.getRGB(1, 0));
+
+        BufferedImage reduced = ximage.getImage(null, 4);
+        assertEquals(100, reduced.getWidth());
+        assertEquals(80, reduced.getHeight());
+        assertGray(reduced.getRGB(50, 40));
+
+        reduced = ximage.getImage(new Rectangle(100, 40, 200, 160), 8);
+        assertEquals(25, reduced.getWidth());
+        assertEquals(20, reduced.getHeight());
+        assertGray(reduced.getRGB(10, 10));
+
+        // not a power of two, pixels are skipped
+        BufferedImage subsampled = ximage.getImage(null, 3);
+        assertEquals(134, subsampled.getWidth());
+        assertEquals(0xFF000000, subsampled.getRGB(10, 10));
+
+        document.close();
+    }
+
+    private static void assertGray(int rgb)
+    {
+        for (int shift = 0; shift < 24; shift += 8)
+        {
+            int value = rgb >> shift & 0xFF;
+            assertTrue("expected gray, but was " + Integer.toHexString(rgb), value > 64 && value < 192);
+        }
+    }
+
+    private static byte[] encodeJPX(BufferedImage image) throws IOException
+    {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg2000").next();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ImageOutputStream ios = ImageIO.createImageOutputStream(baos);
+        try
+        {
+            writer.setOutput(ios);
+            J2KImageWriteParam param = (J2KImageWriteParam) writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setLossless(true);
+            writer.write(null, new IIOImage(image, null, null), param);
+        }
+        finally
+        {
+            ios.close();
+            writer.dispose();
+        }
+        return baos.toByteArray();
+    }
+}
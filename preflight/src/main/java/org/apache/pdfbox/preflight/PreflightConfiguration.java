@@ -119,20 +119,36 @@ public class PreflightConfiguration
      */
     private int maxErrors = 10000;
 
+    /**
+     * Receives the errors as they're found, may be null.
+     */
+    private ValidationErrorListener errorListener;
+
+    /**
+     * Boolean to know if the errors are kept in the ValidationResult.
+     */
+    private boolean retainErrors = true;
+
+    /**
+     * Define the number of threads used to validate the pages.
+     */
+    private int pageValidationThreads = 1;
+
     public static PreflightConfiguration createPdfA1BConfiguration()
     {
         PreflightConfiguration configuration = new PreflightConfiguration();
 
-        configuration.replaceProcess(CATALOG_PROCESS, CatalogValidationProcess.class);
-        configuration.replaceProcess(FILE_SPECIF_PROCESS, FileSpecificationValidationProcess.class);
+        // cheap checks first, so that an invalid file is rejected early when the number of errors
+        // is limited, the fonts and graphics of the pages are validated last
         configuration.replaceProcess(TRAILER_PROCESS, TrailerValidationProcess.class);
         configuration.replaceProcess(XREF_PROCESS, XRefValidationProcess.class);
+        configuration.replaceProcess(CATALOG_PROCESS, CatalogValidationProcess.class);
+        configuration.replaceProcess(META_DATA_PROCESS, MetadataValidationProcess.class);
+        configuration.replaceProcess(FILE_SPECIF_PROCESS, FileSpecificationValidationProcess.class);
         configuration.replaceProcess(ACRO_FORM_PROCESS, AcroFormValidationProcess.class);
         configuration.replaceProcess(BOOKMARK_PROCESS, BookmarkValidationProcess.class);
-        configuration.replaceProcess(PAGES_TREE_PROCESS, PageTreeValidationProcess.class);
-        configuration.replaceProcess(META_DATA_PROCESS, MetadataValidationProcess.class);
-
         configuration.replaceProcess(STREAM_PROCESS, StreamValidationProcess.class);
+        configuration.replaceProcess(PAGES_TREE_PROCESS, PageTreeValidationProcess.class);
 
         configuration.replacePageProcess(PAGE_PROCESS, SinglePageValidationProcess.class);
         configuration.replacePageProcess(EXTGSTATE_PROCESS, ExtGStateValidationProcess.class);
@@ -306,7 +322,8 @@ public class PreflightConfiguration
     }
 
     /**
-     * Get the maximum number of errors after which to abort when possible.
+     * Get the maximum number of errors after which to abort when possible. Warnings aren't
+     * counted.
      *
      * @return 
      */
@@ -316,7 +333,10 @@ public class PreflightConfiguration
     }
 
     /**
-     * Set the maximum number of errors after which to abort when possible.
+     * Set the maximum number of errors after which to abort when possible. The remaining
+     * validation processes, pages, fonts and graphics are skipped as soon as there are more
+     * errors, so 0 stops after the first error when only a pass/fail answer is needed. Warnings
+     * aren't counted.
      *
      * @param maxErrors 
      */
@@ -324,4 +344,68 @@ public class PreflightConfiguration
     {
         this.maxErrors = maxErrors;
     }
+
+    /**
+     * Get the listener which receives the errors as they're found.
+     *
+     * @return the listener, or null.
+     */
+    public ValidationErrorListener getErrorListener()
+    {
+        return errorListener;
+    }
+
+    /**
+     * Set a listener which receives the errors as they're found, e.g. to report them while the
+     * validation is running, or without keeping them, see {@link #setRetainErrors(boolean)}.
+     *
+     * @param errorListener the listener, or null.
+     */
+    public void setErrorListener(ValidationErrorListener errorListener)
+    {
+        this.errorListener = errorListener;
+    }
+
+    public boolean isRetainErrors()
+    {
+        return retainErrors;
+    }
+
+    /**
+     * Set whether the errors are kept in the {@link ValidationResult}. If false, the result only
+     * tells whether the document is valid, and the errors are only given to the error listener.
+     * The default is true.
+     *
+     * @param retainErrors false to not keep the errors.
+     */
+    public void setRetainErrors(boolean retainErrors)
+    {
+        this.retainErrors = retainErrors;
+    }
+
+    /**
+     * Get the number of threads used to validate the pages.
+     *
+     * @return the number of threads, 1 if the pages are validated one after another.
+     */
+    public int getPageValidationThreads()
+    {
+        return pageValidationThreads;
+    }
+
+    /**
+     * Set the number of threads used to validate the pages. With more than one thread, each page
+     * is validated with its own context and the errors are added in the order of the pages. Fonts
+     * and XObjects used by several pages are validated only once. The default is 1.
+     *
+     * @param pageValidationThreads the number of threads, at least 1.
+     */
+    public void setPageValidationThreads(int pageValidationThreads)
+    {
+        if (pageValidationThreads < 1)
+        {
+            throw new IllegalArgumentException("At least one thread is needed: " + pageValidationThreads);
+        }
+        this.pageValidationThreads = pageValidationThreads;
+    }
 }
@@ -22,15 +22,24 @@
 package org.apache.pdfbox.preflight;
 
 import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.activation.DataSource;
 
 import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSObjectKey;
 import org.apache.pdfbox.pdfparser.XrefTrailerResolver;
 import org.apache.pdfbox.pdmodel.common.COSObjectable;
 import org.apache.pdfbox.preflight.ValidationResult.ValidationError;
@@ -42,9 +51,15 @@ import org.apache.xmpbox.XMPMetadata;
 public class PreflightContext implements Closeable
 {
     /**
-     * Contains the list of font name embedded in the PDF document.
+     * Contains the list of font name embedded in the PDF document. Shared with the page contexts.
      */
-    private final Map<COSBase, FontContainer<?>> fontContainers = new HashMap<COSBase, FontContainer<?>>();
+    private final Map<COSBase, FontContainer<?>> fontContainers;
+
+    /**
+     * Held while a font is validated, so that the pages which are validated in parallel see only
+     * complete font containers. Shared with the page contexts.
+     */
+    private final ReentrantLock fontLock;
 
     /**
      * The PDFbox object representation of the PDF source.
@@ -80,9 +95,41 @@ public class PreflightContext implements Closeable
 
     private PreflightPath validationPath = new PreflightPath();
 
-    private final Set<COSObjectable> processedSet = new HashSet<COSObjectable>();
+    private final Set<COSObjectable> processedSet;
 
     private Integer currentPageNumber = null;
+
+    private COSObjectKey currentObjectKey = null;
+
+    /**
+     * The result of the previous revision if only the changed objects are validated, else null.
+     */
+    private ValidationResult previousResult = null;
+
+    /**
+     * The sorted keys of the changed objects, see {@link COSObjectKey#getInternalHash()}.
+     */
+    private long[] changedObjectKeys = null;
+
+    /**
+     * The errors of the previous revision which have been found in an object and not in a page.
+     */
+    private Map<COSObjectKey, List<ValidationError>> previousObjectErrors = null;
+
+    /**
+     * The errors of a page context, null if the errors are added to the document.
+     */
+    private final ValidationResult pageResult;
+
+    /**
+     * The number of errors which aren't warnings, in all pages. Shared with the page contexts.
+     */
+    private final AtomicInteger errorCount;
+
+    /**
+     * Set when the validation is aborted because of too many errors. Shared with the page contexts.
+     */
+    private final AtomicBoolean aborted;
     
     private long fileLen;
 
@@ -93,13 +140,64 @@ public class PreflightContext implements Closeable
      */
     public PreflightContext(DataSource dataSource)
     {
-        this.dataSource = dataSource;
+        this(dataSource, null);
     }
 
     public PreflightContext(DataSource dataSource, PreflightConfiguration configuration)
     {
         this.dataSource = dataSource;
         this.config = configuration;
+        this.fontContainers = new ConcurrentHashMap<COSBase, FontContainer<?>>();
+        this.fontLock = new ReentrantLock();
+        this.processedSet = Collections.newSetFromMap(new ConcurrentHashMap<COSObjectable, Boolean>());
+        this.pageResult = null;
+        this.errorCount = new AtomicInteger();
+        this.aborted = new AtomicBoolean();
+    }
+
+    private PreflightContext(PreflightContext parent, int pageNumber)
+    {
+        this.dataSource = parent.dataSource;
+        this.config = parent.config;
+        this.document = parent.document;
+        this.xrefTrailerResolver = parent.xrefTrailerResolver;
+        this.iccProfileWrapper = parent.iccProfileWrapper;
+        this.iccProfileAlreadySearched = parent.iccProfileAlreadySearched;
+        this.metadata = parent.metadata;
+        this.fileLen = parent.fileLen;
+        this.fontContainers = parent.fontContainers;
+        this.fontLock = parent.fontLock;
+        this.processedSet = parent.processedSet;
+        this.currentPageNumber = pageNumber;
+        this.pageResult = new ValidationResult(true);
+        this.errorCount = parent.errorCount;
+        this.aborted = parent.aborted;
+    }
+
+    /**
+     * Creates a context to validate one page, which can be used concurrently with the contexts of
+     * the other pages. The fonts and the XObjects which have been validated are shared with this
+     * context, so that those used by several pages are validated only once. The errors are
+     * collected in the context, see {@link #getPageResult()}, and must be merged into the document
+     * by the caller. The ICC profile of the document must have been searched before.
+     *
+     * @param pageNumber zero based page number.
+     * @return the page context.
+     */
+    public PreflightContext createPageContext(int pageNumber)
+    {
+        return new PreflightContext(this, pageNumber);
+    }
+
+    /**
+     * Returns the errors of a page context.
+     *
+     * @return the errors, or null if this isn't a page context and the errors are added to the
+     * document.
+     */
+    public ValidationResult getPageResult()
+    {
+        return pageResult;
     }
 
     /**
@@ -169,7 +267,10 @@ public class PreflightContext implements Closeable
      */
     public void addFontContainer(COSBase cBase, FontContainer<?> fc)
     {
-        this.fontContainers.put(cBase, fc);
+        if (cBase != null)
+        {
+            this.fontContainers.put(cBase, fc);
+        }
     }
 
     /**
@@ -181,7 +282,17 @@ public class PreflightContext implements Closeable
      */
     public FontContainer<?> getFontContainer(COSBase cBase)
     {
-        return this.fontContainers.get(cBase);
+        return cBase == null ? null : this.fontContainers.get(cBase);
+    }
+
+    /**
+     * Returns the lock which is held while a font is validated.
+     *
+     * @return the lock, shared by all page contexts.
+     */
+    public ReentrantLock getFontLock()
+    {
+        return fontLock;
     }
 
     /**
@@ -227,25 +338,108 @@ public class PreflightContext implements Closeable
      */
     public void addValidationError(ValidationError error)
     {
-        PreflightDocument pfDoc = this.document;
         error.setPageNumber(currentPageNumber);
-        pfDoc.addValidationError(error);
+        error.setObjectKey(currentObjectKey);
+        countError(error);
+        if (pageResult != null)
+        {
+            pageResult.addError(error);
+        }
+        else
+        {
+            this.document.addValidationError(error);
+        }
     }
 
     /**
-     * Add the given errors the PreflightDocument
+     * Add the given errors the PreflightDocument. Errors without a page number, e.g. those of a
+     * font, get the current page number.
      * 
      * @param errors the list of validation errors.
      */
     public void addValidationErrors(List<ValidationError> errors)
     {
-        PreflightDocument pfDoc = this.document;
         for (ValidationError error : errors)
         {
-            pfDoc.addValidationError(error);
+            if (error.getPageNumber() == null)
+            {
+                error.setPageNumber(currentPageNumber);
+            }
+            countError(error);
+            if (pageResult != null)
+            {
+                pageResult.addError(error);
+            }
+            else
+            {
+                this.document.addValidationError(error);
+            }
         }
     }
 
+    private void countError(ValidationError error)
+    {
+        if (!error.isWarning())
+        {
+            errorCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Sets the number of errors which have been found before the validation processes, e.g. by
+     * the parser.
+     *
+     * @param errorCount the number of errors which aren't warnings.
+     */
+    void setErrorCount(int errorCount)
+    {
+        this.errorCount.set(errorCount);
+    }
+
+    /**
+     * Tells whether there are more errors than the maximum of the configuration, in which case
+     * the validation should stop as soon as possible. Warnings aren't counted. The errors of all
+     * pages are counted, including those of pages which are validated in parallel.
+     *
+     * @return true if there are too many errors.
+     */
+    public boolean isOverMaxErrors()
+    {
+        return config != null && errorCount.get() > config.getMaxErrors();
+    }
+
+    /**
+     * Tells whether there are too many errors, see {@link #isOverMaxErrors()}, and if so adds an
+     * error which tells that the validation has been aborted, unless this has already been done.
+     *
+     * @param what the part of the validation which is aborted, used in the error message.
+     * @return true if there are too many errors.
+     */
+    public boolean abortIfOverMaxErrors(String what)
+    {
+        if (!isOverMaxErrors())
+        {
+            return false;
+        }
+        if (aborted.compareAndSet(false, true))
+        {
+            addValidationError(new ValidationError(PreflightConstants.ERROR_UNKOWN_ERROR,
+                    "Over " + config.getMaxErrors() + " errors, " + what + " aborted"));
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of errors found so far, in the page if this is a page context.
+     *
+     * @return the number of errors.
+     */
+    public int getValidationErrorCount()
+    {
+        ValidationResult result = pageResult != null ? pageResult : document.getResult();
+        return result == null ? 0 : result.getErrorsList().size();
+    }
+
     public PreflightPath getValidationPath()
     {
         return validationPath;
@@ -284,6 +478,136 @@ public class PreflightContext implements Closeable
         return currentPageNumber;
     }
 
+    /**
+     * Sets or resets the key of the object which is validated, for the validation processes
+     * which check all objects of the document.
+     *
+     * @param currentObjectKey the object key or null if none is known.
+     */
+    public void setCurrentObjectKey(COSObjectKey currentObjectKey)
+    {
+        this.currentObjectKey = currentObjectKey;
+    }
+
+    /**
+     * Returns the key of the object which is validated or null if none is known.
+     */
+    public COSObjectKey getCurrentObjectKey()
+    {
+        return currentObjectKey;
+    }
+
+    /**
+     * Validates only the objects which have been changed since the previous revision of the
+     * document, and the pages which use them. The errors of the other objects and pages are taken
+     * from the result of the previous revision.
+     *
+     * @param previousResult the result of the previous revision.
+     * @param changedObjects the keys of the objects which have been added or changed since then.
+     */
+    void setIncrementalValidation(ValidationResult previousResult,
+            Collection<COSObjectKey> changedObjects)
+    {
+        this.previousResult = previousResult;
+        changedObjectKeys = new long[changedObjects.size()];
+        int i = 0;
+        for (COSObjectKey key : changedObjects)
+        {
+            changedObjectKeys[i++] = key.getInternalHash();
+        }
+        Arrays.sort(changedObjectKeys);
+        previousObjectErrors = new HashMap<COSObjectKey, List<ValidationError>>();
+        for (ValidationError error : previousResult.getErrorsList())
+        {
+            if (error.getObjectKey() != null && error.getPageNumber() == null)
+            {
+                List<ValidationError> errors = previousObjectErrors.get(error.getObjectKey());
+                if (errors == null)
+                {
+                    errors = new ArrayList<ValidationError>(1);
+                    previousObjectErrors.put(error.getObjectKey(), errors);
+                }
+                // copied, as adding them to the new result sets their page number and object key
+                errors.add(new ValidationError(error));
+            }
+        }
+    }
+
+    /**
+     * Returns the result of the previous revision of the document if only the changed objects
+     * are validated.
+     *
+     * @return the previous result, or null if the whole document is validated.
+     */
+    public ValidationResult getPreviousResult()
+    {
+        return previousResult;
+    }
+
+    /**
+     * Tells whether an object has to be validated, i.e. whether the whole document is validated
+     * or the object has been changed since the previous revision.
+     *
+     * @param object the object.
+     * @return true if the object must be validated, false if its errors can be taken from the
+     * previous result, see {@link #getPreviousErrors(COSObjectKey)}.
+     */
+    public boolean isChanged(COSObject object)
+    {
+        return isChanged(COSObjectKey.computeInternalHash(object.getObjectNumber(),
+                object.getGenerationNumber()));
+    }
+
+    /**
+     * Tells whether an object has to be validated, see {@link #isChanged(COSObject)}.
+     *
+     * @param key the object key, see {@link COSObjectKey#getInternalHash()}.
+     * @return true if the whole document is validated or the object has been changed.
+     */
+    public boolean isChanged(long key)
+    {
+        return changedObjectKeys == null || Arrays.binarySearch(changedObjectKeys, key) >= 0;
+    }
+
+    /**
+     * Tells whether one of the given objects has been changed since the previous revision.
+     *
+     * @param keys the object keys, see {@link COSObjectKey#getInternalHash()}.
+     * @return true if the whole document is validated or one of the objects has been changed.
+     */
+    public boolean isAnyChanged(long[] keys)
+    {
+        if (changedObjectKeys == null)
+        {
+            return true;
+        }
+        for (long key : keys)
+        {
+            if (isChanged(key))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns copies of the errors which have been found in an object of the previous revision,
+     * apart from those found while validating a page.
+     *
+     * @param key the object key.
+     * @return the errors, empty if there are none or the whole document is validated.
+     */
+    public List<ValidationError> getPreviousErrors(COSObjectKey key)
+    {
+        List<ValidationError> errors = null;
+        if (previousObjectErrors != null)
+        {
+            errors = previousObjectErrors.get(key);
+        }
+        return errors == null ? Collections.<ValidationError>emptyList() : errors;
+    }
+
     public void setFileLen(long fileLen)
     {
         this.fileLen = fileLen;
@@ -304,6 +628,19 @@ public class PreflightContext implements Closeable
         processedSet.add(cos);
     }
 
+    /**
+     * Add the argument to the set of processed elements, unless it is already in the set. This is
+     * atomic, so that an element shared by pages which are validated in parallel is validated only
+     * once.
+     *
+     * @param cos
+     * @return true if the element has been added, false if it had already been processed.
+     */
+    public boolean markAsProcessed(COSObjectable cos)
+    {
+        return processedSet.add(cos);
+    }
+
     /**
      * Tell if the argument is in the set of processed elements.
      *
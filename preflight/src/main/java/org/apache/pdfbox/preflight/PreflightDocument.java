@@ -25,6 +25,8 @@ import java.io.IOException;
 import java.util.Collection;
 
 import org.apache.pdfbox.cos.COSDocument;
+import org.apache.pdfbox.cos.COSObjectKey;
+import org.apache.pdfbox.pdfparser.XrefTrailerResolver;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.preflight.ValidationResult.ValidationError;
 import org.apache.pdfbox.preflight.exception.ValidationException;
@@ -135,7 +137,19 @@ public class PreflightDocument extends PDDocument
             {
                 this.result = new ValidationResult(error.isWarning());
             }
-            this.result.addError(error);
+            ValidationErrorListener listener = config.getErrorListener();
+            if (listener != null)
+            {
+                listener.errorFound(error);
+            }
+            if (config.isRetainErrors())
+            {
+                this.result.addError(error);
+            }
+            else
+            {
+                this.result.addErrorWithoutDetails(error);
+            }
         }
     }
 
@@ -160,11 +174,82 @@ public class PreflightDocument extends PDDocument
         // on java 9 & 10, or to add jaxb-api on java 11 and later
         javax.xml.bind.DatatypeConverter.parseInt("0");
         context.setConfig(config);
+        // the errors of the parser count as well
+        int errorCount = 0;
+        ValidationErrorListener listener = config.getErrorListener();
+        for (ValidationError error : result.getErrorsList())
+        {
+            if (!error.isWarning())
+            {
+                ++errorCount;
+            }
+            if (listener != null)
+            {
+                listener.errorFound(error);
+            }
+        }
+        if (!config.isRetainErrors())
+        {
+            result.getErrorsList().clear();
+        }
+        context.setErrorCount(errorCount);
         Collection<String> processes = config.getProcessNames();
         for (String name : processes)
         {
+            if (context.abortIfOverMaxErrors("validation"))
+            {
+                break;
+            }
             ContextHelper.validateElement(context, name);
         }
+        if (context.isOverMaxErrors())
+        {
+            // the errors of the pages are incomplete, see validateIncremental()
+            result.setPageKeys(null);
+        }
+    }
+
+    /**
+     * Check a new revision of a document which has been updated incrementally, e.g. signed with
+     * {@link PDDocument#saveIncremental(java.io.OutputStream)}. Only the objects of the xref
+     * section of the last update are validated, see
+     * {@link #validateIncremental(ValidationResult, Collection)}.
+     *
+     * @param previous the result of the validation of the previous revision.
+     * @throws ValidationException
+     */
+    public void validateIncremental(ValidationResult previous) throws ValidationException
+    {
+        XrefTrailerResolver resolver = context.getXrefTrailerResolver();
+        validateIncremental(previous, resolver == null ? null : resolver.getLastRevisionObjectKeys());
+    }
+
+    /**
+     * Check a new revision of a document, given the result of the validation of a previous
+     * revision. The objects which have been added or changed since then are validated, together
+     * with the pages which use them. The errors of the other objects and pages are taken from the
+     * previous result, and those of the pages are renumbered if pages have been added or removed.
+     * The checks of the whole document, e.g. of the trailer, the catalog and the metadata, are
+     * always done.
+     * <p>
+     * The whole document is validated if the previous result is incomplete, i.e. if the
+     * validation has been aborted because of too many errors or if the errors haven't been
+     * retained, or if the changed objects aren't known. The errors of the previous result are
+     * copied, so that it isn't changed.
+     *
+     * @param previous the result of the validation of the previous revision.
+     * @param changedObjects the keys of the objects which have been added or changed since then.
+     * @throws ValidationException
+     */
+    public void validateIncremental(ValidationResult previous,
+            Collection<COSObjectKey> changedObjects) throws ValidationException
+    {
+        if (previous != null && changedObjects != null && previous.getPageKeys() != null
+                && (previous.isValid() || !previous.getErrorsList().isEmpty()))
+        {
+            context.setIncrementalValidation(previous, changedObjects);
+        }
+        validate();
     }
 
     public Format getSpecification()
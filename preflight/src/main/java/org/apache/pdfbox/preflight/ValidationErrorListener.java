@@ -0,0 +1,42 @@
+/*****************************************************************************
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * 
+ ****************************************************************************/
+
+package org.apache.pdfbox.preflight;
+
+import org.apache.pdfbox.preflight.ValidationResult.ValidationError;
+
+/**
+ * Receives the validation errors as soon as they're added to the document, so that they can be
+ * reported without keeping them in the {@link ValidationResult}.
+ *
+ * @see PreflightConfiguration#setErrorListener(ValidationErrorListener)
+ */
+public interface ValidationErrorListener
+{
+    /**
+     * Called for each error, including the warnings, in the order in which they're added to the
+     * document. When the pages are validated in parallel, this is called by the thread which
+     * started the validation, in the order of the pages.
+     *
+     * @param error the error.
+     */
+    void errorFound(ValidationError error);
+}
@@ -24,6 +24,7 @@ package org.apache.pdfbox.preflight;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.apache.pdfbox.cos.COSObjectKey;
 import org.apache.xmpbox.XMPMetadata;
 
 /**
@@ -48,6 +49,11 @@ public class ValidationResult
      */
     private XMPMetadata xmpMetaData = null;
 
+    /**
+     * The keys of the page dictionaries, in page order, if all pages have been validated.
+     */
+    private long[] pageKeys = null;
+
     /**
      * Create a Validation result object
      * 
@@ -119,6 +125,29 @@ public class ValidationResult
         this.xmpMetaData = xmpMetaData;
     }
 
+    /**
+     * Returns the keys of the page dictionaries, in page order, as returned by
+     * {@link COSObjectKey#computeInternalHash(long, int)}, 0 for a page which isn't an indirect
+     * object. These are used to find the errors of the pages when a new revision of the document
+     * is validated incrementally.
+     *
+     * @return the keys, or null if the pages haven't been validated completely.
+     */
+    public long[] getPageKeys()
+    {
+        return pageKeys;
+    }
+
+    /**
+     * Sets the keys of the page dictionaries.
+     *
+     * @param pageKeys the keys, see {@link #getPageKeys()}.
+     */
+    public void setPageKeys(long[] pageKeys)
+    {
+        this.pageKeys = pageKeys;
+    }
+
     /**
      * @return true if the PDF is valid,false otherwise
      */
@@ -141,6 +170,19 @@ public class ValidationResult
         }
     }
 
+    /**
+     * Updates the validity with the given error without adding it to the list of ValidationError.
+     * 
+     * @param error
+     */
+    void addErrorWithoutDetails(ValidationError error)
+    {
+        if (error != null)
+        {
+            this.isValid &= error.isWarning();
+        }
+    }
+
     /**
      * Add a set of errors to the list of ValidationError. If the given list is null, this method does nothing.
      * 
@@ -216,6 +258,11 @@ public class ValidationResult
          */
         private Integer pageNumber = null;
 
+        /**
+         * The key of the object in which the error has been found, if known.
+         */
+        private COSObjectKey objectKey = null;
+
         /**
          * Get the underlying cause if the ValidationError was caused by a
          * Throwable.
@@ -246,6 +293,25 @@ public class ValidationResult
             this.pageNumber = pageNumber;
         }        
 
+        /**
+         * Returns the key of the object in which the error has been found, or null if not known.
+         * This is only set by the validation processes which check all objects of the document.
+         */
+        public COSObjectKey getObjectKey()
+        {
+            return objectKey;
+        }
+
+        /**
+         * Sets or resets the key of the object in which the error has been found.
+         *
+         * @param objectKey the object key or null if none is known.
+         */
+        public void setObjectKey(COSObjectKey objectKey)
+        {
+            this.objectKey = objectKey;
+        }
+
         /**
          * Create a validation error with the given error code
          * 
@@ -385,6 +451,23 @@ public class ValidationResult
         public ValidationError(String errorCode, String details)
         {
             this(errorCode, details, null);
+        }
+
+        /**
+         * Create a copy of the given validation error, e.g. to add an error of a previous result
+         * to a new one without changing the previous result.
+         *
+         * @param error the error to copy
+         */
+        public ValidationError(ValidationError error)
+        {
+            this.errorCode = error.errorCode;
+            this.details = error.details;
+            this.isWarning = error.isWarning;
+            this.cause = error.cause;
+            this.t = error.t;
+            this.pageNumber = error.pageNumber;
+            this.objectKey = error.objectKey;
         }        
 
         /**
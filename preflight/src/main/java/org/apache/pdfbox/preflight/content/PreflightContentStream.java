@@ -321,15 +321,13 @@ public class PreflightContentStream extends PreflightStreamEngine
             }
             return;
         }
-        else if (!fontContainer.isValid() && !fontContainer.errorsAleadyMerged())
+        else if (!fontContainer.isValid())
         {
-            context.addValidationErrors(fontContainer.getAllErrors());
-            fontContainer.setErrorsAlreadyMerged(true);
-            return;
-        }
-        if (!fontContainer.isValid() && fontContainer.errorsAleadyMerged())
-        {
-            // font already computed
+            // the errors are reported once, unless the font has already been computed
+            if (fontContainer.markErrorsAsMerged())
+            {
+                context.addValidationErrors(fontContainer.getAllErrors());
+            }
             return;
         }
 
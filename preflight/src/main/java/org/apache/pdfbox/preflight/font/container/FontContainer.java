@@ -23,9 +23,9 @@ package org.apache.pdfbox.preflight.font.container;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.pdfbox.pdmodel.font.PDFontLike;
 import org.apache.pdfbox.preflight.PreflightConstants;
@@ -46,8 +46,8 @@ public abstract class FontContainer<T extends PDFontLike>
      */
     protected boolean embeddedFont = true;
 
-    private final Map<Integer, GlyphDetail> codeToDetail = new HashMap<Integer, GlyphDetail>();
-    private boolean errorsAlreadyMerged = false;
+    private final Map<Integer, GlyphDetail> codeToDetail = new ConcurrentHashMap<Integer, GlyphDetail>();
+    private volatile boolean errorsAlreadyMerged = false;
 
     /**
      * Font-like object.
@@ -89,6 +89,22 @@ public abstract class FontContainer<T extends PDFontLike>
         this.errorsAlreadyMerged = errorsAlreadyMerged;
     }
 
+    /**
+     * Marks the errors of the font as merged into the validation result, so that they're reported
+     * only once by the pages which are validated in parallel.
+     *
+     * @return true if the errors hadn't been merged yet and must be merged by the caller.
+     */
+    public synchronized boolean markErrorsAsMerged()
+    {
+        if (errorsAlreadyMerged)
+        {
+            return false;
+        }
+        errorsAlreadyMerged = true;
+        return true;
+    }
+
     public boolean isEmbeddedFont()
     {
         return embeddedFont;
@@ -106,6 +122,19 @@ public abstract class FontContainer<T extends PDFontLike>
      * @throws GlyphException
      */
     public void checkGlyphWidth(int code) throws GlyphException
+    {
+        if (isAlreadyProcessed(code))
+        {
+            return;
+        }
+        // the font programs aren't thread safe, pages validated in parallel may share the font
+        synchronized (this)
+        {
+            checkGlyph(code);
+        }
+    }
+
+    private void checkGlyph(int code) throws GlyphException
     {
         if (isAlreadyProcessed(code))
         {
@@ -32,6 +32,7 @@ import org.apache.pdfbox.cos.COSDictionary;
 import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.cos.COSStream;
 import org.apache.pdfbox.pdmodel.PDDocumentCatalog;
+import org.apache.pdfbox.pdmodel.graphics.color.ICCProfileCache;
 import org.apache.pdfbox.preflight.PreflightContext;
 import org.apache.pdfbox.preflight.PreflightDocument;
 import org.apache.pdfbox.preflight.ValidationResult.ValidationError;
@@ -141,7 +142,7 @@ public class ICCProfileWrapper
                         InputStream is = stream.createInputStream();
                         try
                         {
-                            return new ICCProfileWrapper(ICC_Profile.getInstance(is));
+                            return new ICCProfileWrapper(ICCProfileCache.get(is).getProfile());
                         }
                         finally
                         {
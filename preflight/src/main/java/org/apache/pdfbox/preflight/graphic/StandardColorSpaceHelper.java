@@ -37,6 +37,7 @@ import org.apache.pdfbox.pdmodel.graphics.color.PDColorSpace;
 import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceN;
 import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceNAttributes;
 import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceNProcess;
+import org.apache.pdfbox.pdmodel.graphics.color.ICCProfileCache;
 import org.apache.pdfbox.pdmodel.graphics.color.PDICCBased;
 import org.apache.pdfbox.pdmodel.graphics.color.PDIndexed;
 import org.apache.pdfbox.pdmodel.graphics.color.PDSeparation;
@@ -244,10 +245,17 @@ public class StandardColorSpaceHelper implements ColorSpaceHelper
         try
         {
             InputStream is = iccBased.getPDStream().createInputStream();
-            // check that ICC profile loads (PDICCBased also does this, but catches the exception)
-            // PDFBOX-2819: load ICC profile as a stream, not as a byte array because of java error
-            ICC_Profile iccp = ICC_Profile.getInstance(is);
-            is.close();
+            ICC_Profile iccp;
+            try
+            {
+                // check that ICC profile loads (PDICCBased also does this, but catches the
+                // exception), common profiles are parsed only once per process
+                iccp = ICCProfileCache.get(is).getProfile();
+            }
+            finally
+            {
+                is.close();
+            }
             PDColorSpace altpdcs = iccBased.getAlternateColorSpace();
             if (altpdcs != null)
             {
@@ -466,9 +474,9 @@ public class StandardColorSpaceHelper implements ColorSpaceHelper
             if (defaultCS != null)
             {
                 // defaultCS is valid if the number of errors hasn't changed
-                int nbOfErrors = context.getDocument().getResult().getErrorsList().size();
+                int nbOfErrors = context.getValidationErrorCount();
                 processAllColorSpace(defaultCS);
-                int newNbOfErrors = context.getDocument().getResult().getErrorsList().size();
+                int newNbOfErrors = context.getValidationErrorCount();
                 result = (nbOfErrors == newNbOfErrors);
             }
 
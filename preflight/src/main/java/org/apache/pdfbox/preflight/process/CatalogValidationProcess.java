@@ -21,7 +21,6 @@
 
 package org.apache.pdfbox.preflight.process;
 
-import java.awt.color.ICC_Profile;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -41,6 +40,7 @@ import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDDocumentCatalog;
 import org.apache.pdfbox.pdmodel.PDDocumentNameDictionary;
 import org.apache.pdfbox.pdmodel.PDEmbeddedFilesNameTreeNode;
+import org.apache.pdfbox.pdmodel.graphics.color.ICCProfileCache;
 import org.apache.pdfbox.pdmodel.graphics.color.PDICCBased;
 import org.apache.pdfbox.preflight.PreflightConfiguration;
 import static org.apache.pdfbox.preflight.PreflightConfiguration.ACTIONS_PROCESS;
@@ -373,8 +373,14 @@ public class CatalogValidationProcess extends AbstractProcess
             if (ctx.getIccProfileWrapper() == null)
             {
                 InputStream is = stream.createInputStream();
-                ctx.setIccProfileWrapper(new ICCProfileWrapper(ICC_Profile.getInstance(is)));
-                IOUtils.closeQuietly(is);
+                try
+                {
+                    ctx.setIccProfileWrapper(new ICCProfileWrapper(ICCProfileCache.get(is).getProfile()));
+                }
+                finally
+                {
+                    IOUtils.closeQuietly(is);
+                }
             }
         }
         catch (IllegalArgumentException e)
@@ -33,6 +33,7 @@ import org.apache.pdfbox.cos.COSDictionary;
 import org.apache.pdfbox.cos.COSDocument;
 import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSObjectKey;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.preflight.PreflightContext;
 import org.apache.pdfbox.preflight.ValidationResult.ValidationError;
@@ -52,20 +53,38 @@ public class FileSpecificationValidationProcess extends AbstractProcess
         COSDocument cDoc = pdfDoc.getDocument();
 
         List<?> lCOSObj = cDoc.getObjects();
-        for (Object o : lCOSObj)
+        try
         {
-            COSBase cBase = ((COSObject) o).getObject();
-            if (cBase instanceof COSDictionary)
+            for (Object o : lCOSObj)
             {
-                COSDictionary dic = (COSDictionary) cBase;
-                String type = dic.getNameAsString(COSName.TYPE);
-                if (FILE_SPECIFICATION_VALUE_TYPE.equals(type) || COSName.F.getName().equals(type))
+                COSObject cObj = (COSObject) o;
+                COSBase cBase = cObj.getObject();
+                if (cBase instanceof COSDictionary)
                 {
-                    // ---- It is a file specification
-                    validateFileSpecification(ctx, dic);
+                    COSDictionary dic = (COSDictionary) cBase;
+                    String type = dic.getNameAsString(COSName.TYPE);
+                    if (FILE_SPECIFICATION_VALUE_TYPE.equals(type) || COSName.F.getName().equals(type))
+                    {
+                        // ---- It is a file specification
+                        COSObjectKey key = new COSObjectKey(cObj);
+                        ctx.setCurrentObjectKey(key);
+                        if (ctx.isChanged(cObj))
+                        {
+                            validateFileSpecification(ctx, dic);
+                        }
+                        else
+                        {
+                            // unchanged since the previous revision
+                            ctx.addValidationErrors(ctx.getPreviousErrors(key));
+                        }
+                    }
                 }
             }
         }
+        finally
+        {
+            ctx.setCurrentObjectKey(null);
+        }
     }
 
     /**
@@ -21,22 +21,47 @@
 
 package org.apache.pdfbox.preflight.process;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
 import org.apache.pdfbox.cos.COSDictionary;
 import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSObjectKey;
 import static org.apache.pdfbox.preflight.PreflightConfiguration.PAGE_PROCESS;
 import static org.apache.pdfbox.preflight.PreflightConstants.ERROR_SYNTAX_NOCATALOG;
 
 import org.apache.pdfbox.pdmodel.PDDocumentCatalog;
 import org.apache.pdfbox.pdmodel.PDPage;
-import org.apache.pdfbox.preflight.PreflightConstants;
 import static org.apache.pdfbox.preflight.PreflightConstants.ERROR_PDF_PROCESSING_MISSING;
 import org.apache.pdfbox.preflight.PreflightContext;
+import org.apache.pdfbox.preflight.ValidationResult;
 import org.apache.pdfbox.preflight.ValidationResult.ValidationError;
 import org.apache.pdfbox.preflight.exception.ValidationException;
+import org.apache.pdfbox.preflight.graphic.ICCProfileWrapper;
 import org.apache.pdfbox.preflight.utils.ContextHelper;
 
 public class PageTreeValidationProcess extends AbstractProcess
 {
+    // the inheritable page attributes, see PDF 32000-1:2008, table 30
+    private static final COSName[] INHERITABLE = { COSName.RESOURCES, COSName.MEDIA_BOX,
+            COSName.CROP_BOX, COSName.ROTATE };
+
+    // guards against cyclic /Parent entries
+    private static final int MAX_DEPTH = 1000;
 
     @Override
     public void validate(PreflightContext context) throws ValidationException
@@ -51,21 +76,50 @@ public class PageTreeValidationProcess extends AbstractProcess
                         "/Pages dictionary entry is missing in document catalog"));
                 return;
             }
-            int p = 0;
+            List<PDPage> pages = new ArrayList<PDPage>();
             for (PDPage page : context.getDocument().getPages())
             {
-                context.setCurrentPageNumber(p);
-                validatePage(context, page);
+                pages.add(page);
+            }
+            Map<COSDictionary, Long> nodeKeys = getPageTreeKeys(catalogDict);
+            long[] pageKeys = new long[pages.size()];
+            for (int p = 0; p < pages.size(); ++p)
+            {
+                Long key = nodeKeys.get(pages.get(p).getCOSObject());
+                pageKeys[p] = key == null ? 0 : key;
+            }
+            List<List<ValidationError>> unchangedPageErrors =
+                    getUnchangedPageErrors(context, pages, pageKeys, nodeKeys);
 
-                if (context.getDocument().getResult().getErrorsList().size() > context.getConfig().getMaxErrors())
+            if (context.getConfig().getPageValidationThreads() > 1)
+            {
+                validatePagesInParallel(context, pages, unchangedPageErrors);
+            }
+            else
+            {
+                for (int p = 0; p < pages.size(); ++p)
                 {
-                    context.addValidationError(new ValidationError(PreflightConstants.ERROR_UNKOWN_ERROR, 
-                            "Over " + context.getConfig().getMaxErrors() +
-                            " errors, page tree validation process aborted"));
-                    break;
+                    context.setCurrentPageNumber(p);
+                    List<ValidationError> errors = unchangedPageErrors.get(p);
+                    if (errors != null)
+                    {
+                        addValidationErrors(context, errors);
+                    }
+                    else
+                    {
+                        validatePage(context, pages.get(p));
+                    }
+
+                    if (context.abortIfOverMaxErrors("page tree validation process"))
+                    {
+                        break;
+                    }
+                    context.setCurrentPageNumber(null);
                 }
-                context.setCurrentPageNumber(null);
-                ++p;
+            }
+            if (!context.isOverMaxErrors())
+            {
+                context.getDocument().getResult().setPageKeys(pageKeys);
             }
         }
         else
@@ -74,6 +128,245 @@ public class PageTreeValidationProcess extends AbstractProcess
         }
     }
 
+    /**
+     * Validates the pages with a thread pool, each with its own page context. The errors of the
+     * pages are added to the document in the order of the pages, as if they had been validated one
+     * after another, except that the errors of a font or an XObject used by several pages are
+     * reported with the page which validated it first.
+     */
+    private void validatePagesInParallel(final PreflightContext context, List<PDPage> pages,
+            List<List<ValidationError>> unchangedPageErrors) throws ValidationException
+    {
+        // the ICC profile is shared by the page contexts, search it once
+        ICCProfileWrapper.getOrSearchICCProfile(context);
+
+        int changedPages = Collections.frequency(unchangedPageErrors, null);
+        int threads = Math.max(1, Math.min(context.getConfig().getPageValidationThreads(), changedPages));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try
+        {
+            List<Future<PreflightContext>> futures = new ArrayList<Future<PreflightContext>>(pages.size());
+            for (int p = 0; p < pages.size(); ++p)
+            {
+                if (unchangedPageErrors.get(p) != null)
+                {
+                    futures.add(null);
+                    continue;
+                }
+                final int pageNumber = p;
+                final PDPage page = pages.get(p);
+                futures.add(executor.submit(new Callable<PreflightContext>()
+                {
+                    @Override
+                    public PreflightContext call() throws ValidationException
+                    {
+                        PreflightContext pageContext = context.createPageContext(pageNumber);
+                        validatePage(pageContext, page);
+                        return pageContext;
+                    }
+                }));
+            }
+
+            for (int p = 0; p < pages.size(); ++p)
+            {
+                Future<PreflightContext> future = futures.get(p);
+                if (future == null)
+                {
+                    context.setCurrentPageNumber(p);
+                    addValidationErrors(context, unchangedPageErrors.get(p));
+                    context.setCurrentPageNumber(null);
+                }
+                else
+                {
+                    PreflightContext pageContext = getPageContext(future);
+                    for (ValidationError error : pageContext.getPageResult().getErrorsList())
+                    {
+                        context.getDocument().addValidationError(error);
+                    }
+                }
+                if (context.abortIfOverMaxErrors("page tree validation process"))
+                {
+                    for (Future<PreflightContext> pending : futures)
+                    {
+                        if (pending != null)
+                        {
+                            pending.cancel(false);
+                        }
+                    }
+                    break;
+                }
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns the keys of the nodes of the page tree, including the pages, by walking the /Kids
+     * arrays. Nodes which aren't indirect objects are left out.
+     */
+    private static Map<COSDictionary, Long> getPageTreeKeys(COSDictionary catalogDict)
+    {
+        Map<COSDictionary, Long> keys = new IdentityHashMap<COSDictionary, Long>();
+        Deque<COSBase> stack = new ArrayDeque<COSBase>();
+        stack.push(catalogDict.getItem(COSName.PAGES));
+        while (!stack.isEmpty())
+        {
+            COSBase item = stack.pop();
+            COSBase node = item instanceof COSObject ? ((COSObject) item).getObject() : item;
+            if (!(node instanceof COSDictionary) || keys.containsKey(node))
+            {
+                continue;
+            }
+            COSDictionary dict = (COSDictionary) node;
+            long key = 0;
+            if (item instanceof COSObject)
+            {
+                COSObject object = (COSObject) item;
+                key = COSObjectKey.computeInternalHash(object.getObjectNumber(),
+                        object.getGenerationNumber());
+            }
+            keys.put(dict, key);
+            COSArray kids = dict.getCOSArray(COSName.KIDS);
+            if (kids != null)
+            {
+                for (int i = 0; i < kids.size(); ++i)
+                {
+                    stack.push(kids.get(i));
+                }
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Returns the errors which have been found in the previous revision of the document for the
+     * pages which haven't changed since then.
+     *
+     * @return the errors for each page, null for a page which has to be validated.
+     */
+    private static List<List<ValidationError>> getUnchangedPageErrors(PreflightContext context,
+            List<PDPage> pages, long[] pageKeys, Map<COSDictionary, Long> nodeKeys)
+    {
+        List<List<ValidationError>> result =
+                new ArrayList<List<ValidationError>>(Collections.<List<ValidationError>>nCopies(pages.size(), null));
+        ValidationResult previous = context.getPreviousResult();
+        if (previous == null)
+        {
+            return result;
+        }
+
+        long[] previousKeys = previous.getPageKeys();
+        Map<Long, Integer> previousPages = new HashMap<Long, Integer>();
+        for (int p = previousKeys.length - 1; p >= 0; --p)
+        {
+            if (previousKeys[p] != 0)
+            {
+                previousPages.put(previousKeys[p], p);
+            }
+        }
+        Map<Integer, List<ValidationError>> previousErrors = new HashMap<Integer, List<ValidationError>>();
+        for (ValidationError error : previous.getErrorsList())
+        {
+            if (error.getPageNumber() != null)
+            {
+                List<ValidationError> errors = previousErrors.get(error.getPageNumber());
+                if (errors == null)
+                {
+                    errors = new ArrayList<ValidationError>();
+                    previousErrors.put(error.getPageNumber(), errors);
+                }
+                // copied, as adding them to the new result sets their page number
+                errors.add(new ValidationError(error));
+            }
+        }
+
+        for (int p = 0; p < pages.size(); ++p)
+        {
+            Integer previousPage = pageKeys[p] == 0 ? null : previousPages.get(pageKeys[p]);
+            if (previousPage != null && !isPageChanged(context, pages.get(p), pageKeys[p], nodeKeys))
+            {
+                List<ValidationError> errors = previousErrors.get(previousPage);
+                result.set(p, errors != null ? errors : Collections.<ValidationError>emptyList());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Tells whether a page or one of the objects it uses has been changed since the previous
+     * revision of the document.
+     */
+    private static boolean isPageChanged(PreflightContext context, PDPage page, long pageKey,
+            Map<COSDictionary, Long> nodeKeys)
+    {
+        if (context.isChanged(pageKey)
+                || context.isAnyChanged(context.getDocument().getPageObjectKeys(page)))
+        {
+            return true;
+        }
+        // attributes which are inherited from a page tree node and aren't indirect objects
+        // themselves change with the node
+        COSDictionary dict = page.getCOSObject();
+        for (COSName name : INHERITABLE)
+        {
+            if (dict.containsKey(name))
+            {
+                continue;
+            }
+            COSDictionary node = dict.getCOSDictionary(COSName.PARENT);
+            for (int depth = 0; node != null && depth < MAX_DEPTH; depth++)
+            {
+                COSBase value = node.getItem(name);
+                if (value != null)
+                {
+                    Long nodeKey = nodeKeys.get(node);
+                    if (!(value instanceof COSObject)
+                            && (nodeKey == null || nodeKey == 0 || context.isChanged(nodeKey)))
+                    {
+                        return true;
+                    }
+                    break;
+                }
+                node = node.getCOSDictionary(COSName.PARENT);
+            }
+        }
+        return false;
+    }
+
+    private static PreflightContext getPageContext(Future<PreflightContext> future)
+            throws ValidationException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new ValidationException("Page validation interrupted", e);
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof ValidationException)
+            {
+                throw (ValidationException) cause;
+            }
+            if (cause instanceof RuntimeException)
+            {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error)
+            {
+                throw (Error) cause;
+            }
+            throw new ValidationException("Page validation failed", cause);
+        }
+    }
+
     protected void validatePage(PreflightContext context, PDPage page) throws ValidationException
     {
         ContextHelper.validateElement(context, page, PAGE_PROCESS);
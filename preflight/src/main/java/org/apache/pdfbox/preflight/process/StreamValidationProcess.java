@@ -60,17 +60,34 @@ public class StreamValidationProcess extends AbstractProcess
         COSDocument cDoc = pdfDoc.getDocument();
 
         List<?> lCOSObj = cDoc.getObjects();
-        for (Object o : lCOSObj)
+        try
         {
-            COSObject cObj = (COSObject) o;
-            
-            // If this object represents a Stream, the Dictionary must contain the Length key
-            COSBase cBase = cObj.getObject();
-            if (cBase instanceof COSStream)
+            for (Object o : lCOSObj)
             {
-                validateStreamObject(ctx, cObj);
+                COSObject cObj = (COSObject) o;
+
+                // If this object represents a Stream, the Dictionary must contain the Length key
+                COSBase cBase = cObj.getObject();
+                if (cBase instanceof COSStream)
+                {
+                    COSObjectKey key = new COSObjectKey(cObj);
+                    ctx.setCurrentObjectKey(key);
+                    if (ctx.isChanged(cObj))
+                    {
+                        validateStreamObject(ctx, cObj);
+                    }
+                    else
+                    {
+                        // unchanged since the previous revision
+                        ctx.addValidationErrors(ctx.getPreviousErrors(key));
+                    }
+                }
             }
         }
+        finally
+        {
+            ctx.setCurrentObjectKey(null);
+        }
     }
 
     public void validateStreamObject(PreflightContext context, COSObject cObj) throws ValidationException
@@ -21,6 +21,7 @@
 
 package org.apache.pdfbox.preflight.utils;
 
+import java.util.concurrent.locks.ReentrantLock;
 import org.apache.pdfbox.cos.COSBase;
 import org.apache.pdfbox.pdmodel.PDResources;
 import org.apache.pdfbox.pdmodel.common.COSObjectable;
@@ -74,35 +75,57 @@ public final class ContextHelper
     private static void callValidation(PreflightContext context, Object element, String processName)
     throws ValidationException
     {
+        if (context.isOverMaxErrors())
+        {
+            // fail fast, the result is known
+            return;
+        }
         PreflightPath validationPath = context.getValidationPath();
         
         if (hasRecursion(context, element, validationPath))
         {
             return;
         }
-        // avoid checking certain elements twice. This can't be generalized,
-        // because some are checked by several processes.
-        if (element instanceof COSObjectable && 
-                // PDFBOX-4450 catch undetected recursions
-                (PreflightConfiguration.GRAPHIC_PROCESS.equals(processName) || 
-                 PreflightConfiguration.FONT_PROCESS.equals(processName))) // for speed
+        // fonts are validated one at a time, so that a page which is validated in parallel
+        // and uses a font that is being validated waits until its container is complete
+        boolean isFont = element instanceof COSObjectable &&
+                PreflightConfiguration.FONT_PROCESS.equals(processName);
+        ReentrantLock fontLock = context.getFontLock();
+        if (isFont)
         {
-            // don't check PDObjects, only their COSObject
-            COSBase cos = ((COSObjectable) element).getCOSObject();
-            if (context.isInProcessedSet(cos))
+            fontLock.lock();
+        }
+        try
+        {
+            // avoid checking certain elements twice. This can't be generalized,
+            // because some are checked by several processes.
+            if (element instanceof COSObjectable && 
+                    // PDFBOX-4450 catch undetected recursions
+                    (PreflightConfiguration.GRAPHIC_PROCESS.equals(processName) || isFont)) // for speed
+            {
+                // don't check PDObjects, only their COSObject
+                COSBase cos = ((COSObjectable) element).getCOSObject();
+                if (!context.markAsProcessed(cos))
+                {
+                    return;
+                }
+            }
+
+            boolean needPop = validationPath.pushObject(element);
+            PreflightConfiguration config = context.getConfig();
+            ValidationProcess process = config.getInstanceOfProcess(processName);
+            process.validate(context);
+            if (needPop)
             {
-                return;
+                validationPath.pop();
             }
-            context.addToProcessedSet(cos);
         }
-
-        boolean needPop = validationPath.pushObject(element);
-        PreflightConfiguration config = context.getConfig();
-        ValidationProcess process = config.getInstanceOfProcess(processName);
-        process.validate(context);
-        if (needPop)
+        finally
         {
-            validationPath.pop();
+            if (isFont)
+            {
+                fontLock.unlock();
+            }
         }
     }
 
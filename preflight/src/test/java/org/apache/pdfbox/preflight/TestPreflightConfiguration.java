@@ -20,7 +20,28 @@
  ****************************************************************************/
 package org.apache.pdfbox.preflight;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType0Font;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationWidget;
+import org.apache.pdfbox.pdmodel.interactive.form.PDAcroForm;
+import org.apache.pdfbox.pdmodel.interactive.form.PDTextField;
+import org.apache.pdfbox.preflight.ValidationResult.ValidationError;
 import org.apache.pdfbox.preflight.exception.ValidationException;
+import org.apache.pdfbox.preflight.parser.PreflightParser;
 import org.apache.pdfbox.preflight.process.BookmarkValidationProcess;
 import org.apache.pdfbox.preflight.process.EmptyValidationProcess;
 import org.apache.pdfbox.preflight.process.ValidationProcess;
@@ -106,4 +127,304 @@ public class TestPreflightConfiguration
         confg.getInstanceOfProcess(PreflightConfiguration.RESOURCES_PROCESS);
         Assert.fail();
     }
+
+    /**
+     * Test that validating the pages in parallel gives the same errors as validating them one
+     * after another, with fonts shared by the pages.
+     */
+    @Test
+    public void testPageValidationThreads() throws Exception
+    {
+        File file = createTestFile();
+        try
+        {
+            List<String> expected = validate(file, 1);
+            Assert.assertFalse(expected.isEmpty());
+            for (int run = 0; run < 3; run++)
+            {
+                Assert.assertEquals(expected, validate(file, 4));
+            }
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    /**
+     * Test that the validation stops after the maximum number of errors, and that the errors are
+     * given to the listener, with or without keeping them in the result.
+     */
+    @Test
+    public void testMaxErrorsAndErrorListener() throws Exception
+    {
+        File file = createTestFile();
+        try
+        {
+            final List<ValidationError> found = new ArrayList<ValidationError>();
+            PreflightConfiguration config = PreflightConfiguration.createPdfA1BConfiguration();
+            config.setErrorListener(new ValidationErrorListener()
+            {
+                @Override
+                public void errorFound(ValidationError error)
+                {
+                    found.add(error);
+                }
+            });
+            ValidationResult result = validate(file, config);
+            Assert.assertFalse(result.isValid());
+            Assert.assertEquals(result.getErrorsList(), found);
+            int allErrors = found.size();
+
+            // stop after the first error
+            found.clear();
+            config.setMaxErrors(0);
+            result = validate(file, config);
+            Assert.assertFalse(result.isValid());
+            Assert.assertEquals(result.getErrorsList(), found);
+            Assert.assertEquals(2, found.size());
+            Assert.assertTrue(found.size() < allErrors);
+            Assert.assertEquals(PreflightConstants.ERROR_UNKOWN_ERROR, found.get(1).getErrorCode());
+
+            // only stream the errors
+            found.clear();
+            config.setMaxErrors(10000);
+            config.setRetainErrors(false);
+            result = validate(file, config);
+            Assert.assertFalse(result.isValid());
+            Assert.assertTrue(result.getErrorsList().isEmpty());
+            Assert.assertEquals(allErrors, found.size());
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    /**
+     * Test that validating an incremental update gives the same errors as validating the whole
+     * document, and that the errors of the unchanged pages are taken from the previous result.
+     */
+    @Test
+    public void testValidateIncremental() throws Exception
+    {
+        File file = createTestFile();
+        File updated = File.createTempFile("preflightconfig", ".pdf");
+        try
+        {
+            PreflightConfiguration config = PreflightConfiguration.createPdfA1BConfiguration();
+            ValidationResult previous = validate(file, config);
+            Assert.assertNotNull(previous.getPageKeys());
+            Assert.assertEquals(12, previous.getPageKeys().length);
+            ValidationError firstPageError = null;
+            for (ValidationError error : previous.getErrorsList())
+            {
+                if (error.getPageNumber() != null && error.getPageNumber() == 0)
+                {
+                    firstPageError = error;
+                }
+            }
+            Assert.assertNotNull(firstPageError);
+            List<String> previousErrors = getErrors(previous);
+
+            // insert a page with a font which isn't embedded
+            PDDocument doc = PDDocument.load(file);
+            PDPage page = new PDPage();
+            PDPageContentStream cs = new PDPageContentStream(doc, page);
+            cs.beginText();
+            cs.setFont(PDType1Font.TIMES_ROMAN, 12);
+            cs.showText("Times");
+            cs.endText();
+            cs.close();
+            doc.getPages().insertBefore(page, doc.getPage(0));
+            doc.getDocumentCatalog().getCOSObject().setNeedToBeUpdated(true);
+            doc.getPages().getCOSObject().setNeedToBeUpdated(true);
+            doc.saveIncremental(new FileOutputStream(updated));
+            doc.close();
+
+            List<String> expected = getErrors(validate(updated, config));
+            PreflightParser parser = new PreflightParser(updated);
+            parser.parse(Format.PDF_A1B, config);
+            PreflightDocument document = parser.getPreflightDocument();
+            try
+            {
+                document.validateIncremental(previous);
+                ValidationResult result = document.getResult();
+                Assert.assertEquals(expected, getErrors(result));
+                Assert.assertEquals(13, result.getPageKeys().length);
+                // taken from the previous result and moved to the second page
+                ValidationError movedError = new ValidationError(firstPageError);
+                movedError.setPageNumber(1);
+                Assert.assertTrue(result.getErrorsList().contains(movedError));
+                // the previous result isn't changed
+                Assert.assertEquals(Integer.valueOf(0), firstPageError.getPageNumber());
+                Assert.assertEquals(previousErrors, getErrors(previous));
+            }
+            finally
+            {
+                document.close();
+            }
+        }
+        finally
+        {
+            file.delete();
+            updated.delete();
+        }
+    }
+
+    /**
+     * Test that a page is validated again if only the parent field of one of its widgets has
+     * changed, and that the other pages keep their previous errors.
+     */
+    @Test
+    public void testValidateIncrementalWidgetParent() throws Exception
+    {
+        File file = File.createTempFile("preflightconfig", ".pdf");
+        File updated = File.createTempFile("preflightconfig", ".pdf");
+        try
+        {
+            PDDocument doc = new PDDocument();
+            PDAcroForm acroForm = new PDAcroForm(doc);
+            doc.getDocumentCatalog().setAcroForm(acroForm);
+            PDTextField field = new PDTextField(acroForm);
+            field.setPartialName("text");
+            field.getCOSObject().setString(COSName.DA, "/Helv 0 Tf 0 g");
+            acroForm.getFields().add(field);
+            for (int i = 0; i < 2; i++)
+            {
+                doc.addPage(new PDPage());
+            }
+            PDAnnotationWidget widget = new PDAnnotationWidget();
+            widget.setRectangle(new PDRectangle(50, 50, 100, 20));
+            widget.setPage(doc.getPage(0));
+            widget.setPrinted(true);
+            widget.getCOSObject().setItem(COSName.PARENT, field);
+            doc.getPage(0).getAnnotations().add(widget);
+            field.setWidgets(Collections.singletonList(widget));
+            doc.save(file);
+            doc.close();
+
+            PreflightConfiguration config = PreflightConfiguration.createPdfA1BConfiguration();
+            ValidationResult previous = validate(file, config);
+            // marks whether the errors of a page are taken from the previous result
+            for (int p = 0; p < 2; p++)
+            {
+                ValidationError marker = new ValidationError(PreflightConstants.ERROR_SYNTAX_COMMON,
+                        "marker");
+                marker.setPageNumber(p);
+                previous.addError(marker);
+            }
+
+            // change only the value of the parent field
+            doc = PDDocument.load(file);
+            PDAcroForm loadedForm = doc.getDocumentCatalog().getAcroForm();
+            COSDictionary fieldDict = loadedForm.getFields().get(0).getCOSObject();
+            fieldDict.setString(COSName.V, "changed");
+            fieldDict.setNeedToBeUpdated(true);
+            doc.getDocumentCatalog().getCOSObject().setNeedToBeUpdated(true);
+            loadedForm.getCOSObject().setNeedToBeUpdated(true);
+            loadedForm.getCOSObject().getCOSArray(COSName.FIELDS).setNeedToBeUpdated(true);
+            doc.saveIncremental(new FileOutputStream(updated));
+            doc.close();
+
+            PreflightParser parser = new PreflightParser(updated);
+            parser.parse(Format.PDF_A1B, config);
+            PreflightDocument document = parser.getPreflightDocument();
+            try
+            {
+                document.validateIncremental(previous);
+                List<Integer> markerPages = new ArrayList<Integer>();
+                for (ValidationError error : document.getResult().getErrorsList())
+                {
+                    if (error.getDetails().endsWith("marker"))
+                    {
+                        markerPages.add(error.getPageNumber());
+                    }
+                }
+                Assert.assertEquals(Collections.singletonList(1), markerPages);
+            }
+            finally
+            {
+                document.close();
+            }
+        }
+        finally
+        {
+            file.delete();
+            updated.delete();
+        }
+    }
+
+    /**
+     * Creates a file with pages that share an embedded font, some of them use a font which isn't
+     * embedded.
+     */
+    private static File createTestFile() throws IOException
+    {
+        File file = File.createTempFile("preflightconfig", ".pdf");
+        PDDocument doc = new PDDocument();
+        PDFont font = PDType0Font.load(doc, PDDocument.class.getResourceAsStream(
+                "/org/apache/pdfbox/resources/ttf/LiberationSans-Regular.ttf"));
+        for (int i = 0; i < 12; i++)
+        {
+            PDPage page = new PDPage();
+            doc.addPage(page);
+            PDPageContentStream cs = new PDPageContentStream(doc, page);
+            cs.beginText();
+            cs.setFont(font, 12);
+            cs.newLineAtOffset(50, 700);
+            cs.showText("Page " + i);
+            if (i % 3 == 0)
+            {
+                // not embedded
+                cs.setFont(PDType1Font.HELVETICA, 12);
+                cs.showText("Helvetica");
+            }
+            cs.endText();
+            cs.close();
+        }
+        doc.save(file);
+        doc.close();
+        return file;
+    }
+
+    private static List<String> validate(File file, int threads) throws IOException
+    {
+        PreflightConfiguration config = PreflightConfiguration.createPdfA1BConfiguration();
+        config.setPageValidationThreads(threads);
+        List<String> errors = new ArrayList<String>();
+        for (ValidationError error : validate(file, config).getErrorsList())
+        {
+            errors.add(error.getErrorCode());
+        }
+        // fonts are reported with the first page which shows them, which may vary in parallel
+        Collections.sort(errors);
+        return errors;
+    }
+
+    private static List<String> getErrors(ValidationResult result)
+    {
+        List<String> errors = new ArrayList<String>();
+        for (ValidationError error : result.getErrorsList())
+        {
+            errors.add(error.getErrorCode() + "@" + error.getPageNumber());
+        }
+        return errors;
+    }
+
+    private static ValidationResult validate(File file, PreflightConfiguration config) throws IOException
+    {
+        PreflightParser parser = new PreflightParser(file);
+        parser.parse(Format.PDF_A1B, config);
+        PreflightDocument document = parser.getPreflightDocument();
+        try
+        {
+            document.validate();
+            return document.getResult();
+        }
+        finally
+        {
+            document.close();
+        }
+    }
 }
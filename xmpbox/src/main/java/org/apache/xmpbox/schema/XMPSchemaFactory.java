@@ -97,37 +97,90 @@ public class XMPSchemaFactory
     public XMPSchema createXMPSchema(XMPMetadata metadata, String prefix) throws XmpSchemaException
     {
         XMPSchema schema;
-        Class<?>[] argsClass;
-        Object[] schemaArgs;
+        try
+        {
+            schema = instanciateSchema(metadata, prefix);
+        }
+        catch (Exception e)
+        {
+            throw new XmpSchemaException("Cannot instanciate specified object schema", e);
+        }
+        if (schema != null)
+        {
+            metadata.addSchema(schema);
+        }
+        return schema;
+    }
 
+    /**
+     * The known schemas are created directly, only schemas registered by the application are
+     * created by reflection.
+     */
+    private XMPSchema instanciateSchema(XMPMetadata metadata, String prefix) throws Exception
+    {
+        boolean hasPrefix = prefix != null && !"".equals(prefix);
         if (schemaClass == XMPSchema.class)
         {
-            argsClass = new Class[] { XMPMetadata.class, String.class, String.class };
-            schemaArgs = new Object[] { metadata, namespace, nsName };
+            return new XMPSchema(metadata, namespace, nsName);
         }
-        else if (prefix != null && !"".equals(prefix))
+        else if (schemaClass == XMPBasicSchema.class)
         {
-            argsClass = new Class[] { XMPMetadata.class, String.class };
-            schemaArgs = new Object[] { metadata, prefix };
+            return hasPrefix ? new XMPBasicSchema(metadata, prefix) : new XMPBasicSchema(metadata);
         }
-        else
+        else if (schemaClass == DublinCoreSchema.class)
         {
-            argsClass = new Class[] { XMPMetadata.class };
-            schemaArgs = new Object[] { metadata };
+            return hasPrefix ? new DublinCoreSchema(metadata, prefix) : new DublinCoreSchema(metadata);
         }
-
-        try
+        else if (schemaClass == PDFAExtensionSchema.class)
         {
-            schema = schemaClass.getDeclaredConstructor(argsClass).newInstance(schemaArgs);
-            if (schema != null)
-            {
-                metadata.addSchema(schema);
-            }
-            return schema;
+            return hasPrefix ? new PDFAExtensionSchema(metadata, prefix) : new PDFAExtensionSchema(metadata);
         }
-        catch (Exception e)
+        else if (schemaClass == XMPMediaManagementSchema.class)
         {
-            throw new XmpSchemaException("Cannot instanciate specified object schema", e);
+            return hasPrefix ? new XMPMediaManagementSchema(metadata, prefix) : new XMPMediaManagementSchema(metadata);
+        }
+        else if (schemaClass == AdobePDFSchema.class)
+        {
+            return hasPrefix ? new AdobePDFSchema(metadata, prefix) : new AdobePDFSchema(metadata);
+        }
+        else if (schemaClass == PDFAIdentificationSchema.class)
+        {
+            return hasPrefix ? new PDFAIdentificationSchema(metadata, prefix) : new PDFAIdentificationSchema(metadata);
+        }
+        else if (schemaClass == XMPRightsManagementSchema.class)
+        {
+            return hasPrefix ? new XMPRightsManagementSchema(metadata, prefix)
+                    : new XMPRightsManagementSchema(metadata);
+        }
+        else if (schemaClass == PhotoshopSchema.class)
+        {
+            return hasPrefix ? new PhotoshopSchema(metadata, prefix) : new PhotoshopSchema(metadata);
+        }
+        else if (schemaClass == XMPBasicJobTicketSchema.class)
+        {
+            return hasPrefix ? new XMPBasicJobTicketSchema(metadata, prefix) : new XMPBasicJobTicketSchema(metadata);
+        }
+        else if (schemaClass == ExifSchema.class)
+        {
+            return hasPrefix ? new ExifSchema(metadata, prefix) : new ExifSchema(metadata);
+        }
+        else if (schemaClass == TiffSchema.class)
+        {
+            return hasPrefix ? new TiffSchema(metadata, prefix) : new TiffSchema(metadata);
+        }
+        else if (schemaClass == XMPageTextSchema.class)
+        {
+            return hasPrefix ? new XMPageTextSchema(metadata, prefix) : new XMPageTextSchema(metadata);
+        }
+        else if (hasPrefix)
+        {
+            Constructor<? extends XMPSchema> constructor = schemaClass.getDeclaredConstructor(XMPMetadata.class,
+                    String.class);
+            return constructor.newInstance(metadata, prefix);
+        }
+        else
+        {
+            return schemaClass.getDeclaredConstructor(XMPMetadata.class).newInstance(metadata);
         }
     }
 
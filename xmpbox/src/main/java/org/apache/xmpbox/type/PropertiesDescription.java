@@ -37,7 +37,10 @@ import java.util.Map;
 public class PropertiesDescription
 {
 
-    private final Map<String, PropertyType> types;
+    private Map<String, PropertyType> types;
+
+    // the types are shared with other descriptions until a property is added
+    private boolean shared;
 
     /**
      * Build PropMapping for specified namespace
@@ -48,6 +51,19 @@ public class PropertiesDescription
         types = new HashMap<String, PropertyType>();
     }
 
+    /**
+     * Build PropMapping with the properties of a shared, unmodifiable map. The map is copied when
+     * a property is added.
+     * 
+     * @param sharedTypes
+     *            the properties
+     */
+    PropertiesDescription(Map<String, PropertyType> sharedTypes)
+    {
+        types = sharedTypes;
+        shared = true;
+    }
+
     /**
      * Get All Properties Name
      * 
@@ -68,6 +84,11 @@ public class PropertiesDescription
      */
     public void addNewProperty(String name, PropertyType type)
     {
+        if (shared)
+        {
+            types = new HashMap<String, PropertyType>(types);
+            shared = false;
+        }
         types.put(name, type);
     }
 
@@ -22,13 +22,15 @@
 package org.apache.xmpbox.type;
 
 import java.lang.annotation.Annotation;
-import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.xml.namespace.QName;
 
@@ -52,6 +54,46 @@ import org.apache.xmpbox.schema.XmpSchemaException;
 public final class TypeMapping
 {
 
+    // class -> property name -> type, read from the annotated constants once per class
+    private static final ConcurrentMap<Class<?>, Map<String, PropertyType>> PROPERTY_TYPES =
+            new ConcurrentHashMap<Class<?>, Map<String, PropertyType>>();
+
+    // ns -> type
+    private static final Map<String, Types> STRUCTURED_NAMESPACES = new HashMap<String, Types>();
+
+    // ns -> schema class, in the order of the former addNameSpace() calls
+    private static final Map<String, Class<? extends XMPSchema>> SCHEMA_CLASSES =
+            new LinkedHashMap<String, Class<? extends XMPSchema>>();
+
+    static
+    {
+        for (Types type : Types.values())
+        {
+            if (type.isStructured())
+            {
+                StructuredType st = type.getImplementingClass().getAnnotation(StructuredType.class);
+                STRUCTURED_NAMESPACES.put(st.namespace(), type);
+            }
+        }
+        addSchemaClass(XMPBasicSchema.class);
+        addSchemaClass(DublinCoreSchema.class);
+        addSchemaClass(PDFAExtensionSchema.class);
+        addSchemaClass(XMPMediaManagementSchema.class);
+        addSchemaClass(AdobePDFSchema.class);
+        addSchemaClass(PDFAIdentificationSchema.class);
+        addSchemaClass(XMPRightsManagementSchema.class);
+        addSchemaClass(PhotoshopSchema.class);
+        addSchemaClass(XMPBasicJobTicketSchema.class);
+        addSchemaClass(ExifSchema.class);
+        addSchemaClass(TiffSchema.class);
+        addSchemaClass(XMPageTextSchema.class);
+    }
+
+    private static void addSchemaClass(Class<? extends XMPSchema> classSchem)
+    {
+        SCHEMA_CLASSES.put(classSchem.getAnnotation(StructuredType.class).namespace(), classSchem);
+    }
+
     private Map<Types, PropertiesDescription> structuredMappings;
 
     // ns -> type
@@ -72,26 +114,14 @@ public final class TypeMapping
         initialize();
     }
 
-    private static final Class<?>[] SIMPLEPROPERTYCONSTPARAMS = new Class<?>[] { XMPMetadata.class, String.class,
-            String.class, String.class, Object.class };
-
     private void initialize()
     {
         // structured types
         structuredMappings = new EnumMap<Types, PropertiesDescription>(Types.class);
-        structuredNamespaces = new HashMap<String, Types>();
-        for (Types type : Types.values())
+        structuredNamespaces = STRUCTURED_NAMESPACES;
+        for (Types type : STRUCTURED_NAMESPACES.values())
         {
-            if (type.isStructured())
-            {
-                Class<? extends AbstractStructuredType> clz = type.getImplementingClass().asSubclass(
-                        AbstractStructuredType.class);
-                StructuredType st = clz.getAnnotation(StructuredType.class);
-                String ns = st.namespace();
-                PropertiesDescription pm = initializePropMapping(clz);
-                structuredNamespaces.put(ns, type);
-                structuredMappings.put(type, pm);
-            }
+            structuredMappings.put(type, initializePropMapping(type.getImplementingClass()));
         }
 
         // define structured types
@@ -100,18 +130,11 @@ public final class TypeMapping
 
         // schema
         schemaMap = new HashMap<String, XMPSchemaFactory>();
-        addNameSpace(XMPBasicSchema.class);
-        addNameSpace(DublinCoreSchema.class);
-        addNameSpace(PDFAExtensionSchema.class);
-        addNameSpace(XMPMediaManagementSchema.class);
-        addNameSpace(AdobePDFSchema.class);
-        addNameSpace(PDFAIdentificationSchema.class);
-        addNameSpace(XMPRightsManagementSchema.class);
-        addNameSpace(PhotoshopSchema.class);
-        addNameSpace(XMPBasicJobTicketSchema.class);
-        addNameSpace(ExifSchema.class);
-        addNameSpace(TiffSchema.class);
-        addNameSpace(XMPageTextSchema.class);
+        for (Map.Entry<String, Class<? extends XMPSchema>> entry : SCHEMA_CLASSES.entrySet())
+        {
+            schemaMap.put(entry.getKey(), new XMPSchemaFactory(entry.getKey(), entry.getValue(),
+                    initializePropMapping(entry.getValue())));
+        }
     }
 
     public void addToDefinedStructuredTypes(String typeName, String ns, PropertiesDescription pm)
@@ -129,40 +152,59 @@ public final class TypeMapping
     public AbstractStructuredType instanciateStructuredType(Types type, String propertyName)
             throws BadFieldValueException
     {
-        try
-        {
-            Class<? extends AbstractStructuredType> propertyTypeClass = type.getImplementingClass().asSubclass(
-                    AbstractStructuredType.class);
-            Constructor<? extends AbstractStructuredType> construct = propertyTypeClass
-                    .getDeclaredConstructor(XMPMetadata.class);
-            AbstractStructuredType tmp = construct.newInstance(metadata);
-            tmp.setPropertyName(propertyName);
-            return tmp;
-        }
-        catch (InvocationTargetException e)
-        {
-            throw new BadFieldValueException("Failed to instanciate structured type : " + type, e);
-        }
-        catch (IllegalArgumentException e)
-        {
-            throw new BadFieldValueException("Failed to instanciate structured type : " + type, e);
-        }
-        catch (InstantiationException e)
-        {
-            throw new BadFieldValueException("Failed to instanciate structured type : " + type, e);
-        }
-        catch (IllegalAccessException e)
-        {
-            throw new BadFieldValueException("Failed to instanciate structured type : " + type, e);
-        }
-        catch (SecurityException e)
-        {
-            throw new BadFieldValueException("Failed to instanciate structured type : " + type, e);
-        }
-        catch (NoSuchMethodException e)
+        AbstractStructuredType tmp;
+        switch (type)
         {
-            throw new BadFieldValueException("Failed to instanciate structured type : " + type, e);
+        case Layer:
+            tmp = new LayerType(metadata);
+            break;
+        case Thumbnail:
+            tmp = new ThumbnailType(metadata);
+            break;
+        case ResourceEvent:
+            tmp = new ResourceEventType(metadata);
+            break;
+        case ResourceRef:
+            tmp = new ResourceRefType(metadata);
+            break;
+        case Version:
+            tmp = new VersionType(metadata);
+            break;
+        case PDFASchema:
+            tmp = new PDFASchemaType(metadata);
+            break;
+        case PDFAField:
+            tmp = new PDFAFieldType(metadata);
+            break;
+        case PDFAProperty:
+            tmp = new PDFAPropertyType(metadata);
+            break;
+        case PDFAType:
+            tmp = new PDFATypeType(metadata);
+            break;
+        case Job:
+            tmp = new JobType(metadata);
+            break;
+        case OECF:
+            tmp = new OECFType(metadata);
+            break;
+        case CFAPattern:
+            tmp = new CFAPatternType(metadata);
+            break;
+        case DeviceSettings:
+            tmp = new DeviceSettingsType(metadata);
+            break;
+        case Flash:
+            tmp = new FlashType(metadata);
+            break;
+        case Dimensions:
+            tmp = new DimensionsType(metadata);
+            break;
+        default:
+            throw new BadFieldValueException("Failed to instanciate structured type : " + type);
         }
+        tmp.setPropertyName(propertyName);
+        return tmp;
     }
 
     public AbstractStructuredType instanciateDefinedType(String propertyName, String namespace)
@@ -173,43 +215,58 @@ public final class TypeMapping
     public AbstractSimpleProperty instanciateSimpleProperty(String nsuri, String prefix, String name, Object value,
             Types type)
     {
-        // constructor parameters
-        Object[] params = new Object[] { metadata, nsuri, prefix, name, value };
-        // type
-        Class<? extends AbstractSimpleProperty> clz =
-                type.getImplementingClass().asSubclass(AbstractSimpleProperty.class);
-        try
-        {
-            Constructor<? extends AbstractSimpleProperty> cons = clz.getDeclaredConstructor(SIMPLEPROPERTYCONSTPARAMS);
-            return cons.newInstance(params);
-        }
-        catch (NoSuchMethodError e)
-        {
-            throw new IllegalArgumentException("Failed to instanciate " + clz.getSimpleName() + " property with value " + value, e);
-        }
-        catch (IllegalArgumentException e)
-        {
-            throw new IllegalArgumentException("Failed to instanciate " + clz.getSimpleName() + " property with value " + value, e);
-        }
-        catch (InstantiationException e)
-        {
-            throw new IllegalArgumentException("Failed to instanciate " + clz.getSimpleName() + " property with value " + value, e);
-        }
-        catch (IllegalAccessException e)
-        {
-            throw new IllegalArgumentException("Failed to instanciate " + clz.getSimpleName() + " property with value " + value, e);
-        }
-        catch (InvocationTargetException e)
+        if (!type.isSimple())
         {
-            throw new IllegalArgumentException("Failed to instanciate " + clz.getSimpleName() + " property with value " + value, e);
+            throw new IllegalArgumentException("Type not simple : " + type);
         }
-        catch (SecurityException e)
+        try
         {
-            throw new IllegalArgumentException("Failed to instanciate " + clz.getSimpleName() + " property with value " + value, e);
+            switch (type)
+            {
+            case Text:
+            case GPSCoordinate:
+            case LangAlt:
+                return new TextType(metadata, nsuri, prefix, name, value);
+            case Date:
+                return new DateType(metadata, nsuri, prefix, name, value);
+            case Boolean:
+                return new BooleanType(metadata, nsuri, prefix, name, value);
+            case Integer:
+                return new IntegerType(metadata, nsuri, prefix, name, value);
+            case Real:
+                return new RealType(metadata, nsuri, prefix, name, value);
+            case ProperName:
+                return new ProperNameType(metadata, nsuri, prefix, name, value);
+            case Locale:
+                return new LocaleType(metadata, nsuri, prefix, name, value);
+            case AgentName:
+                return new AgentNameType(metadata, nsuri, prefix, name, value);
+            case GUID:
+                return new GUIDType(metadata, nsuri, prefix, name, value);
+            case XPath:
+                return new XPathType(metadata, nsuri, prefix, name, value);
+            case Part:
+                return new PartType(metadata, nsuri, prefix, name, value);
+            case URL:
+                return new URLType(metadata, nsuri, prefix, name, value);
+            case URI:
+                return new URIType(metadata, nsuri, prefix, name, value);
+            case Choice:
+                return new ChoiceType(metadata, nsuri, prefix, name, value);
+            case MIMEType:
+                return new MIMEType(metadata, nsuri, prefix, name, value);
+            case RenditionClass:
+                return new RenditionClassType(metadata, nsuri, prefix, name, value);
+            case Rational:
+                return new RationalType(metadata, nsuri, prefix, name, value);
+            default:
+                throw new IllegalStateException("Missing simple type : " + type);
+            }
         }
-        catch (NoSuchMethodException e)
+        catch (RuntimeException e)
         {
-            throw new IllegalArgumentException("Failed to instanciate " + clz.getSimpleName() + " property with value " + value, e);
+            throw new IllegalArgumentException("Failed to instanciate " + type.getImplementingClass().getSimpleName()
+                    + " property with value " + value, e);
         }
     }
 
@@ -244,13 +301,6 @@ public final class TypeMapping
         return this.definedStructuredMappings.containsKey(name);
     }
 
-    private void addNameSpace(Class<? extends XMPSchema> classSchem)
-    {
-        StructuredType st = classSchem.getAnnotation(StructuredType.class);
-        String ns = st.namespace();
-        schemaMap.put(ns, new XMPSchemaFactory(ns, classSchem, initializePropMapping(classSchem)));
-    }
-
     public void addNewNameSpace(String ns, String preferred)
     {
         PropertiesDescription mapping = new PropertiesDescription();
@@ -353,9 +403,32 @@ public final class TypeMapping
         }
     }
 
+    /**
+     * Returns the properties declared by the annotated constants of a schema or structured type
+     * class. The constants are read only once per class, the returned description shares them
+     * until a property is added to it.
+     *
+     * @param classSchem the schema or structured type class
+     * @return a new description of the properties
+     */
     public PropertiesDescription initializePropMapping(Class<?> classSchem)
     {
-        PropertiesDescription propMap = new PropertiesDescription();
+        Map<String, PropertyType> types = PROPERTY_TYPES.get(classSchem);
+        if (types == null)
+        {
+            types = readPropertyTypes(classSchem);
+            Map<String, PropertyType> existing = PROPERTY_TYPES.putIfAbsent(classSchem, types);
+            if (existing != null)
+            {
+                types = existing;
+            }
+        }
+        return new PropertiesDescription(types);
+    }
+
+    private static Map<String, PropertyType> readPropertyTypes(Class<?> classSchem)
+    {
+        Map<String, PropertyType> propMap = new HashMap<String, PropertyType>();
         Field[] fields = classSchem.getFields();
         String propName = null;
         for (Field field : fields)
@@ -373,10 +446,10 @@ public final class TypeMapping
                                     + classSchem.getName(), e);
                 }
                 PropertyType propType = field.getAnnotation(PropertyType.class);
-                propMap.addNewProperty(propName, propType);
+                propMap.put(propName, propType);
             }
         }
-        return propMap;
+        return Collections.unmodifiableMap(propMap);
     }
 
     public BooleanType createBoolean(String namespaceURI, String prefix, String propertyName, boolean value)
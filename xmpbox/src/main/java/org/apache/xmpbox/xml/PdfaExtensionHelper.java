@@ -64,19 +64,30 @@ public final class PdfaExtensionHelper
         for (int i = 0; i < nnm.getLength(); i++)
         {
             Attr attr = (Attr) nnm.item(i);
-            checkNamespaceDeclaration(attr, PDFAExtensionSchema.class);
-            checkNamespaceDeclaration(attr, PDFAFieldType.class);
-            checkNamespaceDeclaration(attr, PDFAPropertyType.class);
-            checkNamespaceDeclaration(attr, PDFASchemaType.class);
-            checkNamespaceDeclaration(attr, PDFATypeType.class);
+            validateNaming(attr.getLocalName(), attr.getValue());
         }
     }
 
-    private static void checkNamespaceDeclaration(Attr attr, Class<? extends AbstractStructuredType> clz)
-            throws XmpParsingException
+    /**
+     * Checks one attribute of an extension schema description, e.g. a namespace declaration,
+     * against the prefixes and namespaces of the PDF/A extension types.
+     *
+     * @param prefix the local name of the attribute, i.e. the declared prefix
+     * @param namespace the value of the attribute, i.e. the declared namespace
+     * @throws XmpParsingException if the prefix or the namespace of a PDF/A type is redefined
+     */
+    static void validateNaming(String prefix, String namespace) throws XmpParsingException
+    {
+        checkNamespaceDeclaration(prefix, namespace, PDFAExtensionSchema.class);
+        checkNamespaceDeclaration(prefix, namespace, PDFAFieldType.class);
+        checkNamespaceDeclaration(prefix, namespace, PDFAPropertyType.class);
+        checkNamespaceDeclaration(prefix, namespace, PDFASchemaType.class);
+        checkNamespaceDeclaration(prefix, namespace, PDFATypeType.class);
+    }
+
+    private static void checkNamespaceDeclaration(String prefix, String namespace,
+            Class<? extends AbstractStructuredType> clz) throws XmpParsingException
     {
-        String prefix = attr.getLocalName();
-        String namespace = attr.getValue();
         String cprefix = clz.getAnnotation(StructuredType.class).preferedPrefix();
         String cnamespace = clz.getAnnotation(StructuredType.class).namespace();
         // check extension
@@ -0,0 +1,1310 @@
+/*****************************************************************************
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ ****************************************************************************/
+
+package org.apache.xmpbox.xml;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Stack;
+import java.util.StringTokenizer;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.xmpbox.XMPMetadata;
+import org.apache.xmpbox.XmpConstants;
+import org.apache.xmpbox.schema.XMPSchema;
+import org.apache.xmpbox.schema.XmpSchemaException;
+import org.apache.xmpbox.type.AbstractField;
+import org.apache.xmpbox.type.AbstractSimpleProperty;
+import org.apache.xmpbox.type.AbstractStructuredType;
+import org.apache.xmpbox.type.ArrayProperty;
+import org.apache.xmpbox.type.Attribute;
+import org.apache.xmpbox.type.BadFieldValueException;
+import org.apache.xmpbox.type.Cardinality;
+import org.apache.xmpbox.type.ComplexPropertyContainer;
+import org.apache.xmpbox.type.PropertiesDescription;
+import org.apache.xmpbox.type.PropertyType;
+import org.apache.xmpbox.type.TypeMapping;
+import org.apache.xmpbox.type.Types;
+import org.apache.xmpbox.xml.XmpParsingException.ErrorType;
+
+/**
+ * Parses XMP with a StAX stream reader instead of building a DOM. It accepts the same documents
+ * as {@link DomXmpParser}, fails with the same error types and creates the same metadata.
+ *
+ * <p>
+ * The events are read once into a flat list, where each element knows where its content ends,
+ * because the PDF/A extension schema descriptions have to be parsed before the data descriptions,
+ * which may come first. This is much lighter than a DOM, as the text isn't split into nodes and
+ * the attributes are kept in plain arrays.
+ */
+public class StaxXmpParser
+{
+    private static final int ELEMENT = 1;
+
+    private static final int TEXT = 2;
+
+    private static final int PROCESSING_INSTRUCTION = 3;
+
+    private final XMLInputFactory inputFactory;
+
+    private NamespaceFinder nsFinder;
+
+    private boolean strictParsing = true;
+
+    private List<Event> events;
+
+    public StaxXmpParser() throws XmpParsingException
+    {
+        try
+        {
+            inputFactory = XMLInputFactory.newInstance();
+            inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+            inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+            inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+            inputFactory.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, Boolean.FALSE);
+            inputFactory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+            nsFinder = new NamespaceFinder();
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new XmpParsingException(ErrorType.Configuration, "Failed to initilalize", e);
+        }
+    }
+
+    public boolean isStrictParsing()
+    {
+        return strictParsing;
+    }
+
+    public void setStrictParsing(boolean strictParsing)
+    {
+        this.strictParsing = strictParsing;
+    }
+
+    public XMPMetadata parse(byte[] xmp) throws XmpParsingException
+    {
+        ByteArrayInputStream input = new ByteArrayInputStream(xmp);
+        return parse(input);
+    }
+
+    public XMPMetadata parse(InputStream input) throws XmpParsingException
+    {
+        List<Event> documentChildren;
+        try
+        {
+            documentChildren = readEvents(input);
+        }
+        catch (XMLStreamException e)
+        {
+            throw new XmpParsingException(ErrorType.Undefined, "Failed to parse", e);
+        }
+        try
+        {
+            return parseDocument(documentChildren);
+        }
+        finally
+        {
+            events = null;
+            nsFinder = new NamespaceFinder();
+        }
+    }
+
+    private XMPMetadata parseDocument(List<Event> documentChildren) throws XmpParsingException
+    {
+        XMPMetadata xmp = null;
+
+        // Start reading
+        int pos = 0;
+        Event node = pos < documentChildren.size() ? documentChildren.get(pos) : null;
+
+        // expect xpacket processing instruction
+        if (node == null || node.kind != PROCESSING_INSTRUCTION)
+        {
+            throw new XmpParsingException(ErrorType.XpacketBadStart, "xmp should start with a processing instruction");
+        }
+        else
+        {
+            xmp = parseInitialXpacket(node);
+            node = ++pos < documentChildren.size() ? documentChildren.get(pos) : null;
+        }
+        // forget other processing instruction
+        while (node != null && node.kind == PROCESSING_INSTRUCTION)
+        {
+            node = ++pos < documentChildren.size() ? documentChildren.get(pos) : null;
+        }
+        // expect root element
+        Event root = null;
+        if (node == null || node.kind != ELEMENT)
+        {
+            throw new XmpParsingException(ErrorType.NoRootElement, "xmp should contain a root element");
+        }
+        else
+        {
+            // use this element as root
+            root = node;
+            node = ++pos < documentChildren.size() ? documentChildren.get(pos) : null;
+        }
+        // expect xpacket end
+        if (node == null || node.kind != PROCESSING_INSTRUCTION)
+        {
+            throw new XmpParsingException(ErrorType.XpacketBadEnd, "xmp should end with a processing instruction");
+        }
+        else
+        {
+            parseEndPacket(xmp, node);
+            node = ++pos < documentChildren.size() ? documentChildren.get(pos) : null;
+        }
+        // should be null
+        if (node != null)
+        {
+            throw new XmpParsingException(ErrorType.XpacketBadEnd,
+                    "xmp should end after xpacket end processing instruction");
+        }
+        // xpacket is OK and the is no more nodes
+        // Now, parse the content of root
+        Event rdfRdf = findDescriptionsParent(root);
+        List<Event> descriptions = getElementChildren(rdfRdf);
+        List<Event> dataDescriptions = new ArrayList<Event>(descriptions.size());
+        for (Event description : descriptions)
+        {
+            Event first = getFirstChildElement(description);
+            if (first != null && "pdfaExtension".equals(first.prefix))
+            {
+                for (Attr attr : description.attributes)
+                {
+                    PdfaExtensionHelper.validateNaming(attr.localName, attr.value);
+                }
+                parseDescriptionRoot(xmp, description);
+            }
+            else
+            {
+                dataDescriptions.add(description);
+            }
+        }
+        // find schema description
+        PdfaExtensionHelper.populateSchemaMapping(xmp);
+        // parse data description
+        for (Event description : dataDescriptions)
+        {
+            parseDescriptionRoot(xmp, description);
+        }
+
+        return xmp;
+    }
+
+    /**
+     * Reads the whole document into the event list. Comments are skipped and adjacent characters
+     * are merged, like in a DOM which ignores comments, and the whitespace which the DOM parser
+     * would remove is marked as removed.
+     *
+     * @return the children of the document
+     */
+    private List<Event> readEvents(InputStream input) throws XMLStreamException
+    {
+        events = new ArrayList<Event>();
+        List<Event> documentChildren = new ArrayList<Event>(4);
+        Stack<Event> open = new Stack<Event>();
+        XMLStreamReader reader = inputFactory.createXMLStreamReader(input);
+        try
+        {
+            StringBuilder text = null;
+            while (reader.hasNext())
+            {
+                int type = reader.next();
+                if (type == XMLStreamConstants.COMMENT)
+                {
+                    continue;
+                }
+                if (type == XMLStreamConstants.CHARACTERS || type == XMLStreamConstants.SPACE)
+                {
+                    if (open.isEmpty())
+                    {
+                        // the DOM has no text nodes outside of the root element
+                        continue;
+                    }
+                    if (text == null)
+                    {
+                        text = new StringBuilder();
+                    }
+                    text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                    continue;
+                }
+                if (text != null)
+                {
+                    addChild(open, documentChildren, Event.text(text.toString()));
+                    text = null;
+                }
+                switch (type)
+                {
+                case XMLStreamConstants.START_ELEMENT:
+                    Event element = Event.element(reader);
+                    addChild(open, documentChildren, element);
+                    open.push(element);
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    open.pop().next = events.size();
+                    break;
+                case XMLStreamConstants.CDATA:
+                    addChild(open, documentChildren, Event.text(reader.getText()));
+                    break;
+                case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                    Event pi = new Event(PROCESSING_INSTRUCTION);
+                    pi.localName = reader.getPITarget();
+                    pi.text = trimLeading(reader.getPIData());
+                    addChild(open, documentChildren, pi);
+                    break;
+                case XMLStreamConstants.DTD:
+                    // same as the disallow-doctype-decl feature of the DOM parser
+                    throw new XMLStreamException("DOCTYPE is disallowed", reader.getLocation());
+                default:
+                    break;
+                }
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+        if (documentChildren.size() > 1)
+        {
+            for (Event child : documentChildren)
+            {
+                if (child.kind == ELEMENT)
+                {
+                    removeWhitespace(child);
+                }
+            }
+        }
+        return documentChildren;
+    }
+
+    private void addChild(Stack<Event> open, List<Event> documentChildren, Event event)
+    {
+        event.index = events.size();
+        event.next = event.index + 1;
+        events.add(event);
+        if (open.isEmpty())
+        {
+            documentChildren.add(event);
+        }
+        else
+        {
+            open.peek().childCount++;
+        }
+    }
+
+    private static String trimLeading(String data)
+    {
+        if (data == null)
+        {
+            return "";
+        }
+        int start = 0;
+        while (start < data.length() && Character.isWhitespace(data.charAt(start)))
+        {
+            start++;
+        }
+        return data.substring(start);
+    }
+
+    private void parseDescriptionRoot(XMPMetadata xmp, Event description) throws XmpParsingException
+    {
+        nsFinder.push(description);
+        TypeMapping tm = xmp.getTypeMapping();
+        try
+        {
+            List<Event> properties = getElementChildren(description);
+            // parse attributes as properties
+            for (Attr attr : description.attributes)
+            {
+                if (XMLConstants.XMLNS_ATTRIBUTE.equals(attr.prefix))
+                {
+                    // do nothing
+                }
+                else if (XmpConstants.DEFAULT_RDF_PREFIX.equals(attr.prefix)
+                        && XmpConstants.ABOUT_NAME.equals(attr.localName))
+                {
+                    // do nothing
+                }
+                else if (attr.prefix == null && XmpConstants.ABOUT_NAME.equals(attr.localName))
+                {
+                    // do nothing
+                }
+                else
+                {
+                    parseDescriptionRootAttr(xmp, description, attr, tm);
+                }
+            }
+            parseChildrenAsProperties(xmp, properties, tm, description);
+        }
+        catch (XmpSchemaException e)
+        {
+            throw new XmpParsingException(ErrorType.Undefined, "Parsing failed", e);
+        }
+        finally
+        {
+            nsFinder.pop();
+        }
+    }
+
+    private void parseDescriptionRootAttr(XMPMetadata xmp, Event description, Attr attr, TypeMapping tm)
+            throws XmpSchemaException, XmpParsingException
+    {
+        String namespace = attr.namespace;
+        XMPSchema schema = xmp.getSchema(namespace);
+        if (schema == null && tm.getSchemaFactory(namespace) != null)
+        {
+            schema = tm.getSchemaFactory(namespace).createXMPSchema(xmp, attr.prefix);
+            loadAttributes(schema, description);
+        }
+        // Only process when a schema was successfully found
+        if (schema != null)
+        {
+            ComplexPropertyContainer container = schema.getContainer();
+            PropertyType type = checkPropertyDefinition(xmp, new QName(attr.namespace, attr.localName));
+
+            //Default to text if no type is found
+            if (type == null)
+            {
+                type = TypeMapping.createPropertyType(Types.Text, Cardinality.Simple);
+            }
+
+            try
+            {
+                AbstractSimpleProperty sp = tm.instanciateSimpleProperty(namespace, schema.getPrefix(),
+                        attr.localName, attr.value, type.type());
+                container.addProperty(sp);
+            }
+            catch (IllegalArgumentException e)
+            {
+                throw new XmpParsingException(ErrorType.Format,
+                        e.getMessage() + " in " + schema.getPrefix() + ":" + attr.localName, e);
+            }
+        }
+    }
+
+    private void parseChildrenAsProperties(XMPMetadata xmp, List<Event> properties, TypeMapping tm,
+            Event description) throws XmpParsingException, XmpSchemaException
+    {
+        // parse children elements as properties
+        for (Event property : properties)
+        {
+            String namespace = property.namespace;
+            PropertyType type = checkPropertyDefinition(xmp, property.getQName());
+            // create the container
+            if (!tm.isDefinedSchema(namespace))
+            {
+                throw new XmpParsingException(ErrorType.NoSchema,
+                        "This namespace is not a schema or a structured type : " + namespace);
+            }
+            XMPSchema schema = xmp.getSchema(namespace);
+            if (schema == null)
+            {
+                schema = tm.getSchemaFactory(namespace).createXMPSchema(xmp, property.prefix);
+                loadAttributes(schema, description);
+            }
+            ComplexPropertyContainer container = schema.getContainer();
+            // create property
+            createProperty(xmp, property, type, container);
+        }
+    }
+
+    private void createProperty(XMPMetadata xmp, Event property, PropertyType type,
+            ComplexPropertyContainer container) throws XmpParsingException
+    {
+        String prefix = property.prefix;
+        String name = property.localName;
+        String namespace = property.namespace;
+        // create property
+        nsFinder.push(property);
+        try
+        {
+            if (type == null)
+            {
+                if (strictParsing)
+                {
+                    throw new XmpParsingException(ErrorType.InvalidType, "No type defined for {" + namespace + "}"
+                            + name);
+                }
+                else
+                {
+                    // use it as string
+                    manageSimpleType(xmp, property, Types.Text, container);
+                }
+            }
+            else if (type.type() == Types.LangAlt)
+            {
+                manageLangAlt(xmp, property, container);
+            }
+            else if (type.card().isArray())
+            {
+                manageArray(xmp, property, type, container);
+            }
+            else if (type.type().isSimple())
+            {
+                manageSimpleType(xmp, property, type.type(), container);
+            }
+            else if (type.type().isStructured())
+            {
+                manageStructuredType(xmp, property, prefix, container);
+            }
+            else if (type.type() == Types.DefinedType)
+            {
+                manageDefinedType(xmp, property, prefix, container);
+            }
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new XmpParsingException(ErrorType.Format, e.getMessage() + " in " + prefix + ":" + name, e);
+        }
+        finally
+        {
+            nsFinder.pop();
+        }
+    }
+
+    private void manageDefinedType(XMPMetadata xmp, Event property, String prefix,
+            ComplexPropertyContainer container) throws XmpParsingException
+    {
+        if (property.isParseTypeResource())
+        {
+            AbstractStructuredType ast = parseLiDescription(xmp, property.getQName(), property);
+            ast.setPrefix(prefix);
+            container.addProperty(ast);
+        }
+        else
+        {
+            Event inner = getFirstChildElement(property);
+            if (inner == null)
+            {
+                throw new XmpParsingException(ErrorType.Format, "property should contain child element : "
+                        + property);
+            }
+            AbstractStructuredType ast = parseLiDescription(xmp, property.getQName(), inner);
+            ast.setPrefix(prefix);
+            container.addProperty(ast);
+        }
+    }
+
+    private void manageStructuredType(XMPMetadata xmp, Event property, String prefix,
+            ComplexPropertyContainer container) throws XmpParsingException
+    {
+        if (property.isParseTypeResource())
+        {
+            AbstractStructuredType ast = parseLiDescription(xmp, property.getQName(), property);
+            if (ast != null)
+            {
+                ast.setPrefix(prefix);
+                container.addProperty(ast);
+            }
+        }
+        else
+        {
+            Event inner = getFirstChildElement(property);
+            if (inner != null)
+            {
+                nsFinder.push(inner);
+                AbstractStructuredType ast = parseLiDescription(xmp, property.getQName(), inner);
+                ast.setPrefix(prefix);
+                container.addProperty(ast);
+            }
+        }
+    }
+
+    private void manageSimpleType(XMPMetadata xmp, Event property, Types type, ComplexPropertyContainer container)
+    {
+        TypeMapping tm = xmp.getTypeMapping();
+        AbstractSimpleProperty sp = tm.instanciateSimpleProperty(property.namespace, property.prefix,
+                property.localName, getTextContent(property), type);
+        loadAttributes(sp, property);
+        container.addProperty(sp);
+    }
+
+    private void manageArray(XMPMetadata xmp, Event property, PropertyType type, ComplexPropertyContainer container)
+            throws XmpParsingException
+    {
+        TypeMapping tm = xmp.getTypeMapping();
+        String prefix = property.prefix;
+        String name = property.localName;
+        String namespace = property.namespace;
+        Event bagOrSeq = getUniqueElementChild(property);
+        // ensure this is the good type of array
+        if (bagOrSeq == null)
+        {
+            // not an array
+            String whatFound = "nothing";
+            Event first = getFirstChild(property);
+            if (first != null)
+            {
+                whatFound = first.getNodeName();
+            }
+            throw new XmpParsingException(ErrorType.Format, "Invalid array definition, expecting " + type.card()
+                    + " and found "
+                    + whatFound
+                    + " [prefix=" + prefix + "; name=" + name + "]");
+        }
+        if (!bagOrSeq.localName.equals(type.card().name()))
+        {
+            // not the good array type
+            throw new XmpParsingException(ErrorType.Format, "Invalid array type, expecting " + type.card()
+                    + " and found " + bagOrSeq.localName + " [prefix=" + prefix + "; name=" + name + "]");
+        }
+        ArrayProperty array = tm.createArrayProperty(namespace, prefix, name, type.card());
+        container.addProperty(array);
+        for (Event element : getElementChildren(bagOrSeq))
+        {
+            QName propertyQName = new QName(element.localName);
+            AbstractField ast = parseLiElement(xmp, propertyQName, element, type.type());
+            if (ast != null)
+            {
+                array.addProperty(ast);
+            }
+        }
+    }
+
+    private void manageLangAlt(XMPMetadata xmp, Event property, ComplexPropertyContainer container)
+            throws XmpParsingException
+    {
+        manageArray(xmp, property, TypeMapping.createPropertyType(Types.LangAlt, Cardinality.Alt), container);
+    }
+
+    private void parseDescriptionInner(XMPMetadata xmp, Event description, ComplexPropertyContainer parentContainer)
+            throws XmpParsingException
+    {
+        nsFinder.push(description);
+        TypeMapping tm = xmp.getTypeMapping();
+        try
+        {
+            for (Event property : getElementChildren(description))
+            {
+                String name = property.localName;
+                PropertyType dtype = checkPropertyDefinition(xmp, property.getQName());
+                PropertyType ptype = tm.getStructuredPropMapping(dtype.type()).getPropertyType(name);
+                // create property
+                createProperty(xmp, property, ptype, parentContainer);
+            }
+        }
+        finally
+        {
+            nsFinder.pop();
+        }
+    }
+
+    private AbstractField parseLiElement(XMPMetadata xmp, QName descriptor, Event liElement, Types type)
+            throws XmpParsingException
+    {
+        if (liElement.isParseTypeResource())
+        {
+            return parseLiDescription(xmp, descriptor, liElement);
+        }
+        // will find rdf:Description
+        Event liChild = getUniqueElementChild(liElement);
+        if (liChild != null)
+        {
+            nsFinder.push(liChild);
+            return parseLiDescription(xmp, descriptor, liChild);
+        }
+        else
+        {
+            // no child
+            String text = getTextContent(liElement);
+            TypeMapping tm = xmp.getTypeMapping();
+            if (type.isSimple())
+            {
+                AbstractField af = tm.instanciateSimpleProperty(descriptor.getNamespaceURI(),
+                        descriptor.getPrefix(), descriptor.getLocalPart(), text, type);
+                loadAttributes(af, liElement);
+                return af;
+            }
+            else
+            {
+                // PDFBOX-4325: assume it is structured
+                AbstractField af;
+                try
+                {
+                    af = tm.instanciateStructuredType(type, descriptor.getLocalPart());
+                }
+                catch (BadFieldValueException ex)
+                {
+                    throw new XmpParsingException(ErrorType.InvalidType, "Parsing of structured type failed", ex);
+                }
+                loadAttributes(af, liElement);
+                return af;
+            }
+        }
+    }
+
+    private void loadAttributes(AbstractField sp, Event element)
+    {
+        for (Attr attr : element.attributes)
+        {
+            if (XMLConstants.XMLNS_ATTRIBUTE.equals(attr.prefix))
+            {
+                // do nothing
+            }
+            else if (XmpConstants.DEFAULT_RDF_PREFIX.equals(attr.prefix)
+                    && XmpConstants.ABOUT_NAME.equals(attr.localName))
+            {
+                // set about
+                if (sp instanceof XMPSchema)
+                {
+                    ((XMPSchema) sp).setAboutAsSimple(attr.value);
+                }
+            }
+            else
+            {
+                Attribute attribute = new Attribute(XMLConstants.XML_NS_URI, attr.localName, attr.value);
+                sp.setAttribute(attribute);
+            }
+        }
+    }
+
+    private AbstractStructuredType parseLiDescription(XMPMetadata xmp, QName descriptor, Event liElement)
+            throws XmpParsingException
+    {
+        TypeMapping tm = xmp.getTypeMapping();
+        List<Event> elements = getElementChildren(liElement);
+        if (elements.isEmpty())
+        {
+            // The list is empty
+            return null;
+        }
+        // Instantiate abstract structured type with hint from first element
+        Event first = elements.get(0);
+        PropertyType ctype = checkPropertyDefinition(xmp, first.getQName());
+        Types tt = ctype.type();
+        AbstractStructuredType ast = instanciateStructured(tm, tt, descriptor.getLocalPart(), first.namespace);
+
+        ast.setNamespace(descriptor.getNamespaceURI());
+        ast.setPrefix(descriptor.getPrefix());
+
+        PropertiesDescription pm;
+        if (tt.isStructured())
+        {
+            pm = tm.getStructuredPropMapping(tt);
+        }
+        else
+        {
+            pm = tm.getDefinedDescriptionByNamespace(first.namespace);
+        }
+        for (Event element : elements)
+        {
+            String prefix = element.prefix;
+            String name = element.localName;
+            String namespace = element.namespace;
+            PropertyType type = pm.getPropertyType(name);
+            if (type == null)
+            {
+                // not defined
+                throw new XmpParsingException(ErrorType.NoType, "Type '" + name + "' not defined in "
+                        + element.namespace);
+            }
+            else if (type.card().isArray())
+            {
+                ArrayProperty array = tm.createArrayProperty(namespace, prefix, name, type.card());
+                ast.getContainer().addProperty(array);
+                Event bagOrSeq = getUniqueElementChild(element);
+                if (bagOrSeq == null)
+                {
+                    // the DOM parser fails the same way
+                    throw new NullPointerException();
+                }
+                for (Event element2 : getElementChildren(bagOrSeq))
+                {
+                    AbstractField ast2 = parseLiElement(xmp, descriptor, element2, type.type());
+                    if (ast2 != null)
+                    {
+                        array.addProperty(ast2);
+                    }
+                }
+            }
+            else if (type.type().isSimple())
+            {
+                AbstractSimpleProperty sp = tm.instanciateSimpleProperty(namespace, prefix, name,
+                        getTextContent(element), type.type());
+                loadAttributes(sp, element);
+                ast.getContainer().addProperty(sp);
+            }
+            else if (type.type().isStructured())
+            {
+                // create a new structured type
+                AbstractStructuredType inner = instanciateStructured(tm, type.type(), name, null);
+                inner.setNamespace(namespace);
+                inner.setPrefix(prefix);
+                ast.getContainer().addProperty(inner);
+                ComplexPropertyContainer cpc = inner.getContainer();
+                if (element.isParseTypeResource())
+                {
+                    parseDescriptionInner(xmp, element, cpc);
+                }
+                else
+                {
+                    Event descElement = getFirstChildElement(element);
+                    if (descElement != null)
+                    {
+                        parseDescriptionInner(xmp, descElement, cpc);
+                    }
+                }
+            }
+            else
+            {
+                throw new XmpParsingException(ErrorType.NoType, "Unidentified element to parse " + element + " (type="
+                        + type + ")");
+            }
+
+        }
+        return ast;
+    }
+
+    private XMPMetadata parseInitialXpacket(Event pi) throws XmpParsingException
+    {
+        if (!"xpacket".equals(pi.localName))
+        {
+            throw new XmpParsingException(ErrorType.XpacketBadStart, "Bad processing instruction name : "
+                    + pi.localName);
+        }
+        String data = pi.text;
+        StringTokenizer tokens = new StringTokenizer(data, " ");
+        String id = null;
+        String begin = null;
+        String bytes = null;
+        String encoding = null;
+        while (tokens.hasMoreTokens())
+        {
+            String token = tokens.nextToken();
+            if (!token.endsWith("\"") && !token.endsWith("\'"))
+            {
+                throw new XmpParsingException(ErrorType.XpacketBadStart, "Cannot understand PI data part : '" + token
+                        + "' in '" + data + "'");
+            }
+            String quote = token.substring(token.length() - 1);
+            int pos = token.indexOf("=" + quote);
+            if (pos <= 0)
+            {
+                throw new XmpParsingException(ErrorType.XpacketBadStart, "Cannot understand PI data part : '" + token
+                        + "' in '" + data + "'");
+            }
+            String name = token.substring(0, pos);
+            if (token.length() - 1 < pos + 2)
+            {
+                throw new XmpParsingException(ErrorType.XpacketBadStart, "Cannot understand PI data part : '" + token
+                        + "' in '" + data + "'");
+            }
+            String value = token.substring(pos + 2, token.length() - 1);
+            if ("id".equals(name))
+            {
+                id = value;
+            }
+            else if ("begin".equals(name))
+            {
+                begin = value;
+            }
+            else if ("bytes".equals(name))
+            {
+                bytes = value;
+            }
+            else if ("encoding".equals(name))
+            {
+                encoding = value;
+            }
+            else
+            {
+                throw new XmpParsingException(ErrorType.XpacketBadStart, "Unknown attribute in xpacket PI : '" + token
+                        + "'");
+            }
+        }
+        return XMPMetadata.createXMPMetadata(begin, id, bytes, encoding);
+    }
+
+    private void parseEndPacket(XMPMetadata metadata, Event pi) throws XmpParsingException
+    {
+        String xpackData = pi.text;
+        // end attribute must be present and placed in first
+        // xmp spec says Other unrecognized attributes can follow, but
+        // should be ignored
+        if (xpackData.startsWith("end="))
+        {
+            char end = xpackData.charAt(5);
+            // check value (5 for end='X')
+            if (end != 'r' && end != 'w')
+            {
+                throw new XmpParsingException(ErrorType.XpacketBadEnd,
+                        "Excepted xpacket 'end' attribute with value 'r' or 'w' ");
+            }
+            else
+            {
+                metadata.setEndXPacket(Character.toString(end));
+            }
+        }
+        else
+        {
+            // should find end='r/w'
+            throw new XmpParsingException(ErrorType.XpacketBadEnd,
+                    "Excepted xpacket 'end' attribute (must be present and placed in first)");
+        }
+    }
+
+    private Event findDescriptionsParent(Event root) throws XmpParsingException
+    {
+        // always <x:xmpmeta xmlns:x="adobe:ns:meta/">
+        expectNaming(root, "adobe:ns:meta/", "x", "xmpmeta");
+        // should only have one child
+        List<Event> nl = getChildren(root);
+        if (nl.isEmpty())
+        {
+            // empty description
+            throw new XmpParsingException(ErrorType.Format, "No rdf description found in xmp");
+        }
+        else if (nl.size() > 1)
+        {
+            // only expect one element
+            throw new XmpParsingException(ErrorType.Format, "More than one element found in x:xmpmeta");
+        }
+        else if (nl.get(0).kind != ELEMENT)
+        {
+            // should be an element
+            throw new XmpParsingException(ErrorType.Format, "x:xmpmeta does not contains rdf:RDF element");
+        } // else let's parse
+        Event rdfRdf = nl.get(0);
+        // always <rdf:RDF
+        // xmlns:rdf="http://www.w3.org/1999/02/22-rdf-syntax-ns#">
+        expectNaming(rdfRdf, XmpConstants.RDF_NAMESPACE, XmpConstants.DEFAULT_RDF_PREFIX,
+                XmpConstants.DEFAULT_RDF_LOCAL_NAME);
+        // return description parent
+        return rdfRdf;
+    }
+
+    private void expectNaming(Event element, String ns, String prefix, String ln) throws XmpParsingException
+    {
+        if ((ns != null) && !(ns.equals(element.namespace)))
+        {
+            throw new XmpParsingException(ErrorType.Format, "Expecting namespace '" + ns + "' and found '"
+                    + element.namespace + "'");
+        }
+        else if ((prefix != null) && !(prefix.equals(element.prefix)))
+        {
+            throw new XmpParsingException(ErrorType.Format, "Expecting prefix '" + prefix + "' and found '"
+                    + element.prefix + "'");
+        }
+        else if ((ln != null) && !(ln.equals(element.localName)))
+        {
+            throw new XmpParsingException(ErrorType.Format, "Expecting local name '" + ln + "' and found '"
+                    + element.localName + "'");
+        } // else OK
+    }
+
+    /**
+     * Marks the whitespace-only text in the content of an element as removed, unless it is the
+     * only child, and continues with the child elements, like {@code DomXmpParser.removeComments()}.
+     */
+    private void removeWhitespace(Event element)
+    {
+        if (element.childCount <= 1)
+        {
+            // There is only one node so we do not remove it
+            return;
+        }
+        for (int i = element.index + 1; i < element.next; i = events.get(i).next)
+        {
+            Event child = events.get(i);
+            if (child.kind == TEXT && child.text.trim().isEmpty())
+            {
+                child.removed = true;
+            }
+            else if (child.kind == ELEMENT)
+            {
+                removeWhitespace(child);
+            }
+        }
+    }
+
+    private List<Event> getChildren(Event element)
+    {
+        List<Event> children = new ArrayList<Event>(element.childCount);
+        for (int i = element.index + 1; i < element.next; i = events.get(i).next)
+        {
+            Event child = events.get(i);
+            if (!child.removed)
+            {
+                children.add(child);
+            }
+        }
+        return children;
+    }
+
+    private Event getFirstChild(Event element)
+    {
+        for (int i = element.index + 1; i < element.next; i = events.get(i).next)
+        {
+            Event child = events.get(i);
+            if (!child.removed)
+            {
+                return child;
+            }
+        }
+        return null;
+    }
+
+    private Event getUniqueElementChild(Event description) throws XmpParsingException
+    {
+        Event found = null;
+        for (int i = description.index + 1; i < description.next; i = events.get(i).next)
+        {
+            Event child = events.get(i);
+            if (child.kind == ELEMENT)
+            {
+                if (found != null)
+                {
+                    // invalid : found two child elements
+                    throw new XmpParsingException(ErrorType.Undefined, "Found two child elements in "
+                            + description);
+                }
+                found = child;
+            }
+        }
+        return found;
+    }
+
+    private Event getFirstChildElement(Event description)
+    {
+        for (int i = description.index + 1; i < description.next; i = events.get(i).next)
+        {
+            Event child = events.get(i);
+            if (child.kind == ELEMENT)
+            {
+                return child;
+            }
+        }
+        return null;
+    }
+
+    private List<Event> getElementChildren(Event description)
+    {
+        List<Event> children = new ArrayList<Event>(description.childCount);
+        for (int i = description.index + 1; i < description.next; i = events.get(i).next)
+        {
+            Event child = events.get(i);
+            if (child.kind == ELEMENT)
+            {
+                children.add(child);
+            }
+        }
+        return children;
+    }
+
+    private String getTextContent(Event element)
+    {
+        String single = null;
+        StringBuilder sb = null;
+        for (int i = element.index + 1; i < element.next; i++)
+        {
+            Event event = events.get(i);
+            if (event.kind == TEXT && !event.removed)
+            {
+                if (single == null)
+                {
+                    single = event.text;
+                }
+                else
+                {
+                    if (sb == null)
+                    {
+                        sb = new StringBuilder(single);
+                    }
+                    sb.append(event.text);
+                }
+            }
+        }
+        if (sb != null)
+        {
+            return sb.toString();
+        }
+        return single != null ? single : "";
+    }
+
+    private AbstractStructuredType instanciateStructured(TypeMapping tm, Types type, String name,
+            String structuredNamespace) throws XmpParsingException
+    {
+        try
+        {
+            if (type.isStructured())
+            {
+                return tm.instanciateStructuredType(type, name);
+            }
+            else if (type.isDefined())
+            {
+                return tm.instanciateDefinedType(name, structuredNamespace);
+            }
+            else
+            {
+                throw new XmpParsingException(ErrorType.InvalidType, "Type not structured : " + type);
+            }
+        }
+        catch (BadFieldValueException e)
+        {
+            throw new XmpParsingException(ErrorType.InvalidType, "Parsing failed", e);
+        }
+    }
+
+    private PropertyType checkPropertyDefinition(XMPMetadata xmp, QName prop) throws XmpParsingException
+    {
+        TypeMapping tm = xmp.getTypeMapping();
+        // test if namespace is set in xml
+        if (!nsFinder.containsNamespace(prop.getNamespaceURI()))
+        {
+            throw new XmpParsingException(ErrorType.NoSchema, "Schema is not set in this document : "
+                    + prop.getNamespaceURI());
+        }
+        // test if namespace is defined
+        String nsuri = prop.getNamespaceURI();
+        if (!tm.isDefinedNamespace(nsuri))
+        {
+            throw new XmpParsingException(ErrorType.NoSchema, "Cannot find a definition for the namespace "
+                    + prop.getNamespaceURI());
+        }
+        try
+        {
+            return tm.getSpecifiedPropertyType(prop);
+        }
+        catch (BadFieldValueException e)
+        {
+            throw new XmpParsingException(ErrorType.InvalidType, "Failed to retrieve property definition", e);
+        }
+    }
+
+    /**
+     * An element, text or processing instruction read from the stream. Elements know the
+     * index behind their content, so that siblings can be reached without end events.
+     */
+    private static final class Event
+    {
+        private static final Attr[] NO_ATTRIBUTES = new Attr[0];
+
+        private final int kind;
+
+        private int index;
+
+        private int next;
+
+        private int childCount;
+
+        private boolean removed;
+
+        private String prefix;
+
+        private String localName;
+
+        private String namespace;
+
+        private String text;
+
+        private Attr[] attributes = NO_ATTRIBUTES;
+
+        private Event(int kind)
+        {
+            this.kind = kind;
+        }
+
+        private static Event text(String text)
+        {
+            Event event = new Event(TEXT);
+            event.text = text;
+            return event;
+        }
+
+        /**
+         * Creates an element with the attributes of the current start element. The namespace
+         * declarations are included as attributes and the attributes are sorted by their qualified
+         * name, as in a DOM.
+         */
+        private static Event element(XMLStreamReader reader)
+        {
+            Event event = new Event(ELEMENT);
+            event.prefix = emptyToNull(reader.getPrefix());
+            event.localName = reader.getLocalName();
+            event.namespace = emptyToNull(reader.getNamespaceURI());
+            int nsCount = reader.getNamespaceCount();
+            int attrCount = reader.getAttributeCount();
+            if (nsCount + attrCount > 0)
+            {
+                Attr[] attributes = new Attr[nsCount + attrCount];
+                for (int i = 0; i < nsCount; i++)
+                {
+                    String declared = emptyToNull(reader.getNamespacePrefix(i));
+                    String uri = reader.getNamespaceURI(i);
+                    if (declared == null)
+                    {
+                        attributes[i] = new Attr(null, XMLConstants.XMLNS_ATTRIBUTE,
+                                XMLConstants.XMLNS_ATTRIBUTE_NS_URI, uri == null ? "" : uri);
+                    }
+                    else
+                    {
+                        attributes[i] = new Attr(XMLConstants.XMLNS_ATTRIBUTE, declared,
+                                XMLConstants.XMLNS_ATTRIBUTE_NS_URI, uri == null ? "" : uri);
+                    }
+                }
+                for (int i = 0; i < attrCount; i++)
+                {
+                    attributes[nsCount + i] = new Attr(emptyToNull(reader.getAttributePrefix(i)),
+                            reader.getAttributeLocalName(i), emptyToNull(reader.getAttributeNamespace(i)),
+                            reader.getAttributeValue(i));
+                }
+                if (attributes.length > 1)
+                {
+                    Arrays.sort(attributes);
+                }
+                event.attributes = attributes;
+            }
+            return event;
+        }
+
+        private static String emptyToNull(String s)
+        {
+            return s == null || s.isEmpty() ? null : s;
+        }
+
+        private QName getQName()
+        {
+            // like DomHelper.getQName(), which fails for elements without a prefix
+            return new QName(namespace, localName, prefix);
+        }
+
+        private String getQualifiedName()
+        {
+            return prefix == null ? localName : prefix + ":" + localName;
+        }
+
+        private String getNodeName()
+        {
+            switch (kind)
+            {
+            case ELEMENT:
+                return getQualifiedName();
+            case TEXT:
+                return "#text";
+            default:
+                return localName;
+            }
+        }
+
+        private boolean isParseTypeResource()
+        {
+            for (Attr attr : attributes)
+            {
+                if (XmpConstants.RDF_NAMESPACE.equals(attr.namespace)
+                        && XmpConstants.PARSE_TYPE.equals(attr.localName))
+                {
+                    return XmpConstants.RESOURCE_NAME.equals(attr.value);
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "[" + getNodeName() + ": " + (kind == ELEMENT ? null : text) + "]";
+        }
+    }
+
+    /**
+     * An attribute or namespace declaration of an element.
+     */
+    private static final class Attr implements Comparable<Attr>
+    {
+        private final String prefix;
+
+        private final String localName;
+
+        private final String namespace;
+
+        private final String value;
+
+        private final String qualifiedName;
+
+        private Attr(String prefix, String localName, String namespace, String value)
+        {
+            this.prefix = prefix;
+            this.localName = localName;
+            this.namespace = namespace;
+            this.value = value;
+            this.qualifiedName = prefix == null ? localName : prefix + ":" + localName;
+        }
+
+        @Override
+        public int compareTo(Attr other)
+        {
+            return qualifiedName.compareTo(other.qualifiedName);
+        }
+    }
+
+    /**
+     * The namespaces declared on the enclosing elements, pushed and popped at the same places as
+     * in {@link DomXmpParser}.
+     */
+    private static final class NamespaceFinder
+    {
+        private final Stack<Map<String, String>> stack = new Stack<Map<String, String>>();
+
+        private void push(Event description)
+        {
+            Map<String, String> map = new HashMap<String, String>(description.attributes.length);
+            for (Attr attr : description.attributes)
+            {
+                // if ns definition add it
+                if (XMLConstants.XMLNS_ATTRIBUTE_NS_URI.equals(attr.namespace))
+                {
+                    map.put(attr.localName, attr.value);
+                }
+            }
+            stack.push(map);
+        }
+
+        private Map<String, String> pop()
+        {
+            return stack.pop();
+        }
+
+        private boolean containsNamespace(String namespace)
+        {
+            for (int i = stack.size() - 1; i >= 0; i--)
+            {
+                if (stack.get(i).containsValue(namespace))
+                {
+                    return true;
+                }
+            }
+            // else namespace not found
+            return false;
+        }
+    }
+}
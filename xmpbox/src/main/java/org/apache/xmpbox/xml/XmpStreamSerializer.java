@@ -0,0 +1,586 @@
+/*****************************************************************************
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ ****************************************************************************/
+
+package org.apache.xmpbox.xml;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Stack;
+
+import javax.xml.XMLConstants;
+
+import org.apache.xmpbox.XMPMetadata;
+import org.apache.xmpbox.XmpConstants;
+import org.apache.xmpbox.schema.XMPSchema;
+import org.apache.xmpbox.type.AbstractComplexProperty;
+import org.apache.xmpbox.type.AbstractField;
+import org.apache.xmpbox.type.AbstractSimpleProperty;
+import org.apache.xmpbox.type.AbstractStructuredType;
+import org.apache.xmpbox.type.ArrayProperty;
+import org.apache.xmpbox.type.Attribute;
+
+/**
+ * Writes XMP metadata directly to a stream, without building a DOM and running it through a
+ * {@link javax.xml.transform.Transformer}. The output is the same as the output of
+ * {@link XmpSerializer}, byte for byte: the attributes are sorted by their qualified name, the
+ * namespaces are declared where the transformer would declare them, the elements are indented by
+ * two spaces and the characters are escaped the same way.
+ */
+public class XmpStreamSerializer
+{
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+    private static final String INDENT = "  ";
+
+    private static final String META_NAMESPACE = "adobe:ns:meta/";
+
+    private static final String XML_PREFIX = "xml";
+
+    public void serialize(XMPMetadata metadata, OutputStream os, boolean withXpacket) throws IOException
+    {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(os, "UTF-8"));
+        Output out = new Output(writer);
+        // starting xpacket
+        if (withXpacket)
+        {
+            out.processingInstruction("xpacket",
+                    "begin=\"" + metadata.getXpacketBegin() + "\" id=\"" + metadata.getXpacketId() + "\"");
+        }
+        // meta element
+        List<Attr> metaAttributes = new ArrayList<Attr>(1);
+        metaAttributes.add(new Attr("xmlns:x", XMLConstants.XMLNS_ATTRIBUTE_NS_URI, META_NAMESPACE));
+        out.startElement("x:xmpmeta", META_NAMESPACE, metaAttributes);
+        // rdf element
+        out.startElement("rdf:RDF", XmpConstants.RDF_NAMESPACE, Collections.<Attr>emptyList());
+        for (XMPSchema schema : metadata.getAllSchemas())
+        {
+            serializeSchema(out, schema);
+        }
+        out.endElement();
+        out.endElement();
+        // ending xpacket
+        if (withXpacket)
+        {
+            out.processingInstruction("xpacket", "end=\"" + metadata.getEndXPacket() + "\"");
+        }
+        writer.write(LINE_SEPARATOR);
+        writer.flush();
+    }
+
+    private void serializeSchema(Output out, XMPSchema schema) throws IOException
+    {
+        // prepare schema
+        Map<String, Attr> attributes = new HashMap<String, Attr>();
+        putAttribute(attributes, new Attr("rdf:about", XmpConstants.RDF_NAMESPACE, schema.getAboutValue()));
+        putAttribute(attributes, new Attr(XMLConstants.XMLNS_ATTRIBUTE + ":" + schema.getPrefix(),
+                XMLConstants.XMLNS_ATTRIBUTE_NS_URI, schema.getNamespace()));
+        // the other attributes
+        fillWithAttributes(attributes, schema);
+        out.startElement("rdf:Description", XmpConstants.RDF_NAMESPACE, sorted(attributes));
+        // the content
+        serializeFields(out, schema.getAllProperties(), schema.getPrefix(), null, true);
+        out.endElement();
+    }
+
+    private void serializeFields(Output out, List<AbstractField> fields, String resourceNS, String prefix,
+            boolean wrapWithProperty) throws IOException
+    {
+        for (AbstractField field : fields)
+        {
+            if (field instanceof AbstractSimpleProperty)
+            {
+                AbstractSimpleProperty simple = (AbstractSimpleProperty) field;
+                String localPrefix;
+                if (prefix != null && !prefix.isEmpty())
+                {
+                    localPrefix = prefix;
+                }
+                else
+                {
+                    localPrefix = simple.getPrefix();
+                }
+                List<Attr> attributes = new ArrayList<Attr>();
+                for (Attribute attribute : simple.getAllAttributes())
+                {
+                    setAttributeNS(attributes, attribute);
+                }
+                out.startElement(localPrefix + ":" + simple.getPropertyName(), null, sorted(attributes));
+                out.text(simple.getStringValue());
+                out.endElement();
+            }
+            else if (field instanceof ArrayProperty)
+            {
+                ArrayProperty array = (ArrayProperty) field;
+                // property
+                Map<String, Attr> attributes = new HashMap<String, Attr>();
+                fillWithAttributes(attributes, array);
+                out.startElement(array.getPrefix() + ":" + array.getPropertyName(), null, sorted(attributes));
+                // the array definition
+                out.startElement(XmpConstants.DEFAULT_RDF_PREFIX + ":" + array.getArrayType(), null,
+                        Collections.<Attr>emptyList());
+                // for each element of the array
+                serializeFields(out, array.getAllProperties(), resourceNS, XmpConstants.DEFAULT_RDF_PREFIX, false);
+                out.endElement();
+                out.endElement();
+            }
+            else if (field instanceof AbstractStructuredType)
+            {
+                AbstractStructuredType structured = (AbstractStructuredType) field;
+                // property name attribute
+                if (wrapWithProperty)
+                {
+                    out.startElement(resourceNS + ":" + structured.getPropertyName(), null,
+                            Collections.<Attr>emptyList());
+                }
+                // element li
+                List<Attr> parseType = new ArrayList<Attr>(1);
+                parseType.add(new Attr("rdf:parseType", null, "Resource"));
+                out.startElement(XmpConstants.DEFAULT_RDF_PREFIX + ":" + XmpConstants.LIST_NAME, null, parseType);
+                // all properties
+                serializeFields(out, structured.getAllProperties(), resourceNS, null, true);
+                out.endElement();
+                if (wrapWithProperty)
+                {
+                    out.endElement();
+                }
+            }
+        }
+    }
+
+    /**
+     * Collects the attributes and namespace declarations of a complex property, see
+     * {@code XmpSerializer.fillElementWithAttributes()}.
+     */
+    private void fillWithAttributes(Map<String, Attr> target, AbstractComplexProperty property)
+    {
+        List<AbstractField> fields = property.getAllProperties();
+        for (Attribute attribute : property.getAllAttributes())
+        {
+            // attributes which match a schema property are serialized as child elements
+            boolean matchesField = false;
+            for (AbstractField field : fields)
+            {
+                if (attribute.getName().compareTo(field.getPropertyName()) == 0)
+                {
+                    matchesField = true;
+                    break;
+                }
+            }
+            if (matchesField)
+            {
+                continue;
+            }
+            if (XmpConstants.RDF_NAMESPACE.equals(attribute.getNamespace()))
+            {
+                setAttribute(target, XmpConstants.DEFAULT_RDF_PREFIX + ":" + attribute.getName(),
+                        attribute.getValue());
+            }
+            else
+            {
+                setAttribute(target, attribute.getName(), attribute.getValue());
+            }
+        }
+        for (Map.Entry<String, String> ns : property.getAllNamespacesWithPrefix().entrySet())
+        {
+            setAttribute(target, XMLConstants.XMLNS_ATTRIBUTE + ":" + ns.getValue(), ns.getKey());
+        }
+    }
+
+    /**
+     * Like {@link org.w3c.dom.Element#setAttribute(String, String)}, which keeps the namespace of
+     * an existing attribute with the same name.
+     */
+    private static void setAttribute(Map<String, Attr> attributes, String name, String value)
+    {
+        Attr existing = attributes.get(name);
+        putAttribute(attributes, new Attr(name, existing != null ? existing.namespace : null, value));
+    }
+
+    private static void putAttribute(Map<String, Attr> attributes, Attr attr)
+    {
+        attributes.put(attr.qualifiedName, attr);
+    }
+
+    /**
+     * Like {@link org.w3c.dom.Element#setAttributeNS(String, String, String)}, which replaces an
+     * attribute with the same namespace and local name.
+     */
+    private static void setAttributeNS(List<Attr> attributes, Attribute attribute)
+    {
+        String namespace = attribute.getNamespace();
+        if (namespace != null && namespace.isEmpty())
+        {
+            namespace = null;
+        }
+        Attr attr = new Attr(attribute.getName(), namespace, attribute.getValue());
+        for (int i = 0; i < attributes.size(); i++)
+        {
+            Attr other = attributes.get(i);
+            if (other.getLocalName().equals(attr.getLocalName())
+                    && (namespace == null ? other.namespace == null : namespace.equals(other.namespace)))
+            {
+                attributes.set(i, attr);
+                return;
+            }
+        }
+        attributes.add(attr);
+    }
+
+    /**
+     * Returns the attributes sorted by their qualified name, as in a DOM.
+     */
+    private static List<Attr> sorted(Map<String, Attr> attributes)
+    {
+        return sorted(new ArrayList<Attr>(attributes.values()));
+    }
+
+    private static List<Attr> sorted(List<Attr> attributes)
+    {
+        Collections.sort(attributes);
+        return attributes;
+    }
+
+    /**
+     * An attribute to write, with the qualified name given to the DOM.
+     */
+    private static final class Attr implements Comparable<Attr>
+    {
+        private final String qualifiedName;
+
+        private final String namespace;
+
+        private final String value;
+
+        private Attr(String qualifiedName, String namespace, String value)
+        {
+            this.qualifiedName = qualifiedName;
+            this.namespace = namespace;
+            this.value = value;
+        }
+
+        private String getLocalName()
+        {
+            int colon = qualifiedName.lastIndexOf(':');
+            return colon > 0 ? qualifiedName.substring(colon + 1) : qualifiedName;
+        }
+
+        @Override
+        public int compareTo(Attr other)
+        {
+            return qualifiedName.compareTo(other.qualifiedName);
+        }
+    }
+
+    /**
+     * Writes indented elements and keeps track of the declared namespaces, following the rules of
+     * the identity transformer of the JDK.
+     */
+    private static final class Output
+    {
+        private final Writer writer;
+
+        private final Stack<String> elements = new Stack<String>();
+
+        private final Map<String, Stack<Declaration>> namespaces = new HashMap<String, Stack<Declaration>>();
+
+        // the start tag of the current element hasn't been closed yet
+        private boolean startTagOpen;
+
+        // the current element has child elements, no element has both child elements and text
+        private boolean hasChildElements;
+
+        private boolean hasText;
+
+        private Output(Writer writer)
+        {
+            this.writer = writer;
+            namespaces.put("", new Stack<Declaration>());
+            namespaces.get("").push(new Declaration("", -1));
+        }
+
+        private void processingInstruction(String target, String data) throws IOException
+        {
+            writer.write("<?");
+            writer.write(target);
+            writer.write(' ');
+            writer.write(data);
+            writer.write("?>");
+        }
+
+        /**
+         * Writes a start tag.
+         *
+         * @param name the qualified name
+         * @param namespace the namespace of an element created with a namespace, or null
+         * @param attributes the attributes, sorted by their qualified name
+         */
+        private void startElement(String name, String namespace, List<Attr> attributes) throws IOException
+        {
+            if (startTagOpen)
+            {
+                writer.write('>');
+            }
+            if (!elements.isEmpty())
+            {
+                newLine(elements.size());
+            }
+            writer.write('<');
+            writer.write(name);
+            elements.push(name);
+            int depth = elements.size();
+            // namespace declarations first
+            for (Attr attr : attributes)
+            {
+                if (attr.qualifiedName.startsWith(XMLConstants.XMLNS_ATTRIBUTE))
+                {
+                    int colon = attr.qualifiedName.lastIndexOf(':');
+                    declare(colon > 0 ? attr.qualifiedName.substring(colon + 1) : "", attr.value, depth);
+                }
+            }
+            // then the attributes, with generated prefixes for namespaces without one
+            int generated = 0;
+            for (Attr attr : attributes)
+            {
+                if (attr.qualifiedName.startsWith(XMLConstants.XMLNS_ATTRIBUTE))
+                {
+                    continue;
+                }
+                if (attr.namespace != null)
+                {
+                    String prefix = XMLConstants.XML_NS_URI.equals(attr.namespace) ? XML_PREFIX : null;
+                    if (prefix == null)
+                    {
+                        prefix = "ns" + generated++;
+                    }
+                    int colon = attr.qualifiedName.lastIndexOf(':');
+                    if (colon > 0)
+                    {
+                        prefix = attr.qualifiedName.substring(0, colon);
+                        declare(prefix, attr.namespace, depth);
+                        attribute(attr.qualifiedName, attr.value);
+                    }
+                    else
+                    {
+                        declare(prefix, attr.namespace, depth);
+                        attribute(prefix + ":" + attr.qualifiedName, attr.value);
+                    }
+                }
+                else
+                {
+                    attribute(attr.qualifiedName, attr.value);
+                }
+            }
+            if (namespace != null)
+            {
+                int colon = name.lastIndexOf(':');
+                declare(colon > 0 ? name.substring(0, colon) : "", namespace, depth);
+            }
+            startTagOpen = true;
+            hasChildElements = false;
+            hasText = false;
+        }
+
+        private void text(String text) throws IOException
+        {
+            if (text == null || text.isEmpty())
+            {
+                return;
+            }
+            if (startTagOpen)
+            {
+                writer.write('>');
+                startTagOpen = false;
+            }
+            hasText = true;
+            escape(text, false);
+        }
+
+        private void endElement() throws IOException
+        {
+            int depth = elements.size();
+            String name = elements.pop();
+            if (startTagOpen)
+            {
+                writer.write("/>");
+            }
+            else
+            {
+                if (hasChildElements && !hasText)
+                {
+                    newLine(depth - 1);
+                }
+                writer.write("</");
+                writer.write(name);
+                writer.write('>');
+            }
+            for (Stack<Declaration> declarations : namespaces.values())
+            {
+                if (!declarations.isEmpty() && declarations.peek().depth == depth)
+                {
+                    declarations.pop();
+                }
+            }
+            startTagOpen = false;
+            // the parent has at least this child element
+            hasChildElements = true;
+            hasText = false;
+        }
+
+        /**
+         * Declares a namespace unless the prefix is already bound to it or it has been declared on
+         * this element.
+         */
+        private void declare(String prefix, String uri, int depth) throws IOException
+        {
+            if (prefix.startsWith(XML_PREFIX))
+            {
+                // xml and xmlns can't be redefined
+                return;
+            }
+            Stack<Declaration> declarations = namespaces.get(prefix);
+            if (declarations == null)
+            {
+                declarations = new Stack<Declaration>();
+                namespaces.put(prefix, declarations);
+            }
+            else if (!declarations.isEmpty())
+            {
+                Declaration declaration = declarations.peek();
+                if (declaration.uri.equals(uri) || declaration.depth == depth)
+                {
+                    return;
+                }
+            }
+            declarations.push(new Declaration(uri, depth));
+            attribute(prefix.isEmpty() ? XMLConstants.XMLNS_ATTRIBUTE
+                    : XMLConstants.XMLNS_ATTRIBUTE + ":" + prefix, uri);
+        }
+
+        private void attribute(String name, String value) throws IOException
+        {
+            writer.write(' ');
+            writer.write(name);
+            writer.write("=\"");
+            escape(value, true);
+            writer.write('"');
+        }
+
+        private void newLine(int depth) throws IOException
+        {
+            writer.write(LINE_SEPARATOR);
+            for (int i = 0; i < depth; i++)
+            {
+                writer.write(INDENT);
+            }
+        }
+
+        private void escape(String text, boolean inAttribute) throws IOException
+        {
+            int length = text.length();
+            for (int i = 0; i < length; i++)
+            {
+                char c = text.charAt(i);
+                switch (c)
+                {
+                case '&':
+                    writer.write("&amp;");
+                    break;
+                case '<':
+                    writer.write("&lt;");
+                    break;
+                case '>':
+                    writer.write("&gt;");
+                    break;
+                case '"':
+                    if (inAttribute)
+                    {
+                        writer.write("&quot;");
+                    }
+                    else
+                    {
+                        writer.write(c);
+                    }
+                    break;
+                case '\n':
+                    if (inAttribute)
+                    {
+                        writer.write("&#10;");
+                    }
+                    else
+                    {
+                        writer.write(LINE_SEPARATOR);
+                    }
+                    break;
+                case '\t':
+                    if (inAttribute)
+                    {
+                        writer.write("&#9;");
+                    }
+                    else
+                    {
+                        writer.write(c);
+                    }
+                    break;
+                default:
+                    if (Character.isHighSurrogate(c) && i + 1 < length
+                            && Character.isLowSurrogate(text.charAt(i + 1)))
+                    {
+                        writer.write("&#" + Character.toCodePoint(c, text.charAt(i + 1)) + ";");
+                        i++;
+                    }
+                    else if (c < 0x20 || !inAttribute && c >= 0x7F && c <= 0x9F)
+                    {
+                        writer.write("&#" + (int) c + ";");
+                    }
+                    else
+                    {
+                        writer.write(c);
+                    }
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * A namespace bound to a prefix, and the depth of the element where it was declared.
+     */
+    private static final class Declaration
+    {
+        private final String uri;
+
+        private final int depth;
+
+        private Declaration(String uri, int depth)
+        {
+            this.uri = uri;
+            this.depth = depth;
+        }
+    }
+}
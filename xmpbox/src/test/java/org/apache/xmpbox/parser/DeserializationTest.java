@@ -31,11 +31,15 @@ import org.apache.xmpbox.schema.AdobePDFSchema;
 import org.apache.xmpbox.schema.DublinCoreSchema;
 import org.apache.xmpbox.schema.XMPBasicSchema;
 import org.apache.xmpbox.schema.XMPSchema;
+import org.apache.xmpbox.type.ArrayProperty;
+import org.apache.xmpbox.type.Attribute;
 import org.apache.xmpbox.type.ThumbnailType;
 import org.apache.xmpbox.xml.DomXmpParser;
+import org.apache.xmpbox.xml.StaxXmpParser;
 import org.apache.xmpbox.xml.XmpParsingException;
 import org.apache.xmpbox.xml.XmpParsingException.ErrorType;
 import org.apache.xmpbox.xml.XmpSerializer;
+import org.apache.xmpbox.xml.XmpStreamSerializer;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -47,6 +51,20 @@ public class DeserializationTest
 
     protected XmpSerializer serializer;
 
+    private static final String[] VALID_XMP = { "/org/apache/xmpbox/parser/AltBagSeqTest.xml",
+            "/org/apache/xmpbox/parser/ThumbisartorStyle.xml", "/org/apache/xmpbox/parser/empty_list.xml",
+            "/org/apache/xmpbox/parser/isartorStyleXMPOK.xml",
+            "/org/apache/xmpbox/parser/structured_recursive.xml", "/validxmp/Notepad++_A1b.xmp",
+            "/validxmp/attr_as_props.xml", "/validxmp/emptyli.xml", "/validxmp/exif.xmp",
+            "/validxmp/ghost2.xmp", "/validxmp/history2.rdf", "/validxmp/metadata.rdf",
+            "/validxmp/only_space_fields.xmp", "/validxmp/override_ns.rdf" };
+
+    private static final String[] INVALID_XMP = { "/invalidxmp/invalidroot.xml",
+            "/invalidxmp/invalidroot2.xml", "/invalidxmp/noroot.xml", "/invalidxmp/noxpacket.xml",
+            "/invalidxmp/noxpacketend.xml", "/invalidxmp/tworoot.xml",
+            "/invalidxmp/undefinedpropertyindefinedschema.xml", "/invalidxmp/undefinedschema.xml",
+            "/invalidxmp/undefinedstructuredindefinedschema.xml" };
+
     @Before
     public void init() throws Exception
     {
@@ -354,4 +372,142 @@ public class DeserializationTest
         Assert.assertEquals("Canon ",meta.getXMPBasicSchema().getCreatorTool());
 
     }
+
+    @Test
+    public void testStaxParserMatchesDomParser() throws Exception
+    {
+        StaxXmpParser stax = new StaxXmpParser();
+        for (String resource : VALID_XMP)
+        {
+            byte[] xmp = readResource(resource);
+            XMPMetadata expected = new DomXmpParser().parse(xmp);
+            XMPMetadata actual = stax.parse(xmp);
+            Assert.assertEquals(resource, serialize(expected), serialize(actual));
+        }
+
+        // comments are ignored, whitespace is removed except when it is the only content
+        String xmp = "<?xpacket begin='' id='W5M0MpCehiHzreSzNTczkc9d'?><!-- start -->"
+                + "<x:xmpmeta xmlns:x='adobe:ns:meta/'><rdf:RDF xmlns:rdf='http://www.w3.org/1999/02/22-rdf-syntax-ns#'>"
+                + "\n  <rdf:Description rdf:about='' xmlns:dc='http://purl.org/dc/elements/1.1/'>"
+                + "<!-- c --><dc:format>app<!-- c -->lication/<![CDATA[pdf]]></dc:format>"
+                + "<dc:source> </dc:source><dc:creator>\n<rdf:Seq> <rdf:li>a &amp; b</rdf:li>"
+                + "<rdf:li xml:lang='en'> <!-- c --> </rdf:li></rdf:Seq></dc:creator>"
+                + "</rdf:Description></rdf:RDF></x:xmpmeta><?xpacket end='w'?>";
+        XMPMetadata expected = new DomXmpParser().parse(xmp.getBytes("UTF-8"));
+        XMPMetadata actual = stax.parse(xmp.getBytes("UTF-8"));
+        Assert.assertEquals("application/pdf", actual.getDublinCoreSchema().getFormat());
+        Assert.assertEquals(serialize(expected), serialize(actual));
+    }
+
+    @Test
+    public void testStaxParserErrors() throws Exception
+    {
+        for (String resource : INVALID_XMP)
+        {
+            byte[] xmp = readResource(resource);
+            ErrorType expected = null;
+            try
+            {
+                new DomXmpParser().parse(xmp);
+            }
+            catch (XmpParsingException e)
+            {
+                expected = e.getErrorType();
+            }
+            try
+            {
+                new StaxXmpParser().parse(xmp);
+                Assert.fail("Should fail during parse of " + resource);
+            }
+            catch (XmpParsingException e)
+            {
+                Assert.assertEquals(resource, expected, e.getErrorType());
+            }
+        }
+
+        // a DOCTYPE is rejected by both parsers, to prevent entity expansion
+        String xmp = "<?xpacket begin='' id='W5M0MpCehiHzreSzNTczkc9d'?>"
+                + "<!DOCTYPE x:xmpmeta [<!ENTITY e 'e'>]><x:xmpmeta xmlns:x='adobe:ns:meta/'/>"
+                + "<?xpacket end='w'?>";
+        try
+        {
+            new StaxXmpParser().parse(xmp.getBytes("UTF-8"));
+            Assert.fail("Should fail during parse");
+        }
+        catch (XmpParsingException e)
+        {
+            Assert.assertEquals(ErrorType.Undefined, e.getErrorType());
+        }
+    }
+
+    @Test
+    public void testStreamSerializerMatchesSerializer() throws Exception
+    {
+        for (String resource : VALID_XMP)
+        {
+            XMPMetadata meta = new DomXmpParser().parse(DomXmpParser.class.getResourceAsStream(resource));
+            Assert.assertEquals(resource, serialize(meta), streamSerialize(meta, true));
+        }
+
+        // escaping, attributes with and without namespace, namespace declarations
+        XMPMetadata meta = XMPMetadata.createXMPMetadata();
+        DublinCoreSchema dc = meta.createAndAddDublinCoreSchema();
+        dc.addNamespace("http://b.example/", "bb");
+        dc.addNamespace("http://a.example/", "aa");
+        StringBuilder special = new StringBuilder("a&b<c>d\"e'f\r\n\tg");
+        for (char c = 1; c < 0xA2; c++)
+        {
+            special.append(c);
+        }
+        special.append("\u2028\ud83d\ude00\u4e2d");
+        dc.setFormat(special.toString());
+        dc.getProperty("format").setAttribute(
+                new Attribute("http://www.w3.org/1999/02/22-rdf-syntax-ns#", "resource", special.toString()));
+        dc.getProperty("format").setAttribute(new Attribute("http://x.example/", "foo", "x"));
+        dc.getProperty("format").setAttribute(new Attribute(null, "bar", "y"));
+        dc.getProperty("format").setAttribute(new Attribute("http://www.w3.org/XML/1998/namespace", "lang", "z"));
+        dc.addCreator("c");
+        dc.addCreator("");
+        ArrayProperty creators = dc.getCreatorsProperty();
+        creators.setAttribute(new Attribute(null, "q", "v"));
+        creators.addNamespace("http://q.example/", "q");
+        creators.addNamespace("http://purl.org/dc/elements/1.1/", "dc");
+        dc.setAttribute(new Attribute(null, "other", special.toString()));
+        meta.createAndAddXMPBasicSchema().setCreatorTool("");
+        Assert.assertEquals(serialize(meta), streamSerialize(meta, true));
+        Assert.assertEquals(serialize(meta, false), streamSerialize(meta, false));
+    }
+
+    private byte[] readResource(String resource) throws Exception
+    {
+        InputStream is = DomXmpParser.class.getResourceAsStream(resource);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = is.read(buffer)) > 0)
+        {
+            os.write(buffer, 0, read);
+        }
+        is.close();
+        return os.toByteArray();
+    }
+
+    private String serialize(XMPMetadata meta) throws Exception
+    {
+        return serialize(meta, true);
+    }
+
+    private String serialize(XMPMetadata meta, boolean withXpacket) throws Exception
+    {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        serializer.serialize(meta, os, withXpacket);
+        return os.toString("UTF-8");
+    }
+
+    private String streamSerialize(XMPMetadata meta, boolean withXpacket) throws Exception
+    {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        new XmpStreamSerializer().serialize(meta, os, withXpacket);
+        return os.toString("UTF-8");
+    }
 }
@@ -25,6 +25,7 @@ import java.util.Calendar;
 import java.util.List;
 
 import org.apache.xmpbox.XMPMetadata;
+import org.apache.xmpbox.schema.DublinCoreSchema;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -232,4 +233,62 @@ public class TestSimpleMetadataProperties
 
     }
 
+    /**
+     * Check that each simple type is instanciated with its implementing class
+     */
+    @Test
+    public void testInstanciateSimpleProperties()
+    {
+        TypeMapping mapping = parent.getTypeMapping();
+        for (Types type : Types.values())
+        {
+            if (!type.isSimple())
+            {
+                continue;
+            }
+            Object value;
+            switch (type)
+            {
+            case Date:
+                value = Calendar.getInstance();
+                break;
+            case Boolean:
+                value = Boolean.TRUE;
+                break;
+            case Integer:
+                value = 1;
+                break;
+            case Real:
+                value = 1.5f;
+                break;
+            default:
+                value = "value";
+            }
+            AbstractSimpleProperty property = mapping.instanciateSimpleProperty("http://www.test.org/test/", "test",
+                    "prop", value, type);
+            Assert.assertEquals(type.getImplementingClass(), property.getClass());
+            Assert.assertEquals("prop", property.getPropertyName());
+        }
+    }
+
+    /**
+     * Check that properties added to the description of one metadata don't appear in another
+     */
+    @Test
+    public void testPropertiesDescriptionNotShared() throws Exception
+    {
+        String namespace = "http://purl.org/dc/elements/1.1/";
+        TypeMapping mapping = parent.getTypeMapping();
+        PropertiesDescription description = mapping.getSchemaFactory(namespace).getPropertyDefinition();
+        Assert.assertEquals(Types.MIMEType, description.getPropertyType(DublinCoreSchema.FORMAT).type());
+        description.addNewProperty("added", TypeMapping.createPropertyType(Types.Integer, Cardinality.Simple));
+        Assert.assertNotNull(description.getPropertyType("added"));
+
+        PropertiesDescription other = XMPMetadata.createXMPMetadata().getTypeMapping()
+                .getSchemaFactory(namespace).getPropertyDefinition();
+        Assert.assertNull(other.getPropertyType("added"));
+        Assert.assertEquals(Types.MIMEType, other.getPropertyType(DublinCoreSchema.FORMAT).type());
+        Assert.assertNull(mapping.initializePropMapping(DublinCoreSchema.class).getPropertyType("added"));
+    }
+
 }
@@ -0,0 +1,139 @@
+/*****************************************************************************
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ ****************************************************************************/
+
+package org.apache.xmpbox.xml;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.xmpbox.XMPMetadata;
+
+/**
+ * Compares the DOM based parser and serializer with the StAX parser and the streaming serializer.
+ * Each file is parsed and serialized in a loop with both, the first half of the loops is not
+ * counted to warm up the JIT.
+ */
+public class Benchmark
+{
+
+    /**
+     * @param args
+     */
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length < 2)
+        {
+            System.err.println("Usage : Benchmark loop <file1 ... filen|dir>");
+            System.exit(255);
+        }
+
+        int loop = Integer.parseInt(args[0]);
+
+        List<byte[]> packets = new ArrayList<byte[]>();
+        for (int i = 1; i < args.length; ++i)
+        {
+            addFiles(new File(args[i]), packets);
+        }
+
+        DomXmpParser domParser = new DomXmpParser();
+        StaxXmpParser staxParser = new StaxXmpParser();
+        XmpSerializer serializer = new XmpSerializer();
+        XmpStreamSerializer streamSerializer = new XmpStreamSerializer();
+        long[] times = new long[4];
+        long bytes = 0;
+        for (int i = 0; i < 2 * loop; i++)
+        {
+            boolean counted = i >= loop;
+            for (byte[] packet : packets)
+            {
+                long start = System.nanoTime();
+                XMPMetadata dom = domParser.parse(packet);
+                long parsedDom = System.nanoTime();
+                XMPMetadata stax = staxParser.parse(packet);
+                long parsedStax = System.nanoTime();
+                ByteArrayOutputStream os = new ByteArrayOutputStream();
+                serializer.serialize(dom, os, true);
+                long serialized = System.nanoTime();
+                ByteArrayOutputStream streamOs = new ByteArrayOutputStream();
+                streamSerializer.serialize(stax, streamOs, true);
+                long streamSerialized = System.nanoTime();
+                if (counted)
+                {
+                    times[0] += parsedDom - start;
+                    times[1] += parsedStax - parsedDom;
+                    times[2] += serialized - parsedStax;
+                    times[3] += streamSerialized - serialized;
+                    bytes += packet.length;
+                }
+            }
+        }
+
+        int count = loop * packets.size();
+        System.out.println("Packets : " + count + ", average size (bytes) : " + bytes / Math.max(count, 1));
+        System.out.println("DOM parse (us/packet) : " + times[0] / 1000 / Math.max(count, 1));
+        System.out.println("StAX parse (us/packet) : " + times[1] / 1000 / Math.max(count, 1));
+        System.out.println("DOM serialize (us/packet) : " + times[2] / 1000 / Math.max(count, 1));
+        System.out.println("Stream serialize (us/packet) : " + times[3] / 1000 / Math.max(count, 1));
+    }
+
+    private static void addFiles(File file, List<byte[]> packets) throws Exception
+    {
+        if (file.isDirectory())
+        {
+            File[] children = file.listFiles();
+            if (children != null)
+            {
+                for (File child : children)
+                {
+                    addFiles(child, packets);
+                }
+            }
+            return;
+        }
+        InputStream is = new FileInputStream(file);
+        try
+        {
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = is.read(buffer)) > 0)
+            {
+                os.write(buffer, 0, read);
+            }
+            byte[] packet = os.toByteArray();
+            // skip files which aren't valid XMP
+            new DomXmpParser().parse(packet);
+            packets.add(packet);
+        }
+        catch (XmpParsingException e)
+        {
+            System.err.println("Skipping " + file + " : " + e.getMessage());
+        }
+        finally
+        {
+            is.close();
+        }
+    }
+}